@@ -0,0 +1,184 @@
+package gov.nj.innovation.customAwsIdp.aot;
+
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator;
+import gov.nj.innovation.customAwsIdp.keys.KeyConstants;
+import gov.nj.innovation.customAwsIdp.lambda.GetSamlHttpResponseHandler;
+import gov.nj.innovation.customAwsIdp.runtime.CustomRuntime;
+import gov.nj.innovation.customAwsIdp.runtime.RuntimeApiClient;
+import gov.nj.innovation.customAwsIdp.runtime.RuntimeApiEmulator;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_USER_POOL;
+import static gov.nj.innovation.customAwsIdp.util.Constants.PATH_PARAMETER_GROUP_NAME;
+
+/**
+ * Training run for the JDK's ahead-of-time cache (JEP 483, with the method profiles of JEP 515), run by the {@code
+ * aotTrain} Gradle task so that the classes loaded, linked, and profiled while generating and signing SAML Responses
+ * get recorded into the cache which is shipped in {@code customIdp.zip}.
+ * <p>
+ * A cache is only used by a JVM whose class path starts with the class path it was trained on, so the training JVM
+ * cannot have this class, or anything else outside the zip, on its class path. Instead, this starts a {@link
+ * RuntimeApiEmulator} and an {@link AwsJsonEmulator}, and forks the zip's own entry point, {@link CustomRuntime}, on
+ * exactly the zip's jars with the deployed handler, {@link GetSamlHttpResponseHandler}. The logins it is sent go
+ * through the real SDK clients, pointed at the emulator by {@code AWS_ENDPOINT_URL}, with the key-secrets of a freshly
+ * generated key. Besides successful logins, the input-error and bad-description paths are sent too, so that those are
+ * warm as well. Once every login has been answered the runtime is stopped, and its JVM writes the cache as it exits.
+ * <ul>
+ *     <li>{@code classpath=...}: the zip's jars, in the order of the Lambda's class path (required)</li>
+ *     <li>{@code iterations=N}: the number of successful logins, default {@value #DEFAULT_ITERATIONS}</li>
+ *     <li>{@code java=...}: the {@code java} executable, default the one running this</li>
+ *     <li>{@code jvmArg=...}: an option for the training JVM, repeatable, e.g. {@code -XX:AOTCacheOutput=...}</li>
+ * </ul>
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class AotTrainingWorkload {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int DEFAULT_ITERATIONS = 200;
+    private static final Duration INVOCATION_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration EXIT_TIMEOUT = Duration.ofMinutes(5);
+    private static final String GROUP_NAME = "aot-training";
+    private static final String MALFORMED_GROUP_NAME = "aot-training-malformed";
+    private static final String USERS_GROUPS = "[" + GROUP_NAME + " " + MALFORMED_GROUP_NAME + "]";
+    private static final String GROUP_DESCRIPTION = """
+            RelayState: "https://us-east-1.console.aws.amazon.com/connect/federate/00000000-0000-0000-0000-000000000000"
+            SsoRole: "arn:aws:iam::000000000000:role/AOT_TRAINING,arn:aws:iam::000000000000:saml-provider/AOT_TRAINING"
+            """;
+    private static final String[] DURATIONS = { "900", "3600", "43200" };
+
+    public static void main(final String[] args) throws Exception {
+        String classpath = null;
+        int iterations = DEFAULT_ITERATIONS;
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        final List<String> jvmArgs = new ArrayList<>();
+        for (final String arg : args) {
+            final String[] parts = arg.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Arguments are key=value pairs, but got: " + arg);
+            }
+            switch (parts[0]) {
+                case "classpath" -> classpath = parts[1];
+                case "iterations" -> iterations = Integer.parseInt(parts[1]);
+                case "java" -> java = parts[1];
+                case "jvmArg" -> jvmArgs.add(parts[1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        if (classpath == null || classpath.isBlank() || iterations < 1) {
+            throw new IllegalArgumentException("A classpath=... and iterations >= 1 are required");
+        }
+
+        try (final AwsJsonEmulator aws = AwsJsonEmulator.start();
+             final RuntimeApiEmulator runtimeApi = RuntimeApiEmulator.start()) {
+            KeyConstants.secretsOf(TestKeyDetails.generateKey()).forEach(aws::putParameter);
+            aws.putGroup(COGNITO_USER_POOL, GROUP_NAME, GROUP_DESCRIPTION);
+            aws.putGroup(COGNITO_USER_POOL, MALFORMED_GROUP_NAME, "This isn't really a parse-able YAML string");
+
+            final List<String> command = new ArrayList<>(List.of(java));
+            command.addAll(jvmArgs);
+            command.addAll(List.of("-cp", classpath, CustomRuntime.class.getName()));
+            final ProcessBuilder builder = new ProcessBuilder(command).inheritIO();
+            builder.environment().putAll(Map.of(
+                    RuntimeApiClient.RUNTIME_API_ENV, runtimeApi.runtimeApi(),
+                    CustomRuntime.HANDLER_ENV, GetSamlHttpResponseHandler.class.getName(),
+                    "AWS_ENDPOINT_URL", aws.endpoint().toString(),
+                    "AWS_ACCESS_KEY_ID", "local-access-key",
+                    "AWS_SECRET_ACCESS_KEY", "local-secret-key",
+                    // Run the init-phase warm-ups as well, as inside Lambda
+                    "AWS_LAMBDA_FUNCTION_NAME", "aot-training"));
+            System.out.println("AOT training: " + iterations + " logins through " + command);
+
+            final Process process = builder.start();
+            try {
+                train(runtimeApi, iterations);
+            } finally {
+                // The runtime never returns by itself; stopping it exits the JVM normally, which writes the cache
+                process.destroy();
+                if (!process.waitFor(EXIT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                    throw new IllegalStateException("The training JVM did not exit within " + EXIT_TIMEOUT);
+                }
+            }
+        }
+        System.out.println("Completed " + iterations + " training logins");
+    }
+
+    /**
+     * Send the logins, failing on the first successful login which does not come back signed.
+     */
+    private static void train(final RuntimeApiEmulator runtimeApi, final int iterations) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            // Each login is for its own user, so that none is answered from the idempotent-response cache
+            final String email = String.format("aot-training-%d@innovation.nj.gov", i);
+            final boolean compressed = i % 2 == 1;
+            final JsonNode response = invoke(runtimeApi,
+                    httpApiEvent(email, GROUP_NAME, DURATIONS[i % DURATIONS.length], compressed));
+            if (!compressed && !"SUCCESS".equals(
+                    MAPPER.readTree(response.get("body").asString()).get("status").asString())) {
+                throw new IllegalStateException("Training login failed: " + response.get("body").asString());
+            }
+
+            // Keep the error paths warm as well, at a lower rate than real logins
+            if (i % 10 == 0) {
+                invoke(runtimeApi, httpApiEvent(email, GROUP_NAME, "apple", false));
+                invoke(runtimeApi, httpApiEvent(email, "not-a-member", null, false));
+                invoke(runtimeApi, httpApiEvent(email, MALFORMED_GROUP_NAME, null, false));
+            }
+        }
+    }
+
+    private static JsonNode invoke(final RuntimeApiEmulator runtimeApi, final byte[] event) throws Exception {
+        final RuntimeApiEmulator.Result result = runtimeApi.invoke(event, INVOCATION_TIMEOUT);
+        if (result.error()) {
+            throw new IllegalStateException(
+                    "The training invocation failed: " + new String(result.body(), StandardCharsets.UTF_8));
+        }
+        return MAPPER.readTree(result.body());
+    }
+
+    /**
+     * @return A login as API Gateway sends it to the Lambda, in payload format 2.0, following the layout described in
+     * the {@link gov.nj.innovation.customAwsIdp.lambda.GetSamlResponseHandler} class.
+     */
+    private static byte[] httpApiEvent(
+            final String email,
+            final String groupName,
+            final String duration,
+            final boolean compressed) {
+        final String rawPath = "/generateSaml/" + groupName;
+        final Map<String, String> headers = new HashMap<>();
+        if (compressed) {
+            headers.put("accept-encoding", "gzip, deflate");
+        }
+        final ObjectNode event = MAPPER.createObjectNode();
+        event.put("version", "2.0");
+        event.put("routeKey", "GET /generateSaml/{" + PATH_PARAMETER_GROUP_NAME + "}");
+        event.put("rawPath", rawPath);
+        event.set("headers", MAPPER.valueToTree(headers));
+        if (duration != null) {
+            event.putObject("queryStringParameters").put("duration", duration);
+        }
+        event.putObject("pathParameters").put(PATH_PARAMETER_GROUP_NAME, groupName);
+        final ObjectNode requestContext = event.putObject("requestContext");
+        requestContext.put("requestId", email + "/" + duration);
+        requestContext.putObject("authorizer").putObject("jwt").putObject("claims")
+                .put("email", email)
+                .put("cognito:groups", USERS_GROUPS);
+        requestContext.putObject("http").put("method", "GET").put("path", rawPath);
+        event.put("isBase64Encoded", false);
+        return MAPPER.writeValueAsBytes(event);
+    }
+}
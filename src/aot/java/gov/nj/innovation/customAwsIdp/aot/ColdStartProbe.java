@@ -0,0 +1,141 @@
+package gov.nj.innovation.customAwsIdp.aot;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import gov.nj.innovation.customAwsIdp.TestUtils.FakeAwsClients;
+import gov.nj.innovation.customAwsIdp.lambda.GetSamlResponseHandler;
+import gov.nj.innovation.customAwsIdp.metrics.EmfMetricsWriter;
+import gov.nj.innovation.customAwsIdp.metrics.Phase;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent.ProxyRequestContext;
+import static gov.nj.innovation.customAwsIdp.util.Constants.PATH_PARAMETER_GROUP_NAME;
+
+/**
+ * One cold start, run in a fresh JVM by the cold-start harness ({@code ./gradlew coldStartReport}) on the class path of
+ * {@code customIdp.zip}, with this source set and the test fixtures appended: build {@link GetSamlResponseHandler}
+ * around the in-memory SSM and Cognito clients of {@link FakeAwsClients}, call it once, and print a single {@value
+ * #RESULT_PREFIX} line of JSON with
+ * <ul>
+ *     <li>the JVM uptime at {@code main}, at the handler's entry, and at the first response</li>
+ *     <li>the time spent building the handler and inside {@code handleRequest}, with its per-phase metrics</li>
+ *     <li>the classes loaded, and the resident set size (Linux only, otherwise -1)</li>
+ * </ul>
+ * The key-secrets are read from the properties file given as {@code secrets=...}, so that the RSA key is generated
+ * once by the harness rather than inside every measured start.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class ColdStartProbe {
+
+    public static final String RESULT_PREFIX = "COLD_START_RESULT ";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String SECRETS_ARG = "secrets=";
+    private static final String EMAIL = "cold-start@innovation.nj.gov";
+    private static final String GROUP_NAME = "cold-start";
+    private static final String GROUP_DESCRIPTION = """
+            RelayState: "https://us-east-1.console.aws.amazon.com/connect/federate/00000000-0000-0000-0000-000000000000"
+            SsoRole: "arn:aws:iam::000000000000:role/COLD_START,arn:aws:iam::000000000000:saml-provider/COLD_START"
+            """;
+
+    public static void main(final String[] args) throws IOException {
+        final long mainUptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        final Map<String, String> secrets = readSecrets(List.of(args).stream()
+                .filter(arg -> arg.startsWith(SECRETS_ARG))
+                .map(arg -> Path.of(arg.substring(SECRETS_ARG.length())))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("The secrets=... file is required")));
+
+        final ByteArrayOutputStream metrics = new ByteArrayOutputStream();
+        final long initStart = System.nanoTime();
+        final GetSamlResponseHandler handler = new GetSamlResponseHandler(new FakeAwsClients.Ssm(secrets),
+                new FakeAwsClients.Cognito(groupName -> GROUP_DESCRIPTION),
+                new EmfMetricsWriter(new PrintStream(metrics, true, StandardCharsets.UTF_8)));
+        final long initNanos = System.nanoTime() - initStart;
+
+        final long handlerEntryUptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        final long handleStart = System.nanoTime();
+        final Map<String, String> response = handler.handleRequest(createRequest(), null);
+        final long handleNanos = System.nanoTime() - handleStart;
+        final long firstResponseUptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        if (!"SUCCESS".equals(response.get("status"))) {
+            throw new IllegalStateException("The cold-start login failed: " + response.get("error"));
+        }
+
+        final ObjectNode result = MAPPER.createObjectNode();
+        result.put("mainUptimeMs", mainUptimeMs);
+        result.put("handlerInitMs", initNanos / 1e6);
+        result.put("handlerEntryUptimeMs", handlerEntryUptimeMs);
+        result.put("handleRequestMs", handleNanos / 1e6);
+        result.put("firstResponseUptimeMs", firstResponseUptimeMs);
+        result.put("loadedClasses", ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount());
+        result.put("rssKb", residentSetKb());
+        final ObjectNode phases = result.putObject("phases");
+        final JsonNode emf = MAPPER.readTree(metrics.toString(StandardCharsets.UTF_8));
+        for (final Phase phase : Phase.values()) {
+            if (emf.hasNonNull(phase.metricName())) {
+                phases.put(phase.metricName(), emf.get(phase.metricName()).asDouble());
+            }
+        }
+        System.out.println(RESULT_PREFIX + MAPPER.writeValueAsString(result));
+    }
+
+    /**
+     * Create the input following the layout described in the {@link GetSamlResponseHandler} class.
+     */
+    private static APIGatewayProxyRequestEvent createRequest() {
+        final APIGatewayProxyRequestEvent input = new APIGatewayProxyRequestEvent();
+        input.setPathParameters(Map.of(PATH_PARAMETER_GROUP_NAME, GROUP_NAME));
+        input.setQueryStringParameters(Map.of("duration", "3600"));
+        final ProxyRequestContext requestContext = new ProxyRequestContext();
+        requestContext.setAuthorizer(Map.of("jwt", Map.of("claims", Map.of(
+                "email", EMAIL,
+                "cognito:groups", "[" + GROUP_NAME + "]"))));
+        input.setRequestContext(requestContext);
+        return input;
+    }
+
+    private static Map<String, String> readSecrets(final Path file) throws IOException {
+        final Properties properties = new Properties();
+        try (final Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        final Map<String, String> secrets = new HashMap<>();
+        properties.stringPropertyNames().forEach(name -> secrets.put(name, properties.getProperty(name)));
+        return secrets;
+    }
+
+    /**
+     * @return The {@code VmRSS} of this process in kB, or -1 where there is no {@code /proc}.
+     */
+    private static long residentSetKb() {
+        final Path status = Path.of("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            for (final String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (final IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,72 @@
+package gov.nj.innovation.customAwsIdp;
+
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.keys.KeysWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signed SAML Responses per second from a {@link SamlGenerator} built for each login, as the handler used to do, and
+ * from one {@link SamlEngine} built once and shared, on one thread and on four. The shared engine on four threads
+ * shows whether anything in it is contended; signing dominates both, so the single-thread difference is only what the
+ * per-login setup cost.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SamlEngineBenchmark {
+
+    private static final String USER = "benchmark@innovation.nj.gov";
+    private static final String ROLE =
+            "arn:aws:iam::274460373520:role/Benchmark,arn:aws:iam::274460373520:saml-provider/Benchmark";
+    private static final List<String> ROLES = List.of(ROLE);
+    private static final String DURATION = "3600";
+
+    private KeysWrapper keys;
+    private SamlEngine engine;
+
+    @Setup
+    public void setUp() {
+        keys = new KeysWrapper(TestKeyDetails.keyConstants(TestKeyDetails.generateKey()));
+        engine = new SamlEngine(keys);
+    }
+
+    @Benchmark
+    public String generatorPerLogin() {
+        return new SamlGenerator(USER, ROLE, DURATION, keys).getBase64SamlResponse();
+    }
+
+    @Benchmark
+    public String sharedEngine() {
+        return engine.generate(USER, ROLES, DURATION);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String generatorPerLoginFourThreads() {
+        return new SamlGenerator(USER, ROLE, DURATION, keys).getBase64SamlResponse();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String sharedEngineFourThreads() {
+        return engine.generate(USER, ROLES, DURATION);
+    }
+}
@@ -0,0 +1,72 @@
+package gov.nj.innovation.customAwsIdp.keys;
+
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RSA-2048 SHA256withRSA signatures per second for each {@link CryptoProviders.Choice}, with keys built by {@link
+ * KeysWrapper} on the same provider, as a login does. The input is about the size of the {@code SignedInfo} which
+ * Santuario signs. A provider which is unavailable on this machine falls back to the JDK defaults, which is printed.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RsaSigningBenchmark {
+
+    private static final byte[] SIGNED_INFO = ("<ds:SignedInfo xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\">" +
+            "<ds:CanonicalizationMethod Algorithm=\"http://www.w3.org/2001/10/xml-exc-c14n#\"/>" +
+            "<ds:SignatureMethod Algorithm=\"http://www.w3.org/2001/04/xmldsig-more#rsa-sha256\"/>" +
+            "<ds:Reference URI=\"#ID_00000000-0000-0000-0000-000000000000\"><ds:Transforms>" +
+            "<ds:Transform Algorithm=\"http://www.w3.org/2000/09/xmldsig#enveloped-signature\"/>" +
+            "<ds:Transform Algorithm=\"http://www.w3.org/2001/10/xml-exc-c14n#\"/></ds:Transforms>" +
+            "<ds:DigestMethod Algorithm=\"http://www.w3.org/2001/04/xmlenc#sha256\"/>" +
+            "<ds:DigestValue>AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=</ds:DigestValue></ds:Reference>" +
+            "</ds:SignedInfo>").getBytes(StandardCharsets.UTF_8);
+
+    @Param({ "DEFAULT", "SUN_RSA_SIGN", "ACCP", "BOUNCY_CASTLE" })
+    private CryptoProviders.Choice choice;
+
+    private Signature signature;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        final Provider provider = CryptoProviders.load(choice);
+        if (provider == null && choice != CryptoProviders.Choice.DEFAULT) {
+            System.out.printf("%n%s is unavailable here; measuring the JDK defaults instead%n", choice);
+        }
+
+        final KeysWrapper keys = new KeysWrapper(TestKeyDetails.keyConstants(TestKeyDetails.generateKey()), provider);
+
+        signature = provider != null ?
+                Signature.getInstance("SHA256withRSA", provider) : Signature.getInstance("SHA256withRSA");
+        signature.initSign(keys.getPrivateKey());
+        System.out.printf("%n%s: signing with %s%n", choice, signature.getProvider().getName());
+    }
+
+    @Benchmark
+    public byte[] sign() throws GeneralSecurityException {
+        signature.update(SIGNED_INFO);
+        return signature.sign();
+    }
+}
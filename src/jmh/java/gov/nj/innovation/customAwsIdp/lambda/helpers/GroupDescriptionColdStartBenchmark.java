@@ -0,0 +1,65 @@
+package gov.nj.innovation.customAwsIdp.lambda.helpers;
+
+import gov.nj.innovation.customAwsIdp.lambda.helpers.data.CognitoGroupDescriptionMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold-start cost of parsing the first Group description: each fork is a fresh JVM which parses one description, either
+ * through {@link GroupDescriptionParser} (with the YAML mapper untouched) or through the YAML mapper alone, as every
+ * description was before. The classes loaded by the parse are printed once per fork, next to the timing.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class GroupDescriptionColdStartBenchmark {
+
+    private static final String DESCRIPTION = """
+            RelayState: "https://us-east-1.console.aws.amazon.com/connect/federate/00000000-0000-0000-0000-000000000000"
+            SsoRole: "arn:aws:iam::000000000000:role/ROLE_NAME,arn:aws:iam::000000000000:saml-provider/IDP_NAME"
+            """;
+
+    public enum Parser { FAST, YAML }
+
+    @Param({ "FAST", "YAML" })
+    private Parser parser;
+
+    private long classesBefore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        classesBefore = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%s: %d classes loaded by the first parse%n", parser,
+                ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount() - classesBefore);
+    }
+
+    @Benchmark
+    public CognitoGroupDescriptionMetadata firstParse() {
+        return parser == Parser.FAST
+                ? CognitoGroupDescriptionMetadataExtractor.parseDescription(DESCRIPTION)
+                : CognitoGroupDescriptionMetadataExtractor.parseYaml(DESCRIPTION);
+    }
+}
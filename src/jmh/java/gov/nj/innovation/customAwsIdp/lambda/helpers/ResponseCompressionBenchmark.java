@@ -0,0 +1,69 @@
+package gov.nj.innovation.customAwsIdp.lambda.helpers;
+
+import gov.nj.innovation.customAwsIdp.SamlGenerator;
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.keys.KeysWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static gov.nj.innovation.customAwsIdp.lambda.helpers.ResponseCompressor.Encoding;
+
+/**
+ * CPU cost of compressing (and Base64-encoding, as API Gateway requires) a real SAML Response body, for each encoding.
+ * The bytes saved are printed once per trial, so that they can be read next to the timings.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseCompressionBenchmark {
+
+    @Param({ "IDENTITY", "GZIP", "DEFLATE" })
+    private Encoding encoding;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws Exception {
+        final KeysWrapper keys = new KeysWrapper(TestKeyDetails.keyConstants(TestKeyDetails.generateKey()));
+        final String samlResponse = new SamlGenerator("benchmark@innovation.nj.gov",
+                "arn:aws:iam::000000000000:role/BENCHMARK,arn:aws:iam::000000000000:saml-provider/BENCHMARK",
+                "3600", keys).getBase64SamlResponse();
+        body = new ObjectMapper().writeValueAsBytes(Map.of(
+                "status", "SUCCESS",
+                "samlResponse", samlResponse,
+                "relayState", "https://us-east-1.console.aws.amazon.com/connect/federate/00000000-0000-0000-0000-000000000000",
+                "error", ""));
+
+        final int delivered = ResponseCompressor.compress(body, encoding).length;
+        System.out.printf("%n%s: %d byte body, %d bytes sent to the client (%d bytes saved)%n",
+                encoding, body.length, delivered, body.length - delivered);
+    }
+
+    @Benchmark
+    public String compressAndEncode() {
+        if (encoding == Encoding.IDENTITY) {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+        return Base64.getEncoder().encodeToString(ResponseCompressor.compress(body, encoding));
+    }
+}
@@ -0,0 +1,192 @@
+package gov.nj.innovation.customAwsIdp.loadtest;
+
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.aot.ColdStartProbe;
+import gov.nj.innovation.customAwsIdp.metrics.Phase;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Cold-start harness: fork a fresh JVM {@code runs} times on the class path of {@code customIdp.zip}, each running
+ * {@link ColdStartProbe} for one login against the stand-in SSM and Cognito clients, and report percentiles of every
+ * measurement and of the login's phases. Compare reports before and after a dependency, init code, or JVM flag change
+ * to judge it by what it does to the first request in a new container, which JMH's steady state cannot show.
+ * <p>
+ * Run with {@code ./gradlew coldStartReport}, which passes the staged class path; {@code -PcoldStartArgs="runs=50"}
+ * sets the options below, and {@code -PcoldStartJvmArgs="-XX:+UseSerialGC ..."} the forked JVMs' options.
+ * <ul>
+ *     <li>{@code classpath=...}: the forked JVMs' class path, which must also hold the probe (required)</li>
+ *     <li>{@code runs=N}: the number of measured starts, default {@value #DEFAULT_RUNS}</li>
+ *     <li>{@code warmupRuns=N}: starts to discard first, while the OS caches the jars, default {@value
+ *     #DEFAULT_WARMUP_RUNS}</li>
+ *     <li>{@code java=...}: the {@code java} executable, default the one running the harness</li>
+ *     <li>{@code jvmArg=...}: a JVM option for the forked JVMs, repeatable</li>
+ *     <li>{@code output=...}: a directory for {@code cold-start.csv}, with one row per measured start</li>
+ * </ul>
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class ColdStartHarness {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int DEFAULT_RUNS = 20;
+    private static final int DEFAULT_WARMUP_RUNS = 1;
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    private record Measurement(String name, String unit, ToDoubleFunction<JsonNode> value) {}
+
+    private static final List<Measurement> MEASUREMENTS = measurements();
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        String classpath = null;
+        int runs = DEFAULT_RUNS;
+        int warmupRuns = DEFAULT_WARMUP_RUNS;
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        final List<String> jvmArgs = new ArrayList<>();
+        Path output = null;
+        for (final String arg : args) {
+            final String[] parts = arg.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Arguments are key=value pairs, but got: " + arg);
+            }
+            switch (parts[0]) {
+                case "classpath" -> classpath = parts[1];
+                case "runs" -> runs = Integer.parseInt(parts[1]);
+                case "warmupRuns" -> warmupRuns = Integer.parseInt(parts[1]);
+                case "java" -> java = parts[1];
+                case "jvmArg" -> jvmArgs.add(parts[1]);
+                case "output" -> output = Path.of(parts[1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        if (classpath == null || classpath.isBlank() || runs < 1 || warmupRuns < 0) {
+            throw new IllegalArgumentException("A classpath=..., runs >= 1, and warmupRuns >= 0 are required");
+        }
+
+        // One key for every run, so that no start pays for generating it
+        final Path secrets = Files.createTempFile("cold-start-secrets", ".properties");
+        try {
+            final Properties properties = new Properties();
+            properties.putAll(TestKeyDetails.generateSecrets());
+            try (final Writer writer = Files.newBufferedWriter(secrets)) {
+                properties.store(writer, null);
+            }
+
+            final List<String> command = new ArrayList<>(List.of(java));
+            command.addAll(jvmArgs);
+            command.addAll(List.of("-cp", classpath, ColdStartProbe.class.getName(), "secrets=" + secrets));
+            System.out.println("Cold start: " + runs + " runs (+" + warmupRuns + " discarded) of " + command);
+
+            final List<JsonNode> results = new ArrayList<>();
+            for (int i = 0; i < warmupRuns + runs; i++) {
+                final JsonNode result = fork(command);
+                if (i >= warmupRuns) {
+                    results.add(result);
+                }
+            }
+            report(results, System.out);
+            if (output != null) {
+                writeCsv(results, output);
+            }
+        } finally {
+            Files.deleteIfExists(secrets);
+        }
+    }
+
+    /**
+     * Run one fresh JVM and return its result line; the rest of its output is only shown if it fails.
+     */
+    private static JsonNode fork(final List<String> command) throws IOException, InterruptedException {
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final List<String> log = new ArrayList<>();
+        JsonNode result = null;
+        try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(ColdStartProbe.RESULT_PREFIX)) {
+                    result = MAPPER.readTree(line.substring(ColdStartProbe.RESULT_PREFIX.length()));
+                } else {
+                    log.add(line);
+                }
+            }
+        }
+        final int exitCode = process.waitFor();
+        if (exitCode != 0 || result == null) {
+            log.forEach(System.err::println);
+            throw new IllegalStateException("The cold-start run failed with exit code " + exitCode);
+        }
+        return result;
+    }
+
+    private static void report(final List<JsonNode> results, final PrintStream out) {
+        out.printf("%nCold start over %d runs:%n", results.size());
+        out.printf("  %-40s %10s %10s %10s%n", "", "p50", "p90", "p99");
+        for (final Measurement measurement : MEASUREMENTS) {
+            final double[] values = results.stream().mapToDouble(measurement.value()).sorted().toArray();
+            out.printf("  %-40s", measurement.name() + " (" + measurement.unit() + ")");
+            for (final double percentile : PERCENTILES) {
+                out.printf(" %10.1f", percentile(values, percentile));
+            }
+            out.println();
+        }
+    }
+
+    private static void writeCsv(final List<JsonNode> results, final Path output) throws IOException {
+        Files.createDirectories(output);
+        final Path csv = output.resolve("cold-start.csv");
+        try (final PrintStream out = new PrintStream(Files.newOutputStream(csv), false, StandardCharsets.UTF_8)) {
+            out.println(String.join(",", MEASUREMENTS.stream()
+                    .map(measurement -> measurement.name().strip())
+                    .toList()));
+            for (final JsonNode result : results) {
+                out.println(String.join(",", MEASUREMENTS.stream()
+                        .map(measurement -> String.valueOf(measurement.value().applyAsDouble(result)))
+                        .toList()));
+            }
+        }
+        System.out.println("Runs: " + csv.toAbsolutePath());
+    }
+
+    /**
+     * The nearest-rank percentile of sorted values.
+     */
+    private static double percentile(final double[] sorted, final double percentile) {
+        final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    private static List<Measurement> measurements() {
+        final List<Measurement> measurements = new ArrayList<>(List.of(
+                new Measurement("JVM start to main", "ms", result -> result.get("mainUptimeMs").asDouble()),
+                new Measurement("Handler construction", "ms", result -> result.get("handlerInitMs").asDouble()),
+                new Measurement("JVM start to handler entry", "ms",
+                        result -> result.get("handlerEntryUptimeMs").asDouble()),
+                new Measurement("First handleRequest", "ms", result -> result.get("handleRequestMs").asDouble())));
+        // The per-phase breakdown of the first handleRequest, from its metrics
+        for (final Phase phase : Phase.values()) {
+            measurements.add(new Measurement("  " + phase.metricName(), "ms", result -> {
+                final JsonNode phases = result.path("phases");
+                return phases.hasNonNull(phase.metricName()) ? phases.get(phase.metricName()).asDouble() : 0;
+            }));
+        }
+        measurements.add(new Measurement("JVM start to first response", "ms",
+                result -> result.get("firstResponseUptimeMs").asDouble()));
+        measurements.add(new Measurement("Loaded classes", "count", result -> result.get("loadedClasses").asDouble()));
+        measurements.add(new Measurement("RSS", "MiB", result -> result.get("rssKb").asDouble() / 1024));
+        return List.copyOf(measurements);
+    }
+}
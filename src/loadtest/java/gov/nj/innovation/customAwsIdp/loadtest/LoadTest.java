@@ -0,0 +1,255 @@
+package gov.nj.innovation.customAwsIdp.loadtest;
+
+import gov.nj.innovation.customAwsIdp.SamlGenerator;
+import gov.nj.innovation.customAwsIdp.TestUtils.FakeAwsClients;
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator;
+import gov.nj.innovation.customAwsIdp.keys.KeyConstants;
+import gov.nj.innovation.customAwsIdp.keys.KeysWrapper;
+import gov.nj.innovation.customAwsIdp.lambda.GetSamlResponseHandler;
+import gov.nj.innovation.customAwsIdp.metrics.EmfMetricsWriter;
+import gov.nj.innovation.customAwsIdp.util.AwsClients;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.ssm.SsmClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_USER_POOL;
+
+/**
+ * Load-test harness for one container's worth of logins: drives {@link GetSamlResponseHandler} (or just the SAML
+ * generation pipeline) from many threads, with fake SSM and Cognito clients (or the real ones talking to an
+ * {@link AwsJsonEmulator}) adding the configured latency, and reports latency percentiles, throughput, and allocation
+ * rate. See {@link LoadTestOptions} for the options.
+ * <p>
+ * In closed-loop mode each worker starts its next login as soon as the previous one returns, which shows the capacity
+ * of a fixed number of concurrent callers. In open-loop mode logins arrive on a fixed schedule no matter how long the
+ * earlier ones take, and each latency is measured from its scheduled start, so time spent queued behind slow logins is
+ * counted instead of hidden (coordinated omission).
+ * <p>
+ * The measured histogram is written, in microseconds and scaled to milliseconds, as an HdrHistogram percentile
+ * distribution ({@code .hgrm}) which can be plotted with the HdrHistogram plotter.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class LoadTest {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final LoadTestOptions options;
+    private final Runnable login;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+    private final AtomicLong failures = new AtomicLong();
+    private volatile boolean recording;
+    private AwsJsonEmulator emulator;
+
+    LoadTest(final LoadTestOptions options) {
+        this.options = options;
+        this.login = createLogin(options);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final LoadTestOptions options = LoadTestOptions.parse(args);
+        System.out.println("Load test: " + options);
+        new LoadTest(options).run();
+    }
+
+    void run() throws InterruptedException, IOException {
+        try {
+            measure();
+        } finally {
+            if (emulator != null) {
+                emulator.close();
+            }
+        }
+    }
+
+    private void measure() throws InterruptedException, IOException {
+        final com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long warmupEnd = System.nanoTime() + options.warmup().toNanos();
+        final long end = warmupEnd + options.duration().toNanos();
+
+        final Thread driver = Thread.ofPlatform().name("load-test-driver").start(() -> {
+            if (options.mode() == LoadTestOptions.Mode.CLOSED) {
+                runClosedLoop(end);
+            } else {
+                runOpenLoop(end);
+            }
+        });
+
+        LockSupport.parkNanos(warmupEnd - System.nanoTime());
+        recorder.reset();
+        failures.set(0);
+        recording = true;
+        final long allocatedAtStart = threadMXBean.getTotalThreadAllocatedBytes();
+        final long start = System.nanoTime();
+        driver.join();
+        final double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        final long allocated = threadMXBean.getTotalThreadAllocatedBytes() - allocatedAtStart;
+
+        report(recorder.getIntervalHistogram(), elapsedSeconds, allocated);
+    }
+
+    /**
+     * Each worker logs in back to back until the end.
+     */
+    private void runClosedLoop(final long end) {
+        try (final ExecutorService workers = newExecutor()) {
+            for (int i = 0; i < options.concurrency(); i++) {
+                workers.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        final long start = System.nanoTime();
+                        runLogin();
+                        record(start);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Logins are scheduled at a fixed interval and handed to the executor, whether or not earlier ones have finished.
+     */
+    private void runOpenLoop(final long end) {
+        final long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.rate());
+        try (final ExecutorService workers = newExecutor()) {
+            long scheduled = System.nanoTime();
+            while (scheduled < end) {
+                final long intendedStart = scheduled;
+                LockSupport.parkNanos(intendedStart - System.nanoTime());
+                workers.submit(() -> {
+                    runLogin();
+                    record(intendedStart);
+                });
+                scheduled += intervalNanos;
+            }
+        }
+    }
+
+    private ExecutorService newExecutor() {
+        if (options.virtualThreads()) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newFixedThreadPool(options.concurrency(), Thread.ofPlatform().name("load-test-", 0).factory());
+    }
+
+    private void runLogin() {
+        try {
+            login.run();
+        } catch (final RuntimeException e) {
+            failures.incrementAndGet();
+        }
+    }
+
+    private void record(final long startNanos) {
+        if (recording) {
+            recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos),
+                    HIGHEST_TRACKABLE_MICROS));
+        }
+    }
+
+    private void report(final Histogram histogram, final double elapsedSeconds, final long allocatedBytes)
+            throws IOException {
+        final long logins = histogram.getTotalCount();
+        System.out.printf("%nLogins: %d in %.1f s (%.1f/s), %d failed%n",
+                logins, elapsedSeconds, logins / elapsedSeconds, failures.get());
+        System.out.printf("Latency (ms): p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+        System.out.printf("Allocation: %.1f MB/s, %.1f KB per login%n",
+                allocatedBytes / elapsedSeconds / 1_000_000,
+                logins > 0 ? allocatedBytes / 1000.0 / logins : 0);
+
+        Files.createDirectories(options.output());
+        final Path histogramFile = options.output().resolve(options.runName() + ".hgrm");
+        try (final PrintStream out = new PrintStream(Files.newOutputStream(histogramFile))) {
+            histogram.outputPercentileDistribution(out, 1000.0);
+        }
+        System.out.println("Histogram (ms): " + histogramFile.toAbsolutePath());
+    }
+
+    /**
+     * Build what one login does for the chosen target, sharing one generated RSA-2048 key between the fakes and the
+     * pipeline.
+     */
+    private Runnable createLogin(final LoadTestOptions options) {
+        final RSAPrivateCrtKey key = TestKeyDetails.generateKey();
+        if (options.target() == LoadTestOptions.Target.HANDLER) {
+            // Metrics are discarded rather than printed, as a real container hands them to CloudWatch
+            final SsmClient ssmClient;
+            final CognitoIdentityProviderClient cognitoClient;
+            if (options.backend() == LoadTestOptions.Backend.EMULATOR) {
+                emulator = startEmulator(key, options);
+                ssmClient = AwsClients.ssm(emulator.endpoint());
+                cognitoClient = AwsClients.cognito(emulator.endpoint());
+            } else {
+                ssmClient = new FakeAwsClients.Ssm(KeyConstants.secretsOf(key)::get, options.ssmLatencyMs(),
+                        options.jitterMs());
+                cognitoClient = new FakeAwsClients.Cognito(LoadTest::groupDescription, options.cognitoLatencyMs(),
+                        options.jitterMs());
+            }
+            final GetSamlResponseHandler handler = new GetSamlResponseHandler(ssmClient, cognitoClient,
+                    new EmfMetricsWriter(new PrintStream(OutputStream.nullOutputStream())));
+            return () -> {
+                final Map<String, String> response = handler.handleRequest(SyntheticLogins.next(), null);
+                if (!"SUCCESS".equals(response.get("status"))) {
+                    failures.incrementAndGet();
+                }
+            };
+        }
+
+        final KeysWrapper keys = new KeysWrapper(TestKeyDetails.keyConstants(key));
+        return () -> {
+            final int agent = ThreadLocalRandom.current().nextInt(500);
+            new SamlGenerator(String.format("agent%03d@innovation.nj.gov", agent),
+                    "arn:aws:iam::000000000000:role/LOAD_TEST,arn:aws:iam::000000000000:saml-provider/LOAD_TEST",
+                    "3600", keys).getBase64SamlResponse();
+        };
+    }
+
+    /**
+     * Start an emulator holding the same key secrets and groups as the fakes, with the same latencies.
+     */
+    private static AwsJsonEmulator startEmulator(final RSAPrivateCrtKey key, final LoadTestOptions options) {
+        final AwsJsonEmulator emulator = AwsJsonEmulator.start();
+        KeyConstants.secretsOf(key).forEach(emulator::putParameter);
+        for (final String group : SyntheticLogins.GROUPS) {
+            emulator.putGroup(COGNITO_USER_POOL, group, groupDescription(group));
+        }
+        final Duration jitter = Duration.ofMillis(options.jitterMs());
+        emulator.setLatency(AwsJsonEmulator.Service.SSM, Duration.ofMillis(options.ssmLatencyMs()), jitter);
+        emulator.setLatency(AwsJsonEmulator.Service.COGNITO, Duration.ofMillis(options.cognitoLatencyMs()), jitter);
+        return emulator;
+    }
+
+    /**
+     * @return The description every load-test group has, whichever backend serves it, pointing at a Connect instance
+     * named after the group.
+     */
+    static String groupDescription(final String groupName) {
+        return String.format("""
+                RelayState: "https://us-east-1.console.aws.amazon.com/connect/federate/%s"
+                SsoRole: "arn:aws:iam::000000000000:role/%s,arn:aws:iam::000000000000:saml-provider/LOAD_TEST"
+                """, groupName, groupName);
+    }
+}
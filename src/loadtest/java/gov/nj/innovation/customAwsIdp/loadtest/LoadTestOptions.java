@@ -0,0 +1,94 @@
+package gov.nj.innovation.customAwsIdp.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Options for {@link LoadTest}, given as {@code key=value} arguments where a later value wins:
+ * <ul>
+ *     <li>{@code target}: {@code handler} (the full {@code GetSamlResponseHandler}, default) or {@code pipeline}
+ *         (key construction done once, then only {@code SamlGenerator})</li>
+ *     <li>{@code mode}: {@code closed} (each worker sends its next login when the last one finishes, default) or
+ *         {@code open} (logins arrive at a fixed {@code rate}, however long earlier ones take)</li>
+ *     <li>{@code concurrency}: the number of workers, or the size of the pool serving arrivals in open mode
+ *         (default 8)</li>
+ *     <li>{@code threads}: {@code platform} (default) or {@code virtual}; with virtual threads in open mode, every
+ *         arrival gets its own thread and {@code concurrency} is ignored</li>
+ *     <li>{@code rate}: logins per second in open mode (default 50)</li>
+ *     <li>{@code warmup} and {@code duration}: seconds before and while recording (defaults 10 and 30)</li>
+ *     <li>{@code backend}: {@code fake} (in-memory clients, default) or {@code emulator} (the real SDK clients
+ *         talking HTTP to an in-process {@code AwsJsonEmulator}, so that marshalling, connection pooling, and retries
+ *         are part of the measurement)</li>
+ *     <li>{@code ssmLatencyMs}, {@code cognitoLatencyMs}, {@code jitterMs}: injected per-call latency of the fake
+ *         clients or the emulator, with up to {@code jitterMs} added at random (defaults 15, 40, and 10)</li>
+ *     <li>{@code output}: directory for the {@code .hgrm} histogram (default {@code build/loadtest})</li>
+ * </ul>
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+record LoadTestOptions(
+        Target target,
+        Backend backend,
+        Mode mode,
+        int concurrency,
+        boolean virtualThreads,
+        double rate,
+        Duration warmup,
+        Duration duration,
+        long ssmLatencyMs,
+        long cognitoLatencyMs,
+        long jitterMs,
+        Path output
+) {
+
+    private static final Set<String> KEYS = Set.of("target", "backend", "mode", "concurrency", "threads", "rate",
+            "warmup", "duration", "ssmLatencyMs", "cognitoLatencyMs", "jitterMs", "output");
+
+    enum Target { HANDLER, PIPELINE }
+
+    enum Backend { FAKE, EMULATOR }
+
+    enum Mode { CLOSED, OPEN }
+
+    static LoadTestOptions parse(final String[] args) {
+        final Map<String, String> values = new HashMap<>();
+        for (final String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (equals <= 0 || !KEYS.contains(arg.substring(0, equals))) {
+                throw new IllegalArgumentException("Expected one of " + KEYS + " as key=value, got: " + arg);
+            }
+            values.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+
+        final String threads = values.getOrDefault("threads", "platform");
+        if (!threads.equals("platform") && !threads.equals("virtual")) {
+            throw new IllegalArgumentException("threads must be platform or virtual, got: " + threads);
+        }
+        return new LoadTestOptions(
+                Target.valueOf(values.getOrDefault("target", "handler").toUpperCase(Locale.ROOT)),
+                Backend.valueOf(values.getOrDefault("backend", "fake").toUpperCase(Locale.ROOT)),
+                Mode.valueOf(values.getOrDefault("mode", "closed").toUpperCase(Locale.ROOT)),
+                Integer.parseInt(values.getOrDefault("concurrency", "8")),
+                threads.equals("virtual"),
+                Double.parseDouble(values.getOrDefault("rate", "50")),
+                Duration.ofSeconds(Long.parseLong(values.getOrDefault("warmup", "10"))),
+                Duration.ofSeconds(Long.parseLong(values.getOrDefault("duration", "30"))),
+                Long.parseLong(values.getOrDefault("ssmLatencyMs", "15")),
+                Long.parseLong(values.getOrDefault("cognitoLatencyMs", "40")),
+                Long.parseLong(values.getOrDefault("jitterMs", "10")),
+                Path.of(values.getOrDefault("output", "build/loadtest")));
+    }
+
+    /**
+     * @return A short name for this run, used for the histogram file.
+     */
+    String runName() {
+        return String.format("%s-%s-%s-%s-%s", target, backend, mode,
+                mode == Mode.OPEN ? (long) rate + "rps" : concurrency,
+                virtualThreads ? "virtual" : "platform").toLowerCase(Locale.ROOT);
+    }
+}
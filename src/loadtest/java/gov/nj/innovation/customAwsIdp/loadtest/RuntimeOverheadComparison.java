@@ -0,0 +1,149 @@
+package gov.nj.innovation.customAwsIdp.loadtest;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import gov.nj.innovation.customAwsIdp.TestUtils.FakeAwsClients;
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.lambda.GetSamlHttpResponseHandler;
+import gov.nj.innovation.customAwsIdp.lambda.GetSamlResponseHandler;
+import gov.nj.innovation.customAwsIdp.metrics.EmfMetricsWriter;
+import gov.nj.innovation.customAwsIdp.runtime.CustomRuntime;
+import gov.nj.innovation.customAwsIdp.runtime.RuntimeApiClient;
+import gov.nj.innovation.customAwsIdp.runtime.RuntimeApiEmulator;
+import org.HdrHistogram.Histogram;
+import tools.jackson.databind.DeserializationFeature;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static gov.nj.innovation.customAwsIdp.util.Constants.PATH_PARAMETER_GROUP_NAME;
+
+/**
+ * Local comparison of how much an invocation costs around the handler on the managed Java runtime and on {@link
+ * CustomRuntime}, run once per path in a fresh JVM by {@code ./gradlew runtimeOverheadReport}.
+ * <p>
+ * Both paths run the same handler, with the in-memory SSM and Cognito fakes and no added latency, behind the same
+ * Runtime API loop and {@link RuntimeApiEmulator}, so they differ only in how the event and response are converted:
+ * {@code path=managed} binds them onto the event classes reflectively, as the managed runtime's serializer does, and
+ * {@code path=custom} uses {@link gov.nj.innovation.customAwsIdp.runtime.RuntimeEvents}. It prints the JVM uptime at
+ * the first response, the first invocation's latency, and the warm percentiles over {@code invocations=N} (default
+ * 2000). What cannot be seen locally, the managed runtime's own start-up and the bundled JVM's, shows in the {@code
+ * Init Duration} of the functions' CloudWatch REPORT lines.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class RuntimeOverheadComparison {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    enum RuntimePath { MANAGED, CUSTOM }
+
+    public static void main(final String[] args) throws Exception {
+        RuntimePath path = RuntimePath.CUSTOM;
+        int invocations = 2000;
+        for (final String arg : args) {
+            final String[] parts = arg.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Arguments are key=value pairs, but got: " + arg);
+            }
+            switch (parts[0]) {
+                case "path" -> path = RuntimePath.valueOf(parts[1].toUpperCase(Locale.ROOT));
+                case "invocations" -> invocations = Integer.parseInt(parts[1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        final GetSamlHttpResponseHandler handler = new GetSamlHttpResponseHandler(new GetSamlResponseHandler(
+                new FakeAwsClients.Ssm(TestKeyDetails.generateSecrets()),
+                new FakeAwsClients.Cognito(LoadTest::groupDescription),
+                new EmfMetricsWriter(new PrintStream(OutputStream.nullOutputStream()))));
+        final CustomRuntime.InvocationHandler invocationHandler =
+                path == RuntimePath.MANAGED ? reflectiveBinding(handler) : CustomRuntime.httpApi(handler);
+
+        try (final RuntimeApiEmulator emulator = RuntimeApiEmulator.start()) {
+            final CustomRuntime runtime =
+                    new CustomRuntime(new RuntimeApiClient(emulator.runtimeApi()), invocationHandler);
+            Thread.ofPlatform().daemon().name("runtime-loop").start(() -> {
+                try {
+                    runtime.run();
+                } catch (final IOException ignored) {
+                    // The emulator has been closed
+                }
+            });
+
+            final long firstStart = System.nanoTime();
+            invoke(emulator);
+            final double firstMs = (System.nanoTime() - firstStart) / 1e6;
+            final long uptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+
+            final Histogram histogram = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+            for (int i = 0; i < invocations; i++) {
+                final long start = System.nanoTime();
+                invoke(emulator);
+                histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start),
+                        HIGHEST_TRACKABLE_MICROS));
+            }
+
+            System.out.printf("%s runtime: first response at %d ms of JVM uptime, first invocation %.1f ms%n",
+                    path.name().toLowerCase(Locale.ROOT), uptimeMs, firstMs);
+            System.out.printf("Warm invocations (ms, n=%d): p50 %.3f, p99 %.3f, max %.3f%n",
+                    histogram.getTotalCount(),
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getMaxValue() / 1000.0);
+        }
+    }
+
+    /**
+     * The managed runtime's way: bind the whole event onto its class, and serialize the whole response object.
+     */
+    private static CustomRuntime.InvocationHandler reflectiveBinding(final GetSamlHttpResponseHandler handler) {
+        final ObjectMapper binder = JsonMapper.builder()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .build();
+        return (event, context) -> {
+            final APIGatewayV2HTTPResponse response =
+                    handler.handleRequest(binder.readValue(event, APIGatewayProxyRequestEvent.class), context);
+            return binder.writeValueAsBytes(response);
+        };
+    }
+
+    private static void invoke(final RuntimeApiEmulator emulator) throws Exception {
+        final RuntimeApiEmulator.Result result = emulator.invoke(httpApiEvent(SyntheticLogins.next()), TIMEOUT);
+        if (result.error()) {
+            throw new IllegalStateException(
+                    "The invocation failed: " + new String(result.body(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * @return The login as API Gateway sends it to the Lambda, in payload format 2.0.
+     */
+    private static byte[] httpApiEvent(final APIGatewayProxyRequestEvent login) {
+        final String rawPath = "/generateSaml/" + login.getPathParameters().get(PATH_PARAMETER_GROUP_NAME);
+        final ObjectNode event = MAPPER.createObjectNode();
+        event.put("version", "2.0");
+        event.put("routeKey", "GET /generateSaml/{" + PATH_PARAMETER_GROUP_NAME + "}");
+        event.put("rawPath", rawPath);
+        event.set("headers", MAPPER.valueToTree(login.getHeaders()));
+        event.set("queryStringParameters", MAPPER.valueToTree(login.getQueryStringParameters()));
+        event.set("pathParameters", MAPPER.valueToTree(login.getPathParameters()));
+        final ObjectNode requestContext = event.putObject("requestContext");
+        requestContext.put("requestId", login.getRequestContext().getRequestId());
+        requestContext.set("authorizer", MAPPER.valueToTree(login.getRequestContext().getAuthorizer()));
+        requestContext.putObject("http").put("method", "GET").put("path", rawPath);
+        event.put("isBase64Encoded", false);
+        return MAPPER.writeValueAsBytes(event);
+    }
+}
@@ -0,0 +1,338 @@
+package gov.nj.innovation.customAwsIdp;
+
+import gov.nj.innovation.customAwsIdp.exception.CustomAwsIdpException;
+import gov.nj.innovation.customAwsIdp.jfr.Outcomes;
+import gov.nj.innovation.customAwsIdp.jfr.SamlBuildEvent;
+import gov.nj.innovation.customAwsIdp.jfr.SamlEncodeEvent;
+import gov.nj.innovation.customAwsIdp.jfr.SamlSignEvent;
+import gov.nj.innovation.customAwsIdp.keys.KeysWrapper;
+import gov.nj.innovation.customAwsIdp.metrics.Phase;
+import gov.nj.innovation.customAwsIdp.metrics.PhaseTimings;
+import gov.nj.innovation.customAwsIdp.saml.SamlAttributeMapping;
+import gov.nj.innovation.customAwsIdp.saml.SamlPostBindingBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.VisibleForTesting;
+import org.keycloak.dom.saml.v2.assertion.AssertionType;
+import org.keycloak.dom.saml.v2.assertion.AttributeStatementType;
+import org.keycloak.dom.saml.v2.protocol.ResponseType;
+import org.keycloak.saml.BaseSAML2BindingBuilder;
+import org.keycloak.saml.SAML2LoginResponseBuilder;
+import org.keycloak.saml.SignatureAlgorithm;
+import org.keycloak.saml.common.constants.JBossSAMLURIConstants;
+import org.keycloak.saml.common.exceptions.ConfigurationException;
+import org.keycloak.saml.common.exceptions.ProcessingException;
+import org.w3c.dom.Document;
+
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+/**
+ * Generate Base64-encoded SAMLResponses intended to be used for federating SSO log-ins to AWS Connect.
+ * <p>
+ * An engine is built once from a {@link Config} and the {@link KeysWrapper} to sign with, and then serves any number of
+ * logins through {@link #generate(String, List, String)}, from any number of threads: everything it holds is immutable
+ * and decided at construction, and the Keycloak builders, which are not thread-safe, are created for each Response.
+ * <p>
+ * The logic inside this class's methods was copied directly from Keycloak, by debugging a correctly-configured live
+ * Keycloak Quarkus server and then ripping out the necessary parts in order to generate SAMLResponses without the
+ * weight of having to run a full Keycloak server, then simplified and cut down where feasible. It could likely be
+ * cleaned up and simplified more, but it is being left as-is on purpose so that it may more-closely resemble the code
+ * it was copied from. Hopefully if the source code eventually has breaking changes which must be consumed here for
+ * security concerns, this code's clumsiness will actually make it easier to refactor.
+ * <p>
+ * Only {@code keycloak-saml-core} is used. The few pieces which used to come from {@code keycloak-services} (the JAX-RS
+ * binding builder and the attribute/role mappers) are replaced by the small {@link SamlPostBindingBuilder} and {@link
+ * SamlAttributeMapping}, which produce the same document without pulling the Keycloak server onto the class path.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public final class SamlEngine {
+
+    /* Constants */
+    private static final Logger logger = LogManager.getLogger(SamlEngine.class);
+    public static final String REDIRECT_URI = "https://signin.aws.amazon.com/saml";
+    private static final String SESSION_ROLE_ATTR_NAME = "https://aws.amazon.com/SAML/Attributes/Role";
+    private static final String SESSION_NAME_ATTR_NAME = "https://aws.amazon.com/SAML/Attributes/RoleSessionName";
+    private static final String SESSION_DURATION_ATTR_NAME = "https://aws.amazon.com/SAML/Attributes/SessionDuration";
+    private static final String BASIC_NAME_FORMAT = JBossSAMLURIConstants.ATTRIBUTE_FORMAT_BASIC.get();
+    private static final SamlAttributeMapping SESSION_NAME_MAPPING =
+            new SamlAttributeMapping(SESSION_NAME_ATTR_NAME, BASIC_NAME_FORMAT);
+    private static final SamlAttributeMapping SESSION_DURATION_MAPPING =
+            new SamlAttributeMapping(SESSION_DURATION_ATTR_NAME, BASIC_NAME_FORMAT);
+    private static final SamlAttributeMapping SESSION_ROLE_MAPPING =
+            new SamlAttributeMapping(SESSION_ROLE_ATTR_NAME, BASIC_NAME_FORMAT);
+    private static final String AUTH_METHOD = JBossSAMLURIConstants.AC_UNSPECIFIED.get();
+
+    /**
+     * What stays the same for every Response an engine generates.
+     *
+     * @param issuer The Response's and assertion's {@code Issuer}
+     * @param destination Where the Response is posted, its {@code Destination} and the subject's {@code Recipient}
+     * @param clientId The audience, i.e. the service provider's entity ID
+     * @param nameIdFormat The format of the subject's {@code NameID}, which holds the user
+     * @param assertionExpiration Seconds until the assertion's conditions expire
+     * @param subjectExpiration Seconds until the subject confirmation expires
+     * @param sessionExpiration Seconds until the authentication statement's session expires
+     * @param canonicalizationMethod The canonicalization algorithm URI for the signature
+     * @param signatureAlgorithm The algorithm to sign the assertion with
+     */
+    public record Config(
+            String issuer,
+            String destination,
+            String clientId,
+            String nameIdFormat,
+            int assertionExpiration,
+            int subjectExpiration,
+            int sessionExpiration,
+            String canonicalizationMethod,
+            SignatureAlgorithm signatureAlgorithm) {
+
+        /**
+         * The configuration matching the Keycloak realm which produced the Responses validated against AWS.
+         */
+        public static final Config AWS = new Config(
+                "https://innovation.nj.gov/realms/AwsConnectStandaloneIdP",
+                REDIRECT_URI,
+                "urn:amazon:webservices",
+                "urn:oasis:names:tc:SAML:1.1:nameid-format:unspecified",
+                60,
+                300,
+                36000,
+                "http://www.w3.org/2001/10/xml-exc-c14n#",
+                SignatureAlgorithm.RSA_SHA256);
+
+        public Config {
+            if (issuer == null || destination == null || clientId == null || nameIdFormat == null ||
+                    canonicalizationMethod == null || signatureAlgorithm == null) {
+                throw new IllegalArgumentException("Every SAML engine setting is required");
+            }
+            if (assertionExpiration <= 0 || subjectExpiration <= 0 || sessionExpiration <= 0) {
+                throw new IllegalArgumentException("The expirations must be positive numbers of seconds");
+            }
+        }
+    }
+
+    /* Instance variables */
+    private final Config config;
+    private final KeysWrapper keys;
+    private final PrivateKey privateKey;
+    private final PublicKey publicKey;
+    private final X509Certificate certificate;
+    private final String signatureAlgorithmName;
+
+    public SamlEngine(final KeysWrapper keys) {
+        this(Config.AWS, keys);
+    }
+
+    public SamlEngine(final Config config, final KeysWrapper keys) {
+        if (config == null || keys == null) {
+            throw new IllegalArgumentException("A SAML engine needs its configuration and signing keys");
+        }
+        this.config = config;
+        this.keys = keys;
+        this.privateKey = keys.getPrivateKey();
+        this.publicKey = keys.getPublicKey();
+        this.certificate = keys.getX509Certificate();
+        this.signatureAlgorithmName = config.signatureAlgorithm().name();
+    }
+
+    /**
+     * @return The keys this engine signs with, e.g. to tell whether it was built for the keys currently in use.
+     */
+    public KeysWrapper keys() {
+        return keys;
+    }
+
+    public Config config() {
+        return config;
+    }
+
+    /**
+     * Put together the two methods taken from Keycloak's {@code SamlProtocol}, this class's {@link
+     * #createUnsignedSamlResponse} and {@link #signAndEncode}, in order to create a full SAML Response. Although this
+     * came from Keycloak, it is now purpose-built to generate one SAML Response with the Role(s) as well as the
+     * attributes necessary to federate a sign-on to AWS Connect.
+     *
+     * @param user The user, who becomes the {@code NameID} and the role session name
+     * @param roles The values of the Role attribute, each {@code role-arn,saml-provider-arn}
+     * @param duration The session duration in seconds
+     * @return The Base64-encoded, signed SAML Response.
+     */
+    public String generate(final String user, final List<String> roles, final String duration) {
+        return generate(user, roles, duration, new PhaseTimings());
+    }
+
+    /**
+     * The same as {@link #generate(String, List, String)}, while recording the build, sign, and encode phases.
+     *
+     * @param user The user, who becomes the {@code NameID} and the role session name
+     * @param roles The values of the Role attribute, each {@code role-arn,saml-provider-arn}
+     * @param duration The session duration in seconds
+     * @param timings Where the time spent in each phase is recorded
+     * @return The Base64-encoded, signed SAML Response.
+     */
+    public String generate(final String user, final List<String> roles, final String duration,
+                           final PhaseTimings timings) {
+        final long buildStart = System.nanoTime();
+        final Document samlDocument = createUnsignedSamlResponse(user, roles, duration);
+        timings.record(Phase.BUILD, buildStart);
+        final String base64SamlResponse = signAndEncode(samlDocument, timings);
+        logger.trace("Generated SAMLResponse for {} with roles {} for {} secs", user, roles, duration);
+        return base64SamlResponse;
+    }
+
+    /**
+     * This has copied the logic almost entirely from Keycloak's {@code SamlProtocol#authenticated} while cutting things
+     * down as much as possible and removing dependencies on sessions, users, clients, and key stores; instead providing
+     * the engine's configuration and the request's details.
+     * <p>
+     * Unused chunks of logic have been removed, unnecessary complexity for other use-cases has been simplified where
+     * feasible.
+     *
+     * @return The unsigned XML {@link Document} which will become the SAML Response.
+     */
+    @VisibleForTesting
+    Document createUnsignedSamlResponse(final String user, final List<String> roles, final String duration) {
+        if (roles == null || roles.isEmpty()) {
+            throw new IllegalArgumentException("A SAML Response needs at least one role");
+        }
+        final SamlBuildEvent buildEvent = new SamlBuildEvent();
+        buildEvent.begin();
+        try {
+            final Document samlDocument = buildDocument(user, roles, duration, buildEvent);
+            buildEvent.outcome = Outcomes.OK;
+            return samlDocument;
+        } catch (final RuntimeException e) {
+            buildEvent.outcome = Outcomes.of(e);
+            throw e;
+        } finally {
+            buildEvent.commit();
+        }
+    }
+
+    /**
+     * Build the document for {@link #createUnsignedSamlResponse}, which commits {@code buildEvent} however this ends.
+     */
+    private Document buildDocument(
+            final String user,
+            final List<String> roles,
+            final String duration,
+            final SamlBuildEvent buildEvent) {
+        SAML2LoginResponseBuilder builder = new SAML2LoginResponseBuilder();
+        builder.requestID(null)
+                .destination(config.destination())
+                .issuer(config.issuer())
+                .assertionExpiration(config.assertionExpiration())
+                .subjectExpiration(config.subjectExpiration())
+                .sessionExpiration(config.sessionExpiration())
+                .requestIssuer(config.clientId())
+                .authMethod(AUTH_METHOD)
+                .includeOneTimeUseCondition(false);
+
+        builder.nameIdentifier(config.nameIdFormat(), user);
+
+        ResponseType samlModel;
+        try {
+            samlModel = builder.buildModel();
+            final AttributeStatementType attributeStatement = populateAttributeStatement(user, roles, duration);
+
+            if (!attributeStatement.getAttributes().isEmpty()) {
+                AssertionType assertion = samlModel.getAssertions().get(0).getAssertion();
+                assertion.addStatement(attributeStatement);
+            }
+            buildEvent.attributeCount = attributeStatement.getAttributes().size();
+        } catch (final ConfigurationException | ProcessingException e) {
+            throw new CustomAwsIdpException("Could not build role/attribute statement(s): " + e.getMessage(), e);
+        }
+
+        try {
+            return builder.buildDocument(samlModel);
+        } catch (final ConfigurationException | ProcessingException e) {
+            throw new CustomAwsIdpException("Could not create the document: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Follow up on the results from {@link #createUnsignedSamlResponse} to sign and encode the document.
+     *
+     * @param samlDocument The fully constructed SAML Document, ready to be signed
+     * @param timings Where the time spent signing and encoding is recorded
+     * @return The Base64-encoded, signed SAML Response.
+     */
+    @VisibleForTesting
+    String signAndEncode(final Document samlDocument, final PhaseTimings timings) {
+        SamlPostBindingBuilder bindingBuilder = new SamlPostBindingBuilder();
+
+        bindingBuilder.canonicalizationMethod(config.canonicalizationMethod());
+        bindingBuilder.signatureAlgorithm(config.signatureAlgorithm())
+                .signWith(null, privateKey, publicKey, certificate);
+        bindingBuilder.signAssertions();
+
+        try {
+            // Go a couple steps further than SamlProtocol#authenticated to make the signed + encoded XML string
+            final long signStart = System.nanoTime();
+            final SamlSignEvent signEvent = new SamlSignEvent();
+            signEvent.begin();
+            signEvent.signatureAlgorithm = signatureAlgorithmName;
+            try {
+                bindingBuilder.postBinding(samlDocument);
+                signEvent.outcome = Outcomes.OK;
+            } catch (final Exception e) {
+                signEvent.outcome = Outcomes.of(e);
+                throw e;
+            } finally {
+                signEvent.commit();
+            }
+            timings.record(Phase.SIGN, signStart);
+
+            final long encodeStart = System.nanoTime();
+            final SamlEncodeEvent encodeEvent = new SamlEncodeEvent();
+            encodeEvent.begin();
+            String base64SamlResponse = null;
+            try {
+                base64SamlResponse = BaseSAML2BindingBuilder.getSAMLResponse(samlDocument);
+                timings.record(Phase.ENCODE, encodeStart);
+                encodeEvent.outcome = Outcomes.OK;
+            } catch (final Exception e) {
+                encodeEvent.outcome = Outcomes.of(e);
+                throw e;
+            } finally {
+                if (encodeEvent.shouldCommit()) {
+                    if (base64SamlResponse != null) {
+                        encodeEvent.encodedBytes = base64SamlResponse.length();
+                        encodeEvent.documentBytes = base64SamlResponse.length() / 4 * 3 -
+                                (base64SamlResponse.endsWith("==") ? 2 : base64SamlResponse.endsWith("=") ? 1 : 0);
+                    }
+                    encodeEvent.commit();
+                }
+            }
+            return base64SamlResponse;
+        } catch (final ProcessingException | ConfigurationException | IOException e) {
+            throw new CustomAwsIdpException("Could not sign the document: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * This follows Keycloak's {@code SamlProtocol#populateAttributeStatements} and {@code SamlProtocol#populateRoles}
+     * with the configured {@code HardcodedAttributeMapper}s and {@code RoleListMapper}, where the session, user, and
+     * client are dropped entirely. The order matters for matching previously validated Responses: the session name and
+     * duration attributes come first, then the role, which holds one value per role like a {@code RoleListMapper}
+     * configured as a single attribute.
+     *
+     * @return The attribute statement.
+     */
+    private static AttributeStatementType populateAttributeStatement(
+            final String user,
+            final List<String> roles,
+            final String duration) {
+        AttributeStatementType attributeStatement = new AttributeStatementType();
+        SESSION_NAME_MAPPING.addTo(attributeStatement, user);
+        SESSION_DURATION_MAPPING.addTo(attributeStatement, duration);
+        SESSION_ROLE_MAPPING.addTo(attributeStatement, roles);
+        return attributeStatement;
+    }
+}
@@ -0,0 +1,165 @@
+package gov.nj.innovation.customAwsIdp.auth;
+
+import gov.nj.innovation.customAwsIdp.exception.InvalidTokenException;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static gov.nj.innovation.customAwsIdp.auth.JwksCache.text;
+
+/**
+ * Verify a Cognito ID token in-process, in place of API Gateway's JWT authorizer: the RS256 signature against the
+ * UserPool's keys (see {@link JwksCache}), the issuer, the audience (the app client ID), {@code token_use} of
+ * {@code id}, and the expiry. The signature is checked before any claim is trusted, and only RS256 is accepted, so
+ * that neither {@code none} nor an HMAC keyed with the public key can get through.
+ * <p>
+ * Once the keys are cached, a verification is two Base64 decodes, two small JSON parses, and one RSA verification,
+ * which takes microseconds.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class CognitoJwtVerifier {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String ALGORITHM = "RS256";
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+    private static final String GROUPS_CLAIM = "cognito:groups";
+
+    private final String issuer;
+    private final String audience;
+    private final JwksCache jwksCache;
+    private final Clock clock;
+
+    /**
+     * The claims of a verified ID token which the handler uses.
+     *
+     * @param subject The user's unique ID, the {@code sub} claim
+     * @param email The user's email address
+     * @param groups The Groups the user belongs to, possibly empty
+     * @param expiresAt When the token expires
+     */
+    public record CognitoIdToken(String subject, String email, List<String> groups, Instant expiresAt) {}
+
+    /**
+     * @param issuer The expected {@code iss}, i.e. the UserPool's URL
+     * @param audience The expected {@code aud}, i.e. the app client ID
+     * @param jwksCache The UserPool's signing keys
+     * @param clock The clock used for the expiry
+     */
+    public CognitoJwtVerifier(
+            final String issuer,
+            final String audience,
+            final JwksCache jwksCache,
+            final Clock clock) {
+        this.issuer = issuer;
+        this.audience = audience;
+        this.jwksCache = jwksCache;
+        this.clock = clock;
+    }
+
+    /**
+     * @param region AWS Region of the Cognito UserPool
+     * @param userPoolId ID of the UserPool which issues the tokens
+     * @param appClientId ID of the app client the tokens are issued to
+     * @return A verifier using the UserPool's public JWKS endpoint.
+     */
+    public static CognitoJwtVerifier forUserPool(
+            final String region,
+            final String userPoolId,
+            final String appClientId) {
+        final String issuer = "https://cognito-idp." + region + ".amazonaws.com/" + userPoolId;
+        return new CognitoJwtVerifier(issuer, appClientId,
+                new JwksCache(URI.create(issuer + "/.well-known/jwks.json")), Clock.systemUTC());
+    }
+
+    public JwksCache jwksCache() {
+        return jwksCache;
+    }
+
+    /**
+     * @param token A JWT in compact form, without any {@code Bearer} prefix
+     * @return The token's claims, once it has been verified.
+     * @throws InvalidTokenException When the token is malformed, not signed by the UserPool, or not valid for this app
+     */
+    public CognitoIdToken verify(final String token) {
+        if (token == null || token.isEmpty()) {
+            throw new InvalidTokenException("No token");
+        }
+        final int headerEnd = token.indexOf('.');
+        final int payloadEnd = token.indexOf('.', headerEnd + 1);
+        if (headerEnd <= 0 || payloadEnd < 0 || token.indexOf('.', payloadEnd + 1) >= 0) {
+            throw new InvalidTokenException("Not a signed JWT");
+        }
+
+        final JsonNode header = decode(token.substring(0, headerEnd));
+        if (!ALGORITHM.equals(text(header, "alg"))) {
+            throw new InvalidTokenException("Unsupported algorithm " + text(header, "alg"));
+        }
+        final String keyId = text(header, "kid");
+        final PublicKey key = keyId != null ? jwksCache.get(keyId) : null;
+        if (key == null) {
+            throw new InvalidTokenException("Unknown signing key " + keyId);
+        }
+        if (!signatureMatches(token, payloadEnd, key)) {
+            throw new InvalidTokenException("Invalid signature");
+        }
+
+        final JsonNode claims = decode(token.substring(headerEnd + 1, payloadEnd));
+        if (!issuer.equals(text(claims, "iss"))) {
+            throw new InvalidTokenException("Unexpected issuer " + text(claims, "iss"));
+        }
+        if (!audience.equals(text(claims, "aud"))) {
+            throw new InvalidTokenException("Unexpected audience " + text(claims, "aud"));
+        }
+        if (!"id".equals(text(claims, "token_use"))) {
+            throw new InvalidTokenException("Not an ID token");
+        }
+        if (!claims.path("exp").isNumber()) {
+            throw new InvalidTokenException("No expiry");
+        }
+        final Instant expiresAt = Instant.ofEpochSecond(claims.get("exp").asLong());
+        if (!clock.instant().isBefore(expiresAt)) {
+            throw new InvalidTokenException("Expired at " + expiresAt);
+        }
+
+        final List<String> groups = new ArrayList<>();
+        for (final JsonNode group : claims.path(GROUPS_CLAIM)) {
+            groups.add(group.asString());
+        }
+        return new CognitoIdToken(text(claims, "sub"), text(claims, "email"), List.copyOf(groups), expiresAt);
+    }
+
+    private static boolean signatureMatches(final String token, final int signedLength, final PublicKey key) {
+        try {
+            final Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initVerify(key);
+            signature.update(token.substring(0, signedLength).getBytes(StandardCharsets.US_ASCII));
+            return signature.verify(Base64.getUrlDecoder().decode(token.substring(signedLength + 1)));
+        } catch (final GeneralSecurityException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static JsonNode decode(final String part) {
+        try {
+            final JsonNode node = MAPPER.readTree(Base64.getUrlDecoder().decode(part));
+            if (!node.isObject()) {
+                throw new InvalidTokenException("Malformed token");
+            }
+            return node;
+        } catch (final IllegalArgumentException | JacksonException e) {
+            throw new InvalidTokenException("Malformed token");
+        }
+    }
+}
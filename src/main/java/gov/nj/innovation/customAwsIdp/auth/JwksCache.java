@@ -0,0 +1,155 @@
+package gov.nj.innovation.customAwsIdp.auth;
+
+import gov.nj.innovation.customAwsIdp.exception.CustomAwsIdpException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The RSA signing keys of a Cognito UserPool, fetched from its JWKS endpoint once per container and kept as ready-made
+ * {@link PublicKey}s by key ID.
+ * <p>
+ * A token signed with a key ID which is not cached (as happens after Cognito rotates its keys) triggers one refetch;
+ * refetches are at most one per {@value #MIN_REFRESH_INTERVAL_SECONDS} seconds, so that tokens with made-up key IDs
+ * cannot make every request wait on the endpoint. A failed fetch keeps the keys already cached; while there are none,
+ * tokens are rejected until the interval has passed and the next one fetches again.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class JwksCache {
+
+    private static final Logger logger = LogManager.getLogger(JwksCache.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long MIN_REFRESH_INTERVAL_SECONDS = 60;
+    private static final Duration FETCH_TIMEOUT = Duration.ofSeconds(3);
+
+    private final Supplier<String> source;
+    private final Duration minRefreshInterval;
+    private volatile Map<String, PublicKey> keys = Map.of();
+    private long lastFetchNanos;
+    private boolean fetched;
+
+    /**
+     * @param jwksUri The UserPool's {@code .well-known/jwks.json}
+     */
+    public JwksCache(final URI jwksUri) {
+        this(() -> fetch(jwksUri), Duration.ofSeconds(MIN_REFRESH_INTERVAL_SECONDS));
+    }
+
+    /**
+     * @param source Supplies the JWKS document, e.g. a local one in tests
+     * @param minRefreshInterval The shortest time between two fetches
+     */
+    public JwksCache(final Supplier<String> source, final Duration minRefreshInterval) {
+        this.source = source;
+        this.minRefreshInterval = minRefreshInterval;
+    }
+
+    /**
+     * Fetch the keys now, e.g. during the Lambda's init phase, unless they have already been fetched.
+     */
+    public synchronized void prefetch() {
+        if (!fetched) {
+            refresh();
+        }
+    }
+
+    /**
+     * @param keyId The {@code kid} from a token's header
+     * @return The key, or null when the UserPool has no such key, even after refetching.
+     */
+    public PublicKey get(final String keyId) {
+        final PublicKey key = keys.get(keyId);
+        return key != null ? key : refreshFor(keyId);
+    }
+
+    private synchronized PublicKey refreshFor(final String keyId) {
+        // Another thread may have refreshed while this one waited
+        final PublicKey key = keys.get(keyId);
+        if (key != null) {
+            return key;
+        }
+        // The limit holds without any keys as well, so that an endpoint which is down is not asked again by every token
+        if (fetched && System.nanoTime() - lastFetchNanos < minRefreshInterval.toNanos()) {
+            return null;
+        }
+        refresh();
+        return keys.get(keyId);
+    }
+
+    private void refresh() {
+        lastFetchNanos = System.nanoTime();
+        fetched = true;
+        try {
+            keys = parse(source.get());
+            logger.info("Fetched {} signing keys from the JWKS", keys.size());
+        } catch (final RuntimeException e) {
+            logger.warn("Could not fetch the JWKS, keeping the {} keys already cached: {}", keys.size(), e.toString());
+        }
+    }
+
+    static Map<String, PublicKey> parse(final String jwks) {
+        final Map<String, PublicKey> parsed = new HashMap<>();
+        final KeyFactory keyFactory;
+        try {
+            keyFactory = KeyFactory.getInstance("RSA");
+        } catch (final GeneralSecurityException e) {
+            throw new CustomAwsIdpException("RSA is not available", e);
+        }
+        final Base64.Decoder decoder = Base64.getUrlDecoder();
+        for (final JsonNode key : MAPPER.readTree(jwks).path("keys")) {
+            final String keyId = text(key, "kid");
+            final String use = text(key, "use");
+            if (!"RSA".equals(text(key, "kty")) || keyId == null || (use != null && !"sig".equals(use))
+                    || text(key, "n") == null || text(key, "e") == null) {
+                continue;
+            }
+            try {
+                parsed.put(keyId, keyFactory.generatePublic(new RSAPublicKeySpec(
+                        new BigInteger(1, decoder.decode(text(key, "n"))),
+                        new BigInteger(1, decoder.decode(text(key, "e"))))));
+            } catch (final GeneralSecurityException | IllegalArgumentException e) {
+                logger.warn("Skipping unusable JWKS key {}: {}", keyId, e.toString());
+            }
+        }
+        return Map.copyOf(parsed);
+    }
+
+    static String text(final JsonNode node, final String field) {
+        return node.hasNonNull(field) ? node.get(field).asString() : null;
+    }
+
+    private static String fetch(final URI jwksUri) {
+        try (final HttpClient client = HttpClient.newBuilder().connectTimeout(FETCH_TIMEOUT).build()) {
+            final HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(jwksUri).timeout(FETCH_TIMEOUT).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new CustomAwsIdpException("JWKS endpoint returned HTTP " + response.statusCode(), null);
+            }
+            return response.body();
+        } catch (final IOException e) {
+            throw new CustomAwsIdpException("Could not fetch the JWKS from " + jwksUri, e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomAwsIdpException("Interrupted while fetching the JWKS from " + jwksUri, e);
+        }
+    }
+}
@@ -3,27 +3,79 @@ package gov.nj.innovation.customAwsIdp.awscdk;
 import software.amazon.awscdk.App;
 import software.amazon.awscdk.Environment;
 import software.amazon.awscdk.StackProps;
+import software.constructs.Node;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 
 import static gov.nj.innovation.customAwsIdp.util.Constants.AWS_ACCOUNT_ID;
 import static gov.nj.innovation.customAwsIdp.util.Constants.AWS_REGION;
 
 /**
  * App for deploying infrastructure using the AWS CDK.
+ * <p>
+ * One {@link AwsIdpCdkStack} is deployed per Region given with {@code -c regions=us-east-1,us-east-2} (or a list in
+ * {@code cdk.json}), defaulting to only the home Region. The home Region's stack keeps its original name, and every
+ * other Region's is suffixed with the Region, e.g. {@code CustomAwsIdpCdkStack-us-east-2}. With a custom domain, the
+ * first Region's stack owns the certificate validation record shared by every Region, so the others depend on it.
  *
  * @author Case Walker (case@innovation.nj.gov)
  */
 public class AwsIdpCdkApp {
+
+    static final String STACK_NAME = "CustomAwsIdpCdkStack";
+    private static final String REGIONS_CONTEXT_KEY = "regions";
+
     public static void main(final String[] args) {
         App app = new App();
+        createStacks(app);
+        app.synth();
+    }
 
-        new AwsIdpCdkStack(app, "CustomAwsIdpCdkStack", StackProps.builder()
-                .env(Environment.builder()
-                        .account(AWS_ACCOUNT_ID)
-                        .region(AWS_REGION)
-                        .build())
-                .build());
+    /**
+     * @param app The app to add the stacks to
+     * @return One stack per configured Region, in the order given.
+     */
+    static List<AwsIdpCdkStack> createStacks(final App app) {
+        final List<AwsIdpCdkStack> stacks = regions(app.getNode().tryGetContext(REGIONS_CONTEXT_KEY)).stream()
+                .map(region -> new AwsIdpCdkStack(app,
+                        AWS_REGION.equals(region) ? STACK_NAME : STACK_NAME + "-" + region,
+                        StackProps.builder()
+                                .env(Environment.builder()
+                                        .account(AWS_ACCOUNT_ID)
+                                        .region(region)
+                                        .build())
+                                .build()))
+                .toList();
+        if (app.getNode().tryGetContext(AwsIdpCdkStack.DOMAIN_NAME_CONTEXT_KEY) != null) {
+            stacks.stream().skip(1).forEach(stack -> stack.addDependency(stacks.getFirst()));
+        }
+        return stacks;
+    }
 
-        app.synth();
+    /**
+     * @param node Any node of the app
+     * @return The first Region given, whose stack creates the resources shared by every Region.
+     */
+    static String firstRegion(final Node node) {
+        return regions(node.tryGetContext(REGIONS_CONTEXT_KEY)).getFirst();
     }
-}
 
+    private static List<String> regions(final Object context) {
+        if (context == null) {
+            return List.of(AWS_REGION);
+        }
+        final List<String> regions = (context instanceof Collection<?> list
+                ? list.stream().map(Object::toString)
+                : Arrays.stream(context.toString().split(",")))
+                .map(String::strip)
+                .filter(region -> !region.isEmpty())
+                .distinct()
+                .toList();
+        if (regions.isEmpty()) {
+            throw new IllegalArgumentException("No Regions given in the regions context");
+        }
+        return regions;
+    }
+}
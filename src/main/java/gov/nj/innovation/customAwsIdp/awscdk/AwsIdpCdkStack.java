@@ -1,32 +1,61 @@
 package gov.nj.innovation.customAwsIdp.awscdk;
 
+import gov.nj.innovation.customAwsIdp.groups.GroupMetadataSnapshot;
+import gov.nj.innovation.customAwsIdp.keys.CryptoProviders;
 import software.amazon.awscdk.CfnOutput;
 import software.amazon.awscdk.Duration;
 import software.amazon.awscdk.aws_apigatewayv2_authorizers.HttpJwtAuthorizer;
 import software.amazon.awscdk.aws_apigatewayv2_integrations.HttpLambdaIntegration;
 import software.amazon.awscdk.services.apigatewayv2.AddRoutesOptions;
+import software.amazon.awscdk.services.apigatewayv2.ApiMapping;
 import software.amazon.awscdk.services.apigatewayv2.CorsHttpMethod;
 import software.amazon.awscdk.services.apigatewayv2.CorsPreflightOptions;
+import software.amazon.awscdk.services.apigatewayv2.DomainName;
 import software.amazon.awscdk.services.apigatewayv2.HttpApi;
 import software.amazon.awscdk.services.apigatewayv2.PayloadFormatVersion;
+import software.amazon.awscdk.services.certificatemanager.Certificate;
+import software.amazon.awscdk.services.certificatemanager.CertificateValidation;
 import software.amazon.awscdk.services.iam.Effect;
 import software.amazon.awscdk.services.iam.PolicyStatement;
+import software.amazon.awscdk.services.lambda.Alias;
+import software.amazon.awscdk.services.lambda.Architecture;
+import software.amazon.awscdk.services.lambda.AutoScalingOptions;
 import software.amazon.awscdk.services.lambda.Code;
 import software.amazon.awscdk.services.lambda.Function;
+import software.amazon.awscdk.services.lambda.FunctionUrl;
+import software.amazon.awscdk.services.lambda.FunctionUrlAuthType;
+import software.amazon.awscdk.services.lambda.FunctionUrlCorsOptions;
+import software.amazon.awscdk.services.lambda.FunctionUrlOptions;
+import software.amazon.awscdk.services.lambda.HttpMethod;
+import software.amazon.awscdk.services.lambda.IFunction;
+import software.amazon.awscdk.services.lambda.UtilizationScalingOptions;
 import software.amazon.awscdk.services.lambda.Runtime;
 import software.amazon.awscdk.services.logs.LogGroup;
+import software.amazon.awscdk.services.route53.ARecord;
+import software.amazon.awscdk.services.route53.CfnHealthCheck;
+import software.amazon.awscdk.services.route53.CfnRecordSet;
+import software.amazon.awscdk.services.route53.HostedZone;
+import software.amazon.awscdk.services.route53.HostedZoneAttributes;
+import software.amazon.awscdk.services.route53.IHostedZone;
+import software.amazon.awscdk.services.route53.RecordTarget;
+import software.amazon.awscdk.services.route53.targets.ApiGatewayv2DomainProperties;
 import software.constructs.Construct;
 import software.amazon.awscdk.Stack;
 import software.amazon.awscdk.StackProps;
+import software.amazon.awscdk.Token;
 
 import java.text.MessageFormat;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static gov.nj.innovation.customAwsIdp.util.Constants.AWS_ACCOUNT_ID;
-import static gov.nj.innovation.customAwsIdp.util.Constants.AWS_REGION;
+import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_REGION;
 import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_APP_CLIENT_ID;
 import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_USER_POOL;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_CERT_NOT_BEFORE_NAME;
 import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_CRT_COEFFICIENT_NAME;
 import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_EXPONENT_P_NAME;
 import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_EXPONENT_Q_NAME;
@@ -34,6 +63,7 @@ import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_P_NAME;
 import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_Q_NAME;
 import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIVATE_EXPONENT_NAME;
 import static gov.nj.innovation.customAwsIdp.util.Constants.PATH_PARAMETER_GROUP_NAME;
+import static gov.nj.innovation.customAwsIdp.util.Constants.PATH_PARAMETER_HEALTH_CHECK;
 
 /**
  * Stack for deploying infrastructure using the AWS CDK.
@@ -48,12 +78,49 @@ import static gov.nj.innovation.customAwsIdp.util.Constants.PATH_PARAMETER_GROUP
  *     <li>The APIGateway Authorizer/Lambda route</li>
  *     <li>All the required permissions for the Lambda role</li>
  * </ul>
+ * With {@code -c deploymentMode=functionUrl} the HTTP API, Authorizer, and Integration are replaced by a Lambda
+ * Function URL, and the Lambda verifies the Cognito tokens itself (see {@code GetSamlFunctionUrlHandler}).
+ * <p>
+ * The Lambda's architecture, memory, concurrency, and JVM options come from a {@link PerformanceProfile}; with
+ * provisioned concurrency, the API (or Function URL) invokes the {@value PerformanceProfile#ALIAS_NAME} alias, whose
+ * provisioned environments follow their utilization with Application Auto Scaling.
+ * <p>
+ * The stack can be deployed to any Region (see {@link AwsIdpCdkApp}); the Lambda reads the key-secrets from that
+ * Region's SSM, while the Cognito UserPool stays in its own Region. With {@code -c domainName=...}, {@code -c
+ * hostedZoneId=...}, and {@code -c hostedZoneName=...}, the HTTP API also gets that custom domain and a Route 53
+ * latency-based record for the stack's Region with a health check, so that the same name resolves to the nearest
+ * deployed Region which is serving.
+ * <p>
+ * With {@code -c runtime=custom} the Lambda runs on the OS-only {@code provided.al2023} runtime, from the zip built by
+ * {@code ./gradlew buildCustomRuntimeZip} with its own JVM and bootstrap (see {@code CustomRuntime}), instead of on
+ * the managed Java runtime.
  *
  * @author Case Walker (case@innovation.nj.gov)
  */
 public class AwsIdpCdkStack extends Stack {
 
     private static final String URL_PATH = "generateSaml/{" + PATH_PARAMETER_GROUP_NAME + "}";
+    private static final String HEALTH_CHECK_PATH = "health/{" + PATH_PARAMETER_HEALTH_CHECK + "}";
+    private static final String LAMBDA_TASK_ROOT = "/var/task";
+    private static final String AOT_MODE_CONTEXT_KEY = "aotMode";
+    private static final String CRYPTO_PROVIDER_CONTEXT_KEY = "cryptoProvider";
+    private static final String GROUP_SNAPSHOT_PARAMETER_CONTEXT_KEY = "groupSnapshotParameter";
+    private static final String DEPLOYMENT_MODE_CONTEXT_KEY = "deploymentMode";
+    private static final String FUNCTION_URL_MODE = "functionUrl";
+    private static final String RUNTIME_CONTEXT_KEY = "runtime";
+    private static final String CUSTOM_RUNTIME = "custom";
+    static final String DOMAIN_NAME_CONTEXT_KEY = "domainName";
+    private static final String HOSTED_ZONE_ID_CONTEXT_KEY = "hostedZoneId";
+    private static final String HOSTED_ZONE_NAME_CONTEXT_KEY = "hostedZoneName";
+    private static final List<String> CORS_ALLOWED_HEADERS = List.of(
+            "Content-Type",
+            "X-Amz-Date",
+            "Authorization",
+            "X-Api-Key",
+            "X-Amz-Security-Token",
+            "X-Amz-User-Agent",
+            "X-Amzn-Trace-Id",
+            "Idempotency-Key");
 
     public AwsIdpCdkStack(final Construct scope, final String id) {
         this(scope, id, null);
@@ -67,70 +134,92 @@ public class AwsIdpCdkStack extends Stack {
         final String logGroupName = "/aws/lambda/generateSamlResponse";
         final LogGroup lambdaLogGroup = LogGroup.Builder.create(this, logGroupId).logGroupName(logGroupName).build();
 
+        // Point the JVM at the AOT cache (or AppCDS archive, with "-c aotMode=cds") trained and bundled by buildZip. An
+        // unusable cache is ignored by the JVM with a warning, so this never prevents the function from starting.
+        final String aotJvmOption = "cds".equals(this.getNode().tryGetContext(AOT_MODE_CONTEXT_KEY)) ?
+                "-XX:SharedArchiveFile=" + LAMBDA_TASK_ROOT + "/customIdp.jsa" :
+                "-XX:AOTCache=" + LAMBDA_TASK_ROOT + "/customIdp.aot";
+        final PerformanceProfile profile = PerformanceProfile.fromContext(this.getNode());
+        // e.g. "-c runtime=custom"; the AOT cache is only valid for the managed runtime's JDK, so it is not bundled
+        final boolean customRuntime = CUSTOM_RUNTIME.equals(this.getNode().tryGetContext(RUNTIME_CONTEXT_KEY));
+        final Architecture aotArchitecture = PerformanceProfile.aotArchitecture(this.getNode());
+        if (!customRuntime && !aotArchitecture.getName().equals(profile.architecture().getName())) {
+            throw new IllegalArgumentException(String.format("The Lambda runs on %s, but the AOT cache is for %s; "
+                    + "build the zip with a %s Corretto as -PaotJavaHome and pass -c %s=%s, or set -c architecture=%s",
+                    profile.architecture().getName(), aotArchitecture.getName(), profile.architecture().getName(),
+                    PerformanceProfile.AOT_ARCHITECTURE_CONTEXT_KEY, profile.architecture().getName(),
+                    aotArchitecture.getName()));
+        }
+        final String javaToolOptions = Stream.of(customRuntime ? "" : aotJvmOption, profile.javaToolOptions())
+                .filter(option -> !option.isEmpty())
+                .collect(Collectors.joining(" "));
+        final Map<String, String> lambdaEnvironment = new HashMap<>();
+        if (!javaToolOptions.isEmpty()) {
+            lambdaEnvironment.put("JAVA_TOOL_OPTIONS", javaToolOptions);
+        }
+        // e.g. "-c cryptoProvider=ACCP", which also needs the zip built with "-PaccpClassifier=linux-x86_64"
+        final Object cryptoProvider = this.getNode().tryGetContext(CRYPTO_PROVIDER_CONTEXT_KEY);
+        if (cryptoProvider != null) {
+            lambdaEnvironment.put(CryptoProviders.CRYPTO_PROVIDER_ENV, cryptoProvider.toString());
+        }
+        // e.g. "-c groupSnapshotParameter=custom-aws-idp-group-snapshot", written by ./gradlew compileGroupSnapshot
+        final Object groupSnapshotParameter = this.getNode().tryGetContext(GROUP_SNAPSHOT_PARAMETER_CONTEXT_KEY);
+        if (groupSnapshotParameter != null) {
+            lambdaEnvironment.put(GroupMetadataSnapshot.PARAMETER_ENV, groupSnapshotParameter.toString());
+        }
+
+        // e.g. "-c deploymentMode=functionUrl", otherwise the HTTP API with its JWT Authorizer
+        final boolean functionUrlMode = FUNCTION_URL_MODE.equals(
+                this.getNode().tryGetContext(DEPLOYMENT_MODE_CONTEXT_KEY));
+
         final Function generateSamlResponse = Function.Builder.create(this, "GenerateSamlResponseLambda")
                 .functionName("generateSamlResponse")
                 .description("Generate a SAML Response for logging in to Amazon Connect")
-                .runtime(Runtime.JAVA_25)
-                .code(Code.fromAsset("build/distributions/customIdp.zip"))
-                .handler("gov.nj.innovation.customAwsIdp.lambda.GetSamlResponseHandler")
+                .runtime(customRuntime ? Runtime.PROVIDED_AL2023 : Runtime.JAVA_25)
+                .code(Code.fromAsset(customRuntime
+                        ? "build/distributions/customIdpCustomRuntime.zip"
+                        : "build/distributions/customIdp.zip"))
+                .handler(functionUrlMode
+                        ? "gov.nj.innovation.customAwsIdp.lambda.GetSamlFunctionUrlHandler"
+                        : "gov.nj.innovation.customAwsIdp.lambda.GetSamlHttpResponseHandler")
                 .logGroup(lambdaLogGroup)
-                .memorySize(1024)
+                .architecture(profile.architecture())
+                .memorySize(profile.memorySize())
+                .reservedConcurrentExecutions(profile.reservedConcurrency())
                 .timeout(Duration.seconds(15))
+                .environment(lambdaEnvironment)
                 .build();
+        final IFunction entryPoint = profile.isProvisioned()
+                ? addProvisionedAlias(generateSamlResponse, profile)
+                : generateSamlResponse;
 
-        // Create the HTTP API, the Cognito Authorizer, and the parts required to connect the Lambda to the Authorizer
-        final HttpApi httpApi = HttpApi.Builder.create(this, "HttpApi-for-GenerateSamlResponseLambda")
-                .corsPreflight(CorsPreflightOptions.builder()
-                        .allowHeaders(List.of(
-                                "Content-Type",
-                                "X-Amz-Date",
-                                "Authorization",
-                                "X-Api-Key",
-                                "X-Amz-Security-Token",
-                                "X-Amz-User-Agent",
-                                "X-Amzn-Trace-Id"))
-                        .allowMethods(List.of(CorsHttpMethod.OPTIONS, CorsHttpMethod.GET))
-                        .allowOrigins(List.of("*"))
-                        .build())
-                .build();
-
-        final String jwtIssuer = MessageFormat.format("https://cognito-idp.{0}.amazonaws.com/{1}",
-                AWS_REGION, COGNITO_USER_POOL);
-        final HttpJwtAuthorizer cognitoAuthorizer = HttpJwtAuthorizer.Builder
-                .create("CognitoAuthorizer", jwtIssuer)
-                .authorizerName("CognitoAuthorizer")
-                .jwtAudience(List.of(COGNITO_APP_CLIENT_ID))
-                .identitySource(List.of("$request.header.Authorization"))
-                .build();
-
-        final HttpLambdaIntegration lambdaIntegration = HttpLambdaIntegration.Builder
-                .create("AuthorizerIntegration", generateSamlResponse)
-                .payloadFormatVersion(PayloadFormatVersion.VERSION_2_0)
-                .build();
+        // e.g. "-c domainName=login.example.gov", for latency-based routing between the regional HTTP APIs
+        final Object domainName = this.getNode().tryGetContext(DOMAIN_NAME_CONTEXT_KEY);
+        if (domainName != null && functionUrlMode) {
+            throw new IllegalArgumentException("A custom domain needs the HTTP API; Function URLs cannot have one");
+        }
 
-        httpApi.addRoutes(AddRoutesOptions.builder()
-                .path("/" + URL_PATH)
-                .authorizer(cognitoAuthorizer)
-                .methods(List.of(software.amazon.awscdk.services.apigatewayv2.HttpMethod.GET))
-                .integration(lambdaIntegration)
-                .build()
-        );
+        final String baseUrl = functionUrlMode
+                ? addFunctionUrl(entryPoint)
+                : addHttpApi(entryPoint, domainName != null ? domainName.toString() : null);
 
-        // Add the role/policy for the Lambda
+        // Add the role/policy for the Lambda; the key-secrets and logs are regional, the UserPool is not
         final String userPoolArn = MessageFormat.format("arn:aws:cognito-idp:{0}:{1}:userpool/{2}",
-                AWS_REGION, AWS_ACCOUNT_ID, COGNITO_USER_POOL);
-        final List<String> ssmParameterArnList = Stream.of(
+                COGNITO_REGION, AWS_ACCOUNT_ID, COGNITO_USER_POOL);
+        final List<String> ssmParameterArnList = Stream.concat(Stream.of(
                         KEY_PRIVATE_EXPONENT_NAME,
                         KEY_PRIME_P_NAME,
                         KEY_PRIME_Q_NAME,
                         KEY_PRIME_EXPONENT_P_NAME,
                         KEY_PRIME_EXPONENT_Q_NAME,
-                        KEY_CRT_COEFFICIENT_NAME)
+                        KEY_CRT_COEFFICIENT_NAME,
+                        KEY_CERT_NOT_BEFORE_NAME),
+                        Stream.ofNullable(groupSnapshotParameter).map(Object::toString))
                 .map((key) -> MessageFormat.format("arn:aws:ssm:{0}:{1}:parameter/{2}",
-                        AWS_REGION, AWS_ACCOUNT_ID, key))
+                        this.getRegion(), AWS_ACCOUNT_ID, key))
                 .toList();
         final String logGroupBaseArn = MessageFormat.format("arn:aws:logs:{0}:{1}:log-group:{2}*:*",
-                AWS_REGION, AWS_ACCOUNT_ID, logGroupName);
+                this.getRegion(), AWS_ACCOUNT_ID, logGroupName);
 
         generateSamlResponse.addToRolePolicy(PolicyStatement.Builder.create()
                 .effect(Effect.ALLOW)
@@ -149,15 +238,183 @@ public class AwsIdpCdkStack extends Stack {
                 .build());
         generateSamlResponse.addToRolePolicy(PolicyStatement.Builder.create()
                 .effect(Effect.ALLOW)
-                .actions(List.of("ssm:GetParameter"))
+                .actions(List.of("ssm:GetParameter", "ssm:GetParameters"))
                 .resources(ssmParameterArnList)
                 .build());
 
-        // Output the HTTP API URL
+        // Output the HTTP API (or Function) URL
         CfnOutput.Builder.create(this, "ApiUrlOutput")
                 .key("ApiUrl")
                 .exportName("ApiUrl")
-                .value(httpApi.getUrl() + URL_PATH)
+                .value(baseUrl + URL_PATH)
+                .build();
+    }
+
+    /**
+     * Publish the current version as the {@value PerformanceProfile#ALIAS_NAME} alias with provisioned concurrency,
+     * scaled between the profile's bounds by target tracking on the alias's provisioned concurrency utilization.
+     *
+     * @return The alias, which the API should invoke for the provisioned environments to be used.
+     */
+    private Alias addProvisionedAlias(final Function generateSamlResponse, final PerformanceProfile profile) {
+        final Alias alias = Alias.Builder.create(this, "GenerateSamlResponseLiveAlias")
+                .aliasName(PerformanceProfile.ALIAS_NAME)
+                .version(generateSamlResponse.getCurrentVersion())
+                .provisionedConcurrentExecutions(profile.provisionedConcurrency())
                 .build();
+        alias.addAutoScaling(AutoScalingOptions.builder()
+                        .minCapacity(profile.provisionedConcurrency())
+                        .maxCapacity(profile.maxProvisionedConcurrency())
+                        .build())
+                .scaleOnUtilization(UtilizationScalingOptions.builder()
+                        .utilizationTarget(profile.provisionedConcurrencyUtilization())
+                        .build());
+        return alias;
+    }
+
+    /**
+     * Create the HTTP API, the Cognito Authorizer, and the parts required to connect the Lambda to the Authorizer.
+     *
+     * @param domainName A custom domain for the HTTP API, shared by every Region, or null
+     * @return The base URL of the HTTP API.
+     */
+    private String addHttpApi(final IFunction generateSamlResponse, final String domainName) {
+        final HttpApi httpApi = HttpApi.Builder.create(this, "HttpApi-for-GenerateSamlResponseLambda")
+                .corsPreflight(CorsPreflightOptions.builder()
+                        .allowHeaders(CORS_ALLOWED_HEADERS)
+                        .allowMethods(List.of(CorsHttpMethod.OPTIONS, CorsHttpMethod.GET))
+                        .allowOrigins(List.of("*"))
+                        .build())
+                .build();
+
+        final String jwtIssuer = MessageFormat.format("https://cognito-idp.{0}.amazonaws.com/{1}",
+                COGNITO_REGION, COGNITO_USER_POOL);
+        final HttpJwtAuthorizer cognitoAuthorizer = HttpJwtAuthorizer.Builder
+                .create("CognitoAuthorizer", jwtIssuer)
+                .authorizerName("CognitoAuthorizer")
+                .jwtAudience(List.of(COGNITO_APP_CLIENT_ID))
+                .identitySource(List.of("$request.header.Authorization"))
+                .build();
+
+        final HttpLambdaIntegration lambdaIntegration = HttpLambdaIntegration.Builder
+                .create("AuthorizerIntegration", generateSamlResponse)
+                .payloadFormatVersion(PayloadFormatVersion.VERSION_2_0)
+                .build();
+
+        httpApi.addRoutes(AddRoutesOptions.builder()
+                .path("/" + URL_PATH)
+                .authorizer(cognitoAuthorizer)
+                .methods(List.of(software.amazon.awscdk.services.apigatewayv2.HttpMethod.GET))
+                .integration(lambdaIntegration)
+                .build()
+        );
+
+        if (domainName != null) {
+            addLatencyRoutedDomain(httpApi, lambdaIntegration, domainName);
+        }
+        return httpApi.getUrl();
+    }
+
+    /**
+     * Give the HTTP API a regional custom domain, and add this Region's latency-based record for it. Each regional
+     * stack adds its own record to the same name, and Route 53 answers with the Region nearest to the caller whose
+     * health check passes. The health check calls an unauthenticated route on this Region's own API endpoint, which the
+     * Lambda answers without any login work, so a Region whose API or function stops answering is left out.
+     * <p>
+     * ACM gives a domain the same DNS validation record in every Region of an account, so only the first Region's
+     * stack creates it in the hosted zone; the other Regions' certificates are validated by that same record, and
+     * their stacks are deployed after the first one's (see {@link AwsIdpCdkApp}).
+     *
+     * @param httpApi This Region's HTTP API
+     * @param lambdaIntegration The API's integration with the Lambda, which also serves the health route
+     * @param domainName The domain shared by every Region
+     */
+    private void addLatencyRoutedDomain(
+            final HttpApi httpApi,
+            final HttpLambdaIntegration lambdaIntegration,
+            final String domainName) {
+        final Object hostedZoneId = this.getNode().tryGetContext(HOSTED_ZONE_ID_CONTEXT_KEY);
+        final Object hostedZoneName = this.getNode().tryGetContext(HOSTED_ZONE_NAME_CONTEXT_KEY);
+        if (hostedZoneId == null || hostedZoneName == null) {
+            throw new IllegalArgumentException("A domainName needs the hostedZoneId and hostedZoneName it belongs to");
+        }
+        final IHostedZone hostedZone = HostedZone.fromHostedZoneAttributes(this, "HostedZone",
+                HostedZoneAttributes.builder()
+                        .hostedZoneId(hostedZoneId.toString())
+                        .zoneName(hostedZoneName.toString())
+                        .build());
+
+        // API Gateway needs the certificate in the same Region as the (regional) custom domain
+        final boolean firstRegion = Token.isUnresolved(this.getRegion()) ||
+                this.getRegion().equals(AwsIdpCdkApp.firstRegion(this.getNode()));
+        final Certificate certificate = Certificate.Builder.create(this, "ApiCertificate")
+                .domainName(domainName)
+                .validation(firstRegion ? CertificateValidation.fromDns(hostedZone) : CertificateValidation.fromDns())
+                .build();
+        final DomainName apiDomainName = DomainName.Builder.create(this, "ApiDomainName")
+                .domainName(domainName)
+                .certificate(certificate)
+                .build();
+        ApiMapping.Builder.create(this, "ApiMapping")
+                .api(httpApi)
+                .domainName(apiDomainName)
+                .build();
+
+        httpApi.addRoutes(AddRoutesOptions.builder()
+                .path("/" + HEALTH_CHECK_PATH)
+                .methods(List.of(software.amazon.awscdk.services.apigatewayv2.HttpMethod.GET))
+                .integration(lambdaIntegration)
+                .build()
+        );
+        // The API's own endpoint, since the custom domain's regional endpoint only answers to the custom domain's name
+        final CfnHealthCheck healthCheck = CfnHealthCheck.Builder.create(this, "RegionalHealthCheck")
+                .healthCheckConfig(CfnHealthCheck.HealthCheckConfigProperty.builder()
+                        .type("HTTPS")
+                        .fullyQualifiedDomainName(
+                                httpApi.getApiId() + ".execute-api." + this.getRegion() + "." + this.getUrlSuffix())
+                        .port(443)
+                        .enableSni(true)
+                        .resourcePath("/" + HEALTH_CHECK_PATH.replace("{" + PATH_PARAMETER_HEALTH_CHECK + "}", "ping"))
+                        .requestInterval(30)
+                        .failureThreshold(3)
+                        .build())
+                .healthCheckTags(List.of(CfnHealthCheck.HealthCheckTagProperty.builder()
+                        .key("Name")
+                        .value("CustomAwsIdp-" + this.getRegion())
+                        .build()))
+                .build();
+
+        final ARecord latencyRecord = ARecord.Builder.create(this, "LatencyRecord")
+                .zone(hostedZone)
+                .recordName(domainName)
+                .target(RecordTarget.fromAlias(new ApiGatewayv2DomainProperties(
+                        apiDomainName.getRegionalDomainName(), apiDomainName.getRegionalHostedZoneId())))
+                .region(this.getRegion())
+                .setIdentifier("CustomAwsIdp-" + this.getRegion())
+                .build();
+        ((CfnRecordSet) latencyRecord.getNode().getDefaultChild()).setHealthCheckId(healthCheck.getAttrHealthCheckId());
+
+        CfnOutput.Builder.create(this, "LatencyRoutedUrlOutput")
+                .key("LatencyRoutedUrl")
+                .value("https://" + domainName + "/" + URL_PATH)
+                .build();
+    }
+
+    /**
+     * Create a public Function URL for the Lambda. It has no IAM auth, since the Lambda verifies the Cognito token in
+     * the {@code Authorization} header itself, just as the HTTP API's Authorizer would.
+     *
+     * @return The base URL of the Function URL.
+     */
+    private String addFunctionUrl(final IFunction generateSamlResponse) {
+        final FunctionUrl functionUrl = generateSamlResponse.addFunctionUrl(FunctionUrlOptions.builder()
+                .authType(FunctionUrlAuthType.NONE)
+                .cors(FunctionUrlCorsOptions.builder()
+                        .allowedHeaders(CORS_ALLOWED_HEADERS)
+                        .allowedMethods(List.of(HttpMethod.GET))
+                        .allowedOrigins(List.of("*"))
+                        .build())
+                .build());
+        return functionUrl.getUrl();
     }
 }
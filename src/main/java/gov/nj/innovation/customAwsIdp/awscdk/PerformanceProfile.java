@@ -0,0 +1,172 @@
+package gov.nj.innovation.customAwsIdp.awscdk;
+
+import software.amazon.awscdk.services.lambda.Architecture;
+import software.constructs.Node;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The settings which decide how fast, and at what cost, the Lambda runs: its architecture, memory (and with it, CPU),
+ * provisioned and reserved concurrency, and extra JVM options.
+ * <p>
+ * A named profile is picked with {@code -c performanceProfile=NAME}, one of {@link #PROFILES}, and any of its
+ * settings may then be overridden with their own context keys, e.g. {@code -c performanceProfile=provisioned -c
+ * memorySize=3008}:
+ * <ul>
+ *     <li>{@code architecture}: {@code x86_64} or {@code arm64} (Graviton)</li>
+ *     <li>{@code memorySize}: in MB, from 128 to 10240</li>
+ *     <li>{@code provisionedConcurrency}: the fewest pre-initialized environments kept on the {@value #ALIAS_NAME}
+ *         alias, or 0 for none</li>
+ *     <li>{@code maxProvisionedConcurrency}: the most that target tracking may scale up to (at least {@code
+ *         provisionedConcurrency})</li>
+ *     <li>{@code provisionedConcurrencyUtilization}: the utilization target tracking aims for, from 0.1 to 0.9</li>
+ *     <li>{@code reservedConcurrency}: the function's concurrency limit, or {@code none}</li>
+ *     <li>{@code javaToolOptions}: JVM options added after the AOT cache option</li>
+ * </ul>
+ * An arm64 Lambda needs the zip built for it: the AOT cache trained with an arm64 Corretto 25 ({@code -PaotJavaHome}),
+ * and, for ACCP, {@code -PaccpClassifier=linux-aarch64}. The cache's architecture is declared with {@code -c
+ * aotArchitecture=arm64} (default {@code x86_64}), and a stack whose Lambda would run on another architecture than its
+ * cache is rejected at synth time, since the JVM would otherwise ignore the cache and start without it.
+ *
+ * @param name The name of the profile it was based on
+ * @param architecture The instruction set the Lambda runs on
+ * @param memorySize The Lambda's memory in MB
+ * @param provisionedConcurrency The fewest provisioned environments, or 0 for none
+ * @param maxProvisionedConcurrency The most provisioned environments
+ * @param provisionedConcurrencyUtilization The utilization of the provisioned environments to aim for
+ * @param reservedConcurrency The function's concurrency limit, or null for none
+ * @param javaToolOptions Extra JVM options, or an empty String
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public record PerformanceProfile(
+        String name,
+        Architecture architecture,
+        int memorySize,
+        int provisionedConcurrency,
+        int maxProvisionedConcurrency,
+        double provisionedConcurrencyUtilization,
+        Integer reservedConcurrency,
+        String javaToolOptions) {
+
+    public static final String ALIAS_NAME = "live";
+    public static final String PROFILE_CONTEXT_KEY = "performanceProfile";
+    public static final String AOT_ARCHITECTURE_CONTEXT_KEY = "aotArchitecture";
+
+    /** What the stack deployed before profiles existed: x86, 1 GB, and no concurrency settings. */
+    public static final PerformanceProfile DEFAULT =
+            new PerformanceProfile("default", Architecture.X86_64, 1024, 0, 0, 0.7, null, "");
+
+    /** The default on Graviton, which costs about 20% less per GB-second. */
+    public static final PerformanceProfile GRAVITON =
+            new PerformanceProfile("graviton", Architecture.ARM_64, 1024, 0, 0, 0.7, null, "");
+
+    /**
+     * Graviton with more CPU and environments kept initialized for the working day's logins, so that almost no login
+     * waits on a cold start. A provisioned environment lives for hours, so the JIT is left as is: its signing and XML
+     * code gets to C2, and the method profiles in the AOT cache let it get there sooner.
+     */
+    public static final PerformanceProfile PROVISIONED =
+            new PerformanceProfile("provisioned", Architecture.ARM_64, 2048, 2, 10, 0.7, 50, "");
+
+    public static final Map<String, PerformanceProfile> PROFILES = Map.of(
+            DEFAULT.name, DEFAULT,
+            GRAVITON.name, GRAVITON,
+            PROVISIONED.name, PROVISIONED);
+
+    public PerformanceProfile {
+        if (memorySize < 128 || memorySize > 10240) {
+            throw new IllegalArgumentException("memorySize must be from 128 to 10240 MB, not " + memorySize);
+        }
+        if (provisionedConcurrency < 0) {
+            throw new IllegalArgumentException("provisionedConcurrency must not be negative");
+        }
+        maxProvisionedConcurrency = Math.max(maxProvisionedConcurrency, provisionedConcurrency);
+        if (provisionedConcurrencyUtilization < 0.1 || provisionedConcurrencyUtilization > 0.9) {
+            throw new IllegalArgumentException("provisionedConcurrencyUtilization must be from 0.1 to 0.9, not "
+                    + provisionedConcurrencyUtilization);
+        }
+        if (reservedConcurrency != null && provisionedConcurrency > 0
+                && reservedConcurrency < maxProvisionedConcurrency) {
+            throw new IllegalArgumentException(String.format("reservedConcurrency %d leaves no room to scale up to "
+                    + "maxProvisionedConcurrency %d", reservedConcurrency, maxProvisionedConcurrency));
+        }
+        javaToolOptions = javaToolOptions != null ? javaToolOptions.strip() : "";
+    }
+
+    /**
+     * @param node The node whose context to read, normally the stack's
+     * @return The named profile (or {@link #DEFAULT}) with any overrides from the context applied.
+     * @throws IllegalArgumentException When the profile is unknown, or a setting is out of range
+     */
+    public static PerformanceProfile fromContext(final Node node) {
+        final Object profileName = node.tryGetContext(PROFILE_CONTEXT_KEY);
+        final PerformanceProfile base = profileName != null ? PROFILES.get(profileName.toString()) : DEFAULT;
+        if (base == null) {
+            throw new IllegalArgumentException("Unknown performanceProfile " + profileName
+                    + ", expected one of " + PROFILES.keySet());
+        }
+
+        return new PerformanceProfile(
+                base.name,
+                override(node, "architecture", PerformanceProfile::parseArchitecture, base.architecture),
+                override(node, "memorySize", PerformanceProfile::parseInt, base.memorySize),
+                override(node, "provisionedConcurrency", PerformanceProfile::parseInt, base.provisionedConcurrency),
+                override(node, "maxProvisionedConcurrency", PerformanceProfile::parseInt,
+                        base.maxProvisionedConcurrency),
+                override(node, "provisionedConcurrencyUtilization", Double::parseDouble,
+                        base.provisionedConcurrencyUtilization),
+                override(node, "reservedConcurrency",
+                        value -> "none".equalsIgnoreCase(value) ? null : parseInt(value),
+                        base.reservedConcurrency),
+                override(node, "javaToolOptions", Function.identity(), base.javaToolOptions));
+    }
+
+    /**
+     * @param node The node whose context to read, normally the stack's
+     * @return The architecture the bundled AOT cache was trained on, from {@value #AOT_ARCHITECTURE_CONTEXT_KEY}, by
+     * default {@code x86_64}.
+     * @throws IllegalArgumentException When the architecture is unknown
+     */
+    public static Architecture aotArchitecture(final Node node) {
+        return override(node, AOT_ARCHITECTURE_CONTEXT_KEY, PerformanceProfile::parseArchitecture, Architecture.X86_64);
+    }
+
+    /**
+     * @return Whether to publish the {@value #ALIAS_NAME} alias with provisioned concurrency.
+     */
+    public boolean isProvisioned() {
+        return provisionedConcurrency > 0;
+    }
+
+    private static <T> T override(
+            final Node node,
+            final String key,
+            final Function<String, T> parser,
+            final T defaultValue) {
+        final Object value = node.tryGetContext(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return parser.apply(value.toString().strip());
+        } catch (final IllegalArgumentException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid " + key + " " + value, e);
+        }
+    }
+
+    // Numbers from cdk.json may arrive as e.g. "2048.0"
+    private static int parseInt(final String value) {
+        return new BigDecimal(value).intValueExact();
+    }
+
+    private static Architecture parseArchitecture(final String value) {
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "x86_64", "x86" -> Architecture.X86_64;
+            case "arm64", "arm_64", "graviton" -> Architecture.ARM_64;
+            default -> throw new IllegalArgumentException("Expected x86_64 or arm64");
+        };
+    }
+}
@@ -0,0 +1,344 @@
+package gov.nj.innovation.customAwsIdp.bulk;
+
+import gov.nj.innovation.customAwsIdp.SamlEngine;
+import gov.nj.innovation.customAwsIdp.exception.CustomAwsIdpException;
+import gov.nj.innovation.customAwsIdp.exception.KeyGenerationException;
+import gov.nj.innovation.customAwsIdp.keys.KeyConstants;
+import gov.nj.innovation.customAwsIdp.keys.KeysWrapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+
+import static gov.nj.innovation.customAwsIdp.util.Constants.DEFAULT_SESSION_DURATION;
+
+/**
+ * Generate SAML Responses offline in bulk, e.g. for load testing a Connect instance or for a federation drill, from a
+ * manifest of users and roles. Nothing is read from SSM or Cognito: the key comes from a local keystore, and one
+ * {@link KeysWrapper} is shared by every signature.
+ * <p>
+ * The manifest is either CSV ({@code user,role,duration}, with the role quoted since it holds a comma, an optional
+ * header, and lines starting with {@code #} skipped) or, for a file ending in {@code .jsonl}, one JSON object per line
+ * with the same fields. The duration may be left out for the default of {@value
+ * gov.nj.innovation.customAwsIdp.util.Constants#DEFAULT_SESSION_DURATION} seconds. The whole manifest is checked
+ * before anything is signed.
+ * <p>
+ * The Responses are generated in batches across a {@link ForkJoinPool}, each batch written while the next one is being
+ * signed, one Base64 Response per line in the order of the manifest.
+ * <p>
+ * Run with {@code ./gradlew generateBulkSaml -PbulkSamlArgs="..."}, giving {@code key=value} arguments:
+ * <ul>
+ *     <li>{@code manifest}: the CSV or JSONL manifest</li>
+ *     <li>{@code output}: the file to write the Responses to</li>
+ *     <li>{@code keystore}: a PKCS12 or JKS keystore holding an RSA key, with its password in {@value
+ *         #KEYSTORE_PASSWORD_ENV}</li>
+ *     <li>{@code alias}: the key's alias, by default the keystore's first key</li>
+ *     <li>{@code parallelism}: the number of threads, by default one per core; a comma-separated list, e.g. {@code
+ *         1,2,4,8}, runs the manifest once per entry and reports the speed-up over the first</li>
+ * </ul>
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class BulkSamlGenerator {
+
+    public static final String KEYSTORE_PASSWORD_ENV = "BULK_SAML_KEYSTORE_PASSWORD";
+    private static final Logger logger = LogManager.getLogger(BulkSamlGenerator.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern DIGITS_PATTERN = Pattern.compile("\\d+");
+    private static final int BATCH_SIZE_PER_THREAD = 64;
+    private static final int WARM_UP_RESPONSES = 200;
+
+    /**
+     * One Response to generate.
+     *
+     * @param user The user the Response is for, i.e. the RoleSessionName
+     * @param role The role and SAML provider ARNs, separated by a comma, as in a Group's SsoRole
+     * @param duration The session duration in seconds
+     */
+    public record ManifestEntry(String user, String role, String duration) {}
+
+    /**
+     * The throughput of one run.
+     *
+     * @param responses The number of Responses generated
+     * @param parallelism The number of threads they were generated on
+     * @param elapsedNanos The time from the first signature to the last line written
+     */
+    public record Report(int responses, int parallelism, long elapsedNanos) {
+
+        public double responsesPerSecond() {
+            return responses / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * @param baseline A run to compare against, e.g. on one thread
+         * @return This run's throughput as a multiple of the baseline's.
+         */
+        public double speedUp(final Report baseline) {
+            return responsesPerSecond() / baseline.responsesPerSecond();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d Responses on %d threads in %.2f s: %.0f Responses/s (%.0f per thread)",
+                    responses, parallelism, elapsedNanos / 1e9, responsesPerSecond(),
+                    responsesPerSecond() / parallelism);
+        }
+    }
+
+    /**
+     * Sign a Response for every entry, writing them one per line in the manifest's order.
+     *
+     * @param entries The Responses to generate
+     * @param keys The keys to sign every Response with, through one {@link SamlEngine} shared by every thread
+     * @param parallelism The number of threads to sign on
+     * @param out Where the Responses are written; it is flushed but not closed by this method
+     * @return How long it took.
+     */
+    public static Report generate(
+            final List<ManifestEntry> entries,
+            final KeysWrapper keys,
+            final int parallelism,
+            final Writer out) throws IOException {
+        final int batchSize = parallelism * BATCH_SIZE_PER_THREAD;
+        final SamlEngine engine = new SamlEngine(keys);
+        final long start = System.nanoTime();
+        try (final ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+            ForkJoinTask<List<String>> pending = submit(pool, entries, 0, batchSize, engine);
+            for (int from = batchSize; pending != null; from += batchSize) {
+                final List<String> responses = join(pending);
+                // Sign the next batch while this one is written
+                pending = from < entries.size() ? submit(pool, entries, from, batchSize, engine) : null;
+                for (final String response : responses) {
+                    out.write(response);
+                    out.write('\n');
+                }
+            }
+        }
+        out.flush();
+        return new Report(entries.size(), parallelism, System.nanoTime() - start);
+    }
+
+    /**
+     * Read and check a manifest, CSV or JSONL by the file's extension.
+     *
+     * @param manifest The manifest file
+     * @return Its entries, in order.
+     * @throws IllegalArgumentException Naming every line which could not be used
+     */
+    public static List<ManifestEntry> readManifest(final Path manifest) throws IOException {
+        final boolean jsonLines = manifest.getFileName().toString().endsWith(".jsonl");
+        final List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        final List<ManifestEntry> entries = new ArrayList<>(lines.size());
+        final List<String> problems = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#") || (i == 0 && !jsonLines && line.startsWith("user,"))) {
+                continue;
+            }
+            try {
+                entries.add(check(jsonLines ? parseJsonLine(line) : parseCsvLine(line)));
+            } catch (final IllegalArgumentException e) {
+                problems.add(String.format("  line %d: %s", i + 1, e.getMessage()));
+            }
+        }
+        if (!problems.isEmpty()) {
+            throw new IllegalArgumentException(String.format("%d malformed lines in %s:%n%s",
+                    problems.size(), manifest, String.join(System.lineSeparator(), problems)));
+        }
+        return entries;
+    }
+
+    /**
+     * Load the keys to sign with from a keystore, rather than from the key-secrets in SSM.
+     *
+     * @param keystore A PKCS12 or JKS keystore
+     * @param password The keystore's password, also used for the key
+     * @param alias The key's alias, or null for the first key in the keystore
+     * @return The keys, built the same way as from the key-secrets.
+     * @throws KeyGenerationException When the keystore cannot be read or holds no RSA key under the alias
+     */
+    public static KeysWrapper loadKeys(final Path keystore, final char[] password, final String alias) {
+        final Key key;
+        try {
+            final KeyStore store = KeyStore.getInstance(keystore.toFile(), password);
+            final String keyAlias = alias != null ? alias : Collections.list(store.aliases()).stream()
+                    .filter(name -> isKeyEntry(store, name))
+                    .findFirst()
+                    .orElseThrow(() -> new KeyGenerationException("No key in " + keystore, null));
+            key = store.getKey(keyAlias, password);
+        } catch (final IOException | GeneralSecurityException e) {
+            throw new KeyGenerationException("Could not read the keystore " + keystore + ": " + e.getMessage(), e);
+        }
+        if (!(key instanceof RSAPrivateCrtKey rsaKey)) {
+            throw new KeyGenerationException("Expected an RSA private key in " + keystore + ", found "
+                    + (key != null ? key.getAlgorithm() : "nothing"), null);
+        }
+        return new KeysWrapper(KeyConstants.fromSecrets(KeyConstants.secretsOf(rsaKey)));
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final Map<String, String> options = new HashMap<>();
+        for (final String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        for (final String required : List.of("manifest", "output", "keystore")) {
+            if (!options.containsKey(required)) {
+                throw new IllegalArgumentException("Expected " + required + "=...");
+            }
+        }
+        final String password = System.getenv(KEYSTORE_PASSWORD_ENV);
+        if (password == null) {
+            throw new IllegalArgumentException("Set the keystore's password in " + KEYSTORE_PASSWORD_ENV);
+        }
+        final int[] parallelisms = options.containsKey("parallelism")
+                ? Arrays.stream(options.get("parallelism").split(",")).mapToInt(p -> Integer.parseInt(p.strip()))
+                        .toArray()
+                : new int[]{Runtime.getRuntime().availableProcessors()};
+
+        final List<ManifestEntry> entries = readManifest(Path.of(options.get("manifest")));
+        final KeysWrapper keys = loadKeys(Path.of(options.get("keystore")), password.toCharArray(),
+                options.get("alias"));
+        logger.info("Read {} entries from {}", entries.size(), options.get("manifest"));
+        if (parallelisms.length > 1) {
+            // Let the JIT compile the signing path, so that the first run is not measured cold
+            generate(entries.subList(0, Math.min(WARM_UP_RESPONSES, entries.size())), keys,
+                    parallelisms[0], Writer.nullWriter());
+        }
+
+        Report baseline = null;
+        for (final int parallelism : parallelisms) {
+            final Report report;
+            try (final Writer out = new BufferedWriter(new OutputStreamWriter(
+                    Files.newOutputStream(Path.of(options.get("output"))), StandardCharsets.UTF_8))) {
+                report = generate(entries, keys, parallelism, out);
+            }
+            baseline = baseline != null ? baseline : report;
+            System.out.println(report + (report == baseline ? "" : String.format(
+                    "; %.2fx the %d-thread run, %.0f%% scaling efficiency", report.speedUp(baseline),
+                    baseline.parallelism(),
+                    100 * report.speedUp(baseline) * baseline.parallelism() / parallelism)));
+        }
+        logger.info("Wrote the Responses to {}", options.get("output"));
+    }
+
+    private static ForkJoinTask<List<String>> submit(
+            final ForkJoinPool pool,
+            final List<ManifestEntry> entries,
+            final int from,
+            final int batchSize,
+            final SamlEngine engine) {
+        final List<ManifestEntry> batch = entries.subList(from, Math.min(from + batchSize, entries.size()));
+        return pool.submit(() -> batch.parallelStream()
+                .map(entry -> engine.generate(entry.user(), List.of(entry.role()), entry.duration()))
+                .toList());
+    }
+
+    private static List<String> join(final ForkJoinTask<List<String>> task) {
+        try {
+            return task.get();
+        } catch (final ExecutionException e) {
+            throw new CustomAwsIdpException("Could not generate a Response: " + e.getCause().getMessage(), e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating Responses", e);
+        }
+    }
+
+    private static boolean isKeyEntry(final KeyStore store, final String alias) {
+        try {
+            return store.isKeyEntry(alias);
+        } catch (final GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    private static ManifestEntry check(final ManifestEntry entry) {
+        if (entry.user() == null || entry.user().isBlank()) {
+            throw new IllegalArgumentException("user must have a non-empty value");
+        }
+        if (entry.role() == null || !entry.role().contains(",")) {
+            throw new IllegalArgumentException("role must be a role ARN and a SAML provider ARN, separated by a comma");
+        }
+        final String duration = entry.duration() == null || entry.duration().isBlank()
+                ? DEFAULT_SESSION_DURATION : entry.duration().strip();
+        if (!DIGITS_PATTERN.matcher(duration).matches() || Integer.parseInt(duration) < 900
+                || Integer.parseInt(duration) > 43200) {
+            throw new IllegalArgumentException("duration must be an int between 900 and 43200, was " + duration);
+        }
+        return new ManifestEntry(entry.user().strip(), entry.role().strip(), duration);
+    }
+
+    private static ManifestEntry parseJsonLine(final String line) {
+        final JsonNode node;
+        try {
+            node = MAPPER.readTree(line);
+        } catch (final JacksonException e) {
+            throw new IllegalArgumentException("not a JSON object: " + e.getOriginalMessage());
+        }
+        return new ManifestEntry(field(node, "user"), field(node, "role"), field(node, "duration"));
+    }
+
+    private static String field(final JsonNode node, final String name) {
+        final JsonNode field = node.path(name);
+        return field.isMissingNode() || field.isNull() ? null : field.asString();
+    }
+
+    /**
+     * Split one CSV line into its three fields, honoring double quotes and {@code ""} inside them.
+     */
+    private static ManifestEntry parseCsvLine(final String line) {
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted && c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                field.append('"');
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        fields.add(field.toString());
+        if (fields.size() < 2 || fields.size() > 3) {
+            throw new IllegalArgumentException("expected user,role,duration but found " + fields.size() + " fields");
+        }
+        return new ManifestEntry(fields.get(0), fields.get(1), fields.size() == 3 ? fields.get(2) : null);
+    }
+}
@@ -0,0 +1,12 @@
+package gov.nj.innovation.customAwsIdp.exception;
+
+/**
+ * Specific exception for a request which ran out of its time budget before a stage could start.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class DeadlineExceededException extends CustomAwsIdpException {
+    public DeadlineExceededException(final String errorMessage) {
+        super(errorMessage, null);
+    }
+}
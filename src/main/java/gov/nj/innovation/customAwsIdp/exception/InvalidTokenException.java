@@ -0,0 +1,13 @@
+package gov.nj.innovation.customAwsIdp.exception;
+
+/**
+ * Exception for a bearer token which could not be verified, see {@link
+ * gov.nj.innovation.customAwsIdp.auth.CognitoJwtVerifier}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class InvalidTokenException extends CustomAwsIdpException {
+    public InvalidTokenException(final String errorMessage) {
+        super(errorMessage, null);
+    }
+}
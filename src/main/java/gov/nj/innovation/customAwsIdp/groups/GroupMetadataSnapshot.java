@@ -0,0 +1,169 @@
+package gov.nj.innovation.customAwsIdp.groups;
+
+import gov.nj.innovation.customAwsIdp.exception.CustomAwsIdpException;
+import gov.nj.innovation.customAwsIdp.lambda.helpers.data.CognitoGroupDescriptionMetadata;
+import gov.nj.innovation.customAwsIdp.util.SsmClientWrapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.services.ssm.SsmClient;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable index of every Group's metadata in a UserPool, compiled ahead of time by {@link
+ * GroupMetadataSnapshotCompiler} so that logins do not need a Cognito {@code GetGroup} call.
+ * <p>
+ * The snapshot is stored as compact JSON, versioned by {@value #FORMAT_VERSION}:
+ * <pre>
+ *   {"formatVersion":1,"userPoolId":"...","generatedAt":"...","groups":{"GROUP":["SSO_ROLE","RELAY_STATE"],...}}
+ * </pre>
+ * It is loaded once per container by {@link #load(SsmClient, String)}, from the SSM parameter named by {@value
+ * #PARAMETER_ENV} when that is set, or else from the {@value #RESOURCE} bundled in the zip. A snapshot which is
+ * missing, unreadable, of another format version, or for another UserPool is ignored, and every Group is looked up
+ * live as before; so is any Group which is not in the snapshot. Changing a Group's description therefore needs the
+ * snapshot to be compiled again.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class GroupMetadataSnapshot {
+
+    public static final int FORMAT_VERSION = 1;
+    public static final String PARAMETER_ENV = "GROUP_SNAPSHOT_PARAMETER";
+    public static final String RESOURCE = "group-metadata-snapshot.json";
+    public static final GroupMetadataSnapshot EMPTY = new GroupMetadataSnapshot(null, Instant.EPOCH, Map.of());
+    private static final Logger logger = LogManager.getLogger(GroupMetadataSnapshot.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String userPoolId;
+    private final Instant generatedAt;
+    private final Map<String, CognitoGroupDescriptionMetadata> groups;
+
+    /**
+     * @param userPoolId The UserPool the Groups belong to
+     * @param generatedAt When the Groups were listed
+     * @param groups Each Group's metadata, by Group name
+     */
+    public GroupMetadataSnapshot(
+            final String userPoolId,
+            final Instant generatedAt,
+            final Map<String, CognitoGroupDescriptionMetadata> groups) {
+        this.userPoolId = userPoolId;
+        this.generatedAt = generatedAt;
+        this.groups = Map.copyOf(groups);
+    }
+
+    /**
+     * Load the snapshot for a UserPool from SSM or the bundled resource, falling back to {@link #EMPTY}.
+     *
+     * @param ssmClient Client used when the snapshot is stored as a parameter
+     * @param userPoolId The UserPool which logins are served from
+     * @return The snapshot, or {@link #EMPTY} when there is no usable one.
+     */
+    public static GroupMetadataSnapshot load(final SsmClient ssmClient, final String userPoolId) {
+        final String parameterName = System.getenv(PARAMETER_ENV);
+        final String source = parameterName != null && !parameterName.isBlank()
+                ? "SSM parameter " + parameterName
+                : "resource " + RESOURCE;
+        try {
+            final String json = parameterName != null && !parameterName.isBlank()
+                    ? SsmClientWrapper.getParameterByName(ssmClient, parameterName)
+                    : readResource();
+            if (json == null) {
+                return EMPTY;
+            }
+            final GroupMetadataSnapshot snapshot = fromJson(json);
+            if (!userPoolId.equals(snapshot.userPoolId)) {
+                logger.warn("Ignoring the Group snapshot from {}, it is for UserPool {} rather than {}",
+                        source, snapshot.userPoolId, userPoolId);
+                return EMPTY;
+            }
+            logger.info("Loaded {} Groups from the snapshot in {}, generated at {}",
+                    snapshot.size(), source, snapshot.generatedAt);
+            return snapshot;
+        } catch (final RuntimeException e) {
+            logger.warn("Ignoring the Group snapshot from {}, Groups will be looked up live: {}", source, e.toString());
+            return EMPTY;
+        }
+    }
+
+    /**
+     * @param json A snapshot written by {@link #toJson()}
+     * @return The snapshot.
+     * @throws CustomAwsIdpException When the snapshot is of another format version or is missing fields
+     */
+    public static GroupMetadataSnapshot fromJson(final String json) {
+        final JsonNode root = MAPPER.readTree(json);
+        final int formatVersion = root.path("formatVersion").asInt(0);
+        if (formatVersion != FORMAT_VERSION) {
+            throw new CustomAwsIdpException(String.format(
+                    "Unsupported Group snapshot format version %d, expected %d", formatVersion, FORMAT_VERSION), null);
+        }
+        if (!root.hasNonNull("userPoolId") || !root.hasNonNull("generatedAt") || !root.path("groups").isObject()) {
+            throw new CustomAwsIdpException("Group snapshot is missing userPoolId, generatedAt, or groups", null);
+        }
+
+        final Map<String, CognitoGroupDescriptionMetadata> groups = new HashMap<>();
+        for (final Map.Entry<String, JsonNode> group : root.get("groups").properties()) {
+            final JsonNode values = group.getValue();
+            if (!values.isArray() || values.size() != 2 || !values.get(0).isString() || !values.get(1).isString()) {
+                throw new CustomAwsIdpException("Malformed entry in the Group snapshot for " + group.getKey(), null);
+            }
+            groups.put(group.getKey(),
+                    new CognitoGroupDescriptionMetadata(values.get(1).asString(), values.get(0).asString()));
+        }
+        return new GroupMetadataSnapshot(root.get("userPoolId").asString(),
+                Instant.parse(root.get("generatedAt").asString()), groups);
+    }
+
+    /**
+     * @return The snapshot as compact JSON, with the Groups sorted by name so that unchanged Groups give the same text.
+     */
+    public String toJson() {
+        final ObjectNode root = MAPPER.createObjectNode();
+        root.put("formatVersion", FORMAT_VERSION);
+        root.put("userPoolId", userPoolId);
+        root.put("generatedAt", generatedAt.toString());
+        final ObjectNode groupsNode = root.putObject("groups");
+        new TreeMap<>(groups).forEach((groupName, metadata) ->
+                groupsNode.putArray(groupName).add(metadata.ssoRole()).add(metadata.relayState()));
+        return MAPPER.writeValueAsString(root);
+    }
+
+    /**
+     * @param groupName The name of a Group
+     * @return The Group's metadata, or null when the Group is not in the snapshot.
+     */
+    public CognitoGroupDescriptionMetadata get(final String groupName) {
+        return groups.get(groupName);
+    }
+
+    public int size() {
+        return groups.size();
+    }
+
+    public String userPoolId() {
+        return userPoolId;
+    }
+
+    public Instant generatedAt() {
+        return generatedAt;
+    }
+
+    private static String readResource() {
+        try (final InputStream in = GroupMetadataSnapshot.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            return in != null ? new String(in.readAllBytes(), StandardCharsets.UTF_8) : null;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package gov.nj.innovation.customAwsIdp.groups;
+
+import gov.nj.innovation.customAwsIdp.lambda.helpers.CognitoGroupDescriptionMetadataExtractor;
+import gov.nj.innovation.customAwsIdp.lambda.helpers.data.CognitoGroupDescriptionMetadata;
+import gov.nj.innovation.customAwsIdp.util.AwsClients;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.GroupType;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.ListGroupsRequest;
+import software.amazon.awssdk.services.ssm.SsmClient;
+import software.amazon.awssdk.services.ssm.model.ParameterTier;
+import software.amazon.awssdk.services.ssm.model.ParameterType;
+import software.amazon.awssdk.services.ssm.model.PutParameterRequest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_USER_POOL;
+
+/**
+ * Compile a {@link GroupMetadataSnapshot}: page through every Group in a UserPool with {@code ListGroups}, parse the
+ * descriptions concurrently (on virtual threads, while later pages are still being fetched), and report the Groups
+ * whose descriptions could not be parsed, which are left out of the snapshot.
+ * <p>
+ * Run with {@code ./gradlew compileGroupSnapshot -PgroupSnapshotArgs="..."}, giving {@code key=value} arguments:
+ * <ul>
+ *     <li>{@code userPool}: the UserPool to list (default {@code COGNITO_USER_POOL})</li>
+ *     <li>{@code output}: a file to write the snapshot to, e.g. {@code src/main/resources/}{@value
+ *         GroupMetadataSnapshot#RESOURCE} to bundle it into the next build</li>
+ *     <li>{@code parameter}: an SSM parameter to store the snapshot in, for {@value
+ *         GroupMetadataSnapshot#PARAMETER_ENV}</li>
+ *     <li>{@code endpoint}: an endpoint override for both services, e.g. a local emulator</li>
+ * </ul>
+ * With neither {@code output} nor {@code parameter} the snapshot is printed. The validation report is always printed,
+ * and the exit status is 1 when any description was malformed.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class GroupMetadataSnapshotCompiler {
+
+    private static final Logger logger = LogManager.getLogger(GroupMetadataSnapshotCompiler.class);
+    private static final int LIST_GROUPS_LIMIT = 60;
+
+    /**
+     * A Group left out of the snapshot, and why.
+     *
+     * @param groupName The name of the Group
+     * @param problem What was wrong with its description
+     */
+    public record MalformedGroup(String groupName, String problem) {}
+
+    /**
+     * The outcome of compiling a snapshot.
+     *
+     * @param snapshot Every Group whose description could be parsed
+     * @param malformedGroups Every Group whose description could not, sorted by name
+     */
+    public record Compilation(GroupMetadataSnapshot snapshot, List<MalformedGroup> malformedGroups) {
+
+        /**
+         * @return A human-readable validation report, one line per malformed Group.
+         */
+        public String report() {
+            final StringJoiner report = new StringJoiner(System.lineSeparator());
+            report.add(String.format("Compiled %d Groups from UserPool %s; %d malformed",
+                    snapshot.size(), snapshot.userPoolId(), malformedGroups.size()));
+            malformedGroups.forEach(malformed ->
+                    report.add(String.format("  %s: %s", malformed.groupName(), malformed.problem())));
+            return report.toString();
+        }
+    }
+
+    /**
+     * List and parse every Group in the UserPool.
+     *
+     * @param cognitoClient The client used to list the Groups; it is not closed by this method
+     * @param userPoolId The UserPool to list
+     * @return The snapshot and the Groups left out of it.
+     */
+    public static Compilation compile(final CognitoIdentityProviderClient cognitoClient, final String userPoolId) {
+        final Instant generatedAt = Instant.now();
+        final Map<String, Future<CognitoGroupDescriptionMetadata>> parsed = new LinkedHashMap<>();
+        try (final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (final GroupType group : cognitoClient.listGroupsPaginator(ListGroupsRequest.builder()
+                    .userPoolId(userPoolId)
+                    .limit(LIST_GROUPS_LIMIT)
+                    .build()).groups()) {
+                parsed.put(group.groupName(), executor.submit(() -> parse(group.description())));
+            }
+        }
+
+        final Map<String, CognitoGroupDescriptionMetadata> groups = new HashMap<>();
+        final List<MalformedGroup> malformedGroups = new ArrayList<>();
+        for (final Map.Entry<String, Future<CognitoGroupDescriptionMetadata>> entry : parsed.entrySet()) {
+            try {
+                groups.put(entry.getKey(), entry.getValue().get());
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                malformedGroups.add(new MalformedGroup(entry.getKey(),
+                        cause.getMessage() != null ? cause.getMessage() : cause.toString()));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while parsing Group descriptions", e);
+            }
+        }
+        malformedGroups.sort(Comparator.comparing(MalformedGroup::groupName));
+        return new Compilation(new GroupMetadataSnapshot(userPoolId, generatedAt, groups), malformedGroups);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final Map<String, String> options = new HashMap<>();
+        for (final String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        final String userPoolId = options.getOrDefault("userPool", COGNITO_USER_POOL);
+        final URI endpoint = options.containsKey("endpoint") ? URI.create(options.get("endpoint")) : null;
+
+        final Compilation compilation;
+        try (final CognitoIdentityProviderClient cognitoClient = AwsClients.cognito(endpoint)) {
+            compilation = compile(cognitoClient, userPoolId);
+        }
+        final String json = compilation.snapshot().toJson();
+        if (options.containsKey("output")) {
+            final Path output = Path.of(options.get("output"));
+            Files.writeString(output, json, StandardCharsets.UTF_8);
+            logger.info("Wrote the Group snapshot to {} ({} bytes)", output, json.length());
+        }
+        if (options.containsKey("parameter")) {
+            try (final SsmClient ssmClient = AwsClients.ssm(endpoint)) {
+                final long version = ssmClient.putParameter(PutParameterRequest.builder()
+                        .name(options.get("parameter"))
+                        .value(json)
+                        .type(ParameterType.STRING)
+                        // Standard parameters hold 4 KB; larger snapshots are moved to the advanced tier
+                        .tier(ParameterTier.INTELLIGENT_TIERING)
+                        .overwrite(true)
+                        .build()).version();
+                logger.info("Stored the Group snapshot in SSM parameter {}, version {}",
+                        options.get("parameter"), version);
+            }
+        }
+        if (!options.containsKey("output") && !options.containsKey("parameter")) {
+            System.out.println(json);
+        }
+
+        System.out.println(compilation.report());
+        if (!compilation.malformedGroups().isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    private static CognitoGroupDescriptionMetadata parse(final String description) {
+        if (description == null || description.isBlank()) {
+            throw new IllegalArgumentException("The description is empty");
+        }
+        return CognitoGroupDescriptionMetadataExtractor.parseDescription(description);
+    }
+}
@@ -0,0 +1,23 @@
+package gov.nj.innovation.customAwsIdp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Cognito {@code GetGroup} call made by {@link
+ * gov.nj.innovation.customAwsIdp.lambda.helpers.CognitoGroupDescriptionMetadataExtractor}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@Name("gov.nj.innovation.customAwsIdp.CognitoGetGroup")
+@Label("Cognito GetGroup")
+@Category({"Custom AWS IdP", "Group Metadata"})
+@StackTrace(false)
+public class CognitoGetGroupEvent extends Event {
+
+    @Label("Outcome")
+    public String outcome;
+}
@@ -0,0 +1,31 @@
+package gov.nj.innovation.customAwsIdp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Parsing of a Cognito Group description into {@link
+ * gov.nj.innovation.customAwsIdp.lambda.helpers.data.CognitoGroupDescriptionMetadata}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@Name("gov.nj.innovation.customAwsIdp.GroupDescriptionParse")
+@Label("Group Description Parse")
+@Category({"Custom AWS IdP", "Group Metadata"})
+@StackTrace(false)
+public class GroupDescriptionParseEvent extends Event {
+
+    @Label("Description Size")
+    @DataAmount
+    public int descriptionBytes;
+
+    @Label("YAML Fallback")
+    public boolean yamlFallback;
+
+    @Label("Outcome")
+    public String outcome;
+}
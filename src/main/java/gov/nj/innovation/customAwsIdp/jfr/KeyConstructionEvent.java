@@ -0,0 +1,23 @@
+package gov.nj.innovation.customAwsIdp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Construction of the public key, private key, and certificate inside {@link
+ * gov.nj.innovation.customAwsIdp.keys.KeysWrapper}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@Name("gov.nj.innovation.customAwsIdp.KeyConstruction")
+@Label("Key Construction")
+@Category({"Custom AWS IdP", "Keys"})
+@StackTrace(false)
+public class KeyConstructionEvent extends Event {
+
+    @Label("Outcome")
+    public String outcome;
+}
@@ -0,0 +1,23 @@
+package gov.nj.innovation.customAwsIdp.jfr;
+
+/**
+ * The values of each stage event's {@code outcome}, so that a recording shows the calls which failed or ran out of
+ * time next to those which succeeded.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public final class Outcomes {
+
+    /** The stage completed */
+    public static final String OK = "OK";
+
+    private Outcomes() {}
+
+    /**
+     * @param e What the stage threw
+     * @return The outcome of a stage which threw {@code e}, e.g. {@code DeadlineExceededException}.
+     */
+    public static String of(final Throwable e) {
+        return e.getClass().getSimpleName();
+    }
+}
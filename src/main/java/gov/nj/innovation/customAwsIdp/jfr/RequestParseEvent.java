@@ -0,0 +1,22 @@
+package gov.nj.innovation.customAwsIdp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Extraction and validation of the path, query, and authorizer details from the handler input.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@Name("gov.nj.innovation.customAwsIdp.RequestParse")
+@Label("Request Parse")
+@Category({"Custom AWS IdP", "Lambda"})
+@StackTrace(false)
+public class RequestParseEvent extends Event {
+
+    @Label("Outcome")
+    public String outcome;
+}
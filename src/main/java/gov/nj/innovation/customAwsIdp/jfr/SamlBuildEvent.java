@@ -0,0 +1,25 @@
+package gov.nj.innovation.customAwsIdp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Building the unsigned SAML Response model and its DOM {@link org.w3c.dom.Document}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@Name("gov.nj.innovation.customAwsIdp.SamlBuild")
+@Label("SAML Build")
+@Category({"Custom AWS IdP", "SAML"})
+@StackTrace(false)
+public class SamlBuildEvent extends Event {
+
+    @Label("Attribute Count")
+    public int attributeCount;
+
+    @Label("Outcome")
+    public String outcome;
+}
@@ -0,0 +1,31 @@
+package gov.nj.innovation.customAwsIdp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Serializing the signed SAML Response document and Base64-encoding it.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@Name("gov.nj.innovation.customAwsIdp.SamlEncode")
+@Label("SAML Encode")
+@Category({"Custom AWS IdP", "SAML"})
+@StackTrace(false)
+public class SamlEncodeEvent extends Event {
+
+    @Label("Document Size")
+    @DataAmount
+    public int documentBytes;
+
+    @Label("Encoded Size")
+    @DataAmount
+    public int encodedBytes;
+
+    @Label("Outcome")
+    public String outcome;
+}
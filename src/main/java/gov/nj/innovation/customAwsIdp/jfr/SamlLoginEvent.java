@@ -0,0 +1,29 @@
+package gov.nj.innovation.customAwsIdp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One call to {@link gov.nj.innovation.customAwsIdp.lambda.GetSamlResponseHandler#handleRequest}, from input to
+ * returned map. Nothing identifying the user or their groups is recorded, only counts and the outcome.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@Name("gov.nj.innovation.customAwsIdp.SamlLogin")
+@Label("SAML Login")
+@Category({"Custom AWS IdP", "Lambda"})
+@StackTrace(false)
+public class SamlLoginEvent extends Event {
+
+    @Label("Status")
+    public String status;
+
+    @Label("Group Count")
+    public int groupCount;
+
+    @Label("Session Duration (seconds)")
+    public int sessionDuration;
+}
@@ -0,0 +1,25 @@
+package gov.nj.innovation.customAwsIdp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Signing the assertion of the SAML Response document.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@Name("gov.nj.innovation.customAwsIdp.SamlSign")
+@Label("SAML Sign")
+@Category({"Custom AWS IdP", "SAML"})
+@StackTrace(false)
+public class SamlSignEvent extends Event {
+
+    @Label("Signature Algorithm")
+    public String signatureAlgorithm;
+
+    @Label("Outcome")
+    public String outcome;
+}
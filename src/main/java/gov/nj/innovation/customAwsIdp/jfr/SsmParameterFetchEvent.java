@@ -0,0 +1,26 @@
+package gov.nj.innovation.customAwsIdp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One {@code GetParameter} or {@code GetParameters} call, e.g. while loading {@link
+ * gov.nj.innovation.customAwsIdp.keys.KeyConstants}. Only the parameter names are recorded, never their values.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+@Name("gov.nj.innovation.customAwsIdp.SsmParameterFetch")
+@Label("SSM Parameter Fetch")
+@Category({"Custom AWS IdP", "Keys"})
+@StackTrace(false)
+public class SsmParameterFetchEvent extends Event {
+
+    @Label("Parameter Name")
+    public String parameterName;
+
+    @Label("Outcome")
+    public String outcome;
+}
@@ -0,0 +1,122 @@
+package gov.nj.innovation.customAwsIdp.keys;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.Provider;
+import java.security.Security;
+import java.util.Locale;
+
+/**
+ * Choose the JCA provider which does the RSA work of a login: building the key objects in {@link KeysWrapper} and the
+ * RSA-SHA256 signatures made by Santuario while signing the SAML Response.
+ * <p>
+ * The choice comes from the {@value #CRYPTO_PROVIDER_ENV} environment variable, one of the {@link Choice} names, and is
+ * applied once per JVM: the chosen provider is moved to the top of the provider list, so that Santuario (which asks
+ * for signatures by algorithm only) is served by it, and {@link KeysWrapper} asks it for its key factory directly. When
+ * the chosen provider cannot be loaded, e.g. the Amazon Corretto Crypto Provider (ACCP) without its native library for
+ * this platform, a warning is logged and the JDK's defaults are left in place.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class CryptoProviders {
+
+    public static final String CRYPTO_PROVIDER_ENV = "CRYPTO_PROVIDER";
+    private static final Logger logger = LogManager.getLogger(CryptoProviders.class);
+    private static final String ACCP_CLASS = "com.amazon.corretto.crypto.provider.AmazonCorrettoCryptoProvider";
+
+    public enum Choice {
+        /** Leave the JDK's provider list untouched */
+        DEFAULT,
+        /** The JDK's own RSA provider */
+        SUN_RSA_SIGN,
+        /** Amazon Corretto Crypto Provider, native code for Linux x86_64 and aarch64 */
+        ACCP,
+        /** BouncyCastle, which is on the class path anyway for building the certificate */
+        BOUNCY_CASTLE
+    }
+
+    private CryptoProviders() {}
+
+    /**
+     * @return The provider installed for this JVM, or null when the JDK's defaults are used.
+     */
+    public static Provider signingProvider() {
+        return Installed.PROVIDER;
+    }
+
+    /**
+     * @return The single BouncyCastle instance shared by everything which needs it explicitly.
+     */
+    public static Provider bouncyCastle() {
+        return BouncyCastleHolder.INSTANCE;
+    }
+
+    /**
+     * Parse the configured choice, treating a missing or unknown value as {@link Choice#DEFAULT}.
+     *
+     * @param value The environment variable's value, possibly null
+     * @return The choice.
+     */
+    public static Choice parse(final String value) {
+        if (value == null || value.isBlank()) {
+            return Choice.DEFAULT;
+        }
+        try {
+            return Choice.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (final IllegalArgumentException e) {
+            logger.warn("Unknown {} '{}', using the JDK defaults", CRYPTO_PROVIDER_ENV, value);
+            return Choice.DEFAULT;
+        }
+    }
+
+    /**
+     * Load the provider for a choice without installing it.
+     *
+     * @param choice The configured choice
+     * @return The provider, or null for {@link Choice#DEFAULT} or when the provider is not usable here.
+     */
+    public static Provider load(final Choice choice) {
+        return switch (choice) {
+            case DEFAULT -> null;
+            case SUN_RSA_SIGN -> Security.getProvider("SunRsaSign");
+            case BOUNCY_CASTLE -> bouncyCastle();
+            case ACCP -> loadAccp();
+        };
+    }
+
+    private static Provider loadAccp() {
+        try {
+            final Class<?> accpClass = Class.forName(ACCP_CLASS);
+            final Provider accp = (Provider) accpClass.getField("INSTANCE").get(null);
+            // Throws when the native library could not be loaded for this platform
+            accpClass.getMethod("assertHealthy").invoke(accp);
+            return accp;
+        } catch (final ReflectiveOperationException | LinkageError | RuntimeException e) {
+            logger.warn("Amazon Corretto Crypto Provider is unavailable, using the JDK defaults: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Put the provider at the top of the list, moving it there if it was already registered lower down.
+     */
+    private static Provider install(final Provider provider) {
+        if (provider == null) {
+            return null;
+        }
+        Security.removeProvider(provider.getName());
+        Security.insertProviderAt(provider, 1);
+        logger.info("Installed {} as the preferred crypto provider", provider.getName());
+        return provider;
+    }
+
+    private static class Installed {
+        private static final Provider PROVIDER = install(load(parse(System.getenv(CRYPTO_PROVIDER_ENV))));
+    }
+
+    private static class BouncyCastleHolder {
+        private static final Provider INSTANCE = new BouncyCastleProvider();
+    }
+}
@@ -0,0 +1,143 @@
+package gov.nj.innovation.customAwsIdp.keys;
+
+import gov.nj.innovation.customAwsIdp.exception.KeyGenerationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Render the SAML metadata document which the IAM Identity Provider is created from, {@value #RESOURCE}, with a
+ * signing {@code KeyDescriptor} for each of the given certificates in place of the bundled one.
+ * <p>
+ * IAM accepts a SAML Response signed by any certificate in the metadata, so publishing both the current and the next
+ * certificate before the key-secrets are rotated lets every container switch keys in its own time without a failed
+ * login, see {@link SigningKeyRotation}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public final class IdentityProviderMetadata {
+
+    public static final String RESOURCE = "identity-provider-metadata.xml";
+    private static final String METADATA_NS = "urn:oasis:names:tc:SAML:2.0:metadata";
+    private static final String DSIG_NS = "http://www.w3.org/2000/09/xmldsig#";
+    private static final String INDENT = "\n        ";
+
+    private IdentityProviderMetadata() {
+    }
+
+    /**
+     * @param certificates The certificates to publish, in order; a certificate given twice is published once
+     * @return The metadata document.
+     * @throws KeyGenerationException When the bundled metadata cannot be read or a certificate cannot be encoded
+     */
+    public static String render(final List<X509Certificate> certificates) {
+        final Document document = parseTemplate();
+        final Element descriptor = (Element) document
+                .getElementsByTagNameNS(METADATA_NS, "IDPSSODescriptor").item(0);
+
+        // Drop the bundled signing certificate with the indentation after it, remembering where it was
+        Node insertBefore = null;
+        for (Node child = descriptor.getFirstChild(); child != null; ) {
+            Node next = child.getNextSibling();
+            if (child instanceof Element element && isSigningKeyDescriptor(element)) {
+                if (next != null && next.getNodeType() == Node.TEXT_NODE && next.getTextContent().isBlank()) {
+                    final Node whitespace = next;
+                    next = next.getNextSibling();
+                    descriptor.removeChild(whitespace);
+                }
+                descriptor.removeChild(element);
+                insertBefore = next;
+            }
+            child = next;
+        }
+        if (insertBefore == null) {
+            insertBefore = descriptor.getFirstChild();
+        }
+
+        final List<byte[]> published = new ArrayList<>();
+        for (final X509Certificate certificate : certificates) {
+            final byte[] encoded = encode(certificate);
+            if (published.stream().anyMatch(other -> Arrays.equals(other, encoded))) {
+                continue;
+            }
+            published.add(encoded);
+            descriptor.insertBefore(keyDescriptor(document, encoded), insertBefore);
+            descriptor.insertBefore(document.createTextNode(INDENT), insertBefore);
+        }
+        return serialize(document);
+    }
+
+    private static boolean isSigningKeyDescriptor(final Element element) {
+        return METADATA_NS.equals(element.getNamespaceURI()) && "KeyDescriptor".equals(element.getLocalName())
+                && !"encryption".equals(element.getAttribute("use"));
+    }
+
+    private static Element keyDescriptor(final Document document, final byte[] encodedCertificate) {
+        final Element keyDescriptor = document.createElementNS(METADATA_NS, "md:KeyDescriptor");
+        keyDescriptor.setAttribute("use", "signing");
+        final Element keyInfo = document.createElementNS(DSIG_NS, "ds:KeyInfo");
+        final Element x509Data = document.createElementNS(DSIG_NS, "ds:X509Data");
+        final Element x509Certificate = document.createElementNS(DSIG_NS, "ds:X509Certificate");
+        x509Certificate.setTextContent(Base64.getEncoder().encodeToString(encodedCertificate));
+        x509Data.appendChild(x509Certificate);
+        keyInfo.appendChild(x509Data);
+        keyDescriptor.appendChild(keyInfo);
+        return keyDescriptor;
+    }
+
+    private static byte[] encode(final X509Certificate certificate) {
+        try {
+            return certificate.getEncoded();
+        } catch (final CertificateEncodingException e) {
+            throw new KeyGenerationException("Could not encode the certificate: " + e.getMessage(), e);
+        }
+    }
+
+    private static Document parseTemplate() {
+        try (final InputStream template = IdentityProviderMetadata.class.getClassLoader()
+                .getResourceAsStream(RESOURCE)) {
+            if (template == null) {
+                throw new KeyGenerationException("The metadata template " + RESOURCE + " is missing", null);
+            }
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            return factory.newDocumentBuilder().parse(template);
+        } catch (final IOException | ParserConfigurationException | SAXException e) {
+            throw new KeyGenerationException("Could not read the metadata template: " + e.getMessage(), e);
+        }
+    }
+
+    private static String serialize(final Document document) {
+        try {
+            final StringWriter writer = new StringWriter();
+            final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            transformer.transform(new DOMSource(document), new StreamResult(writer));
+            return writer.toString();
+        } catch (final TransformerException e) {
+            throw new KeyGenerationException("Could not write the metadata: " + e.getMessage(), e);
+        }
+    }
+}
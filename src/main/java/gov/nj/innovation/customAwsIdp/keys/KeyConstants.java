@@ -1,12 +1,21 @@
 package gov.nj.innovation.customAwsIdp.keys;
 
-import gov.nj.innovation.customAwsIdp.util.SsmClientWrapper;
+import gov.nj.innovation.customAwsIdp.exception.KeyGenerationException;
 import org.bouncycastle.asn1.x500.X500Name;
-import software.amazon.awssdk.services.ssm.SsmClient;
 
 import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_CERT_NOT_BEFORE_NAME;
 import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_CRT_COEFFICIENT_NAME;
 import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_EXPONENT_P_NAME;
 import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_EXPONENT_Q_NAME;
@@ -17,6 +26,15 @@ import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIVATE_EXPONENT
 /**
  * Store the constants needed for generating keys; some which are public, and some which are secrets populated from
  * environment variables and SSM.
+ * <p>
+ * The secrets are stored in six separate SSM parameters, so while they are being rotated they may be read from two
+ * different keys. {@link #fromSecrets(Map)} therefore derives the modulus from the primes and checks every secret
+ * against the others, refusing any set that does not make up one RSA key.
+ * <p>
+ * Each key's certificate has its own serial, derived from the modulus, and its own validity window, starting when the
+ * key was staged as recorded in {@value gov.nj.innovation.customAwsIdp.util.Constants#KEY_CERT_NOT_BEFORE_NAME}. A key
+ * without that parameter, i.e. one from before it existed, keeps the fixed serial and window its certificate was
+ * first published with, so that the certificate still matches the one in the Identity Provider.
  *
  * @author Case Walker (case@innovation.nj.gov)
  */
@@ -36,37 +54,155 @@ public record KeyConstants(
         String jcaSignerSignatureAlg
 ) {
 
-    private static final BigInteger KEY_MODULUS = new BigInteger(
-            "186207792853874271571279459245893970033952627841455523147130859272884847880052280823" +
-                    "9569494436513647099329450690108068407106345868752865353856531579488503178218" +
-                    "5915972217579869940563691599030649406130191546150630364063192500449708934462" +
-                    "9627298190613541869108251398962357460408138626841628759181065577547704564137" +
-                    "2876147025464781569143101414272935598172769429909845933379294445552939069387" +
-                    "8897800453375015283804978854638032254433921291138591065482714913699271839322" +
-                    "2538010532882824562974521623107950688203553158025280423089593531967242884220" +
-                    "99768495627357285435626145610679202888676240909221166688413303345247117760811"
-    );
     private static final BigInteger KEY_PUBLIC_EXPONENT = new BigInteger("65537");
     private static final X500Name CERT_SUBJECT = new X500Name("CN=AwsConnectStandaloneIdP");
     private static final BigInteger CERT_SERIAL = new BigInteger("1696019667843");
     private static final Date CERT_NOT_BEFORE = new Date(1696019567000L);
     private static final Date CERT_NOT_AFTER = new Date(2011638867000L);
+    private static final long CERT_VALIDITY_MILLIS = CERT_NOT_AFTER.getTime() - CERT_NOT_BEFORE.getTime();
+    /** Half of SHA-256, well within the 20 octets RFC 5280 allows a serial */
+    private static final int CERT_SERIAL_BYTES = 16;
     private static final String JCA_SIGNER_SIGNATURE_ALG = "SHA256WithRSA";
+    /** Half of the smallest key accepted, RSA-2048 as {@link SigningKeyRotation} generates */
+    private static final int MIN_PRIME_BITS = 1024;
 
-    public KeyConstants(final SsmClient ssmClient) {
-        this(KEY_MODULUS,
+    /** The SSM parameters holding the key-secrets, in the order they are read. */
+    public static final List<String> SECRET_NAMES = List.of(
+            KEY_PRIVATE_EXPONENT_NAME,
+            KEY_PRIME_P_NAME,
+            KEY_PRIME_Q_NAME,
+            KEY_PRIME_EXPONENT_P_NAME,
+            KEY_PRIME_EXPONENT_Q_NAME,
+            KEY_CRT_COEFFICIENT_NAME);
+
+    /**
+     * The SSM parameters read for a key: the key-secrets, then the start of its certificate's validity, which keys
+     * staged before it existed do not have.
+     */
+    public static final List<String> PARAMETER_NAMES = List.of(
+            KEY_PRIVATE_EXPONENT_NAME,
+            KEY_PRIME_P_NAME,
+            KEY_PRIME_Q_NAME,
+            KEY_PRIME_EXPONENT_P_NAME,
+            KEY_PRIME_EXPONENT_Q_NAME,
+            KEY_CRT_COEFFICIENT_NAME,
+            KEY_CERT_NOT_BEFORE_NAME);
+
+    /**
+     * Build the constants from the key-secrets, as read from SSM.
+     *
+     * @param secrets The value of each of {@link #PARAMETER_NAMES}, by name; only the start of the certificate's
+     * validity, in seconds since the epoch, may be missing
+     * @return The constants, with the modulus derived from the primes.
+     * @throws KeyGenerationException When a secret or the start of the validity is malformed, a secret is missing, a
+     * prime is too small to be part of an RSA-2048 key, or the secrets are not all from one key, e.g. because some were
+     * read before a rotation and some after
+     */
+    public static KeyConstants fromSecrets(final Map<String, String> secrets) {
+        final BigInteger privateExponent = secret(secrets, KEY_PRIVATE_EXPONENT_NAME);
+        final BigInteger primeP = secret(secrets, KEY_PRIME_P_NAME);
+        final BigInteger primeQ = secret(secrets, KEY_PRIME_Q_NAME);
+        final BigInteger primeExponentP = secret(secrets, KEY_PRIME_EXPONENT_P_NAME);
+        final BigInteger primeExponentQ = secret(secrets, KEY_PRIME_EXPONENT_Q_NAME);
+        final BigInteger crtCoefficient = secret(secrets, KEY_CRT_COEFFICIENT_NAME);
+
+        final BigInteger pMinusOne = primeP.subtract(BigInteger.ONE);
+        final BigInteger qMinusOne = primeQ.subtract(BigInteger.ONE);
+        if (!isPrimeSized(primeP) || !isPrimeSized(primeQ)
+                || !privateExponent.mod(pMinusOne).equals(primeExponentP)
+                || !privateExponent.mod(qMinusOne).equals(primeExponentQ)
+                || !KEY_PUBLIC_EXPONENT.multiply(primeExponentP).mod(pMinusOne).equals(BigInteger.ONE)
+                || !KEY_PUBLIC_EXPONENT.multiply(primeExponentQ).mod(qMinusOne).equals(BigInteger.ONE)
+                || !crtCoefficient.multiply(primeQ).mod(primeP).equals(BigInteger.ONE)) {
+            throw new KeyGenerationException("The key-secrets do not make up one RSA key; check that they are all "
+                    + "from the same key, or that a rotation is not half-way done", null);
+        }
+
+        final BigInteger modulus = primeP.multiply(primeQ);
+        final Date notBefore = parseCertNotBefore(secrets);
+        return new KeyConstants(modulus,
                 KEY_PUBLIC_EXPONENT,
-                new BigInteger(SsmClientWrapper.getParameterByName(ssmClient, KEY_PRIVATE_EXPONENT_NAME)),
-                new BigInteger(SsmClientWrapper.getParameterByName(ssmClient, KEY_PRIME_P_NAME)),
-                new BigInteger(SsmClientWrapper.getParameterByName(ssmClient, KEY_PRIME_Q_NAME)),
-                new BigInteger(SsmClientWrapper.getParameterByName(ssmClient, KEY_PRIME_EXPONENT_P_NAME)),
-                new BigInteger(SsmClientWrapper.getParameterByName(ssmClient, KEY_PRIME_EXPONENT_Q_NAME)),
-                new BigInteger(SsmClientWrapper.getParameterByName(ssmClient, KEY_CRT_COEFFICIENT_NAME)),
+                privateExponent,
+                primeP,
+                primeQ,
+                primeExponentP,
+                primeExponentQ,
+                crtCoefficient,
                 CERT_SUBJECT,
-                CERT_SERIAL,
-                CERT_NOT_BEFORE,
-                CERT_NOT_AFTER,
+                notBefore.equals(CERT_NOT_BEFORE) ? CERT_SERIAL : certSerial(modulus),
+                notBefore,
+                new Date(notBefore.getTime() + CERT_VALIDITY_MILLIS),
                 JCA_SIGNER_SIGNATURE_ALG
         );
     }
+
+    /**
+     * @param key An RSA private key in CRT form, e.g. freshly generated or read from a keystore
+     * @return The key's secrets as they are stored in SSM, by name, in the order of {@link #SECRET_NAMES}.
+     */
+    public static Map<String, String> secretsOf(final RSAPrivateCrtKey key) {
+        final Map<String, String> secrets = new LinkedHashMap<>();
+        secrets.put(KEY_PRIVATE_EXPONENT_NAME, key.getPrivateExponent().toString());
+        secrets.put(KEY_PRIME_P_NAME, key.getPrimeP().toString());
+        secrets.put(KEY_PRIME_Q_NAME, key.getPrimeQ().toString());
+        secrets.put(KEY_PRIME_EXPONENT_P_NAME, key.getPrimeExponentP().toString());
+        secrets.put(KEY_PRIME_EXPONENT_Q_NAME, key.getPrimeExponentQ().toString());
+        secrets.put(KEY_CRT_COEFFICIENT_NAME, key.getCrtCoefficient().toString());
+        return secrets;
+    }
+
+    /**
+     * @param notBefore The start of a certificate's validity, e.g. when its key is staged
+     * @return The value stored under {@value gov.nj.innovation.customAwsIdp.util.Constants#KEY_CERT_NOT_BEFORE_NAME}
+     * for it.
+     */
+    public static String certNotBeforeValue(final Instant notBefore) {
+        return Long.toString(notBefore.getEpochSecond());
+    }
+
+    private static BigInteger secret(final Map<String, String> secrets, final String name) {
+        final String value = secrets.get(name);
+        if (value == null || value.isBlank()) {
+            throw new KeyGenerationException("The key-secret " + name + " is missing", null);
+        }
+        try {
+            return new BigInteger(value.strip());
+        } catch (final NumberFormatException e) {
+            throw new KeyGenerationException("The key-secret " + name + " is not an integer", e);
+        }
+    }
+
+    private static Date parseCertNotBefore(final Map<String, String> secrets) {
+        final String value = secrets.get(KEY_CERT_NOT_BEFORE_NAME);
+        if (value == null || value.isBlank()) {
+            return CERT_NOT_BEFORE;
+        }
+        try {
+            return Date.from(Instant.ofEpochSecond(Long.parseLong(value.strip())));
+        } catch (final NumberFormatException | DateTimeException e) {
+            throw new KeyGenerationException("The " + KEY_CERT_NOT_BEFORE_NAME + " is not a number of seconds", e);
+        }
+    }
+
+    /**
+     * @param modulus The key's modulus
+     * @return A positive serial which only this key's certificate has.
+     */
+    private static BigInteger certSerial(final BigInteger modulus) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(modulus.toByteArray());
+            return new BigInteger(1, Arrays.copyOf(digest, CERT_SERIAL_BYTES));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new KeyGenerationException("Could not derive the certificate serial: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param prime One of the key's primes, as read from SSM
+     * @return Whether the prime is positive and long enough, which also keeps {@code prime - 1} from being a zero
+     * modulus in the checks made with it.
+     */
+    private static boolean isPrimeSized(final BigInteger prime) {
+        return prime.signum() > 0 && prime.bitLength() >= MIN_PRIME_BITS;
+    }
 }
@@ -1,28 +1,34 @@
 package gov.nj.innovation.customAwsIdp.keys;
 
 import gov.nj.innovation.customAwsIdp.exception.KeyGenerationException;
+import gov.nj.innovation.customAwsIdp.jfr.KeyConstructionEvent;
+import gov.nj.innovation.customAwsIdp.jfr.Outcomes;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.jetbrains.annotations.VisibleForTesting;
 
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
+import java.security.Provider;
 import java.security.PublicKey;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
-import java.security.spec.RSAMultiPrimePrivateCrtKeySpec;
+import java.security.spec.RSAPrivateCrtKeySpec;
 import java.security.spec.RSAPublicKeySpec;
 
 /**
  * House the {@link PublicKey}, {@link PrivateKey}, and {@link X509Certificate} used for signing a SAML Assertion. As
  * well, generate these members from the more basic elements contained in {@link KeyConstants}.
+ * <p>
+ * The keys come from the provider chosen by {@link CryptoProviders}, so that the objects handed to the signer are the
+ * chosen provider's own and no key translation happens on each signature.
  *
  * @author Case Walker (case@innovation.nj.gov)
  */
@@ -34,52 +40,79 @@ public class KeysWrapper {
     private final X509Certificate x509Certificate;
 
     public KeysWrapper(final KeyConstants keyConstants) {
-        final KeyFactory keyFactory;
-        try {
-            keyFactory = KeyFactory.getInstance(KEY_FACTORY_ALG);
-        } catch (final NoSuchAlgorithmException e) {
-            throw new KeyGenerationException("Could not get key factory instance: " + e.getMessage(), e);
-        }
+        this(keyConstants, CryptoProviders.signingProvider());
+    }
 
-        final KeySpec publicKeySpec = new RSAPublicKeySpec(keyConstants.modulus(), keyConstants.publicExponent());
+    /**
+     * @param keyConstants The key and certificate details
+     * @param provider The provider to build the keys and sign the certificate with, or null for the JDK defaults
+     */
+    @VisibleForTesting
+    KeysWrapper(final KeyConstants keyConstants, final Provider provider) {
+        final KeyConstructionEvent event = new KeyConstructionEvent();
+        event.begin();
         try {
-            this.publicKey = keyFactory.generatePublic(publicKeySpec);
-        } catch (final InvalidKeySpecException e) {
-            throw new KeyGenerationException("Could not construct public key: " + e.getMessage(), e);
-        }
+            final KeyFactory keyFactory;
+            try {
+                keyFactory = provider != null ?
+                        KeyFactory.getInstance(KEY_FACTORY_ALG, provider) : KeyFactory.getInstance(KEY_FACTORY_ALG);
+            } catch (final NoSuchAlgorithmException e) {
+                throw new KeyGenerationException("Could not get key factory instance: " + e.getMessage(), e);
+            }
 
-        final RSAMultiPrimePrivateCrtKeySpec privateKeySpec = new RSAMultiPrimePrivateCrtKeySpec(
-                keyConstants.modulus(),
-                keyConstants.publicExponent(),
-                keyConstants.privateExponent(),
-                keyConstants.primeP(),
-                keyConstants.primeQ(),
-                keyConstants.primeExponentP(),
-                keyConstants.primeExponentQ(),
-                keyConstants.crtCoefficient(),
-                null
-        );
-        try {
-            this.privateKey = keyFactory.generatePrivate(privateKeySpec);
-        } catch (final InvalidKeySpecException e) {
-            throw new KeyGenerationException("Could not construct private key: " + e.getMessage(), e);
-        }
+            final KeySpec publicKeySpec = new RSAPublicKeySpec(keyConstants.modulus(), keyConstants.publicExponent());
+            try {
+                this.publicKey = keyFactory.generatePublic(publicKeySpec);
+            } catch (final InvalidKeySpecException e) {
+                throw new KeyGenerationException("Could not construct public key: " + e.getMessage(), e);
+            }
 
-        final X509v3CertificateBuilder certificateBuilder = new X509v3CertificateBuilder(
-                keyConstants.certSubject(),
-                keyConstants.certSerial(),
-                keyConstants.certNotBefore(),
-                keyConstants.certNotAfter(),
-                keyConstants.certSubject(),
-                SubjectPublicKeyInfo.getInstance(this.publicKey.getEncoded())
-        );
-        try {
-            final ContentSigner signer = new JcaContentSignerBuilder(keyConstants.jcaSignerSignatureAlg())
-                    .setProvider(new BouncyCastleProvider())
-                    .build(this.privateKey);
-            this.x509Certificate = new JcaX509CertificateConverter().getCertificate(certificateBuilder.build(signer));
-        } catch (final OperatorCreationException | CertificateException e) {
-            throw new KeyGenerationException("Could not construct X509Certificate: " + e.getMessage(), e);
+            // The CRT form signs several times faster than a plain (n, d) key, and the JDK checks every CRT signature
+            // against the modulus, so primes which do not make up the modulus are refused rather than signed
+            // without CRT
+            if (!keyConstants.primeP().multiply(keyConstants.primeQ()).equals(keyConstants.modulus())) {
+                throw new KeyGenerationException("The key's primes do not make up its modulus", null);
+            }
+            final KeySpec privateKeySpec = new RSAPrivateCrtKeySpec(
+                    keyConstants.modulus(),
+                    keyConstants.publicExponent(),
+                    keyConstants.privateExponent(),
+                    keyConstants.primeP(),
+                    keyConstants.primeQ(),
+                    keyConstants.primeExponentP(),
+                    keyConstants.primeExponentQ(),
+                    keyConstants.crtCoefficient()
+            );
+            try {
+                this.privateKey = keyFactory.generatePrivate(privateKeySpec);
+            } catch (final InvalidKeySpecException e) {
+                throw new KeyGenerationException("Could not construct private key: " + e.getMessage(), e);
+            }
+
+            final X509v3CertificateBuilder certificateBuilder = new X509v3CertificateBuilder(
+                    keyConstants.certSubject(),
+                    keyConstants.certSerial(),
+                    keyConstants.certNotBefore(),
+                    keyConstants.certNotAfter(),
+                    keyConstants.certSubject(),
+                    SubjectPublicKeyInfo.getInstance(this.publicKey.getEncoded())
+            );
+            try {
+                // The certificate is built once per key, so BouncyCastle signs it unless a provider was chosen
+                final ContentSigner signer = new JcaContentSignerBuilder(keyConstants.jcaSignerSignatureAlg())
+                        .setProvider(provider != null ? provider : CryptoProviders.bouncyCastle())
+                        .build(this.privateKey);
+                this.x509Certificate =
+                        new JcaX509CertificateConverter().getCertificate(certificateBuilder.build(signer));
+            } catch (final OperatorCreationException | CertificateException e) {
+                throw new KeyGenerationException("Could not construct X509Certificate: " + e.getMessage(), e);
+            }
+            event.outcome = Outcomes.OK;
+        } catch (final RuntimeException e) {
+            event.outcome = Outcomes.of(e);
+            throw e;
+        } finally {
+            event.commit();
         }
     }
 
@@ -0,0 +1,216 @@
+package gov.nj.innovation.customAwsIdp.keys;
+
+import gov.nj.innovation.customAwsIdp.exception.KeyGenerationException;
+import gov.nj.innovation.customAwsIdp.util.Deadline;
+import gov.nj.innovation.customAwsIdp.util.SsmClientWrapper;
+import gov.nj.innovation.customAwsIdp.util.SsmClientWrapper.VersionedParameter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.VisibleForTesting;
+import software.amazon.awssdk.services.ssm.SsmClient;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_CERT_NOT_BEFORE_NAME;
+
+/**
+ * Keep the {@link KeysWrapper} built from the key-secrets for the life of the container, and notice when the secrets
+ * are rotated.
+ * <p>
+ * The six secrets, and the start of the certificate's validity when there is one, are read in one {@code
+ * GetParameters} call, and the cache remembers the SSM version of each. At most
+ * once per probe interval ({@value #PROBE_INTERVAL_ENV} in seconds, default {@value #DEFAULT_PROBE_INTERVAL_SECONDS})
+ * one caller asks SSM for the versions alone, without decryption, while every other caller keeps using the cached
+ * keys. When any version has changed, the secrets are read again by exactly the probed versions ({@code name:version})
+ * and checked by {@link KeyConstants#fromSecrets(Map)} before the new keys replace the old in a single swap, so a
+ * caller only ever sees one whole key. A probe or load which fails, or which finds a half-rotated set, is logged and
+ * leaves the cached keys in use until the next interval; only when nothing is cached yet does the failure reach the
+ * caller.
+ * <p>
+ * A container with nothing cached reads the latest versions, and a promotion writes the six secrets one at a time, so
+ * a read in the middle of one can see some of the old key's secrets and some of the new key's. Such a set is read
+ * again after a short backoff, a few times and only while the caller's deadline allows, before the failure is passed
+ * on; a promotion is done well within that time.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class SigningKeyCache {
+
+    public static final String PROBE_INTERVAL_ENV = "KEY_VERSION_PROBE_INTERVAL_SECONDS";
+    private static final Logger logger = LogManager.getLogger(SigningKeyCache.class);
+    private static final long DEFAULT_PROBE_INTERVAL_SECONDS = 60;
+    private static final Duration FIRST_RELOAD_BACKOFF = Duration.ofMillis(100);
+    private static final int MAX_RELOADS = 3;
+    private static final Set<String> OPTIONAL_NAMES = Set.of(KEY_CERT_NOT_BEFORE_NAME);
+
+    /**
+     * The keys to sign with.
+     *
+     * @param keys The keys
+     * @param fromCache Whether they were already cached, rather than read from SSM for this caller
+     */
+    public record Lookup(KeysWrapper keys, boolean fromCache) {}
+
+    /**
+     * The keys together with the versions of the secrets they were built from, swapped as one.
+     */
+    private record VersionedKeys(KeysWrapper keys, Map<String, Long> versions, long checkedAtNanos) {
+        VersionedKeys checkedAt(final long nanos) {
+            return new VersionedKeys(keys, versions, nanos);
+        }
+    }
+
+    private final SsmClient ssmClient;
+    private final long probeIntervalNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicReference<VersionedKeys> current = new AtomicReference<>();
+    private final ReentrantLock probeLock = new ReentrantLock();
+
+    /**
+     * @param ssmClient Client used to fetch the key-secrets and their versions
+     */
+    public SigningKeyCache(final SsmClient ssmClient) {
+        this(ssmClient, Duration.ofSeconds(parseProbeInterval(System.getenv(PROBE_INTERVAL_ENV))), System::nanoTime);
+    }
+
+    /**
+     * @param ssmClient Client used to fetch the key-secrets and their versions
+     * @param probeInterval How long the cached versions are trusted before they are probed again
+     * @param nanoClock The clock the interval is measured with
+     */
+    @VisibleForTesting
+    SigningKeyCache(final SsmClient ssmClient, final Duration probeInterval, final LongSupplier nanoClock) {
+        this.ssmClient = ssmClient;
+        this.probeIntervalNanos = probeInterval.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param deadline The caller's deadline, which bounds any call to SSM
+     * @return The keys from the latest complete set of key-secrets seen.
+     * @throws RuntimeException When nothing is cached yet and the secrets could not be loaded
+     */
+    public Lookup get(final Deadline deadline) {
+        final VersionedKeys cached = current.get();
+        if (cached == null) {
+            final VersionedKeys loaded = loadLatest(deadline);
+            // Another caller may have loaded them at the same time, in which case either set is as good
+            return new Lookup(current.compareAndSet(null, loaded) ? loaded.keys : current.get().keys, false);
+        }
+        if (nanoClock.getAsLong() - cached.checkedAtNanos < probeIntervalNanos || !probeLock.tryLock()) {
+            return new Lookup(cached.keys, true);
+        }
+        try {
+            // Another caller may have probed between reading the cache and taking the lock
+            final VersionedKeys latest = current.get();
+            if (nanoClock.getAsLong() - latest.checkedAtNanos < probeIntervalNanos) {
+                return new Lookup(latest.keys, true);
+            }
+            return probe(latest, deadline);
+        } finally {
+            probeLock.unlock();
+        }
+    }
+
+    /**
+     * @return The versions of the key-secrets the cached keys were built from, or null when nothing is cached.
+     */
+    @VisibleForTesting
+    Map<String, Long> versions() {
+        final VersionedKeys cached = current.get();
+        return cached != null ? cached.versions : null;
+    }
+
+    private Lookup probe(final VersionedKeys cached, final Deadline deadline) {
+        final Map<String, Long> versions = new HashMap<>();
+        try {
+            SsmClientWrapper.getParameters(ssmClient, KeyConstants.PARAMETER_NAMES, OPTIONAL_NAMES, false, deadline)
+                    .values().forEach(parameter -> versions.put(parameter.name(), parameter.version()));
+        } catch (final RuntimeException e) {
+            logger.warn("Could not probe the key-secret versions, keeping the cached keys: {}", e.toString());
+            current.set(cached.checkedAt(nanoClock.getAsLong()));
+            return new Lookup(cached.keys, true);
+        }
+        if (versions.equals(cached.versions)) {
+            current.set(cached.checkedAt(nanoClock.getAsLong()));
+            return new Lookup(cached.keys, true);
+        }
+
+        try {
+            final VersionedKeys loaded = load(versions, deadline);
+            current.set(loaded);
+            logger.info("The key-secrets changed from versions {} to {}, signing with the new key",
+                    cached.versions, loaded.versions);
+            return new Lookup(loaded.keys, false);
+        } catch (final RuntimeException e) {
+            logger.warn("The key-secrets at versions {} could not be used, keeping the key from versions {}: {}",
+                    versions, cached.versions, e.toString());
+            current.set(cached.checkedAt(nanoClock.getAsLong()));
+            return new Lookup(cached.keys, true);
+        }
+    }
+
+    /**
+     * Read the latest key-secrets, reading them again while they are not one key, e.g. during a promotion.
+     */
+    private VersionedKeys loadLatest(final Deadline deadline) {
+        Duration backoff = FIRST_RELOAD_BACKOFF;
+        for (int reloads = 0; ; reloads++) {
+            try {
+                return load(null, deadline);
+            } catch (final KeyGenerationException e) {
+                if (reloads >= MAX_RELOADS || !deadline.allows(backoff.plus(Deadline.MAX_ATTEMPT))) {
+                    throw e;
+                }
+                logger.warn("The latest key-secrets are not one key, likely mid-rotation; reading them again in {} ms",
+                        backoff.toMillis());
+                try {
+                    Thread.sleep(backoff);
+                } catch (final InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoff = backoff.multipliedBy(2);
+            }
+        }
+    }
+
+    /**
+     * Read the key-secrets in one call, either the latest versions or exactly the given ones, and build the keys.
+     */
+    private VersionedKeys load(final Map<String, Long> versions, final Deadline deadline) {
+        final List<String> names = versions == null ? KeyConstants.PARAMETER_NAMES : versions.entrySet().stream()
+                .map(version -> version.getKey() + ":" + version.getValue())
+                .toList();
+        final Map<String, VersionedParameter> parameters =
+                SsmClientWrapper.getParameters(ssmClient, names, OPTIONAL_NAMES, true, deadline);
+
+        final Map<String, String> secrets = new HashMap<>();
+        final Map<String, Long> loadedVersions = new HashMap<>();
+        parameters.values().forEach(parameter -> {
+            secrets.put(parameter.name(), parameter.value());
+            loadedVersions.put(parameter.name(), parameter.version());
+        });
+        final KeysWrapper keys = new KeysWrapper(KeyConstants.fromSecrets(secrets));
+        return new VersionedKeys(keys, Map.copyOf(loadedVersions), nanoClock.getAsLong());
+    }
+
+    static long parseProbeInterval(final String value) {
+        if (value == null || value.isBlank()) {
+            return DEFAULT_PROBE_INTERVAL_SECONDS;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (final NumberFormatException e) {
+            logger.warn("Invalid {} '{}', using {} s", PROBE_INTERVAL_ENV, value, DEFAULT_PROBE_INTERVAL_SECONDS);
+            return DEFAULT_PROBE_INTERVAL_SECONDS;
+        }
+    }
+}
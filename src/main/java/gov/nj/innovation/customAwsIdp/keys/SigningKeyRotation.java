@@ -0,0 +1,291 @@
+package gov.nj.innovation.customAwsIdp.keys;
+
+import gov.nj.innovation.customAwsIdp.exception.KeyGenerationException;
+import gov.nj.innovation.customAwsIdp.util.AwsClients;
+import gov.nj.innovation.customAwsIdp.util.Deadline;
+import gov.nj.innovation.customAwsIdp.util.SsmClientWrapper;
+import gov.nj.innovation.customAwsIdp.util.SsmClientWrapper.VersionedParameter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.services.ssm.SsmClient;
+import software.amazon.awssdk.services.ssm.model.ParameterType;
+import software.amazon.awssdk.services.ssm.model.PutParameterRequest;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_CERT_NOT_BEFORE_NAME;
+
+/**
+ * Rotate the signing key without a window in which logins fail, in three steps:
+ * <ol>
+ *     <li>{@code stage}: generate a new RSA-2048 key and store its secrets next to the current ones, under the same
+ *         names with {@value #NEXT_SUFFIX} appended, together with the time it was staged, from which its certificate
+ *         is valid</li>
+ *     <li>{@code metadata}: render the IdP metadata with both the current and the staged certificate, to update the
+ *         IAM Identity Provider with, so that IAM accepts Responses signed by either key</li>
+ *     <li>{@code promote}: check the staged secrets and copy them over the current ones; each container's {@link
+ *         SigningKeyCache} notices the new versions within its probe interval and starts signing with the new key</li>
+ * </ol>
+ * Once every container has had a probe interval to switch, {@code retire} renders only the new certificate, and the
+ * Identity Provider is updated again to retire the old key.
+ * <p>
+ * The Lambda reads the key-secrets from its own Region's SSM, so every step is applied to each of the Regions given,
+ * which all share the one Identity Provider: the same key is staged in every Region, {@code metadata} publishes every
+ * certificate any of them may sign with, {@code promote} only copies a key staged identically in all of them, and
+ * {@code retire} refuses while any Region still signs with another key than the rest.
+ * <p>
+ * Run with {@code ./gradlew rotateSigningKey -PkeyRotationArgs="..."}, giving {@code key=value} arguments:
+ * <ul>
+ *     <li>{@code action}: one of {@code stage}, {@code metadata}, {@code promote}, or {@code retire}</li>
+ *     <li>{@code regions}: the comma-separated Regions the Lambda is deployed to, default the Region of the AWS
+ *         configuration</li>
+ *     <li>{@code output}: for {@code metadata} and {@code retire}, a file to write the document to instead of
+ *         printing it</li>
+ *     <li>{@code endpoint}: an endpoint override for SSM, e.g. a local emulator</li>
+ * </ul>
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class SigningKeyRotation {
+
+    public static final String NEXT_SUFFIX = "-next";
+    private static final Logger logger = LogManager.getLogger(SigningKeyRotation.class);
+    private static final int KEY_SIZE = 2048;
+
+    /**
+     * Generate a new key and store its secrets under the {@value #NEXT_SUFFIX} names, replacing any staged before.
+     *
+     * @param ssmClient The client to store the secrets with; it is not closed by this method
+     * @return The staged key's constants.
+     */
+    public static KeyConstants stage(final SsmClient ssmClient) {
+        return stage(Map.of(AwsClients.FUNCTION_REGION, ssmClient));
+    }
+
+    /**
+     * Generate one new key and store its secrets under the {@value #NEXT_SUFFIX} names in every Region, replacing any
+     * staged before.
+     *
+     * @param ssmClients The client for each Region, by Region; they are not closed by this method
+     * @return The staged key's constants.
+     */
+    public static KeyConstants stage(final Map<String, SsmClient> ssmClients) {
+        final RSAPrivateCrtKey key;
+        try {
+            final KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(KEY_SIZE);
+            key = (RSAPrivateCrtKey) keyPairGenerator.generateKeyPair().getPrivate();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new KeyGenerationException("Could not generate a key: " + e.getMessage(), e);
+        }
+        final Map<String, String> secrets = KeyConstants.secretsOf(key);
+        secrets.put(KEY_CERT_NOT_BEFORE_NAME, KeyConstants.certNotBeforeValue(Instant.now()));
+        final KeyConstants keyConstants = KeyConstants.fromSecrets(secrets);
+        ssmClients.forEach((region, ssmClient) -> {
+            secrets.forEach((name, value) -> put(ssmClient, name + NEXT_SUFFIX, value));
+            logger.info("Staged a new signing key under the {} parameters in {}", NEXT_SUFFIX, region);
+        });
+        return keyConstants;
+    }
+
+    /**
+     * @param ssmClient The client to read the secrets with; it is not closed by this method
+     * @return The current certificate, followed by the staged one when there is one.
+     */
+    public static List<X509Certificate> certificates(final SsmClient ssmClient) {
+        return certificates(Map.of(AwsClients.FUNCTION_REGION, ssmClient));
+    }
+
+    /**
+     * @param ssmClients The client for each Region, by Region; they are not closed by this method
+     * @return Every Region's current certificate, followed by every staged one, each only once.
+     */
+    public static List<X509Certificate> certificates(final Map<String, SsmClient> ssmClients) {
+        final Map<BigInteger, KeyConstants> keys = new LinkedHashMap<>();
+        final List<KeyConstants> staged = new ArrayList<>();
+        ssmClients.forEach((region, ssmClient) -> {
+            final KeyConstants current = KeyConstants.fromSecrets(read(ssmClient, ""));
+            keys.putIfAbsent(current.modulus(), current);
+            try {
+                staged.add(KeyConstants.fromSecrets(read(ssmClient, NEXT_SUFFIX)));
+            } catch (final RuntimeException e) {
+                logger.info("No key is staged in {} ({}), so only its current certificate is published",
+                        region, e.getMessage());
+            }
+        });
+        staged.forEach(key -> keys.putIfAbsent(key.modulus(), key));
+        return keys.values().stream().map(key -> new KeysWrapper(key).getX509Certificate()).toList();
+    }
+
+    /**
+     * Copy the staged secrets over the current ones, after checking that they make up one key.
+     *
+     * @param ssmClient The client to read and store the secrets with; it is not closed by this method
+     * @return The new version of each current parameter, by name.
+     */
+    public static Map<String, Long> promote(final SsmClient ssmClient) {
+        return promote(Map.of(AwsClients.FUNCTION_REGION, ssmClient)).get(AwsClients.FUNCTION_REGION);
+    }
+
+    /**
+     * Copy the staged secrets over the current ones in every Region, after checking that every Region has staged the
+     * same whole key, so that no Region is promoted unless all of them can be.
+     *
+     * @param ssmClients The client for each Region, by Region; they are not closed by this method
+     * @return The new version of each current parameter, by name, by Region.
+     * @throws KeyGenerationException When a Region's staged secrets are missing, not one key, or another key than the
+     * other Regions'
+     */
+    public static Map<String, Map<String, Long>> promote(final Map<String, SsmClient> ssmClients) {
+        final Map<String, Map<String, String>> staged = new LinkedHashMap<>();
+        BigInteger modulus = null;
+        for (final Map.Entry<String, SsmClient> region : ssmClients.entrySet()) {
+            final Map<String, String> secrets = read(region.getValue(), NEXT_SUFFIX);
+            final KeyConstants regionKey = KeyConstants.fromSecrets(secrets);
+            final BigInteger regionModulus = regionKey.modulus();
+            if (modulus != null && !modulus.equals(regionModulus)) {
+                throw new KeyGenerationException("The key staged in " + region.getKey()
+                        + " is not the one staged in the other Regions; stage again in all of them", null);
+            }
+            modulus = regionModulus;
+            // A key staged before the validity was stored keeps the window its certificate was published with
+            secrets.put(KEY_CERT_NOT_BEFORE_NAME,
+                    KeyConstants.certNotBeforeValue(regionKey.certNotBefore().toInstant()));
+            staged.put(region.getKey(), secrets);
+        }
+
+        final Map<String, Map<String, Long>> versions = new LinkedHashMap<>();
+        staged.forEach((region, secrets) -> {
+            final Map<String, Long> regionVersions = new LinkedHashMap<>();
+            // The validity goes first, so that no container reads the new secrets with the old key's validity
+            regionVersions.put(KEY_CERT_NOT_BEFORE_NAME, put(ssmClients.get(region), KEY_CERT_NOT_BEFORE_NAME,
+                    secrets.get(KEY_CERT_NOT_BEFORE_NAME)));
+            for (final String name : KeyConstants.SECRET_NAMES) {
+                regionVersions.put(name, put(ssmClients.get(region), name, secrets.get(name)));
+            }
+            versions.put(region, regionVersions);
+            logger.info("Promoted the staged signing key in {}, now at versions {}", region, regionVersions);
+        });
+        return versions;
+    }
+
+    /**
+     * Check that the rotation is done everywhere, so that the old certificate can be dropped from the metadata.
+     *
+     * @param ssmClients The client for each Region, by Region; they are not closed by this method
+     * @return The one certificate every Region now signs with.
+     * @throws IllegalStateException When any Region still signs with another key than the one staged, or than the
+     * other Regions
+     */
+    public static X509Certificate retire(final Map<String, SsmClient> ssmClients) {
+        final Map<String, KeyConstants> current = new LinkedHashMap<>();
+        KeyConstants target = null;
+        for (final Map.Entry<String, SsmClient> region : ssmClients.entrySet()) {
+            current.put(region.getKey(), KeyConstants.fromSecrets(read(region.getValue(), "")));
+            if (target == null) {
+                try {
+                    target = KeyConstants.fromSecrets(read(region.getValue(), NEXT_SUFFIX));
+                } catch (final RuntimeException e) {
+                    logger.info("No key is staged in {} ({})", region.getKey(), e.getMessage());
+                }
+            }
+        }
+        final BigInteger modulus = (target != null ? target : current.values().iterator().next()).modulus();
+        final List<String> behind = current.entrySet().stream()
+                .filter(region -> !region.getValue().modulus().equals(modulus))
+                .map(Map.Entry::getKey)
+                .toList();
+        if (!behind.isEmpty()) {
+            throw new IllegalStateException("Not retiring the old key, since " + behind
+                    + " still sign with it; promote the staged key there first");
+        }
+        return new KeysWrapper(current.values().iterator().next()).getX509Certificate();
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final Map<String, String> options = new HashMap<>();
+        for (final String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        final URI endpoint = options.containsKey("endpoint") ? URI.create(options.get("endpoint")) : null;
+        final List<String> regions = Arrays.stream(options.getOrDefault("regions", AwsClients.FUNCTION_REGION)
+                        .split(","))
+                .map(String::strip)
+                .filter(region -> !region.isEmpty())
+                .distinct()
+                .toList();
+        if (regions.isEmpty()) {
+            throw new IllegalArgumentException("Expected regions=us-east-1,... with at least one Region");
+        }
+
+        final Map<String, SsmClient> ssmClients = new LinkedHashMap<>();
+        try {
+            regions.forEach(region -> ssmClients.put(region, AwsClients.ssm(endpoint, region)));
+            switch (options.getOrDefault("action", "")) {
+                case "stage" -> stage(ssmClients);
+                case "promote" -> promote(ssmClients);
+                case "metadata" -> write(IdentityProviderMetadata.render(certificates(ssmClients)), options);
+                case "retire" -> write(IdentityProviderMetadata.render(List.of(retire(ssmClients))), options);
+                default -> throw new IllegalArgumentException(
+                        "Expected action=stage, action=metadata, action=promote, or action=retire");
+            }
+        } finally {
+            ssmClients.values().forEach(SsmClient::close);
+        }
+    }
+
+    private static void write(final String metadata, final Map<String, String> options) throws IOException {
+        if (options.containsKey("output")) {
+            Files.writeString(Path.of(options.get("output")), metadata, StandardCharsets.UTF_8);
+            logger.info("Wrote the Identity Provider metadata to {}", options.get("output"));
+        } else {
+            System.out.println(metadata);
+        }
+    }
+
+    /**
+     * Read the six secrets and the start of the certificate's validity, under their own names with the suffix
+     * appended, in one call.
+     */
+    private static Map<String, String> read(final SsmClient ssmClient, final String suffix) {
+        final Map<String, VersionedParameter> parameters = SsmClientWrapper.getParameters(ssmClient,
+                KeyConstants.PARAMETER_NAMES.stream().map(name -> name + suffix).toList(),
+                Set.of(KEY_CERT_NOT_BEFORE_NAME + suffix), true, Deadline.after(Deadline.DEFAULT_BUDGET));
+        final Map<String, String> secrets = new HashMap<>();
+        for (final String name : KeyConstants.PARAMETER_NAMES) {
+            final VersionedParameter parameter = parameters.get(name + suffix);
+            secrets.put(name, parameter != null ? parameter.value() : null);
+        }
+        return secrets;
+    }
+
+    private static long put(final SsmClient ssmClient, final String name, final String value) {
+        return ssmClient.putParameter(PutParameterRequest.builder()
+                .name(name)
+                .value(value)
+                .type(ParameterType.SECURE_STRING)
+                .overwrite(true)
+                .build()).version();
+    }
+}
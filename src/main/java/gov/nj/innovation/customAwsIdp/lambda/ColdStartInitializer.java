@@ -0,0 +1,171 @@
+package gov.nj.innovation.customAwsIdp.lambda;
+
+import gov.nj.innovation.customAwsIdp.SamlGenerator;
+import gov.nj.innovation.customAwsIdp.keys.CryptoProviders;
+import gov.nj.innovation.customAwsIdp.keys.KeysWrapper;
+import gov.nj.innovation.customAwsIdp.keys.SigningKeyCache;
+import gov.nj.innovation.customAwsIdp.lambda.helpers.CognitoGroupDescriptionMetadataExtractor;
+import gov.nj.innovation.customAwsIdp.util.Deadline;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.Signature;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Warm up a container during Lambda's init phase, which runs before the first request is billed and with a burst of
+ * CPU, instead of inside the first login.
+ * <p>
+ * The independent warm-ups run at the same time on virtual threads: Santuario's initialisation, the JAXP XML stack, the
+ * crypto provider and RSA primitives, the parser for Group descriptions, and loading the {@link SigningKeyCache} with
+ * a {@link KeysWrapper}, which is then used to sign a throwaway SAML Response so the whole pipeline has run once.
+ * The initializer waits for them until its deadline ({@value #DEADLINE_ENV} in milliseconds, default {@value
+ * #DEFAULT_DEADLINE_MS}) and logs how long each took. Anything that fails or is still running by then is only logged,
+ * as the first request does the same work lazily anyway.
+ * <p>
+ * The keys stay in the cache for every later invocation; if they were not ready in time, the first invocation loads
+ * them instead.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class ColdStartInitializer {
+
+    public static final String DEADLINE_ENV = "COLD_START_INIT_DEADLINE_MS";
+    private static final Logger logger = LogManager.getLogger(ColdStartInitializer.class);
+    private static final long DEFAULT_DEADLINE_MS = 4000;
+    private static final String LAMBDA_FUNCTION_NAME_ENV = "AWS_LAMBDA_FUNCTION_NAME";
+    private static final String WARM_UP_USER = "cold-start@innovation.nj.gov";
+    private static final String WARM_UP_ROLE =
+            "arn:aws:iam::000000000000:role/COLD_START,arn:aws:iam::000000000000:saml-provider/COLD_START";
+
+    private ColdStartInitializer() {
+    }
+
+    /**
+     * Run the warm-ups when inside Lambda, and do nothing elsewhere (tests, the cold-start probe, load tests).
+     *
+     * @param signingKeyCache The cache to load the keys into
+     */
+    public static void startIfInLambda(final SigningKeyCache signingKeyCache) {
+        if (System.getenv(LAMBDA_FUNCTION_NAME_ENV) == null) {
+            return;
+        }
+        start(signingKeyCache, Duration.ofMillis(parseDeadline(System.getenv(DEADLINE_ENV))));
+    }
+
+    /**
+     * Run the warm-ups concurrently and wait for them, but no longer than the deadline.
+     *
+     * @param signingKeyCache The cache to load the keys into
+     * @param deadline How long to wait for all of them
+     */
+    public static void start(final SigningKeyCache signingKeyCache, final Duration deadline) {
+        final long start = System.nanoTime();
+        final Map<String, Long> timingsMs = new ConcurrentHashMap<>();
+        final Map<String, Future<?>> tasks = new LinkedHashMap<>();
+        // Not closed with try-with-resources, which would wait for stragglers past the deadline
+        final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        tasks.put("xmlSecurity", executor.submit(timed("xmlSecurity", timingsMs, () -> {
+            org.apache.xml.security.Init.init();
+            return null;
+        })));
+        tasks.put("xml", executor.submit(timed("xml", timingsMs, ColdStartInitializer::warmXml)));
+        tasks.put("crypto", executor.submit(timed("crypto", timingsMs, ColdStartInitializer::warmCrypto)));
+        tasks.put("groupDescriptions", executor.submit(timed("groupDescriptions", timingsMs, () -> {
+            CognitoGroupDescriptionMetadataExtractor.warmUp();
+            return null;
+        })));
+        // Not bounded by the init deadline, so that keys which arrive late are still cached for the first invocation
+        tasks.put("keys", executor.submit(() -> {
+            final KeysWrapper wrapper = timed("keys", timingsMs,
+                    () -> signingKeyCache.get(Deadline.after(Deadline.DEFAULT_BUDGET)).keys()).call();
+            timed("signing", timingsMs, () ->
+                    new SamlGenerator(WARM_UP_USER, WARM_UP_ROLE, "900", wrapper).getBase64SamlResponse()).call();
+            return null;
+        }));
+        executor.shutdown();
+
+        final long deadlineNanos = start + deadline.toNanos();
+        final StringJoiner problems = new StringJoiner(", ");
+        for (final Map.Entry<String, Future<?>> task : tasks.entrySet()) {
+            try {
+                task.getValue().get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (final TimeoutException e) {
+                problems.add(task.getKey() + " still running");
+            } catch (final ExecutionException e) {
+                problems.add(task.getKey() + " failed");
+                logger.warn("Cold-start warm-up {} failed, it will happen on first use instead: {}",
+                        task.getKey(), e.getCause().toString());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                problems.add(task.getKey() + " interrupted");
+                break;
+            }
+        }
+
+        final StringJoiner breakdown = new StringJoiner(", ");
+        timingsMs.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(timing -> breakdown.add(timing.getKey() + " " + timing.getValue() + " ms"));
+        logger.info("Cold-start warm-up took {} ms ({}){}",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                breakdown,
+                problems.length() > 0 ? "; " + problems : "");
+    }
+
+    static long parseDeadline(final String value) {
+        if (value == null || value.isBlank()) {
+            return DEFAULT_DEADLINE_MS;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (final NumberFormatException e) {
+            logger.warn("Invalid {} '{}', using {} ms", DEADLINE_ENV, value, DEFAULT_DEADLINE_MS);
+            return DEFAULT_DEADLINE_MS;
+        }
+    }
+
+    private static Void warmXml() throws ParserConfigurationException, TransformerConfigurationException {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.newDocumentBuilder().newDocument();
+        TransformerFactory.newInstance().newTransformer();
+        return null;
+    }
+
+    private static Void warmCrypto() throws GeneralSecurityException {
+        CryptoProviders.signingProvider();
+        CryptoProviders.bouncyCastle();
+        KeyFactory.getInstance("RSA");
+        Signature.getInstance("SHA256withRSA");
+        return null;
+    }
+
+    private static <T> Callable<T> timed(final String name, final Map<String, Long> timingsMs, final Callable<T> task) {
+        return () -> {
+            final long start = System.nanoTime();
+            try {
+                return task.call();
+            } finally {
+                timingsMs.put(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        };
+    }
+}
@@ -0,0 +1,116 @@
+package gov.nj.innovation.customAwsIdp.lambda;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import gov.nj.innovation.customAwsIdp.auth.CognitoJwtVerifier;
+import gov.nj.innovation.customAwsIdp.exception.InvalidTokenException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent.ProxyRequestContext;
+import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_REGION;
+import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_APP_CLIENT_ID;
+import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_USER_POOL;
+import static gov.nj.innovation.customAwsIdp.util.Constants.PATH_PARAMETER_GROUP_NAME;
+
+/**
+ * Handler for deploying behind a Lambda Function URL rather than an HTTP API, which removes the API Gateway hop and its
+ * JWT authorizer from every login. The authorizer's work is done here instead: the bearer token in the {@code
+ * Authorization} header is verified with {@link CognitoJwtVerifier}, and a request without a valid token gets the same
+ * {@code 401 {"message":"Unauthorized"}} as from API Gateway.
+ * <p>
+ * A verified request is reshaped into what the HTTP API would have sent, the Group from the path {@code
+ * /generateSaml/GROUP_NAME} and the claims as the authorizer's {@code jwt.claims}, and handed to {@link
+ * GetSamlHttpResponseHandler}, so the response is the same in both deployment modes.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class GetSamlFunctionUrlHandler implements RequestHandler<APIGatewayV2HTTPEvent, APIGatewayV2HTTPResponse> {
+
+    private static final Logger logger = LogManager.getLogger(GetSamlFunctionUrlHandler.class);
+    private static final Pattern PATH_PATTERN = Pattern.compile("^/generateSaml/([^/]+)/?$");
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final GetSamlHttpResponseHandler httpResponseHandler;
+    private final CognitoJwtVerifier verifier;
+
+    /**
+     * Build the handler for Lambda, fetching the UserPool's signing keys during the init phase.
+     */
+    public GetSamlFunctionUrlHandler() {
+        this(new GetSamlHttpResponseHandler(),
+                CognitoJwtVerifier.forUserPool(COGNITO_REGION, COGNITO_USER_POOL, COGNITO_APP_CLIENT_ID));
+        verifier.jwksCache().prefetch();
+    }
+
+    /**
+     * @param httpResponseHandler The handler which generates the response once the request is authorized
+     * @param verifier The verifier for the bearer tokens
+     */
+    public GetSamlFunctionUrlHandler(
+            final GetSamlHttpResponseHandler httpResponseHandler,
+            final CognitoJwtVerifier verifier) {
+        this.httpResponseHandler = httpResponseHandler;
+        this.verifier = verifier;
+    }
+
+    @Override
+    public APIGatewayV2HTTPResponse handleRequest(final APIGatewayV2HTTPEvent input, final Context context) {
+        final Matcher path = PATH_PATTERN.matcher(input.getRawPath() != null ? input.getRawPath() : "");
+        if (!path.matches()) {
+            return message(404, "Not Found");
+        }
+
+        final APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        // A "+" in a path is not a space, unlike in a query string
+        request.setPathParameters(Map.of(PATH_PARAMETER_GROUP_NAME,
+                URLDecoder.decode(path.group(1).replace("+", "%2B"), StandardCharsets.UTF_8)));
+        request.setQueryStringParameters(input.getQueryStringParameters());
+        request.setHeaders(input.getHeaders());
+
+        final CognitoJwtVerifier.CognitoIdToken token;
+        try {
+            token = verifier.verify(bearerToken(GetSamlHttpResponseHandler.getHeader(request, AUTHORIZATION_HEADER)));
+        } catch (final InvalidTokenException e) {
+            logger.warn("Rejected a request with an invalid token: {}", e.getMessage());
+            return message(401, "Unauthorized");
+        }
+
+        final ProxyRequestContext requestContext = new ProxyRequestContext();
+        // The same shape as the HTTP API's JWT authorizer, including its "[GROUP1 GROUP2]" rendering of the groups
+        requestContext.setAuthorizer(Map.of("jwt", Map.of("claims", Map.of(
+                "sub", token.subject() != null ? token.subject() : "",
+                "email", token.email() != null ? token.email() : "",
+                "cognito:groups", "[" + String.join(" ", token.groups()) + "]"))));
+        request.setRequestContext(requestContext);
+        return httpResponseHandler.handleRequest(request, context);
+    }
+
+    private static String bearerToken(final String authorization) {
+        if (authorization == null) {
+            return null;
+        }
+        return authorization.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())
+                ? authorization.substring(BEARER_PREFIX.length()).strip()
+                : authorization.strip();
+    }
+
+    private static APIGatewayV2HTTPResponse message(final int statusCode, final String message) {
+        return APIGatewayV2HTTPResponse.builder()
+                .withStatusCode(statusCode)
+                .withHeaders(Map.of("Content-Type", "application/json"))
+                .withBody("{\"message\":\"" + message + "\"}")
+                .withIsBase64Encoded(false)
+                .build();
+    }
+}
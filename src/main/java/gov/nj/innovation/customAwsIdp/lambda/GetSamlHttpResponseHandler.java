@@ -0,0 +1,142 @@
+package gov.nj.innovation.customAwsIdp.lambda;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import gov.nj.innovation.customAwsIdp.lambda.helpers.ResponseCompressor;
+import gov.nj.innovation.customAwsIdp.lambda.helpers.SamlPostForm;
+import gov.nj.innovation.customAwsIdp.util.Deadline;
+import tools.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static gov.nj.innovation.customAwsIdp.lambda.helpers.ResponseCompressor.Encoding;
+import static gov.nj.innovation.customAwsIdp.util.Constants.PATH_PARAMETER_HEALTH_CHECK;
+
+/**
+ * Handler which wraps {@link GetSamlResponseHandler} in a full API Gateway (payload version 2.0) HTTP response, so that
+ * the headers and encoding of the body can be controlled.
+ * <p>
+ * The body is the same JSON map ({@code status}, {@code samlResponse}, {@code relayState}, {@code error}) returned by
+ * {@link GetSamlResponseHandler}, always with status code 200. When the request's {@code Accept-Encoding} allows it and
+ * the body is large enough, the body is compressed, Base64-encoded, and flagged as such for API Gateway, which decodes
+ * it before sending the compressed bytes on to the client with the matching {@code Content-Encoding}. Compression is
+ * skipped when the Lambda is close to its timeout.
+ * <p>
+ * With the query parameter {@code responseMode=form}, a successful response is instead an HTML page holding a form
+ * which posts the {@code SAMLResponse} and {@code RelayState} to AWS sign-in as soon as it loads, see {@link
+ * SamlPostForm}. The page is sent with a Content-Security-Policy and is never cached. Errors are still returned as the
+ * JSON map, so that the caller can show them.
+ * <p>
+ * A request on the unauthenticated health route (with the {@code healthCheck} path parameter), which Route 53's
+ * health checks call for latency routing between Regions, is answered with {@code {"status":"OK"}} without any login
+ * work; it only shows that the Region's API and function are serving.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class GetSamlHttpResponseHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayV2HTTPResponse> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
+    private static final String VARY_HEADER = "Vary";
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String HTML_CONTENT_TYPE = "text/html; charset=utf-8";
+    private static final String RESPONSE_MODE_PARAMETER = "responseMode";
+    private static final String FORM_RESPONSE_MODE = "form";
+    private static final Duration COMPRESSION_TIME = Duration.ofMillis(50);
+    private static final String HEALTHY_BODY = "{\"status\":\"OK\"}";
+
+    private final GetSamlResponseHandler samlResponseHandler;
+
+    public GetSamlHttpResponseHandler() {
+        this(new GetSamlResponseHandler());
+    }
+
+    public GetSamlHttpResponseHandler(final GetSamlResponseHandler samlResponseHandler) {
+        this.samlResponseHandler = samlResponseHandler;
+    }
+
+    @Override
+    public APIGatewayV2HTTPResponse handleRequest(final APIGatewayProxyRequestEvent input, final Context context) {
+        if (isHealthCheck(input)) {
+            return APIGatewayV2HTTPResponse.builder()
+                    .withStatusCode(200)
+                    .withHeaders(Map.of(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE, "Cache-Control", "no-store"))
+                    .withBody(HEALTHY_BODY)
+                    .withIsBase64Encoded(false)
+                    .build();
+        }
+
+        final Map<String, String> result = samlResponseHandler.handleRequest(input, context);
+        final Map<String, String> headers = new HashMap<>();
+        final byte[] body;
+        if (isFormMode(input) && "SUCCESS".equals(result.get("status"))) {
+            final SamlPostForm form = SamlPostForm.getInstance();
+            body = form.render(result.get("samlResponse"), result.get("relayState")).getBytes(StandardCharsets.UTF_8);
+            headers.put(CONTENT_TYPE_HEADER, HTML_CONTENT_TYPE);
+            headers.put("Content-Security-Policy", form.contentSecurityPolicy());
+            headers.put("Cache-Control", "no-store");
+            headers.put("Referrer-Policy", "no-referrer");
+            headers.put("X-Content-Type-Options", "nosniff");
+        } else {
+            body = MAPPER.writeValueAsBytes(result);
+            headers.put(CONTENT_TYPE_HEADER, JSON_CONTENT_TYPE);
+        }
+        headers.put(VARY_HEADER, ACCEPT_ENCODING_HEADER);
+
+        // Compression is optional, so it is skipped when the login has left too little time for it
+        final Encoding encoding = body.length >= ResponseCompressor.MIN_COMPRESSIBLE_BYTES &&
+                Deadline.fromContext(context).allows(COMPRESSION_TIME) ?
+                ResponseCompressor.negotiate(getHeader(input, ACCEPT_ENCODING_HEADER)) : Encoding.IDENTITY;
+        if (encoding == Encoding.IDENTITY) {
+            return APIGatewayV2HTTPResponse.builder()
+                    .withStatusCode(200)
+                    .withHeaders(headers)
+                    .withBody(new String(body, StandardCharsets.UTF_8))
+                    .withIsBase64Encoded(false)
+                    .build();
+        }
+
+        headers.put(CONTENT_ENCODING_HEADER, encoding.headerValue());
+        return APIGatewayV2HTTPResponse.builder()
+                .withStatusCode(200)
+                .withHeaders(headers)
+                .withBody(Base64.getEncoder().encodeToString(ResponseCompressor.compress(body, encoding)))
+                .withIsBase64Encoded(true)
+                .build();
+    }
+
+    private static boolean isHealthCheck(final APIGatewayProxyRequestEvent input) {
+        final Map<String, String> pathParameters = input.getPathParameters();
+        return pathParameters != null && pathParameters.containsKey(PATH_PARAMETER_HEALTH_CHECK);
+    }
+
+    private static boolean isFormMode(final APIGatewayProxyRequestEvent input) {
+        final Map<String, String> queryStringParameters = input.getQueryStringParameters();
+        return queryStringParameters != null &&
+                FORM_RESPONSE_MODE.equalsIgnoreCase(queryStringParameters.get(RESPONSE_MODE_PARAMETER));
+    }
+
+    /**
+     * Headers arrive lower-cased from HTTP APIs, but are matched case-insensitively to be safe.
+     */
+    static String getHeader(final APIGatewayProxyRequestEvent input, final String name) {
+        final Map<String, String> headers = input.getHeaders();
+        if (headers == null) {
+            return null;
+        }
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -1,16 +1,30 @@
 package gov.nj.innovation.customAwsIdp.lambda;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
-import gov.nj.innovation.customAwsIdp.keys.KeyConstants;
 import gov.nj.innovation.customAwsIdp.keys.KeysWrapper;
-import gov.nj.innovation.customAwsIdp.SamlGenerator;
+import gov.nj.innovation.customAwsIdp.keys.SigningKeyCache;
+import gov.nj.innovation.customAwsIdp.SamlEngine;
+import gov.nj.innovation.customAwsIdp.exception.DeadlineExceededException;
+import gov.nj.innovation.customAwsIdp.exception.KeyGenerationException;
+import gov.nj.innovation.customAwsIdp.groups.GroupMetadataSnapshot;
+import gov.nj.innovation.customAwsIdp.jfr.Outcomes;
+import gov.nj.innovation.customAwsIdp.jfr.RequestParseEvent;
+import gov.nj.innovation.customAwsIdp.jfr.SamlLoginEvent;
 import gov.nj.innovation.customAwsIdp.lambda.helpers.CognitoGroupDescriptionMetadataExtractor;
+import gov.nj.innovation.customAwsIdp.lambda.helpers.IdempotentResponseCache;
 import gov.nj.innovation.customAwsIdp.lambda.helpers.data.AuthorizerContextDetails;
 import gov.nj.innovation.customAwsIdp.lambda.helpers.data.CognitoGroupDescriptionMetadata;
 import gov.nj.innovation.customAwsIdp.lambda.helpers.data.RequestParameters;
+import gov.nj.innovation.customAwsIdp.metrics.EmfMetricsWriter;
+import gov.nj.innovation.customAwsIdp.metrics.Phase;
+import gov.nj.innovation.customAwsIdp.metrics.PhaseTimings;
+import gov.nj.innovation.customAwsIdp.util.AwsClients;
+import gov.nj.innovation.customAwsIdp.util.Deadline;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -18,11 +32,12 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import org.jetbrains.annotations.VisibleForTesting;
-import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.ssm.SsmClient;
 
 import static com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent.ProxyRequestContext;
-import static gov.nj.innovation.customAwsIdp.util.Constants.AWS_REGION;
 import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_USER_POOL;
 import static gov.nj.innovation.customAwsIdp.util.Constants.DEFAULT_SESSION_DURATION;
 import static gov.nj.innovation.customAwsIdp.util.Constants.PATH_PARAMETER_GROUP_NAME;
@@ -58,13 +73,30 @@ import static gov.nj.innovation.customAwsIdp.util.Constants.PATH_PARAMETER_GROUP
  * <code>authorizer</code> object is just a <code>Map</code> of <code>String</code> to <code>Object</code>, so obnoxious
  * casting must be done inside.
  * <p>
- * For security, the "user" passed to {@link SamlGenerator#SamlGenerator(String, String, String, KeysWrapper)} will be
- * sourced exclusively from the JWT claim "email", and the "groupName" passed in the pathParameters will be validated
- * against the "cognito:groups" claim. This code should not leak extra metadata about user configurations or other users
+ * For security, the "user" passed to {@link SamlEngine#generate(String, List, String)} will be sourced exclusively from
+ * the JWT claim "email", and the "groupName" passed in the pathParameters will be validated against the
+ * "cognito:groups" claim. This code should not leak extra metadata about user configurations or other users
  * or configured groups when called, even in the face of errors. Only a group assigned to the JWT-validated Cognito User
  * shall be honored, resulting in a full status-200 response.
  * <p>
  * Note also that the value of "cognito:groups" is a String that is space-delimited and must be converted to a list.
+ * <p>
+ * Every invocation writes one line of CloudWatch Embedded Metric Format to stdout with per-phase timings, see {@link
+ * EmfMetricsWriter}.
+ * <p>
+ * Every call to SSM and Cognito is bounded by a {@link Deadline} taken from the Lambda's remaining time, and signing is
+ * only started when there is time to finish it, so that a hanging dependency results in a {@code TIMEOUT_ERROR}
+ * response instead of the Lambda itself timing out.
+ * <p>
+ * Group metadata is read from a {@link GroupMetadataSnapshot} loaded once per container, when there is one, and only
+ * Groups missing from it are fetched from Cognito.
+ * <p>
+ * The signing keys are kept in a {@link SigningKeyCache}, which notices when the key-secrets in SSM are rotated, and
+ * the {@link SamlEngine} built around them is kept until they are.
+ * <p>
+ * A request may carry an {@code Idempotency-Key} header, in which case a retry of it from the same user (the JWT claim
+ * "sub") for the same Group and duration, within a short window, gets the already signed Response back instead of a
+ * new one, see {@link IdempotentResponseCache}.
  *
  * @author Case Walker (case@innovation.nj.gov)
  */
@@ -75,64 +107,205 @@ public class GetSamlResponseHandler implements RequestHandler<APIGatewayProxyReq
     private static final String DURATION_PARAMETER = "duration";
     private static final String AUTHORIZER_JWT = "jwt";
     private static final String JWT_CLAIMS = "claims";
+    private static final String SUBJECT_CLAIM = "sub";
     private static final String EMAIL_CLAIM = "email";
     private static final String COGNITO_GROUPS_CLAIM = "cognito:groups";
+    private static final AtomicBoolean COLD_START = new AtomicBoolean(true);
+    private static final Duration MIN_SIGNING_TIME = Duration.ofMillis(100);
 
+    private final CognitoIdentityProviderClient cognitoClient;
+    private EmfMetricsWriter metricsWriter;
     // Left open (not final) on purpose for testing
     @VisibleForTesting
-    private SsmClient ssmClient = SsmClient.builder().region(Region.of(AWS_REGION)).build();
+    private SigningKeyCache signingKeyCache;
+    private final GroupMetadataSnapshot groupSnapshot;
+    private IdempotentResponseCache idempotentResponses;
+    private volatile SamlEngine samlEngine;
+
+    public GetSamlResponseHandler() {
+        this(AwsClients.ssm(null), AwsClients.cognito(null));
+    }
+
+    /**
+     * Build a handler around the given clients, which are kept for the life of the container. Outside of Lambda this
+     * allows stand-in clients to be provided, e.g. by the tests and the cold-start probe. Inside Lambda, construction
+     * happens during the init phase and also warms the container up, see {@link ColdStartInitializer}.
+     *
+     * @param ssmClient Client used to fetch the key-secrets
+     * @param cognitoClient Client used to fetch the Group descriptions
+     */
+    public GetSamlResponseHandler(final SsmClient ssmClient, final CognitoIdentityProviderClient cognitoClient) {
+        this(ssmClient, cognitoClient, new EmfMetricsWriter(System.out));
+    }
+
+    /**
+     * The same as {@link #GetSamlResponseHandler(SsmClient, CognitoIdentityProviderClient)}, with the metrics written
+     * somewhere other than stdout, e.g. discarded by a load test.
+     *
+     * @param ssmClient Client used to fetch the key-secrets
+     * @param cognitoClient Client used to fetch the Group descriptions
+     * @param metricsWriter Writer for the per-invocation EMF line
+     */
+    public GetSamlResponseHandler(
+            final SsmClient ssmClient,
+            final CognitoIdentityProviderClient cognitoClient,
+            final EmfMetricsWriter metricsWriter) {
+        this(ssmClient, cognitoClient, metricsWriter, GroupMetadataSnapshot.load(ssmClient, COGNITO_USER_POOL));
+    }
+
+    /**
+     * The same as {@link #GetSamlResponseHandler(SsmClient, CognitoIdentityProviderClient, EmfMetricsWriter)}, with
+     * the Group snapshot given rather than loaded.
+     *
+     * @param ssmClient Client used to fetch the key-secrets
+     * @param cognitoClient Client used to fetch the Group descriptions missing from the snapshot
+     * @param metricsWriter Writer for the per-invocation EMF line
+     * @param groupSnapshot Metadata for the Groups known ahead of time, e.g. {@link GroupMetadataSnapshot#EMPTY}
+     */
+    public GetSamlResponseHandler(
+            final SsmClient ssmClient,
+            final CognitoIdentityProviderClient cognitoClient,
+            final EmfMetricsWriter metricsWriter,
+            final GroupMetadataSnapshot groupSnapshot) {
+        this.cognitoClient = cognitoClient;
+        this.metricsWriter = metricsWriter;
+        this.groupSnapshot = groupSnapshot;
+        this.signingKeyCache = new SigningKeyCache(ssmClient);
+        this.idempotentResponses = new IdempotentResponseCache();
+        ColdStartInitializer.startIfInLambda(signingKeyCache);
+    }
 
     @Override
     public Map<String, String> handleRequest(final APIGatewayProxyRequestEvent input, final Context context) {
+        final long start = System.nanoTime();
+        final boolean coldStart = COLD_START.getAndSet(false);
+        final SamlLoginEvent loginEvent = new SamlLoginEvent();
+        loginEvent.begin();
+        final InvocationState state = new InvocationState(new PhaseTimings(), Deadline.fromContext(context));
+        final Map<String, String> response;
+        try {
+            response = generateResponse(input, loginEvent, state);
+            loginEvent.status = response.get("status");
+        } catch (final RuntimeException e) {
+            loginEvent.status = Outcomes.of(e);
+            throw e;
+        } finally {
+            loginEvent.commit();
+        }
+
+        // Keys already in the cache (built during the init phase or by an earlier invocation) count as a hit
+        metricsWriter.write(state.timings, System.nanoTime() - start, state.validatedGroupName,
+                response.get("status"), coldStart, state.keyCacheHit, state.idempotencyHit);
+        return response;
+    }
+
+    /**
+     * Validate the input, look up the Group's metadata, and generate the SAML Response. The JFR events for each stage
+     * only carry counts and outcomes, never the user's email or groups.
+     */
+    private Map<String, String> generateResponse(
+            final APIGatewayProxyRequestEvent input,
+            final SamlLoginEvent loginEvent,
+            final InvocationState state) {
+        final long parseStart = System.nanoTime();
+        final RequestParseEvent parseEvent = new RequestParseEvent();
+        parseEvent.begin();
         final RequestParameters rp = extractRequestParametersFromInput(input);
         if (rp.groupName() == null || rp.groupName().isBlank()) {
-            return createErrorReturnMap(Status.INPUT_ERROR,
+            return rejectInput(parseEvent,
                     String.format("groupName must have a non-empty value, had %s", rp.groupName()));
         }
         if (rp.duration() == null || rp.duration().isBlank() || !DIGITS_PATTERN.matcher(rp.duration()).matches() ||
                 Integer.parseInt(rp.duration()) < 900 || Integer.parseInt(rp.duration()) > 43200) {
-            return createErrorReturnMap(Status.INPUT_ERROR,
+            return rejectInput(parseEvent,
                     String.format("Invalid duration, must be an int between 900 and 43200, was %s", rp.duration()));
         }
 
+        loginEvent.sessionDuration = Integer.parseInt(rp.duration());
+
         final AuthorizerContextDetails acd = extractAuthorizerDetailsFromInput(input);
+        loginEvent.groupCount = acd.usersGroups() != null ? acd.usersGroups().size() : 0;
         if (acd.email() == null || acd.email().isBlank()) {
-            return createErrorReturnMap(Status.INPUT_ERROR,
+            return rejectInput(parseEvent,
                     String.format("email for Cognito user session must have a non-empty value, had %s", acd.email()));
         }
         if (!acd.usersGroups().contains(rp.groupName())) {
-            return createErrorReturnMap(Status.INPUT_ERROR,
+            return rejectInput(parseEvent,
                     String.format("User %s does not belong to a group named %s", acd.email(), rp.groupName()));
         }
+        final String idempotencyKey = GetSamlHttpResponseHandler.getHeader(input, IdempotentResponseCache.HEADER);
+        if (idempotencyKey != null && !IdempotentResponseCache.isValidKey(idempotencyKey)) {
+            return rejectInput(parseEvent,
+                    "Idempotency-Key must be 1 to 128 visible ASCII characters");
+        }
+        parseEvent.outcome = Outcomes.OK;
+        parseEvent.commit();
+        state.timings.record(Phase.REQUEST_PARSE, parseStart);
+        state.validatedGroupName = rp.groupName();
 
+        final boolean idempotent = idempotencyKey != null && idempotentResponses.accepts(acd.subject());
+        if (idempotent) {
+            final IdempotentResponseCache.CachedResponse cached = idempotentResponses
+                    .get(acd.subject(), acd.email(), rp.groupName(), rp.duration(), idempotencyKey);
+            state.idempotencyHit = cached != null;
+            if (cached != null) {
+                logger.info("Returned the SAML Response already generated for user {}, group {}, and duration {}",
+                        acd.email(), rp.groupName(), rp.duration());
+                return createReturnMap(Status.SUCCESS, cached.samlResponse(), cached.relayState(), null);
+            }
+        }
+
+        final long groupMetadataStart = System.nanoTime();
+        final CognitoGroupDescriptionMetadata snapshotMetadata = groupSnapshot.get(rp.groupName());
         final CognitoGroupDescriptionMetadata ssoMetadata;
         try {
-            ssoMetadata = CognitoGroupDescriptionMetadataExtractor.extract(AWS_REGION, rp.groupName(), COGNITO_USER_POOL);
+            ssoMetadata = snapshotMetadata != null ? snapshotMetadata : CognitoGroupDescriptionMetadataExtractor
+                    .extract(cognitoClient, rp.groupName(), COGNITO_USER_POOL, state.deadline);
+            state.timings.record(Phase.GROUP_METADATA, groupMetadataStart);
         } catch (final RuntimeException e) {
+            if (isTimeout(e)) {
+                return createErrorReturnMap(Status.TIMEOUT_ERROR,
+                        String.format("Timed out fetching Group %s from UserPool %s: %s",
+                                rp.groupName(), COGNITO_USER_POOL, e.getMessage()));
+            }
             return createErrorReturnMap(Status.SYSTEM_ERROR,
                     String.format("Error trying to extract metadata from Group %s in UserPool %s: %s",
                             rp.groupName(), COGNITO_USER_POOL, e.getMessage()));
         }
 
-        final KeyConstants keyConstants;
+        final long keyLoadStart = System.nanoTime();
+        final KeysWrapper keys;
         try {
-            keyConstants = new KeyConstants(ssmClient);
-        } catch (final NullPointerException | NumberFormatException e) {
+            final SigningKeyCache.Lookup lookup = signingKeyCache.get(state.deadline);
+            keys = lookup.keys();
+            state.keyCacheHit = lookup.fromCache();
+        } catch (final KeyGenerationException e) {
             return createErrorReturnMap(Status.SYSTEM_ERROR,
-                    String.format("KeyConstants threw an exception: %s.\nNOTE: Please check that the " +
+                    String.format("The signing keys could not be built: %s.\nNOTE: Please check that the " +
                             "key-secrets are correct in AWS Systems Manager", e.getMessage()));
+        } catch (final RuntimeException e) {
+            return createErrorReturnMap(isTimeout(e) ? Status.TIMEOUT_ERROR : Status.SYSTEM_ERROR,
+                    String.format("Error fetching the key-secrets from AWS Systems Manager: %s", e.getMessage()));
         }
 
         try {
-            final KeysWrapper keys = new KeysWrapper(keyConstants);
-            final SamlGenerator generator = new SamlGenerator(acd.email(), ssoMetadata.ssoRole(), rp.duration(), keys);
-            final String encodedSamlResponse = generator.getBase64SamlResponse();
+            state.timings.record(Phase.KEY_LOAD, keyLoadStart);
+            // Signing cannot be interrupted, so only start it when it can finish before the deadline
+            state.deadline.check("signing", MIN_SIGNING_TIME);
+            final String encodedSamlResponse = engineFor(keys)
+                    .generate(acd.email(), List.of(ssoMetadata.ssoRole()), rp.duration(), state.timings);
             logger.info("Successfully generated SAML Response for user {} with role {} and duration {}",
                     acd.email(),
                     ssoMetadata.ssoRole(),
                     rp.duration());
+            if (idempotent) {
+                idempotentResponses.put(acd.subject(), acd.email(), rp.groupName(), rp.duration(), idempotencyKey,
+                        new IdempotentResponseCache.CachedResponse(encodedSamlResponse, ssoMetadata.relayState()));
+            }
             return createReturnMap(Status.SUCCESS, encodedSamlResponse, ssoMetadata.relayState(), null);
 
+        } catch (final DeadlineExceededException e) {
+            return createErrorReturnMap(Status.TIMEOUT_ERROR, e.getMessage());
         } catch (final Exception e) {
             return createErrorReturnMap(Status.SYSTEM_ERROR,
                     String.format("Error in handler: user %s, ssoRole %s, duration %s; error message: %s",
@@ -140,6 +313,24 @@ public class GetSamlResponseHandler implements RequestHandler<APIGatewayProxyReq
         }
     }
 
+    /**
+     * @return The engine for the given keys, built again only when the keys have been replaced.
+     */
+    private SamlEngine engineFor(final KeysWrapper keys) {
+        SamlEngine engine = samlEngine;
+        if (engine == null || engine.keys() != keys) {
+            engine = new SamlEngine(keys);
+            samlEngine = engine;
+        }
+        return engine;
+    }
+
+    private static boolean isTimeout(final RuntimeException e) {
+        return e instanceof DeadlineExceededException ||
+                e instanceof ApiCallTimeoutException ||
+                e instanceof ApiCallAttemptTimeoutException;
+    }
+
     private RequestParameters extractRequestParametersFromInput(final APIGatewayProxyRequestEvent input) {
         final Map<String, String> pathParams = input.getPathParameters();
         final String groupName = pathParams != null && !pathParams.isEmpty() ?
@@ -162,13 +353,25 @@ public class GetSamlResponseHandler implements RequestHandler<APIGatewayProxyReq
         final Map<String, Object> claims = jwt != null && !jwt.isEmpty() ?
                 (Map<String, Object>) jwt.get(JWT_CLAIMS) : null;
 
+        final String subject = claims != null && !claims.isEmpty() ? (String) claims.get(SUBJECT_CLAIM) : null;
         final String email = claims != null && !claims.isEmpty() ? (String) claims.get(EMAIL_CLAIM) : null;
         final String usersGroupsString = claims != null && !claims.isEmpty() ?
                 (String) claims.get(COGNITO_GROUPS_CLAIM) : null;
         final List<String> usersGroups = usersGroupsString != null ?
                 List.of(usersGroupsString.substring(1, usersGroupsString.length() - 1).split(" ")) : null;
 
-        return new AuthorizerContextDetails(email, usersGroups);
+        return new AuthorizerContextDetails(subject, email, usersGroups);
+    }
+
+    /**
+     * @param parseEvent The event of the parse which found the invalid input, committed here
+     * @param error The error message
+     * @return The map for an {@code INPUT_ERROR}.
+     */
+    private Map<String, String> rejectInput(final RequestParseEvent parseEvent, final String error) {
+        parseEvent.outcome = Status.INPUT_ERROR.name();
+        parseEvent.commit();
+        return createErrorReturnMap(Status.INPUT_ERROR, error);
     }
 
     private Map<String, String> createErrorReturnMap(final Status status, final String error) {
@@ -191,8 +394,34 @@ public class GetSamlResponseHandler implements RequestHandler<APIGatewayProxyReq
 
     @VisibleForTesting
     void setSsmClient(final SsmClient ssmClient) {
-        this.ssmClient = ssmClient;
+        this.signingKeyCache = new SigningKeyCache(ssmClient);
     }
 
-    private enum Status { SUCCESS, INPUT_ERROR, SYSTEM_ERROR }
+    @VisibleForTesting
+    void setMetricsWriter(final EmfMetricsWriter metricsWriter) {
+        this.metricsWriter = metricsWriter;
+    }
+
+    @VisibleForTesting
+    void setIdempotentResponseCache(final IdempotentResponseCache idempotentResponses) {
+        this.idempotentResponses = idempotentResponses;
+    }
+
+    private enum Status { SUCCESS, INPUT_ERROR, SYSTEM_ERROR, TIMEOUT_ERROR }
+
+    /**
+     * What one invocation has learned so far, for the metrics written once it completes.
+     */
+    private static class InvocationState {
+        private final PhaseTimings timings;
+        private final Deadline deadline;
+        private String validatedGroupName;
+        private boolean keyCacheHit;
+        private Boolean idempotencyHit;
+
+        private InvocationState(final PhaseTimings timings, final Deadline deadline) {
+            this.timings = timings;
+            this.deadline = deadline;
+        }
+    }
 }
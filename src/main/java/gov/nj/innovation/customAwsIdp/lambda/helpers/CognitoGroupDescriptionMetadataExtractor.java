@@ -1,6 +1,11 @@
 package gov.nj.innovation.customAwsIdp.lambda.helpers;
 
+import gov.nj.innovation.customAwsIdp.jfr.CognitoGetGroupEvent;
+import gov.nj.innovation.customAwsIdp.jfr.GroupDescriptionParseEvent;
+import gov.nj.innovation.customAwsIdp.jfr.Outcomes;
 import gov.nj.innovation.customAwsIdp.lambda.helpers.data.CognitoGroupDescriptionMetadata;
+import gov.nj.innovation.customAwsIdp.util.Deadline;
+import gov.nj.innovation.customAwsIdp.util.HedgedCall;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import software.amazon.awssdk.regions.Region;
@@ -11,18 +16,73 @@ import tools.jackson.core.JacksonException;
 import tools.jackson.databind.ObjectMapper;
 import tools.jackson.dataformat.yaml.YAMLFactory;
 
+import java.nio.charset.StandardCharsets;
+
 /**
- * Extract metadata stored as YAML in the description of a Cognito Group.
+ * Extract metadata stored as YAML in the description of a Cognito Group. Slow {@code GetGroup} calls are hedged, see
+ * {@link HedgedCall}.
+ * <p>
+ * Descriptions are read by {@link GroupDescriptionParser} when they are in one of the simple forms it handles, and
+ * only otherwise by Jackson's YAML mapper, whose class graph (SnakeYAML included) is then loaded on first use.
  *
  * @author Case Walker (case@innovation.nj.gov)
  */
 public class CognitoGroupDescriptionMetadataExtractor {
 
+    public static final HedgedCall GET_GROUP_HEDGING = HedgedCall.fromEnvironment("Cognito GetGroup");
     private static final Logger logger = LogManager.getLogger(CognitoGroupDescriptionMetadataExtractor.class);
-    private static final ObjectMapper MAPPER = new ObjectMapper(new YAMLFactory());
+    private static final String WARM_UP_DESCRIPTION = """
+            RelayState: "https://us-east-1.console.aws.amazon.com/connect/federate/warm-up"
+            SsoRole: "arn:aws:iam::000000000000:role/WARM_UP,arn:aws:iam::000000000000:saml-provider/WARM_UP"
+            """;
+
+    /**
+     * Parse a representative description, so that the parser for the usual forms is loaded before the first real one.
+     */
+    public static void warmUp() {
+        parseDescription(WARM_UP_DESCRIPTION);
+    }
 
     /**
-     * Perform the YAML metadata extraction from a Cognito Group's description.
+     * Parse a Group description, with {@link GroupDescriptionParser} when it can and the YAML mapper when it cannot.
+     *
+     * @param groupDescription The description of a Group
+     * @return {@link CognitoGroupDescriptionMetadata} representing the parsed description.
+     * @throws JacksonException When the YAML mapper is needed and fails, e.g. when a required key is missing
+     */
+    public static CognitoGroupDescriptionMetadata parseDescription(final String groupDescription) {
+        final GroupDescriptionParseEvent parseEvent = new GroupDescriptionParseEvent();
+        parseEvent.begin();
+        try {
+            CognitoGroupDescriptionMetadata metadata = GroupDescriptionParser.parse(groupDescription);
+            parseEvent.yamlFallback = metadata == null;
+            if (parseEvent.yamlFallback) {
+                metadata = parseYaml(groupDescription);
+            }
+            parseEvent.outcome = Outcomes.OK;
+            return metadata;
+        } catch (final RuntimeException e) {
+            parseEvent.outcome = Outcomes.of(e);
+            throw e;
+        } finally {
+            if (parseEvent.shouldCommit()) {
+                parseEvent.descriptionBytes = groupDescription != null ?
+                        groupDescription.getBytes(StandardCharsets.UTF_8).length : 0;
+                parseEvent.commit();
+            }
+        }
+    }
+
+    /**
+     * @param groupDescription The description of a Group
+     * @return The description parsed by the YAML mapper alone.
+     */
+    static CognitoGroupDescriptionMetadata parseYaml(final String groupDescription) {
+        return YamlMapperHolder.MAPPER.readValue(groupDescription, CognitoGroupDescriptionMetadata.class);
+    }
+
+    /**
+     * Perform the YAML metadata extraction from a Cognito Group's description, using a short-lived client.
      *
      * @param region AWS Region of the Cognito UserPool
      * @param groupName Name of the Group whose description has the desired YAML metadata
@@ -36,13 +96,64 @@ public class CognitoGroupDescriptionMetadataExtractor {
         try (final CognitoIdentityProviderClient cognitoClient = CognitoIdentityProviderClient.builder()
                 .region(Region.of(region))
                 .build()) {
-            final GetGroupResponse getGroupResponse = cognitoClient.getGroup(GetGroupRequest.builder()
-                    .userPoolId(userPoolId)
-                    .groupName(groupName)
-                    .build());
-            final String groupDescription = getGroupResponse.group().description();
+            return extract(cognitoClient, groupName, userPoolId);
+        }
+    }
+
+    /**
+     * Perform the YAML metadata extraction from a Cognito Group's description, using a caller-owned client so that it
+     * can be reused across invocations (or replaced with a stand-in outside of AWS). The call is bounded by {@link
+     * Deadline#DEFAULT_BUDGET}.
+     *
+     * @param cognitoClient The client used to query Cognito; it is not closed by this method
+     * @param groupName Name of the Group whose description has the desired YAML metadata
+     * @param userPoolId ID of the UserPool to which the Group belongs
+     * @return {@link CognitoGroupDescriptionMetadata} representing the parsed YAML from the Group description.
+     */
+    public static CognitoGroupDescriptionMetadata extract(
+            final CognitoIdentityProviderClient cognitoClient,
+            final String groupName,
+            final String userPoolId) {
+        return extract(cognitoClient, groupName, userPoolId, Deadline.after(Deadline.DEFAULT_BUDGET));
+    }
+
+    /**
+     * The same as {@link #extract(CognitoIdentityProviderClient, String, String)}, with the Cognito call's timeouts
+     * bounded by the request's deadline.
+     *
+     * @param cognitoClient The client used to query Cognito; it is not closed by this method
+     * @param groupName Name of the Group whose description has the desired YAML metadata
+     * @param userPoolId ID of the UserPool to which the Group belongs
+     * @param deadline The request's deadline
+     * @return {@link CognitoGroupDescriptionMetadata} representing the parsed YAML from the Group description.
+     */
+    public static CognitoGroupDescriptionMetadata extract(
+            final CognitoIdentityProviderClient cognitoClient,
+            final String groupName,
+            final String userPoolId,
+            final Deadline deadline) {
+        final GetGroupRequest request = GetGroupRequest.builder()
+                .userPoolId(userPoolId)
+                .groupName(groupName)
+                .build();
+        try {
+            final CognitoGetGroupEvent getGroupEvent = new CognitoGetGroupEvent();
+            getGroupEvent.begin();
+            final GetGroupResponse getGroupResponse;
+            try {
+                getGroupResponse = GET_GROUP_HEDGING.call(deadline, "Cognito GetGroup " + groupName,
+                        override -> cognitoClient.getGroup(
+                                request.toBuilder().overrideConfiguration(override).build()));
+                getGroupEvent.outcome = Outcomes.OK;
+            } catch (final RuntimeException e) {
+                getGroupEvent.outcome = Outcomes.of(e);
+                throw e;
+            } finally {
+                getGroupEvent.commit();
+            }
+
             final CognitoGroupDescriptionMetadata groupDescriptionMetadata =
-                    MAPPER.readValue(groupDescription, CognitoGroupDescriptionMetadata.class);
+                    parseDescription(getGroupResponse.group().description());
 
             logger.info("Successfully fetched and parsed group description for userPoolId {} and groupName {}",
                     userPoolId,
@@ -51,9 +162,16 @@ public class CognitoGroupDescriptionMetadataExtractor {
         } catch (final JacksonException e) {
             final String errorMessage = String.format(
                     "Exception while trying to connect to/query Cognito for a group description, " +
-                            "or while parsing YAML: %s (input [region: %s, groupName: %s, userPoolId: %s])",
-                    e.getMessage(), region, groupName, userPoolId);
+                            "or while parsing YAML: %s (input [groupName: %s, userPoolId: %s])",
+                    e.getMessage(), groupName, userPoolId);
             throw new RuntimeException(errorMessage, e);
         }
     }
+
+    /**
+     * Holds the YAML mapper, so that it is only created when a description first needs it.
+     */
+    private static final class YamlMapperHolder {
+        private static final ObjectMapper MAPPER = new ObjectMapper(new YAMLFactory());
+    }
 }
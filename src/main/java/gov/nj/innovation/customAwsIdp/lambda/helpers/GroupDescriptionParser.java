@@ -0,0 +1,293 @@
+package gov.nj.innovation.customAwsIdp.lambda.helpers;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import gov.nj.innovation.customAwsIdp.lambda.helpers.data.CognitoGroupDescriptionMetadata;
+
+import java.lang.reflect.RecordComponent;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parse the simple forms which Group descriptions actually use, without loading the YAML stack: one {@code key: value}
+ * per line (plain, single-quoted, or double-quoted without escapes, with optional {@code #} comments), or a flat JSON
+ * object of strings. The keys are matched against {@link CognitoGroupDescriptionMetadata}'s property names and
+ * {@link JsonAlias} aliases, read from the record itself so that the two cannot drift apart; other keys are ignored.
+ * <p>
+ * Anything outside of those forms (indentation, flow collections, anchors, block scalars, escapes which YAML and JSON
+ * treat differently, plain values which YAML would read as a boolean, number, or null, duplicate or missing keys)
+ * gives null, and the caller falls back to the full YAML parser, which either handles it or reports the error.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class GroupDescriptionParser {
+
+    private static final String RELAY_STATE = "relayState";
+    private static final String SSO_ROLE = "ssoRole";
+    private static final Map<String, String> PROPERTIES = properties();
+    private static final Set<String> YAML_KEYWORDS =
+            Set.of("~", "null", "true", "false", "yes", "no", "on", "off", "y", "n");
+
+    private GroupDescriptionParser() {}
+
+    /**
+     * @param description A Group description
+     * @return The parsed metadata, or null when the description needs the full YAML parser.
+     */
+    public static CognitoGroupDescriptionMetadata parse(final String description) {
+        if (description == null) {
+            return null;
+        }
+        final Map<String, String> values = new HashMap<>(4);
+        final boolean parsed = description.stripLeading().startsWith("{")
+                ? parseJson(description, values)
+                : parseLines(description, values);
+        if (!parsed || !values.containsKey(RELAY_STATE) || !values.containsKey(SSO_ROLE)) {
+            return null;
+        }
+        return new CognitoGroupDescriptionMetadata(values.get(RELAY_STATE), values.get(SSO_ROLE));
+    }
+
+    /**
+     * @return Whether every line was a comment, blank, or a top-level {@code key: value}.
+     */
+    private static boolean parseLines(final String description, final Map<String, String> values) {
+        int lineStart = 0;
+        while (lineStart <= description.length()) {
+            int lineEnd = description.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = description.length();
+            }
+            String line = description.substring(lineStart, lineEnd);
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            lineStart = lineEnd + 1;
+
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            final int colon = line.indexOf(':');
+            if (colon <= 0 || !isIdentifier(line, colon)) {
+                return false;
+            }
+            final String value = parseLineValue(line.substring(colon + 1));
+            if (value == null || !put(values, line.substring(0, colon), value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param rest Everything after the key's colon
+     * @return The value, or null when it is not a simple scalar.
+     */
+    private static String parseLineValue(final String rest) {
+        if (!rest.startsWith(" ")) {
+            return null;
+        }
+        final String trimmed = rest.strip();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+
+        final char first = trimmed.charAt(0);
+        if (first == '"' || first == '\'') {
+            final StringBuilder value = new StringBuilder(trimmed.length());
+            int i = 1;
+            while (i < trimmed.length()) {
+                final char c = trimmed.charAt(i++);
+                if (c == first) {
+                    if (first == '\'' && i < trimmed.length() && trimmed.charAt(i) == '\'') {
+                        value.append('\'');
+                        i++;
+                        continue;
+                    }
+                    return isComment(trimmed.substring(i)) ? value.toString() : null;
+                }
+                if (c == '\\' && first == '"') {
+                    return null;
+                }
+                value.append(c);
+            }
+            return null;
+        }
+
+        if (!Character.isLetter(first)) {
+            return null;
+        }
+        String value = trimmed;
+        final int comment = value.indexOf(" #");
+        if (comment >= 0) {
+            value = value.substring(0, comment).stripTrailing();
+        }
+        if (value.indexOf('\t') >= 0 || value.contains(": ") || value.endsWith(":")
+                || YAML_KEYWORDS.contains(value.toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * @return Whether the description was a flat JSON object whose values are all strings.
+     */
+    private static boolean parseJson(final String description, final Map<String, String> values) {
+        final JsonCursor cursor = new JsonCursor(description);
+        cursor.skipWhitespace();
+        cursor.expect('{');
+        cursor.skipWhitespace();
+        if (cursor.peek() == '}') {
+            cursor.next();
+        } else {
+            while (cursor.ok) {
+                final String key = cursor.readString();
+                cursor.skipWhitespace();
+                cursor.expect(':');
+                cursor.skipWhitespace();
+                final String value = cursor.readString();
+                if (!cursor.ok || !put(values, key, value)) {
+                    return false;
+                }
+                cursor.skipWhitespace();
+                if (cursor.peek() == ',') {
+                    cursor.next();
+                    cursor.skipWhitespace();
+                } else {
+                    cursor.expect('}');
+                    break;
+                }
+            }
+        }
+        cursor.skipWhitespace();
+        return cursor.ok && cursor.atEnd();
+    }
+
+    /**
+     * Store a value under its property, ignoring unknown keys.
+     *
+     * @return False if the property was already set, which is left to the YAML parser to decide.
+     */
+    private static boolean put(final Map<String, String> values, final String key, final String value) {
+        final String property = PROPERTIES.get(key);
+        return property == null || values.putIfAbsent(property, value) == null;
+    }
+
+    private static boolean isIdentifier(final String line, final int end) {
+        if (!Character.isLetter(line.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < end; i++) {
+            final char c = line.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isComment(final String rest) {
+        final String stripped = rest.strip();
+        return stripped.isEmpty() || (stripped.startsWith("#") && rest.length() > rest.stripLeading().length());
+    }
+
+    private static Map<String, String> properties() {
+        final Map<String, String> properties = new HashMap<>();
+        for (final RecordComponent component : CognitoGroupDescriptionMetadata.class.getRecordComponents()) {
+            properties.put(component.getName(), component.getName());
+            final JsonAlias aliases = component.getAnnotation(JsonAlias.class);
+            if (aliases != null) {
+                for (final String alias : aliases.value()) {
+                    properties.put(alias, component.getName());
+                }
+            }
+        }
+        return Map.copyOf(properties);
+    }
+
+    /**
+     * A position in a JSON document, which stops reading (sets {@code ok} to false) at the first thing it cannot take.
+     */
+    private static final class JsonCursor {
+        private final String json;
+        private int position;
+        private boolean ok = true;
+
+        private JsonCursor(final String json) {
+            this.json = json;
+        }
+
+        private boolean atEnd() {
+            return position >= json.length();
+        }
+
+        private char peek() {
+            return atEnd() ? 0 : json.charAt(position);
+        }
+
+        private void next() {
+            position++;
+        }
+
+        private void expect(final char expected) {
+            if (peek() == expected) {
+                next();
+            } else {
+                ok = false;
+            }
+        }
+
+        private void skipWhitespace() {
+            while (!atEnd() && (peek() == ' ' || peek() == '\t' || peek() == '\n' || peek() == '\r')) {
+                next();
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            final StringBuilder value = new StringBuilder();
+            while (ok && !atEnd()) {
+                final char c = json.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c < ' ') {
+                    break;
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                switch (atEnd() ? 0 : json.charAt(position++)) {
+                    case '"' -> value.append('"');
+                    case '\\' -> value.append('\\');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'u' -> {
+                        int codeUnit = 0;
+                        for (int end = position + 4; position < end; position++) {
+                            final int digit = atEnd() ? -1 : Character.digit(json.charAt(position), 16);
+                            if (digit < 0) {
+                                ok = false;
+                                return null;
+                            }
+                            codeUnit = codeUnit * 16 + digit;
+                        }
+                        value.append((char) codeUnit);
+                    }
+                    // Including "\/", which is JSON but not YAML 1.1
+                    default -> {
+                        ok = false;
+                        return null;
+                    }
+                }
+            }
+            ok = false;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package gov.nj.innovation.customAwsIdp.lambda.helpers;
+
+import gov.nj.innovation.customAwsIdp.exception.CustomAwsIdpException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.VisibleForTesting;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Remember the SAML Responses generated for requests carrying an {@code Idempotency-Key}, so that a client retrying a
+ * request it never saw the answer to gets the same, already signed Response back rather than a new one being minted.
+ * <p>
+ * An entry is bound to everything which went into the Response: the JWT subject, the email, the Group, the session
+ * duration, and the key itself. These are hashed together into the entry's name, and the Response is encrypted with
+ * AES-GCM under a key generated for this container alone, using that hash as the additional authenticated data, so a
+ * Response can only be read back by a request from the same user for the same Group, and never sits in memory in the
+ * clear. Requests without a subject are not cached.
+ * <p>
+ * Entries live for {@value #WINDOW_ENV} seconds (default {@value #DEFAULT_WINDOW_SECONDS}, at most {@value
+ * #MAX_WINDOW_SECONDS}, {@code 0} to turn the cache off), well inside the Assertion's own 60 second expiry, and at most
+ * {@value #MAX_ENTRIES_ENV} (default {@value #DEFAULT_MAX_ENTRIES}) are kept, the oldest being dropped first. The cache
+ * is per container: a retry routed to another container mints a new Response, which is just as valid.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class IdempotentResponseCache {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String WINDOW_ENV = "IDEMPOTENCY_WINDOW_SECONDS";
+    public static final String MAX_ENTRIES_ENV = "IDEMPOTENCY_CACHE_MAX_ENTRIES";
+    private static final Logger logger = LogManager.getLogger(IdempotentResponseCache.class);
+    private static final Pattern KEY_PATTERN = Pattern.compile("[\\x21-\\x7E]{1,128}");
+    private static final long DEFAULT_WINDOW_SECONDS = 15;
+    private static final long MAX_WINDOW_SECONDS = 30;
+    private static final int DEFAULT_MAX_ENTRIES = 256;
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    /**
+     * A Response read back from the cache.
+     *
+     * @param samlResponse The Base64-encoded SAML Response
+     * @param relayState The RelayState it was returned with
+     */
+    public record CachedResponse(String samlResponse, String relayState) {}
+
+    private record Entry(byte[] iv, byte[] ciphertext, long expiresAtNanos) {}
+
+    private final long windowNanos;
+    private final LongSupplier nanoClock;
+    private final SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * Build a cache configured from {@value #WINDOW_ENV} and {@value #MAX_ENTRIES_ENV}.
+     */
+    public IdempotentResponseCache() {
+        this(Duration.ofSeconds(parseWindow(System.getenv(WINDOW_ENV))),
+                parseMaxEntries(System.getenv(MAX_ENTRIES_ENV)), System::nanoTime);
+    }
+
+    /**
+     * @param window How long a Response is served again; zero turns the cache off
+     * @param maxEntries How many Responses are kept at most
+     * @param nanoClock The clock the window is measured with
+     */
+    @VisibleForTesting
+    public IdempotentResponseCache(final Duration window, final int maxEntries, final LongSupplier nanoClock) {
+        this.windowNanos = window.toNanos();
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        try {
+            final KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(256, random);
+            this.key = keyGenerator.generateKey();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new CustomAwsIdpException("Could not create the idempotency cache's key: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param idempotencyKey The raw header value
+     * @return Whether the value may be used as a key: 1 to 128 visible ASCII characters.
+     */
+    public static boolean isValidKey(final String idempotencyKey) {
+        return idempotencyKey != null && KEY_PATTERN.matcher(idempotencyKey).matches();
+    }
+
+    /**
+     * @param subject The JWT subject of the request
+     * @return Whether the request can be cached at all, i.e. the cache is on and the request names its user.
+     */
+    public boolean accepts(final String subject) {
+        return windowNanos > 0 && subject != null && !subject.isEmpty();
+    }
+
+    /**
+     * @return The Response generated for exactly this user, Group, duration, and key within the window, or null.
+     */
+    public CachedResponse get(
+            final String subject,
+            final String email,
+            final String groupName,
+            final String duration,
+            final String idempotencyKey) {
+        if (!accepts(subject)) {
+            return null;
+        }
+        final byte[] binding = binding(subject, email, groupName, duration, idempotencyKey);
+        final String name = Base64.getEncoder().encodeToString(binding);
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(name);
+            if (entry != null && nanoClock.getAsLong() - entry.expiresAtNanos >= 0) {
+                entries.remove(name);
+                return null;
+            }
+        }
+        if (entry == null) {
+            return null;
+        }
+        try {
+            final Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, entry.iv));
+            cipher.updateAAD(binding);
+            final ByteBuffer plaintext = ByteBuffer.wrap(cipher.doFinal(entry.ciphertext));
+            final byte[] relayState = new byte[plaintext.getInt()];
+            plaintext.get(relayState);
+            final byte[] samlResponse = new byte[plaintext.remaining()];
+            plaintext.get(samlResponse);
+            return new CachedResponse(new String(samlResponse, StandardCharsets.UTF_8),
+                    new String(relayState, StandardCharsets.UTF_8));
+        } catch (final GeneralSecurityException e) {
+            logger.warn("Could not decrypt a cached Response, generating a new one: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Remember a successfully generated Response for the window. Nothing is kept if the request cannot be cached.
+     */
+    public void put(
+            final String subject,
+            final String email,
+            final String groupName,
+            final String duration,
+            final String idempotencyKey,
+            final CachedResponse response) {
+        if (!accepts(subject)) {
+            return;
+        }
+        final byte[] binding = binding(subject, email, groupName, duration, idempotencyKey);
+        final byte[] relayState = nullToEmpty(response.relayState).getBytes(StandardCharsets.UTF_8);
+        final byte[] samlResponse = response.samlResponse.getBytes(StandardCharsets.UTF_8);
+        final byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(iv);
+        final byte[] ciphertext;
+        try {
+            final Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(binding);
+            ciphertext = cipher.doFinal(ByteBuffer.allocate(Integer.BYTES + relayState.length + samlResponse.length)
+                    .putInt(relayState.length).put(relayState).put(samlResponse).array());
+        } catch (final GeneralSecurityException e) {
+            logger.warn("Could not encrypt a Response for the idempotency cache, it will not be cached: {}",
+                    e.toString());
+            return;
+        }
+
+        final long now = nanoClock.getAsLong();
+        synchronized (entries) {
+            // Every entry lives for the same window, so the expired ones are always the oldest
+            final Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext() && now - iterator.next().expiresAtNanos >= 0) {
+                iterator.remove();
+            }
+            entries.put(Base64.getEncoder().encodeToString(binding), new Entry(iv, ciphertext, now + windowNanos));
+        }
+    }
+
+    @VisibleForTesting
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Hash the fields with their lengths, so that no two different requests can run together into the same input.
+     */
+    private static byte[] binding(final String... fields) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (final String field : fields) {
+                final byte[] bytes = nullToEmpty(field).getBytes(StandardCharsets.UTF_8);
+                digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+                digest.update(bytes);
+            }
+            return digest.digest();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new CustomAwsIdpException("Could not hash an idempotency key: " + e.getMessage(), e);
+        }
+    }
+
+    private static String nullToEmpty(final String value) {
+        return value != null ? value : "";
+    }
+
+    static long parseWindow(final String value) {
+        if (value == null || value.isBlank()) {
+            return DEFAULT_WINDOW_SECONDS;
+        }
+        try {
+            return Math.clamp(Long.parseLong(value.trim()), 0, MAX_WINDOW_SECONDS);
+        } catch (final NumberFormatException e) {
+            logger.warn("Invalid {} '{}', using {} s", WINDOW_ENV, value, DEFAULT_WINDOW_SECONDS);
+            return DEFAULT_WINDOW_SECONDS;
+        }
+    }
+
+    static int parseMaxEntries(final String value) {
+        if (value == null || value.isBlank()) {
+            return DEFAULT_MAX_ENTRIES;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (final NumberFormatException e) {
+            logger.warn("Invalid {} '{}', using {}", MAX_ENTRIES_ENV, value, DEFAULT_MAX_ENTRIES);
+            return DEFAULT_MAX_ENTRIES;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package gov.nj.innovation.customAwsIdp.lambda.helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Negotiate and apply an HTTP content-coding for a response body, based on the request's {@code Accept-Encoding}.
+ * <p>
+ * Only gzip and deflate are offered, since the JDK has no Brotli encoder; a request which only accepts {@code br} gets
+ * an uncompressed body. Bodies under {@value #MIN_COMPRESSIBLE_BYTES} bytes are never compressed, as the framing and
+ * Base64 overhead would outweigh what is saved.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class ResponseCompressor {
+
+    public static final int MIN_COMPRESSIBLE_BYTES = 1024;
+
+    public enum Encoding {
+        GZIP("gzip"),
+        DEFLATE("deflate"),
+        IDENTITY("identity");
+
+        private final String headerValue;
+
+        Encoding(final String headerValue) {
+            this.headerValue = headerValue;
+        }
+
+        public String headerValue() {
+            return headerValue;
+        }
+    }
+
+    /**
+     * Pick the best supported encoding from an {@code Accept-Encoding} header, honoring q-values and {@code *}. Ties
+     * go to gzip.
+     *
+     * @param acceptEncoding The raw header value, possibly null
+     * @return The encoding to use, {@link Encoding#IDENTITY} if nothing supported is acceptable.
+     */
+    public static Encoding negotiate(final String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return Encoding.IDENTITY;
+        }
+
+        Double gzipQ = null;
+        Double deflateQ = null;
+        Double wildcardQ = null;
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] parameters = coding.split(";");
+            double q = 1.0;
+            for (int i = 1; i < parameters.length; i++) {
+                final String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    q = parseQValue(parameter.substring(2));
+                }
+            }
+            switch (parameters[0].trim().toLowerCase(Locale.ROOT)) {
+                case "gzip", "x-gzip" -> gzipQ = q;
+                case "deflate" -> deflateQ = q;
+                case "*" -> wildcardQ = q;
+                default -> { }
+            }
+        }
+
+        final double gzip = gzipQ != null ? gzipQ : wildcardQ != null ? wildcardQ : 0;
+        final double deflate = deflateQ != null ? deflateQ : wildcardQ != null ? wildcardQ : 0;
+        if (gzip > 0 && gzip >= deflate) {
+            return Encoding.GZIP;
+        }
+        return deflate > 0 ? Encoding.DEFLATE : Encoding.IDENTITY;
+    }
+
+    /**
+     * Compress a body with the given encoding.
+     *
+     * @param body The uncompressed body
+     * @param encoding The negotiated encoding
+     * @return The compressed body, or the same array for {@link Encoding#IDENTITY}.
+     */
+    public static byte[] compress(final byte[] body, final Encoding encoding) {
+        if (encoding == Encoding.IDENTITY) {
+            return body;
+        }
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 2);
+        try (final OutputStream out = encoding == Encoding.GZIP ?
+                new GZIPOutputStream(compressed) : new DeflaterOutputStream(compressed)) {
+            out.write(body);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not compress the response body: " + e.getMessage(), e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static double parseQValue(final String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package gov.nj.innovation.customAwsIdp.lambda.helpers;
+
+import gov.nj.innovation.customAwsIdp.SamlGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Render the HTML page which auto-POSTs a SAML Response to AWS sign-in, so that the browser does not need to run its
+ * own script to build the form.
+ * <p>
+ * The template ({@code saml-post-form.html}) is compiled once per container into literal segments and the slots
+ * between them, and the Content-Security-Policy is derived from it at the same time: the only script allowed is the
+ * template's inline submit, by hash, and the form may only be posted to AWS sign-in. Every value placed into a slot is
+ * HTML-escaped, even the Base64 SAML Response.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class SamlPostForm {
+
+    private static final String TEMPLATE_RESOURCE = "saml-post-form.html";
+    private static final String ACTION_PLACEHOLDER = "{{action}}";
+    private static final String SCRIPT_OPEN = "<script>";
+    private static final String SCRIPT_CLOSE = "</script>";
+    private static final SamlPostForm INSTANCE = compile(loadTemplate());
+
+    private enum Slot {
+        SAML_RESPONSE("{{SAMLResponse}}"),
+        RELAY_STATE("{{RelayState}}");
+
+        private final String placeholder;
+
+        Slot(final String placeholder) {
+            this.placeholder = placeholder;
+        }
+    }
+
+    private final List<String> segments;
+    private final List<Slot> slots;
+    private final int literalLength;
+    private final String contentSecurityPolicy;
+
+    private SamlPostForm(final List<String> segments, final List<Slot> slots, final String contentSecurityPolicy) {
+        this.segments = List.copyOf(segments);
+        this.slots = List.copyOf(slots);
+        this.literalLength = segments.stream().mapToInt(String::length).sum();
+        this.contentSecurityPolicy = contentSecurityPolicy;
+    }
+
+    public static SamlPostForm getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return The Content-Security-Policy header value which must be sent with every rendered page.
+     */
+    public String contentSecurityPolicy() {
+        return contentSecurityPolicy;
+    }
+
+    /**
+     * Render the page, escaping the values straight into a buffer sized for the whole page, so that the SAML Response
+     * is copied only once.
+     *
+     * @param samlResponse The Base64 SAML Response
+     * @param relayState The RelayState, possibly null
+     * @return The full HTML page.
+     */
+    public String render(final String samlResponse, final String relayState) {
+        final String relay = relayState == null ? "" : relayState;
+        // Base64 only escapes its (at most two) padding characters, so the RelayState is given most of the slack
+        final StringBuilder page = new StringBuilder(literalLength + samlResponse.length() + 16 + relay.length() * 2);
+        for (int i = 0; i < slots.size(); i++) {
+            page.append(segments.get(i));
+            escapeInto(page, slots.get(i) == Slot.SAML_RESPONSE ? samlResponse : relay);
+        }
+        page.append(segments.getLast());
+        return page.toString();
+    }
+
+    /**
+     * Escape for use inside a quoted attribute value or element text. Beyond the characters with meaning in HTML, the
+     * backtick, equals sign, and control characters are written as numeric references too.
+     */
+    static void escapeInto(final StringBuilder out, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                case '`' -> out.append("&#96;");
+                case '=' -> out.append("&#61;");
+                default -> {
+                    if (c < 0x20 || c == 0x7f) {
+                        out.append("&#").append((int) c).append(';');
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Split the template into literal segments around its slots and hash its inline script for the CSP.
+     */
+    static SamlPostForm compile(final String rawTemplate) {
+        final String template = rawTemplate.replace(ACTION_PLACEHOLDER, SamlGenerator.REDIRECT_URI);
+        final List<String> segments = new ArrayList<>();
+        final List<Slot> slots = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            Slot next = null;
+            int nextIndex = -1;
+            for (final Slot slot : Slot.values()) {
+                final int index = template.indexOf(slot.placeholder, position);
+                if (index >= 0 && (nextIndex < 0 || index < nextIndex)) {
+                    next = slot;
+                    nextIndex = index;
+                }
+            }
+            if (next == null) {
+                segments.add(template.substring(position));
+                break;
+            }
+            segments.add(template.substring(position, nextIndex));
+            slots.add(next);
+            position = nextIndex + next.placeholder.length();
+        }
+        if (!slots.contains(Slot.SAML_RESPONSE) || segments.stream().anyMatch(segment -> segment.contains("{{"))) {
+            throw new IllegalStateException("The SAML POST form template must fill SAMLResponse and nothing unknown");
+        }
+
+        final int scriptStart = template.indexOf(SCRIPT_OPEN);
+        final int scriptEnd = template.indexOf(SCRIPT_CLOSE, scriptStart);
+        if (scriptStart < 0 || scriptEnd < 0 || template.indexOf(SCRIPT_OPEN, scriptEnd) >= 0) {
+            throw new IllegalStateException("The SAML POST form template must have exactly one inline script");
+        }
+        final String script = template.substring(scriptStart + SCRIPT_OPEN.length(), scriptEnd);
+
+        // AWS sign-in answers the POST with a redirect to the console, which form-action also governs in some browsers
+        final String contentSecurityPolicy = String.format("default-src 'none'; script-src 'sha256-%s'; " +
+                        "form-action %s https://*.console.aws.amazon.com; base-uri 'none'; frame-ancestors 'none'",
+                sha256Base64(script), SamlGenerator.REDIRECT_URI);
+        return new SamlPostForm(segments, slots, contentSecurityPolicy);
+    }
+
+    private static String loadTemplate() {
+        try (final InputStream in = SamlPostForm.class.getClassLoader().getResourceAsStream(TEMPLATE_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing resource " + TEMPLATE_RESOURCE);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not read " + TEMPLATE_RESOURCE + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String sha256Base64(final String value) {
+        try {
+            return Base64.getEncoder().encodeToString(
+                    MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is unavailable: " + e.getMessage(), e);
+        }
+    }
+}
@@ -7,9 +7,10 @@ import java.util.List;
  * com.amazonaws.services.lambda.runtime.RequestHandler#handleRequest(Object,
  * com.amazonaws.services.lambda.runtime.Context)}.
  *
+ * @param subject The JWT subject, i.e. the Cognito user's unique ID
  * @param email The email address of a Cognito user
  * @param usersGroups The groups which that user belongs to
  *
  * @author Case Walker (case@innovation.nj.gov)
  */
-public record AuthorizerContextDetails(String email, List<String> usersGroups) {}
+public record AuthorizerContextDetails(String subject, String email, List<String> usersGroups) {}
@@ -0,0 +1,100 @@
+package gov.nj.innovation.customAwsIdp.metrics;
+
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+/**
+ * Write one CloudWatch Embedded Metric Format (EMF) line per invocation. Lambda forwards stdout to CloudWatch Logs,
+ * which extracts the metrics from the JSON, so no extra network calls are made while handling a login.
+ * <p>
+ * Metrics are published under the {@value #NAMESPACE} namespace with the dimension sets {@code [GroupName, Status]}
+ * and {@code [Status]}. The group is only used as a dimension once it has been validated against the user's groups;
+ * before that it is reported as {@value #UNKNOWN_GROUP} so that arbitrary input cannot create new metric series.
+ * <p>
+ * {@value #IDEMPOTENCY_HIT} is only written for requests with an {@code Idempotency-Key}, so its average is the rate at
+ * which retries were answered with an already signed Response.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class EmfMetricsWriter {
+
+    public static final String NAMESPACE = "CustomAwsIdp";
+    public static final String UNKNOWN_GROUP = "NONE";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String GROUP_DIMENSION = "GroupName";
+    private static final String STATUS_DIMENSION = "Status";
+    private static final String TOTAL_TIME = "TotalTime";
+    private static final String COLD_START = "ColdStart";
+    private static final String KEY_CACHE_HIT = "KeyCacheHit";
+    private static final String IDEMPOTENCY_HIT = "IdempotencyHit";
+    private static final String MILLISECONDS = "Milliseconds";
+    private static final String COUNT = "Count";
+
+    private final PrintStream out;
+
+    public EmfMetricsWriter(final PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Write the metrics for one invocation as a single line of JSON.
+     *
+     * @param timings The per-phase timings of the invocation
+     * @param totalNanos The time spent in the whole invocation
+     * @param groupName The validated group, or null if the request never got that far
+     * @param status The status returned to the caller
+     * @param coldStart Whether this was the first invocation in the container
+     * @param keyCacheHit Whether the signing keys were served from the container's cache
+     * @param idempotencyHit Whether the Response was served from the idempotency cache, or null without a key
+     */
+    public void write(
+            final PhaseTimings timings,
+            final long totalNanos,
+            final String groupName,
+            final String status,
+            final boolean coldStart,
+            final boolean keyCacheHit,
+            final Boolean idempotencyHit) {
+        final ObjectNode root = MAPPER.createObjectNode();
+        final ObjectNode aws = root.putObject("_aws");
+        aws.put("Timestamp", System.currentTimeMillis());
+        final ObjectNode directive = aws.putArray("CloudWatchMetrics").addObject();
+        directive.put("Namespace", NAMESPACE);
+        final ArrayNode dimensions = directive.putArray("Dimensions");
+        dimensions.addArray().add(GROUP_DIMENSION).add(STATUS_DIMENSION);
+        dimensions.addArray().add(STATUS_DIMENSION);
+        final ArrayNode metrics = directive.putArray("Metrics");
+
+        root.put(GROUP_DIMENSION, groupName != null ? groupName : UNKNOWN_GROUP);
+        root.put(STATUS_DIMENSION, status);
+        for (final Map.Entry<Phase, Long> entry : timings.asNanos().entrySet()) {
+            addMetric(root, metrics, entry.getKey().metricName(), toMillis(entry.getValue()), MILLISECONDS);
+        }
+        addMetric(root, metrics, TOTAL_TIME, toMillis(totalNanos), MILLISECONDS);
+        addMetric(root, metrics, COLD_START, coldStart ? 1 : 0, COUNT);
+        addMetric(root, metrics, KEY_CACHE_HIT, keyCacheHit ? 1 : 0, COUNT);
+        if (idempotencyHit != null) {
+            addMetric(root, metrics, IDEMPOTENCY_HIT, idempotencyHit ? 1 : 0, COUNT);
+        }
+
+        out.println(MAPPER.writeValueAsString(root));
+    }
+
+    private static void addMetric(
+            final ObjectNode root,
+            final ArrayNode metrics,
+            final String name,
+            final double value,
+            final String unit) {
+        metrics.addObject().put("Name", name).put("Unit", unit);
+        root.put(name, value);
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
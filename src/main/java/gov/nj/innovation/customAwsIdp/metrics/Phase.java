@@ -0,0 +1,25 @@
+package gov.nj.innovation.customAwsIdp.metrics;
+
+/**
+ * The timed phases of one login, each reported as its own metric.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public enum Phase {
+    REQUEST_PARSE("RequestParseTime"),
+    GROUP_METADATA("GroupMetadataTime"),
+    KEY_LOAD("KeyLoadTime"),
+    BUILD("BuildTime"),
+    SIGN("SignTime"),
+    ENCODE("EncodeTime");
+
+    private final String metricName;
+
+    Phase(final String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String metricName() {
+        return metricName;
+    }
+}
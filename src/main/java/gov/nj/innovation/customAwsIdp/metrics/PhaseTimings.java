@@ -0,0 +1,33 @@
+package gov.nj.innovation.customAwsIdp.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Collect the time spent in each {@link Phase} of a single login. Phases which were never reached (e.g. because of an
+ * input error) are simply absent. Not thread-safe; one instance belongs to one invocation.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class PhaseTimings {
+
+    private final Map<Phase, Long> nanos = new EnumMap<>(Phase.class);
+
+    /**
+     * Record the time elapsed since {@code startNanos} against the given phase, adding to any earlier time.
+     *
+     * @param phase The phase which just finished
+     * @param startNanos The {@link System#nanoTime()} at which the phase started
+     */
+    public void record(final Phase phase, final long startNanos) {
+        nanos.merge(phase, System.nanoTime() - startNanos, Long::sum);
+    }
+
+    /**
+     * @return The recorded phases and their durations in nanoseconds, in {@link Phase} order.
+     */
+    public Map<Phase, Long> asNanos() {
+        return Collections.unmodifiableMap(nanos);
+    }
+}
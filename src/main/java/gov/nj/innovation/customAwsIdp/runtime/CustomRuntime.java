@@ -0,0 +1,150 @@
+package gov.nj.innovation.customAwsIdp.runtime;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import gov.nj.innovation.customAwsIdp.lambda.GetSamlFunctionUrlHandler;
+import gov.nj.innovation.customAwsIdp.lambda.GetSamlHttpResponseHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Entry point for running the IdP on Lambda's OS-only runtime ({@code provided.al2023}) with a JVM bundled in the
+ * deployment package, instead of on the managed Java runtime. See {@code src/main/runtime/bootstrap}, which starts it.
+ * <p>
+ * The loop is the least the Runtime API requires: wait for the next invocation, map its JSON straight onto the
+ * handler's event with {@link RuntimeEvents}, run the handler, and post its response, or the error if it threw. One
+ * failed invocation does not end the loop, see {@link #serveNext()}. The handler is chosen by the function's handler
+ * setting ({@value #HANDLER_ENV}), so the same CDK handler string works on either runtime. If the handler cannot be
+ * built, the error is posted to the Runtime API's init error endpoint and the process exits, as Lambda expects.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class CustomRuntime {
+
+    public static final String HANDLER_ENV = "_HANDLER";
+    private static final Logger logger = LogManager.getLogger(CustomRuntime.class);
+    private static final String TRACE_HEADER_PROPERTY = "com.amazonaws.xray.traceHeader";
+
+    private final RuntimeApiClient client;
+    private final InvocationHandler handler;
+
+    /**
+     * One invocation's work, from the event's JSON to the response's JSON.
+     */
+    @FunctionalInterface
+    public interface InvocationHandler {
+        byte[] handle(byte[] event, Context context) throws Exception;
+    }
+
+    /**
+     * @param client The client for this container's Runtime API
+     * @param handler The handler for every invocation
+     */
+    public CustomRuntime(final RuntimeApiClient client, final InvocationHandler handler) {
+        this.client = client;
+        this.handler = handler;
+    }
+
+    /**
+     * Serve invocations until the thread is interrupted. Lambda freezes and eventually stops the process instead, so
+     * this only returns in tests.
+     */
+    public void run() throws IOException {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                serveNext();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Wait for, handle, and answer one invocation. Anything the handler throws is posted as the invocation's error, and
+     * a response or error which cannot be posted is logged and costs only this invocation, which Lambda then times out.
+     * After a {@link VirtualMachineError} has been reported it is rethrown, since the JVM cannot be trusted afterwards,
+     * so that the process exits and Lambda starts a new one.
+     *
+     * @throws IOException When no invocation can be fetched from the Runtime API, after which the container cannot do
+     * anything useful
+     */
+    public void serveNext() throws IOException, InterruptedException {
+        final RuntimeApiClient.Invocation invocation = client.next();
+        if (invocation.traceId() != null) {
+            System.setProperty(TRACE_HEADER_PROPERTY, invocation.traceId());
+        } else {
+            System.clearProperty(TRACE_HEADER_PROPERTY);
+        }
+
+        byte[] response = null;
+        Throwable failure = null;
+        try {
+            response = handler.handle(invocation.payload(), new RuntimeContext(invocation));
+        } catch (final Throwable t) {
+            logger.error("Invocation {} failed", invocation.requestId(), t);
+            failure = t;
+        }
+        try {
+            if (failure == null) {
+                client.respond(invocation.requestId(), response);
+            } else {
+                client.error(invocation.requestId(), failure);
+            }
+        } catch (final IOException e) {
+            logger.error("Could not post the result of invocation {}", invocation.requestId(), e);
+        }
+
+        if (failure instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        } else if (failure instanceof VirtualMachineError error) {
+            throw error;
+        }
+    }
+
+    /**
+     * @param handlerName The function's handler setting, the class name of either handler (optionally with a method)
+     * @return The handler for the name, built as the managed runtime would build it.
+     * @throws IllegalArgumentException When the name is not one of the handlers
+     */
+    public static InvocationHandler forHandler(final String handlerName) {
+        final String className = handlerName == null ? "" : handlerName.split("::", 2)[0];
+        if (className.equals(GetSamlHttpResponseHandler.class.getName())) {
+            return httpApi(new GetSamlHttpResponseHandler());
+        }
+        if (className.equals(GetSamlFunctionUrlHandler.class.getName())) {
+            return functionUrl(new GetSamlFunctionUrlHandler());
+        }
+        throw new IllegalArgumentException("Unknown handler: " + handlerName);
+    }
+
+    public static InvocationHandler httpApi(final GetSamlHttpResponseHandler handler) {
+        return (event, context) -> RuntimeEvents.httpResponse(
+                handler.handleRequest(RuntimeEvents.httpApiRequest(event), context));
+    }
+
+    public static InvocationHandler functionUrl(final GetSamlFunctionUrlHandler handler) {
+        return (event, context) -> RuntimeEvents.httpResponse(
+                handler.handleRequest(RuntimeEvents.functionUrlRequest(event), context));
+    }
+
+    /**
+     * Build the handler during the init phase, then serve invocations.
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final RuntimeApiClient client = new RuntimeApiClient(System.getenv(RuntimeApiClient.RUNTIME_API_ENV));
+        final InvocationHandler handler;
+        try {
+            handler = forHandler(System.getenv(HANDLER_ENV));
+        } catch (final RuntimeException | Error e) {
+            logger.error("Failed to initialize the handler", e);
+            client.initError(e);
+            System.exit(1);
+            return;
+        }
+        logger.info("Initialized {} in {} ms of JVM uptime", System.getenv(HANDLER_ENV),
+                ManagementFactory.getRuntimeMXBean().getUptime());
+        new CustomRuntime(client, handler).run();
+    }
+}
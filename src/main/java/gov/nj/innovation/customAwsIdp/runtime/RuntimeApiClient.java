@@ -0,0 +1,128 @@
+package gov.nj.innovation.customAwsIdp.runtime;
+
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+/**
+ * A minimal client for the Lambda Runtime API, which a custom runtime polls for invocations and posts their results
+ * to. One {@link HttpClient} is kept for the life of the container, so the connection to the Runtime API is reused by
+ * every call.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class RuntimeApiClient {
+
+    public static final String RUNTIME_API_ENV = "AWS_LAMBDA_RUNTIME_API";
+    public static final String REQUEST_ID_HEADER = "Lambda-Runtime-Aws-Request-Id";
+    public static final String DEADLINE_HEADER = "Lambda-Runtime-Deadline-Ms";
+    public static final String FUNCTION_ARN_HEADER = "Lambda-Runtime-Invoked-Function-Arn";
+    public static final String TRACE_ID_HEADER = "Lambda-Runtime-Trace-Id";
+    public static final String ERROR_TYPE_HEADER = "Lambda-Runtime-Function-Error-Type";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String API_VERSION = "2018-06-01";
+
+    private final HttpClient httpClient;
+    private final URI runtimeUri;
+
+    /**
+     * One invocation handed out by the Runtime API.
+     *
+     * @param requestId The invocation's request ID, which its result is posted under
+     * @param deadlineEpochMillis When the invocation times out, in milliseconds since the epoch
+     * @param invokedFunctionArn The ARN the function was invoked with, including any alias
+     * @param traceId The X-Ray trace header, possibly null
+     * @param payload The event, as JSON
+     */
+    public record Invocation(
+            String requestId,
+            long deadlineEpochMillis,
+            String invokedFunctionArn,
+            String traceId,
+            byte[] payload) {}
+
+    /**
+     * @param runtimeApi The Runtime API's {@code host:port}, as given in {@value #RUNTIME_API_ENV}
+     */
+    public RuntimeApiClient(final String runtimeApi) {
+        this.runtimeUri = URI.create("http://" + runtimeApi + "/" + API_VERSION + "/runtime/");
+        // The Runtime API only speaks HTTP/1.1, and never needs a redirect or a proxy
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .proxy(HttpClient.Builder.NO_PROXY)
+                .build();
+    }
+
+    /**
+     * Wait, without a timeout, for the next invocation. Lambda freezes the container while nothing is waiting.
+     *
+     * @return The invocation.
+     * @throws IOException When the Runtime API cannot be reached or does not hand out an invocation
+     */
+    public Invocation next() throws IOException, InterruptedException {
+        final HttpResponse<byte[]> response = httpClient.send(
+                HttpRequest.newBuilder(runtimeUri.resolve("invocation/next")).GET().build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("The Runtime API answered invocation/next with " + response.statusCode());
+        }
+        final String requestId = response.headers().firstValue(REQUEST_ID_HEADER)
+                .orElseThrow(() -> new IOException("The invocation has no " + REQUEST_ID_HEADER));
+        return new Invocation(
+                requestId,
+                response.headers().firstValueAsLong(DEADLINE_HEADER).orElse(0),
+                response.headers().firstValue(FUNCTION_ARN_HEADER).orElse(null),
+                response.headers().firstValue(TRACE_ID_HEADER).orElse(null),
+                response.body());
+    }
+
+    /**
+     * @param requestId The invocation to answer
+     * @param body The function's result, as JSON
+     */
+    public void respond(final String requestId, final byte[] body) throws IOException, InterruptedException {
+        post("invocation/" + requestId + "/response", body, Map.of());
+    }
+
+    /**
+     * Report that an invocation failed, which Lambda returns to the caller as a function error.
+     */
+    public void error(final String requestId, final Throwable error) throws IOException, InterruptedException {
+        post("invocation/" + requestId + "/error", errorBody(error), Map.of(ERROR_TYPE_HEADER, errorType(error)));
+    }
+
+    /**
+     * Report that the function could not be initialized, after which the runtime should exit.
+     */
+    public void initError(final Throwable error) throws IOException, InterruptedException {
+        post("init/error", errorBody(error), Map.of(ERROR_TYPE_HEADER, errorType(error)));
+    }
+
+    private void post(final String path, final byte[] body, final Map<String, String> headers)
+            throws IOException, InterruptedException {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(runtimeUri.resolve(path))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        headers.forEach(request::header);
+        final HttpResponse<Void> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 202) {
+            throw new IOException("The Runtime API answered " + path + " with " + response.statusCode());
+        }
+    }
+
+    private static byte[] errorBody(final Throwable error) {
+        final ObjectNode body = MAPPER.createObjectNode();
+        body.put("errorMessage", error.getMessage() != null ? error.getMessage() : error.toString());
+        body.put("errorType", error.getClass().getName());
+        return MAPPER.writeValueAsBytes(body);
+    }
+
+    private static String errorType(final Throwable error) {
+        return "Runtime." + error.getClass().getSimpleName();
+    }
+}
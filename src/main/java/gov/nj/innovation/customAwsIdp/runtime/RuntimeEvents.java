@@ -0,0 +1,148 @@
+package gov.nj.innovation.customAwsIdp.runtime;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent.ProxyRequestContext;
+
+/**
+ * Convert between the JSON exchanged with the Runtime API and the event classes the handlers take.
+ * <p>
+ * The managed Java runtime binds each event onto its class reflectively, which has to discover every property of the
+ * class (and of the nested request context) on the first invocation. Only the fields the handlers read are copied
+ * here, straight from the JSON tree: the path, query string, and path parameters, the headers, and the authorizer's
+ * claims. The response is written the same way, with the four fields API Gateway and Function URLs look at.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class RuntimeEvents {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private RuntimeEvents() {}
+
+    /**
+     * @param payload An HTTP API event, in payload format 2.0
+     * @return The event as {@link gov.nj.innovation.customAwsIdp.lambda.GetSamlHttpResponseHandler} takes it.
+     */
+    public static APIGatewayProxyRequestEvent httpApiRequest(final byte[] payload) {
+        final JsonNode event = MAPPER.readTree(payload);
+        final APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setVersion(text(event, "version"));
+        request.setPath(text(event, "rawPath"));
+        request.setHeaders(stringMap(event.get("headers")));
+        request.setQueryStringParameters(stringMap(event.get("queryStringParameters")));
+        request.setPathParameters(stringMap(event.get("pathParameters")));
+        request.setBody(text(event, "body"));
+        request.setIsBase64Encoded(flag(event, "isBase64Encoded"));
+
+        final JsonNode requestContext = event.get("requestContext");
+        if (requestContext != null && requestContext.isObject()) {
+            final ProxyRequestContext context = new ProxyRequestContext();
+            context.setRequestId(text(requestContext, "requestId"));
+            final JsonNode authorizer = requestContext.get("authorizer");
+            if (authorizer != null && authorizer.isObject()) {
+                @SuppressWarnings("unchecked")
+                final Map<String, Object> authorizerMap = (Map<String, Object>) toJava(authorizer);
+                context.setAuthorizer(authorizerMap);
+            }
+            request.setRequestContext(context);
+        }
+        return request;
+    }
+
+    /**
+     * @param payload A Function URL event, which has the same shape as payload format 2.0
+     * @return The event as {@link gov.nj.innovation.customAwsIdp.lambda.GetSamlFunctionUrlHandler} takes it.
+     */
+    public static APIGatewayV2HTTPEvent functionUrlRequest(final byte[] payload) {
+        final JsonNode event = MAPPER.readTree(payload);
+        return APIGatewayV2HTTPEvent.builder()
+                .withVersion(text(event, "version"))
+                .withRawPath(text(event, "rawPath"))
+                .withRawQueryString(text(event, "rawQueryString"))
+                .withHeaders(stringMap(event.get("headers")))
+                .withQueryStringParameters(stringMap(event.get("queryStringParameters")))
+                .withBody(text(event, "body"))
+                .withIsBase64Encoded(flag(event, "isBase64Encoded"))
+                .build();
+    }
+
+    /**
+     * @param response The handler's response
+     * @return The response as the JSON which is posted back to the Runtime API.
+     */
+    public static byte[] httpResponse(final APIGatewayV2HTTPResponse response) {
+        final ObjectNode json = MAPPER.createObjectNode();
+        json.put("statusCode", response.getStatusCode());
+        final ObjectNode headers = json.putObject("headers");
+        if (response.getHeaders() != null) {
+            response.getHeaders().forEach(headers::put);
+        }
+        json.put("body", response.getBody());
+        json.put("isBase64Encoded", response.getIsBase64Encoded());
+        return MAPPER.writeValueAsBytes(json);
+    }
+
+    private static String text(final JsonNode node, final String field) {
+        final JsonNode value = node.get(field);
+        return value != null && value.isString() ? value.asString() : null;
+    }
+
+    private static boolean flag(final JsonNode node, final String field) {
+        final JsonNode value = node.get(field);
+        return value != null && value.isBoolean() && value.booleanValue();
+    }
+
+    /**
+     * Headers and parameters are string-to-string maps, and absent (rather than empty) when there are none.
+     */
+    private static Map<String, String> stringMap(final JsonNode node) {
+        if (node == null || !node.isObject()) {
+            return null;
+        }
+        final Map<String, String> map = new LinkedHashMap<>();
+        for (final Map.Entry<String, JsonNode> entry : node.properties()) {
+            if (entry.getValue().isString()) {
+                map.put(entry.getKey(), entry.getValue().asString());
+            }
+        }
+        return map;
+    }
+
+    private static Object toJava(final JsonNode node) {
+        if (node.isObject()) {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            for (final Map.Entry<String, JsonNode> entry : node.properties()) {
+                map.put(entry.getKey(), toJava(entry.getValue()));
+            }
+            return map;
+        }
+        if (node.isArray()) {
+            final List<Object> list = new ArrayList<>(node.size());
+            for (final JsonNode element : node) {
+                list.add(toJava(element));
+            }
+            return list;
+        }
+        if (node.isString()) {
+            return node.asString();
+        }
+        if (node.isBoolean()) {
+            return node.booleanValue();
+        }
+        if (node.isNumber()) {
+            return node.numberValue();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,46 @@
+package gov.nj.innovation.customAwsIdp.saml;
+
+import org.keycloak.dom.saml.v2.assertion.AttributeStatementType;
+import org.keycloak.dom.saml.v2.assertion.AttributeType;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One attribute of the SAML Response's attribute statement, standing in for the pairing of a Keycloak {@code
+ * ProtocolMapperModel} with {@code HardcodedAttributeMapper} or {@code RoleListMapper} from {@code keycloak-services}.
+ * The Response only carries attributes with a fixed name and name format, which is all that is kept from those mappers
+ * and from {@code AttributeStatementHelper#createAttributeType}; all are single-valued except the role, which holds
+ * one value per role.
+ * <p>
+ * Like the Keycloak mappers configured without a friendly name, no {@code FriendlyName} is written.
+ *
+ * @param name The attribute's {@code Name}, e.g. {@code https://aws.amazon.com/SAML/Attributes/Role}
+ * @param nameFormat The full URI of the attribute's {@code NameFormat}
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public record SamlAttributeMapping(String name, String nameFormat) {
+
+    /**
+     * Append this attribute, holding the single given value, to the end of the attribute statement.
+     *
+     * @param attributeStatement The statement to add to
+     * @param value The attribute's value
+     */
+    public void addTo(final AttributeStatementType attributeStatement, final String value) {
+        addTo(attributeStatement, Collections.singletonList(value));
+    }
+
+    /**
+     * Append this attribute, holding the given values in order, to the end of the attribute statement.
+     *
+     * @param attributeStatement The statement to add to
+     * @param values The attribute's values
+     */
+    public void addTo(final AttributeStatementType attributeStatement, final List<String> values) {
+        final AttributeType attributeType = new AttributeType(name);
+        attributeType.setNameFormat(nameFormat);
+        values.forEach(attributeType::addAttributeValue);
+        attributeStatement.addAttribute(new AttributeStatementType.ASTChoiceType(attributeType));
+    }
+}
@@ -0,0 +1,14 @@
+package gov.nj.innovation.customAwsIdp.saml;
+
+import org.keycloak.saml.BaseSAML2BindingBuilder;
+
+/**
+ * The HTTP-POST binding builder, standing in for Keycloak's {@code JaxrsSAML2BindingBuilder} from {@code
+ * keycloak-services}. That class only adds JAX-RS response writing and a {@code KeycloakSession} on top of {@link
+ * BaseSAML2BindingBuilder}, neither of which is used here: signing the assertion and the document happens entirely in
+ * the base class from {@code keycloak-saml-core}, through Santuario.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class SamlPostBindingBuilder extends BaseSAML2BindingBuilder<SamlPostBindingBuilder> {
+}
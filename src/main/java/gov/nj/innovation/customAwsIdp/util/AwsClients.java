@@ -0,0 +1,94 @@
+package gov.nj.innovation.customAwsIdp.util;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.ssm.SsmClient;
+
+import java.net.URI;
+import java.time.Duration;
+
+import static gov.nj.innovation.customAwsIdp.util.Constants.AWS_REGION;
+import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_REGION;
+
+/**
+ * Build the SSM and Cognito clients used by the Lambda. Normally they talk to AWS with the Lambda's own credentials;
+ * given an endpoint override they instead talk to a local stand-in (such as the emulator used by the tests) with
+ * throwaway credentials, going through the same SDK marshalling, HTTP, and retry code as in production.
+ * <p>
+ * The clients have total and per-attempt timeouts well inside the function's own timeout, for calls made without a
+ * request {@link Deadline}, such as during init; calls made under a deadline override them with tighter ones.
+ * <p>
+ * Retries use the SDK's adaptive strategy: every retry spends from a token bucket shared by the client, so that a
+ * throttling storm runs the bucket dry and stops further retries instead of multiplying the load, and throttling
+ * responses also slow the client's own send rate until the service recovers.
+ * <p>
+ * SSM clients talk to the Region the Lambda runs in, so that each regional deployment reads its own copies of the
+ * key-secrets; Cognito clients talk to the Region of the UserPool, which exists only there.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class AwsClients {
+
+    public static final Duration DEFAULT_API_CALL_TIMEOUT = Duration.ofSeconds(8);
+    public static final Duration DEFAULT_API_CALL_ATTEMPT_TIMEOUT = Deadline.MAX_ATTEMPT;
+    public static final int MAX_ATTEMPTS = 3;
+    public static final String FUNCTION_REGION = functionRegion(System.getenv("AWS_REGION"));
+
+    private AwsClients() {}
+
+    /**
+     * @param endpointOverride Endpoint to send requests to instead of AWS, or null
+     * @return A new SSM client for the Lambda's own Region.
+     */
+    public static SsmClient ssm(final URI endpointOverride) {
+        return ssm(endpointOverride, FUNCTION_REGION);
+    }
+
+    /**
+     * @param endpointOverride Endpoint to send requests to instead of AWS, or null
+     * @param region The Region whose parameters to use
+     * @return A new SSM client.
+     */
+    public static SsmClient ssm(final URI endpointOverride, final String region) {
+        return configure(SsmClient.builder(), endpointOverride, region).build();
+    }
+
+    /**
+     * @param endpointOverride Endpoint to send requests to instead of AWS, or null
+     * @return A new Cognito Identity Provider client for the UserPool's Region.
+     */
+    public static CognitoIdentityProviderClient cognito(final URI endpointOverride) {
+        return configure(CognitoIdentityProviderClient.builder(), endpointOverride, COGNITO_REGION).build();
+    }
+
+    /**
+     * @param awsRegionVariable The {@code AWS_REGION} set by Lambda, or null outside of it
+     * @return The Region the Lambda runs in, or the home Region outside of Lambda.
+     */
+    static String functionRegion(final String awsRegionVariable) {
+        return awsRegionVariable != null && !awsRegionVariable.isBlank() ? awsRegionVariable : AWS_REGION;
+    }
+
+    private static <B extends AwsClientBuilder<B, ?>> B configure(
+            final B builder,
+            final URI endpointOverride,
+            final String region) {
+        builder.region(Region.of(region))
+                .overrideConfiguration(override -> override
+                        .apiCallTimeout(DEFAULT_API_CALL_TIMEOUT)
+                        .apiCallAttemptTimeout(DEFAULT_API_CALL_ATTEMPT_TIMEOUT)
+                        .retryStrategy(AwsRetryStrategy.adaptiveRetryStrategy().toBuilder()
+                                .maxAttempts(MAX_ATTEMPTS)
+                                .build()));
+        if (endpointOverride != null) {
+            builder.endpointOverride(endpointOverride)
+                    .credentialsProvider(StaticCredentialsProvider.create(
+                            AwsBasicCredentials.create("local-access-key", "local-secret-key")));
+        }
+        return builder;
+    }
+}
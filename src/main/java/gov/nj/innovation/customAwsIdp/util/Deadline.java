@@ -0,0 +1,99 @@
+package gov.nj.innovation.customAwsIdp.util;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import gov.nj.innovation.customAwsIdp.exception.DeadlineExceededException;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+
+import java.time.Duration;
+
+/**
+ * The point in time by which a request has to be answered, derived from the Lambda's remaining time and passed to
+ * every stage which may wait on something. SDK calls made under it get total and per-attempt timeouts which end before
+ * the deadline, so that retries against a hanging SSM or Cognito cannot run the function into its own timeout; stages
+ * check it before starting, and optional work is skipped when it is close.
+ * <p>
+ * {@link #RESPONSE_RESERVE} is held back from the Lambda's remaining time for building and returning the error
+ * response once the deadline has passed.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public final class Deadline {
+
+    public static final Duration RESPONSE_RESERVE = Duration.ofMillis(500);
+    /** Used without a Lambda context (tests, the cold-start probe, load tests), matching the function timeout */
+    public static final Duration DEFAULT_BUDGET = Duration.ofSeconds(15).minus(RESPONSE_RESERVE);
+    /** Longest single SDK attempt, so that one hung connection still leaves time for a retry */
+    public static final Duration MAX_ATTEMPT = Duration.ofSeconds(3);
+
+    private final long deadlineNanos;
+
+    private Deadline(final long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param budget How long from now the deadline is
+     * @return A deadline that far away.
+     */
+    public static Deadline after(final Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos());
+    }
+
+    /**
+     * @param context The Lambda context, possibly null
+     * @return A deadline {@link #RESPONSE_RESERVE} before the Lambda would time out, or {@link #DEFAULT_BUDGET} from
+     *         now without a context.
+     */
+    public static Deadline fromContext(final Context context) {
+        if (context == null) {
+            return after(DEFAULT_BUDGET);
+        }
+        return after(Duration.ofMillis(context.getRemainingTimeInMillis()).minus(RESPONSE_RESERVE));
+    }
+
+    /**
+     * @return The time left, which is negative once the deadline has passed.
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * @param work How long some piece of work is expected to take
+     * @return Whether that work would still finish before the deadline.
+     */
+    public boolean allows(final Duration work) {
+        return remaining().compareTo(work) >= 0;
+    }
+
+    /**
+     * Fail fast when a stage cannot be expected to finish in time.
+     *
+     * @param stage Name of the stage about to start, for the error message
+     * @param expected How long the stage is expected to take at least
+     * @throws DeadlineExceededException If less than {@code expected} is left.
+     */
+    public void check(final String stage, final Duration expected) {
+        if (!allows(expected)) {
+            throw new DeadlineExceededException(String.format("Not enough time left for %s: %d ms left, needs %d ms",
+                    stage, Math.max(0, remaining().toMillis()), expected.toMillis()));
+        }
+    }
+
+    /**
+     * Timeouts for one SDK call: the whole call, retries included, ends at the deadline, and each attempt ends at the
+     * deadline or after {@link #MAX_ATTEMPT}, whichever is sooner.
+     *
+     * @param operation Name of the call, for the error message when no time is left for it at all
+     * @return The override configuration to set on the SDK request.
+     * @throws DeadlineExceededException If the deadline has already passed.
+     */
+    public AwsRequestOverrideConfiguration sdkOverride(final String operation) {
+        check(operation, Duration.ofMillis(1));
+        final Duration remaining = remaining();
+        return AwsRequestOverrideConfiguration.builder()
+                .apiCallTimeout(remaining)
+                .apiCallAttemptTimeout(remaining.compareTo(MAX_ATTEMPT) < 0 ? remaining : MAX_ATTEMPT)
+                .build();
+    }
+}
@@ -0,0 +1,349 @@
+package gov.nj.innovation.customAwsIdp.util;
+
+import gov.nj.innovation.customAwsIdp.exception.CustomAwsIdpException;
+import gov.nj.innovation.customAwsIdp.exception.DeadlineExceededException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Hedge one kind of downstream call: when it has not answered within the recent {@value #HEDGE_PERCENTILE_ENV}th
+ * percentile of its own latency, send a duplicate and take whichever answers first. The occasional 1-2 s response
+ * from SSM or Cognito then costs about one percentile's worth of waiting plus a normal call, for roughly
+ * {@code 100 - percentile} percent extra requests.
+ * <p>
+ * Every attempt is timed, whether it succeeds, fails, or times out, so that the percentile includes the slow tail it is
+ * meant to cut; an attempt which loses to its hedge is recorded as taking as long as it had run when it was cancelled,
+ * while a cancelled hedge, which only ran for part of the call, is not recorded. No hedge is sent until {@value
+ * #MIN_SAMPLES} attempts have been seen; until then, or when hedging is disabled with a percentile of 0, the call
+ * simply runs on the caller's thread. The delay is kept between {@value #HEDGE_MIN_DELAY_MS_ENV} (default {@value
+ * #DEFAULT_MIN_DELAY_MS}) and {@value #MAX_DELAY_MS} milliseconds. A call which fails before the hedge is sent is not
+ * hedged, as errors are left to the SDK's retries; once both are in flight, the call fails only if both do. Neither
+ * attempt runs past the request's {@link Deadline}.
+ * <p>
+ * Hedges are also limited to {@value #HEDGE_BUDGET_PERCENT_ENV} percent of calls (default {@value
+ * #DEFAULT_BUDGET_PERCENT}): each call earns that fraction of a hedge, up to {@value #MAX_HEDGE_TOKENS} saved, and
+ * each hedge spends one. When a dependency slows down as a whole, the hedges stop once the budget is spent, instead of
+ * doubling the load on it.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class HedgedCall {
+
+    public static final String HEDGE_PERCENTILE_ENV = "HEDGE_PERCENTILE";
+    public static final String HEDGE_MIN_DELAY_MS_ENV = "HEDGE_MIN_DELAY_MS";
+    public static final String HEDGE_BUDGET_PERCENT_ENV = "HEDGE_BUDGET_PERCENT";
+    private static final Logger logger = LogManager.getLogger(HedgedCall.class);
+    private static final double DEFAULT_PERCENTILE = 95;
+    private static final long DEFAULT_MIN_DELAY_MS = 20;
+    private static final long MAX_DELAY_MS = 1000;
+    private static final int MIN_SAMPLES = 20;
+    private static final int WINDOW = 256;
+    private static final double DEFAULT_BUDGET_PERCENT = 10;
+    private static final int MAX_HEDGE_TOKENS = 10;
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final String name;
+    private final double percentile;
+    private final Duration minDelay;
+    private final double budget;
+    private final LatencyTracker tracker = new LatencyTracker(WINDOW);
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong hedgesOverBudget = new AtomicLong();
+    private double hedgeTokens;
+
+    /**
+     * @param name The call being hedged, for logging
+     * @param percentile Latency percentile after which the duplicate is sent, or 0 to never hedge
+     * @param minDelay The shortest delay before a duplicate is sent
+     */
+    public HedgedCall(final String name, final double percentile, final Duration minDelay) {
+        this(name, percentile, minDelay, DEFAULT_BUDGET_PERCENT);
+    }
+
+    /**
+     * @param name The call being hedged, for logging
+     * @param percentile Latency percentile after which the duplicate is sent, or 0 to never hedge
+     * @param minDelay The shortest delay before a duplicate is sent
+     * @param budgetPercent The most hedges to send, as a percentage of calls
+     */
+    public HedgedCall(final String name, final double percentile, final Duration minDelay, final double budgetPercent) {
+        this.name = name;
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.budget = budgetPercent / 100;
+    }
+
+    /**
+     * @param name The call being hedged, for logging
+     * @return A hedged call configured from {@value #HEDGE_PERCENTILE_ENV}, {@value #HEDGE_MIN_DELAY_MS_ENV}, and
+     * {@value #HEDGE_BUDGET_PERCENT_ENV}.
+     */
+    public static HedgedCall fromEnvironment(final String name) {
+        return new HedgedCall(name,
+                parse(HEDGE_PERCENTILE_ENV, System.getenv(HEDGE_PERCENTILE_ENV), DEFAULT_PERCENTILE, 100),
+                Duration.ofMillis((long) parse(HEDGE_MIN_DELAY_MS_ENV, System.getenv(HEDGE_MIN_DELAY_MS_ENV),
+                        DEFAULT_MIN_DELAY_MS, MAX_DELAY_MS)),
+                parse(HEDGE_BUDGET_PERCENT_ENV, System.getenv(HEDGE_BUDGET_PERCENT_ENV), DEFAULT_BUDGET_PERCENT, 100));
+    }
+
+    /**
+     * Make the call, hedging it if it is slow. Each attempt is given SDK timeouts from the deadline as it starts, so a
+     * hedge sent after the delay only gets the time which is left; no hedge is sent when less is left than the delay,
+     * which is about how long a normal call takes. The wait for an answer ends at the deadline, and whichever attempt
+     * is still running once the call returns is cancelled.
+     *
+     * @param deadline The request's deadline
+     * @param operation Name of the call, for the error message when no time is left for it
+     * @param call The call, given the timeouts to set on its request; it may be run twice, concurrently, so it must be
+     *             safe to repeat
+     * @return The first successful result.
+     * @throws DeadlineExceededException When neither attempt has answered by the deadline
+     */
+    public <T> T call(
+            final Deadline deadline,
+            final String operation,
+            final Function<AwsRequestOverrideConfiguration, T> call) {
+        final Supplier<T> attempt = () -> call.apply(deadline.sdkOverride(operation));
+        earnHedgeToken();
+        final Duration delay = hedgeDelay();
+        if (delay == null) {
+            final long start = System.nanoTime();
+            try {
+                return attempt.get();
+            } finally {
+                tracker.record(System.nanoTime() - start);
+            }
+        }
+
+        final Attempt<T> primary = Attempt.start(attempt, tracker);
+        try {
+            return primary.result().get(delay.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            // Slower than usual, so hedge below
+        } catch (final ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (final InterruptedException e) {
+            primary.cancel();
+            Thread.currentThread().interrupt();
+            throw new CustomAwsIdpException("Interrupted while waiting for " + name, e);
+        }
+
+        final boolean overBudget = deadline.allows(delay) && !spendHedgeToken();
+        if (overBudget) {
+            hedgesOverBudget.incrementAndGet();
+        }
+        if (overBudget || !deadline.allows(delay)) {
+            logger.debug("{} took longer than {} ms, but {} to hedge it", name, delay.toMillis(),
+                    overBudget ? "the hedge budget is spent" : "too little time is left");
+            try {
+                return await(deadline, operation, primary.result());
+            } finally {
+                primary.cancel();
+            }
+        }
+
+        hedgesSent.incrementAndGet();
+        logger.debug("{} took longer than {} ms, sending a hedge", name, delay.toMillis());
+        final Attempt<T> hedge = Attempt.start(attempt, tracker);
+        final CompletableFuture<T> first = new CompletableFuture<>();
+        final AtomicInteger failures = new AtomicInteger();
+        primary.result().whenComplete((value, error) -> complete(first, failures, value, error));
+        hedge.result().whenComplete((value, error) -> {
+            if (complete(first, failures, value, error)) {
+                hedgeWins.incrementAndGet();
+            }
+        });
+        try {
+            return await(deadline, operation, first);
+        } finally {
+            // The winner has finished already, so this only stops the slower attempt. A primary which is stopped still
+            // took at least this long, but a hedge only ran for part of the call, so its time says nothing of latency.
+            primary.cancel();
+            hedge.discard();
+        }
+    }
+
+    /**
+     * @return How many duplicates have been sent.
+     */
+    public long hedgesSent() {
+        return hedgesSent.get();
+    }
+
+    /**
+     * @return How many duplicates answered before the call they duplicated.
+     */
+    public long hedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * @return How many slow calls were not hedged because the hedge budget was spent.
+     */
+    public long hedgesOverBudget() {
+        return hedgesOverBudget.get();
+    }
+
+    private synchronized void earnHedgeToken() {
+        hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + budget);
+    }
+
+    private synchronized boolean spendHedgeToken() {
+        if (hedgeTokens < 1) {
+            return false;
+        }
+        hedgeTokens--;
+        return true;
+    }
+
+    /**
+     * @return The delay before hedging, or null when the call should not be hedged.
+     */
+    Duration hedgeDelay() {
+        if (percentile <= 0 || tracker.size() < MIN_SAMPLES) {
+            return null;
+        }
+        final Duration observed = tracker.percentile(percentile);
+        final Duration maxDelay = Duration.ofMillis(MAX_DELAY_MS);
+        return observed.compareTo(minDelay) < 0 ? minDelay : observed.compareTo(maxDelay) > 0 ? maxDelay : observed;
+    }
+
+    /**
+     * Wait for the result until the deadline.
+     */
+    private <T> T await(final Deadline deadline, final String operation, final CompletableFuture<T> result) {
+        try {
+            return result.get(Math.max(0, deadline.remaining().toNanos()), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            throw new DeadlineExceededException(
+                    String.format("The deadline passed while waiting for %s (%s)", operation, name));
+        } catch (final ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomAwsIdpException("Interrupted while waiting for " + name, e);
+        }
+    }
+
+    /**
+     * Complete with the first success, or with the second failure.
+     *
+     * @return Whether this value was the first success.
+     */
+    private static <T> boolean complete(
+            final CompletableFuture<T> first,
+            final AtomicInteger failures,
+            final T value,
+            final Throwable error) {
+        if (error == null) {
+            return first.complete(value);
+        }
+        if (failures.incrementAndGet() == 2) {
+            first.completeExceptionally(error);
+        }
+        return false;
+    }
+
+    /**
+     * One attempt, run on its own virtual thread so that cancelling it interrupts the SDK call it is blocked in. Its
+     * time is recorded once: as it finishes, before its result is published, or when it is cancelled, if that is first.
+     */
+    private static final class Attempt<T> {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicBoolean timed = new AtomicBoolean();
+        private final long startNanos = System.nanoTime();
+        private final LatencyTracker tracker;
+        private final Future<?> task;
+
+        private Attempt(final Supplier<T> call, final LatencyTracker tracker) {
+            this.tracker = tracker;
+            this.task = EXECUTOR.submit(() -> {
+                final T value;
+                try {
+                    value = call.get();
+                } catch (final Throwable t) {
+                    time();
+                    result.completeExceptionally(t);
+                    return;
+                }
+                time();
+                result.complete(value);
+            });
+        }
+
+        static <T> Attempt<T> start(final Supplier<T> call, final LatencyTracker tracker) {
+            return new Attempt<>(call, tracker);
+        }
+
+        CompletableFuture<T> result() {
+            return result;
+        }
+
+        /**
+         * Stop the attempt, recording the time it had run so far unless it has finished already.
+         */
+        void cancel() {
+            time();
+            task.cancel(true);
+        }
+
+        /**
+         * Stop the attempt without recording its time, unless it has finished already.
+         */
+        void discard() {
+            timed.set(true);
+            task.cancel(true);
+        }
+
+        private void time() {
+            if (timed.compareAndSet(false, true)) {
+                tracker.record(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    private static RuntimeException unwrap(final Throwable cause) {
+        final Throwable unwrapped = cause instanceof CompletionException && cause.getCause() != null
+                ? cause.getCause() : cause;
+        if (unwrapped instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (unwrapped instanceof Error error) {
+            throw error;
+        }
+        return new CustomAwsIdpException("Hedged call failed: " + unwrapped.getMessage(), unwrapped);
+    }
+
+    static double parse(final String env, final String value, final double defaultValue, final double max) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        if ("off".equalsIgnoreCase(value.trim())) {
+            return 0;
+        }
+        try {
+            return Math.clamp(Double.parseDouble(value.trim()), 0, max);
+        } catch (final NumberFormatException e) {
+            logger.warn("Invalid {} '{}', using {}", env, value, defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package gov.nj.innovation.customAwsIdp.util;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * The latencies of the most recent calls of one kind, kept in a fixed-size ring so that percentiles follow the
+ * container's recent experience of a dependency rather than its whole life.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class LatencyTracker {
+
+    private final long[] samplesNanos;
+    private int next;
+    private int count;
+
+    /**
+     * @param capacity How many of the most recent samples to keep
+     */
+    public LatencyTracker(final int capacity) {
+        this.samplesNanos = new long[capacity];
+    }
+
+    public synchronized void record(final long nanos) {
+        samplesNanos[next] = nanos;
+        next = (next + 1) % samplesNanos.length;
+        count = Math.min(count + 1, samplesNanos.length);
+    }
+
+    /**
+     * @return How many samples are held, at most the capacity.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @param percentile Between 0 and 100
+     * @return The latency at that percentile of the held samples (nearest rank), or null when there are none.
+     */
+    public Duration percentile(final double percentile) {
+        final long[] sorted;
+        synchronized (this) {
+            if (count == 0) {
+                return null;
+            }
+            sorted = Arrays.copyOf(samplesNanos, count);
+        }
+        Arrays.sort(sorted);
+        final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return Duration.ofNanos(sorted[Math.clamp(rank - 1, 0, sorted.length - 1)]);
+    }
+}
@@ -1,29 +1,148 @@
 package gov.nj.innovation.customAwsIdp.util;
 
+import gov.nj.innovation.customAwsIdp.exception.CustomAwsIdpException;
+import gov.nj.innovation.customAwsIdp.jfr.Outcomes;
+import gov.nj.innovation.customAwsIdp.jfr.SsmParameterFetchEvent;
 import software.amazon.awssdk.services.ssm.SsmClient;
 import software.amazon.awssdk.services.ssm.model.GetParameterRequest;
 import software.amazon.awssdk.services.ssm.model.GetParameterResponse;
+import software.amazon.awssdk.services.ssm.model.GetParametersRequest;
+import software.amazon.awssdk.services.ssm.model.GetParametersResponse;
+import software.amazon.awssdk.services.ssm.model.Parameter;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Fetch an SSM parameter by name.
+ * Fetch SSM parameters by name, one at a time or up to ten in a single {@code GetParameters} call. Slow fetches are
+ * hedged, see {@link HedgedCall}.
  *
  * @author Case Walker (case@innovation.nj.gov)
  */
 public class SsmClientWrapper {
 
+    public static final HedgedCall GET_PARAMETER_HEDGING = HedgedCall.fromEnvironment("SSM GetParameter");
+    public static final HedgedCall GET_PARAMETERS_HEDGING = HedgedCall.fromEnvironment("SSM GetParameters");
+
     /**
-     * Encapsulate the Amazon types; consume a String and output its SSM value.
+     * One parameter from a {@code GetParameters} call.
+     *
+     * @param name The parameter's name, without any version selector
+     * @param version The version that was read
+     * @param value The value of that version, which is null when it was fetched without decryption
+     */
+    public record VersionedParameter(String name, long version, String value) {}
+
+    /**
+     * Encapsulate the Amazon types; consume a String and output its SSM value, within {@link Deadline#DEFAULT_BUDGET}.
      *
      * @param parameterName An SSM parameter name
      * @return The SSM parameter value.
      */
     public static String getParameterByName(final SsmClient ssmClient, final String parameterName) {
+        return getParameterByName(ssmClient, parameterName, Deadline.after(Deadline.DEFAULT_BUDGET));
+    }
+
+    /**
+     * The same as {@link #getParameterByName(SsmClient, String)}, with the call's timeouts bounded by a deadline.
+     *
+     * @param parameterName An SSM parameter name
+     * @param deadline The request's deadline
+     * @return The SSM parameter value.
+     */
+    public static String getParameterByName(
+            final SsmClient ssmClient,
+            final String parameterName,
+            final Deadline deadline) {
         final GetParameterRequest request = GetParameterRequest.builder()
                 .name(parameterName)
                 .withDecryption(true)
                 .build();
-        final GetParameterResponse response = ssmClient.getParameter(request);
+
+        final SsmParameterFetchEvent event = new SsmParameterFetchEvent();
+        event.begin();
+        event.parameterName = parameterName;
+        final GetParameterResponse response;
+        try {
+            response = GET_PARAMETER_HEDGING.call(deadline, "SSM GetParameter " + parameterName,
+                    override -> ssmClient.getParameter(request.toBuilder().overrideConfiguration(override).build()));
+            event.outcome = Outcomes.OK;
+        } catch (final RuntimeException e) {
+            event.outcome = Outcomes.of(e);
+            throw e;
+        } finally {
+            event.commit();
+        }
 
         return response.parameter().value();
     }
+
+    /**
+     * Fetch several parameters in one {@code GetParameters} call, so that their versions are read together. A name may
+     * carry a version selector, e.g. {@code name:3}, to read that version rather than the latest.
+     *
+     * @param names Up to ten parameter names, optionally with selectors
+     * @param withDecryption Whether to decrypt SecureString values; without it only the versions are of any use
+     * @param deadline The request's deadline
+     * @return Each parameter by its name, without the selector.
+     * @throws CustomAwsIdpException When any of the parameters (or selected versions) does not exist
+     */
+    public static Map<String, VersionedParameter> getParameters(
+            final SsmClient ssmClient,
+            final Collection<String> names,
+            final boolean withDecryption,
+            final Deadline deadline) {
+        return getParameters(ssmClient, names, Set.of(), withDecryption, deadline);
+    }
+
+    /**
+     * The same as {@link #getParameters(SsmClient, Collection, boolean, Deadline)}, where some of the parameters may
+     * not exist.
+     *
+     * @param optionalNames The names, without selectors, of the parameters which are left out of the result when they
+     * (or their selected versions) do not exist
+     * @throws CustomAwsIdpException When any of the other parameters (or selected versions) does not exist
+     */
+    public static Map<String, VersionedParameter> getParameters(
+            final SsmClient ssmClient,
+            final Collection<String> names,
+            final Set<String> optionalNames,
+            final boolean withDecryption,
+            final Deadline deadline) {
+        final GetParametersRequest request = GetParametersRequest.builder()
+                .names(names)
+                .withDecryption(withDecryption)
+                .build();
+
+        final SsmParameterFetchEvent event = new SsmParameterFetchEvent();
+        event.begin();
+        event.parameterName = String.join(",", names);
+        final GetParametersResponse response;
+        try {
+            response = GET_PARAMETERS_HEDGING.call(deadline, "SSM GetParameters",
+                    override -> ssmClient.getParameters(request.toBuilder().overrideConfiguration(override).build()));
+            event.outcome = Outcomes.OK;
+        } catch (final RuntimeException e) {
+            event.outcome = Outcomes.of(e);
+            throw e;
+        } finally {
+            event.commit();
+        }
+
+        final List<String> missing = response.hasInvalidParameters() ? response.invalidParameters().stream()
+                .filter(selector -> !optionalNames.contains(selector.split(":")[0]))
+                .toList() : List.of();
+        if (!missing.isEmpty()) {
+            throw new CustomAwsIdpException("SSM parameters not found: " + missing, null);
+        }
+        final Map<String, VersionedParameter> parameters = new HashMap<>();
+        for (final Parameter parameter : response.parameters()) {
+            parameters.put(parameter.name(), new VersionedParameter(parameter.name(),
+                    parameter.version() != null ? parameter.version() : 0, parameter.value()));
+        }
+        return parameters;
+    }
 }
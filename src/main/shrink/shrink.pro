@@ -0,0 +1,71 @@
+# ProGuard rules for ./gradlew shrinkJars, which are applied together with the recorded class-usage profile
+# (build/shrink/used-classes.pro). Shrink only: classes which nothing kept can reach are removed, and everything that
+# is left is written out as it was, apart from the unused members of classes which were never loaded.
+-dontoptimize
+-dontobfuscate
+-dontnote
+-keepattributes *
+
+# Optional dependencies of the zip's jars which are not bundled, and which their code only reaches after checking that
+# they are present. Any other unresolved reference fails the shrink, so that a class missing from the zip is found here
+# rather than in Lambda
+# Log4j's optional appenders, layouts, and OSGi support
+-dontwarn org.osgi.**
+-dontwarn com.conversantmedia.**
+-dontwarn com.lmax.disruptor.**
+-dontwarn org.jctools.**
+-dontwarn org.apache.kafka.**
+-dontwarn org.zeromq.**
+-dontwarn org.fusesource.jansi.**
+-dontwarn org.apache.commons.csv.**
+-dontwarn javax.mail.**
+-dontwarn jakarta.mail.**
+-dontwarn javax.jms.**
+-dontwarn jakarta.jms.**
+-dontwarn javax.persistence.**
+-dontwarn com.fasterxml.jackson.databind.**
+-dontwarn com.fasterxml.jackson.dataformat.**
+-dontwarn org.codehaus.stax2.**
+-dontwarn com.ctc.wstx.**
+# The AWS SDK's Netty and Apache HTTP clients: optional codecs, native TLS, and logging bridges
+-dontwarn io.netty.internal.tcnative.**
+-dontwarn org.conscrypt.**
+-dontwarn org.eclipse.jetty.alpn.**
+-dontwarn org.eclipse.jetty.npn.**
+-dontwarn com.aayushatharva.brotli4j.**
+-dontwarn com.github.luben.zstd.**
+-dontwarn com.jcraft.jzlib.**
+-dontwarn com.ning.compress.**
+-dontwarn lzma.sdk.**
+-dontwarn net.jpountz.**
+-dontwarn com.google.protobuf.**
+-dontwarn org.jboss.marshalling.**
+-dontwarn reactor.blockhound.**
+-dontwarn com.oracle.svm.**
+-dontwarn org.apache.commons.logging.**
+-dontwarn org.apache.log4j.**
+-dontwarn org.slf4j.**
+-dontwarn software.amazon.awssdk.crt.**
+-dontwarn software.amazon.eventstream.**
+# JBoss Logging, used by Keycloak, and its optional back ends
+-dontwarn org.jboss.logmanager.**
+
+# Entry points which the profile runs cannot see: the handlers and the custom runtime, which Lambda starts, and the
+# rest of this project's code (except the CDK app, which never runs in Lambda)
+-keep class !gov.nj.innovation.customAwsIdp.awscdk.**,gov.nj.innovation.customAwsIdp.** { *; }
+
+# The classes Lambda's managed runtime and the Log4j appender load by name
+-keep class com.amazonaws.services.lambda.runtime.** { *; }
+
+# Enum constants and serialization are reached reflectively
+-keepclassmembers enum * {
+    public static **[] values();
+    public static ** valueOf(java.lang.String);
+}
+-keepclassmembers class * implements java.io.Serializable {
+    static final long serialVersionUID;
+    private void writeObject(java.io.ObjectOutputStream);
+    private void readObject(java.io.ObjectInputStream);
+    java.lang.Object writeReplace();
+    java.lang.Object readResolve();
+}
@@ -0,0 +1,128 @@
+package gov.nj.innovation.customAwsIdp;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import gov.nj.innovation.customAwsIdp.TestUtils.FakeAwsClients;
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.keys.KeysWrapper;
+import gov.nj.innovation.customAwsIdp.lambda.GetSamlResponseHandler;
+import gov.nj.innovation.customAwsIdp.metrics.EmfMetricsWriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent.ProxyRequestContext;
+
+/**
+ * Allocation budgets for the stages of a login, so that a dependency bump or refactor which balloons the garbage made
+ * per login fails the build instead of showing up as GC time in production.
+ * <p>
+ * Each stage is warmed up, then the bytes allocated by the current thread are measured over several calls and the
+ * median is held to the stage's budget. Budgets are in bytes and can be overridden with the system property {@code
+ * allocationBudget.<stage>}, e.g. {@code ./gradlew test -DallocationBudget.sign=3000000}. A stage over its budget
+ * fails with the median, min, and max it measured, so a budget of 0 shows them when tightening a default as the code
+ * gets leaner.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class AllocationBudgetTest {
+
+    private static final int WARMUP_CALLS = 30;
+    private static final int MEASURED_CALLS = 11;
+    private static final String TEST_USER = "allocation@test.com";
+    private static final String ROLE_NAME =
+            "arn:aws:iam::274460373520:role/Allocation,arn:aws:iam::274460373520:saml-provider/Allocation";
+    private static final String GROUP_NAME = "allocation-group";
+    private static final String GROUP_DESCRIPTION = """
+            RelayState: "https://us-east-1.console.aws.amazon.com/connect/federate/allocation"
+            SsoRole: "%s"
+            """.formatted(ROLE_NAME);
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final KeysWrapper TEST_KEYS = new KeysWrapper(TestKeyDetails.keyConstants());
+
+    @Test
+    @DisplayName("Building the unsigned SAML document stays within its allocation budget")
+    void testBuildBudget() {
+        final SamlGenerator generator = new SamlGenerator(TEST_USER, ROLE_NAME, "3600", TEST_KEYS);
+        assertWithinBudget("build", 1_000_000, () -> generator::createUnsignedSamlResponse);
+    }
+
+    @Test
+    @DisplayName("Signing and encoding the SAML document stays within its allocation budget")
+    void testSignBudget() {
+        final SamlGenerator generator = new SamlGenerator(TEST_USER, ROLE_NAME, "3600", TEST_KEYS);
+        assertWithinBudget("sign", 4_000_000, () -> {
+            final Document samlDocument = generator.createUnsignedSamlResponse();
+            return () -> generator.signAndEncode(samlDocument);
+        });
+    }
+
+    @Test
+    @DisplayName("SamlGenerator.getBase64SamlResponse stays within its allocation budget")
+    void testGenerateBudget() {
+        final SamlGenerator generator = new SamlGenerator(TEST_USER, ROLE_NAME, "3600", TEST_KEYS);
+        assertWithinBudget("generate", 5_000_000, () -> generator::getBase64SamlResponse);
+    }
+
+    @Test
+    @DisplayName("A whole login through GetSamlResponseHandler, with stub clients, stays within its allocation budget")
+    void testHandlerBudget() {
+        final GetSamlResponseHandler handler = new GetSamlResponseHandler(new FakeAwsClients.Ssm(
+                TestKeyDetails.secrets()), new FakeAwsClients.Cognito(group -> GROUP_DESCRIPTION),
+                new EmfMetricsWriter(new PrintStream(OutputStream.nullOutputStream())));
+        final APIGatewayProxyRequestEvent input = createHandlerInput();
+        Assertions.assertEquals("SUCCESS", handler.handleRequest(input, null).get("status"),
+                "The stubbed login should succeed, or the budget would be measuring an error path");
+        assertWithinBudget("handler", 12_000_000, () -> () -> handler.handleRequest(input, null));
+    }
+
+    /**
+     * Warm the stage up, then hold the median allocation of the measured calls to the stage's budget.
+     *
+     * @param stage The stage name, used in the system property which overrides the budget
+     * @param defaultBudget The budget in bytes when the system property is not set
+     * @param prepare Called before each call, outside the measurement, to create the call to measure
+     */
+    private void assertWithinBudget(final String stage, final long defaultBudget, final Supplier<Runnable> prepare) {
+        final long budget = Long.getLong("allocationBudget." + stage, defaultBudget);
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            prepare.get().run();
+        }
+
+        final long threadId = Thread.currentThread().threadId();
+        final long[] allocated = new long[MEASURED_CALLS];
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            final Runnable call = prepare.get();
+            final long before = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+            call.run();
+            allocated[i] = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - before;
+        }
+        Arrays.sort(allocated);
+        final long median = allocated[MEASURED_CALLS / 2];
+
+        Assertions.assertTrue(median <= budget, String.format(
+                "Stage %s allocated a median of %,d bytes per call (min %,d, max %,d), over its budget of %,d bytes "
+                        + "(allocationBudget.%s)", stage, median, allocated[0], allocated[MEASURED_CALLS - 1], budget,
+                stage));
+    }
+
+    private APIGatewayProxyRequestEvent createHandlerInput() {
+        final APIGatewayProxyRequestEvent input = new APIGatewayProxyRequestEvent();
+        input.setPathParameters(Map.of("groupName", GROUP_NAME));
+        input.setQueryStringParameters(Map.of("duration", "3600"));
+        final ProxyRequestContext requestContext = new ProxyRequestContext();
+        requestContext.setAuthorizer(Map.of("jwt", Map.of("claims", Map.of(
+                "email", TEST_USER,
+                "cognito:groups", "[" + GROUP_NAME + "]"))));
+        input.setRequestContext(requestContext);
+        return input;
+    }
+}
@@ -0,0 +1,184 @@
+package gov.nj.innovation.customAwsIdp;
+
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.keys.KeysWrapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.keycloak.saml.SignatureAlgorithm;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests for {@link SamlEngine}, in particular that one engine can be shared by many threads at once.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class SamlEngineTest {
+
+    private static final String ASSERTION_NS = "urn:oasis:names:tc:SAML:2.0:assertion";
+    private static final String ROLE_ATTR_NAME = "https://aws.amazon.com/SAML/Attributes/Role";
+    private static final String SESSION_NAME_ATTR_NAME = "https://aws.amazon.com/SAML/Attributes/RoleSessionName";
+    private static final String SESSION_DURATION_ATTR_NAME = "https://aws.amazon.com/SAML/Attributes/SessionDuration";
+    private static final int THREADS = 8;
+    private static final int RESPONSES_PER_THREAD = 25;
+    private static final KeysWrapper TEST_KEYS = new KeysWrapper(TestKeyDetails.keyConstants());
+
+    @Test
+    @DisplayName("One engine shared by many threads signs every Response with exactly its own login's details")
+    void testConcurrentGeneration() throws Exception {
+        final SamlEngine engine = new SamlEngine(TEST_KEYS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Callable<List<String>>> workers = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            final int t = thread;
+            workers.add(() -> {
+                start.await();
+                final List<String> responses = new ArrayList<>();
+                for (int i = 0; i < RESPONSES_PER_THREAD; i++) {
+                    responses.add(engine.generate(user(t, i), List.of(role(t, i)), duration(t, i)));
+                }
+                return responses;
+            });
+        }
+
+        final List<Future<List<String>>> results = new ArrayList<>();
+        try (final ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            workers.forEach(worker -> results.add(executor.submit(worker)));
+            start.countDown();
+        }
+
+        final List<String> ids = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final List<String> responses = results.get(t).get();
+            Assertions.assertEquals(RESPONSES_PER_THREAD, responses.size());
+            for (int i = 0; i < RESPONSES_PER_THREAD; i++) {
+                final Document document = decode(responses.get(i));
+                assertSignatureValid(document);
+                Assertions.assertEquals(user(t, i), document.getElementsByTagNameNS(ASSERTION_NS, "NameID")
+                        .item(0).getTextContent());
+                Assertions.assertEquals(List.of(user(t, i)), attributeValues(document, SESSION_NAME_ATTR_NAME));
+                Assertions.assertEquals(List.of(duration(t, i)),
+                        attributeValues(document, SESSION_DURATION_ATTR_NAME));
+                Assertions.assertEquals(List.of(role(t, i)), attributeValues(document, ROLE_ATTR_NAME));
+                ids.add(document.getDocumentElement().getAttribute("ID"));
+            }
+        }
+        Assertions.assertEquals(ids.size(), ids.stream().distinct().count(), "Every Response should have its own ID");
+    }
+
+    @Test
+    @DisplayName("Several roles become one Role attribute holding each role, in order")
+    void testMultipleRoles() throws Exception {
+        final List<String> roles = List.of(role(0, 0), role(0, 1));
+        final Document document = decode(new SamlEngine(TEST_KEYS).generate(user(0, 0), roles, "3600"));
+
+        assertSignatureValid(document);
+        Assertions.assertEquals(roles, attributeValues(document, ROLE_ATTR_NAME));
+    }
+
+    @Test
+    @DisplayName("The engine's configuration decides the Response's issuer, destination, and audience")
+    void testConfig() throws Exception {
+        final SamlEngine.Config config = new SamlEngine.Config("https://issuer.example.com", SamlEngine.REDIRECT_URI,
+                "urn:example:audience", SamlEngine.Config.AWS.nameIdFormat(), 60, 300, 3600,
+                SamlEngine.Config.AWS.canonicalizationMethod(), SignatureAlgorithm.RSA_SHA256);
+        final Document document = decode(new SamlEngine(config, TEST_KEYS).generate(user(0, 0), List.of(role(0, 0)),
+                "900"));
+
+        assertSignatureValid(document);
+        Assertions.assertEquals(SamlEngine.REDIRECT_URI, document.getDocumentElement().getAttribute("Destination"));
+        Assertions.assertEquals("https://issuer.example.com",
+                document.getElementsByTagNameNS(ASSERTION_NS, "Issuer").item(0).getTextContent());
+        Assertions.assertEquals("urn:example:audience",
+                document.getElementsByTagNameNS(ASSERTION_NS, "Audience").item(0).getTextContent());
+    }
+
+    @Test
+    @DisplayName("A missing setting, key, or role is refused")
+    void testInvalidInput() {
+        final SamlEngine.Config aws = SamlEngine.Config.AWS;
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SamlEngine.Config(null, aws.destination(),
+                aws.clientId(), aws.nameIdFormat(), 60, 300, 3600, aws.canonicalizationMethod(),
+                aws.signatureAlgorithm()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SamlEngine.Config(aws.issuer(),
+                aws.destination(), aws.clientId(), aws.nameIdFormat(), 0, 300, 3600, aws.canonicalizationMethod(),
+                aws.signatureAlgorithm()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SamlEngine(null));
+
+        final SamlEngine engine = new SamlEngine(TEST_KEYS);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> engine.generate(user(0, 0), List.of(), "900"));
+    }
+
+    private static String user(final int thread, final int i) {
+        return String.format("user-%d-%d@test.com", thread, i);
+    }
+
+    private static String role(final int thread, final int i) {
+        return String.format("arn:aws:iam::274460373520:role/Role%d_%d,arn:aws:iam::274460373520:saml-provider/IdP",
+                thread, i);
+    }
+
+    private static String duration(final int thread, final int i) {
+        return String.valueOf(900 + thread * RESPONSES_PER_THREAD + i);
+    }
+
+    private static Document decode(final String base64SamlResponse) throws Exception {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder()
+                .parse(new ByteArrayInputStream(Base64.getDecoder().decode(base64SamlResponse)));
+    }
+
+    private static List<String> attributeValues(final Document document, final String name) {
+        final NodeList attributes = document.getElementsByTagNameNS(ASSERTION_NS, "Attribute");
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Element attribute = (Element) attributes.item(i);
+            if (name.equals(attribute.getAttribute("Name"))) {
+                final NodeList values = attribute.getElementsByTagNameNS(ASSERTION_NS, "AttributeValue");
+                final List<String> result = new ArrayList<>();
+                for (int v = 0; v < values.getLength(); v++) {
+                    result.add(values.item(v).getTextContent());
+                }
+                return result;
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Check every signature in the document against the test keys' public key.
+     */
+    private static void assertSignatureValid(final Document document) throws Exception {
+        final NodeList elements = document.getElementsByTagName("*");
+        for (int i = 0; i < elements.getLength(); i++) {
+            final Element element = (Element) elements.item(i);
+            if (element.hasAttribute("ID")) {
+                element.setIdAttribute("ID", true);
+            }
+        }
+        final NodeList signatures = document.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
+        Assertions.assertTrue(signatures.getLength() > 0, "The Response should be signed");
+        for (int i = 0; i < signatures.getLength(); i++) {
+            final XMLSignature signature = XMLSignatureFactory.getInstance("DOM").unmarshalXMLSignature(
+                    new DOMValidateContext(TEST_KEYS.getPublicKey(), signatures.item(i)));
+            Assertions.assertTrue(signature.validate(new DOMValidateContext(TEST_KEYS.getPublicKey(),
+                    signatures.item(i))), "Every signature should verify");
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package gov.nj.innovation.customAwsIdp.TestUtils;
+
+import tools.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local stand-in for a Cognito UserPool's signing keys, which publishes a JWKS and signs ID tokens with it, for the
+ * tests of {@link gov.nj.innovation.customAwsIdp.auth.CognitoJwtVerifier}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class TestTokens {
+    public static final String ISSUER = "https://cognito-idp.us-east-1.amazonaws.com/us-east-1_TEST";
+    public static final String AUDIENCE = "test-app-client";
+    public static final String KEY_ID = "test-key";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final String keyId;
+    private final KeyPair keyPair;
+
+    public TestTokens(final String keyId) {
+        this.keyId = keyId;
+        try {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            this.keyPair = generator.generateKeyPair();
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return A JWKS document holding this key, as served by {@code .well-known/jwks.json}.
+     */
+    public String jwks() {
+        final RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        return MAPPER.writeValueAsString(Map.of("keys", List.of(Map.of(
+                "kid", keyId,
+                "kty", "RSA",
+                "alg", "RS256",
+                "use", "sig",
+                "n", ENCODER.encodeToString(unsigned(publicKey.getModulus().toByteArray())),
+                "e", ENCODER.encodeToString(unsigned(publicKey.getPublicExponent().toByteArray()))))));
+    }
+
+    /**
+     * @return The claims of a valid ID token expiring at {@code expiresAt}, which tests may then change.
+     */
+    public static Map<String, Object> idTokenClaims(final Instant expiresAt) {
+        final Map<String, Object> claims = new HashMap<>();
+        claims.put("iss", ISSUER);
+        claims.put("aud", AUDIENCE);
+        claims.put("token_use", "id");
+        claims.put("exp", expiresAt.getEpochSecond());
+        claims.put("sub", "user-subject");
+        claims.put("email", "user@example.com");
+        claims.put("cognito:groups", List.of("GROUP_ONE", "GROUP_TWO"));
+        return claims;
+    }
+
+    /**
+     * @return A compact RS256 JWT with these claims, signed by this key.
+     */
+    public String sign(final Map<String, Object> claims) {
+        return sign(Map.of("alg", "RS256", "kid", keyId), claims);
+    }
+
+    /**
+     * @return A compact JWT with this header and these claims, signed with RS256 by this key whatever the header says.
+     */
+    public String sign(final Map<String, Object> header, final Map<String, Object> claims) {
+        final String signed = encode(header) + "." + encode(claims);
+        try {
+            final Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(keyPair.getPrivate());
+            signature.update(signed.getBytes(StandardCharsets.US_ASCII));
+            return signed + "." + ENCODER.encodeToString(signature.sign());
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(final Map<String, Object> json) {
+        return ENCODER.encodeToString(MAPPER.writeValueAsBytes(json));
+    }
+
+    private static byte[] unsigned(final byte[] bytes) {
+        return bytes.length > 1 && bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+}
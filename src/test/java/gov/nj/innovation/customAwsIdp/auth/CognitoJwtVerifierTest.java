@@ -0,0 +1,174 @@
+package gov.nj.innovation.customAwsIdp.auth;
+
+import gov.nj.innovation.customAwsIdp.TestUtils.TestTokens;
+import gov.nj.innovation.customAwsIdp.exception.InvalidTokenException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Tests for {@link CognitoJwtVerifier} and {@link JwksCache}, with tokens signed by a local key.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class CognitoJwtVerifierTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00Z");
+    private static final TestTokens TOKENS = new TestTokens(TestTokens.KEY_ID);
+
+    @Test
+    @DisplayName("A valid ID token gives its subject, email, and Groups")
+    void testValidToken() {
+        final CognitoJwtVerifier.CognitoIdToken token = createVerifier(TOKENS.jwks())
+                .verify(TOKENS.sign(TestTokens.idTokenClaims(NOW.plusSeconds(60))));
+
+        Assertions.assertEquals("user-subject", token.subject());
+        Assertions.assertEquals("user@example.com", token.email());
+        Assertions.assertEquals(List.of("GROUP_ONE", "GROUP_TWO"), token.groups());
+        Assertions.assertEquals(NOW.plusSeconds(60), token.expiresAt());
+    }
+
+    @Test
+    @DisplayName("A token for a user in no Groups has an empty Group list")
+    void testNoGroups() {
+        final Map<String, Object> claims = TestTokens.idTokenClaims(NOW.plusSeconds(60));
+        claims.remove("cognito:groups");
+        Assertions.assertEquals(List.of(), createVerifier(TOKENS.jwks()).verify(TOKENS.sign(claims)).groups());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "iss, https://cognito-idp.us-east-1.amazonaws.com/us-east-1_OTHER",
+            "aud, another-app-client",
+            "token_use, access",
+    })
+    @DisplayName("A token for another issuer, audience, or use is rejected")
+    void testWrongClaims(final String claim, final String value) {
+        final Map<String, Object> claims = TestTokens.idTokenClaims(NOW.plusSeconds(60));
+        claims.put(claim, value);
+        final String token = TOKENS.sign(claims);
+        Assertions.assertThrows(InvalidTokenException.class, () -> createVerifier(TOKENS.jwks()).verify(token));
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, -1, -3600})
+    @DisplayName("A token is rejected from the second it expires")
+    void testExpiredToken(final long secondsLeft) {
+        final String token = TOKENS.sign(TestTokens.idTokenClaims(NOW.plusSeconds(secondsLeft)));
+        Assertions.assertThrows(InvalidTokenException.class, () -> createVerifier(TOKENS.jwks()).verify(token));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"none", "HS256", "RS512"})
+    @DisplayName("Only RS256 is accepted")
+    void testOtherAlgorithms(final String algorithm) {
+        final String token = TOKENS.sign(Map.of("alg", algorithm, "kid", TestTokens.KEY_ID),
+                TestTokens.idTokenClaims(NOW.plusSeconds(60)));
+        Assertions.assertThrows(InvalidTokenException.class, () -> createVerifier(TOKENS.jwks()).verify(token));
+    }
+
+    @Test
+    @DisplayName("A token signed by another key, or with changed claims, is rejected")
+    void testBadSignature() {
+        final CognitoJwtVerifier verifier = createVerifier(TOKENS.jwks());
+        final String forged = new TestTokens(TestTokens.KEY_ID).sign(TestTokens.idTokenClaims(NOW.plusSeconds(60)));
+        Assertions.assertThrows(InvalidTokenException.class, () -> verifier.verify(forged));
+
+        final String[] parts = TOKENS.sign(TestTokens.idTokenClaims(NOW.plusSeconds(60))).split("\\.");
+        final Map<String, Object> otherClaims = TestTokens.idTokenClaims(NOW.plusSeconds(60));
+        otherClaims.put("cognito:groups", List.of("ADMIN"));
+        final String otherPayload = TOKENS.sign(otherClaims).split("\\.")[1];
+        Assertions.assertThrows(InvalidTokenException.class,
+                () -> verifier.verify(parts[0] + "." + otherPayload + "." + parts[2]));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "abc", "a.b", "a.b.c.d", "!!.!!.!!", "e30.e30.e30", "W10.e30.e30"})
+    @DisplayName("Malformed tokens are rejected")
+    void testMalformedTokens(final String token) {
+        Assertions.assertThrows(InvalidTokenException.class, () -> createVerifier(TOKENS.jwks()).verify(token));
+    }
+
+    @Test
+    @DisplayName("A token with an unknown key ID refetches the JWKS, at most once per interval")
+    void testKeyRotation() {
+        final TestTokens rotated = new TestTokens("rotated-key");
+        final AtomicReference<String> jwks = new AtomicReference<>(TOKENS.jwks());
+        final AtomicInteger fetches = new AtomicInteger();
+        final JwksCache cache = new JwksCache(() -> {
+            fetches.incrementAndGet();
+            return jwks.get();
+        }, Duration.ofHours(1));
+        final CognitoJwtVerifier verifier = new CognitoJwtVerifier(TestTokens.ISSUER, TestTokens.AUDIENCE, cache,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+        cache.prefetch();
+        cache.prefetch();
+        Assertions.assertEquals(1, fetches.get(), "The JWKS should only be prefetched once");
+
+        // The first fetch was just now, so an unknown key ID does not refetch yet
+        jwks.set(rotated.jwks());
+        final String token = rotated.sign(TestTokens.idTokenClaims(NOW.plusSeconds(60)));
+        Assertions.assertThrows(InvalidTokenException.class, () -> verifier.verify(token));
+        Assertions.assertEquals(1, fetches.get(), "Refetches should be rate-limited");
+
+        final JwksCache eagerCache = new JwksCache(jwks::get, Duration.ZERO);
+        eagerCache.prefetch();
+        Assertions.assertEquals("user@example.com", new CognitoJwtVerifier(TestTokens.ISSUER, TestTokens.AUDIENCE,
+                eagerCache, Clock.fixed(NOW, ZoneOffset.UTC)).verify(token).email());
+    }
+
+    @Test
+    @DisplayName("A failed fetch is retried once the interval has passed, even while no keys are cached")
+    void testFailedFetch() {
+        final AtomicInteger fetches = new AtomicInteger();
+        final Supplier<String> failingOnce = () -> {
+            if (fetches.incrementAndGet() == 1) {
+                throw new IllegalStateException("Connection refused");
+            }
+            return TOKENS.jwks();
+        };
+        final JwksCache cache = new JwksCache(failingOnce, Duration.ofHours(1));
+        cache.prefetch();
+
+        // Tokens arriving while the endpoint is down must not each wait on another fetch
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertNull(cache.get(TestTokens.KEY_ID));
+        }
+        Assertions.assertEquals(1, fetches.get(), "Refetches should be rate-limited without any keys as well");
+
+        fetches.set(0);
+        final JwksCache eagerCache = new JwksCache(failingOnce, Duration.ZERO);
+        eagerCache.prefetch();
+        Assertions.assertNotNull(eagerCache.get(TestTokens.KEY_ID), "The key should be fetched on the second try");
+        Assertions.assertEquals(2, fetches.get());
+    }
+
+    @Test
+    @DisplayName("Only RSA signing keys with a key ID are kept from the JWKS")
+    void testParseJwks() {
+        final String jwks = TOKENS.jwks().replace("{\"keys\":[", "{\"keys\":["
+                + "{\"kty\":\"EC\",\"kid\":\"ec\",\"crv\":\"P-256\",\"x\":\"AA\",\"y\":\"AA\"},"
+                + "{\"kty\":\"RSA\",\"kid\":\"enc\",\"use\":\"enc\",\"n\":\"AQAB\",\"e\":\"AQAB\"},"
+                + "{\"kty\":\"RSA\",\"n\":\"AQAB\",\"e\":\"AQAB\"},");
+        Assertions.assertEquals(Set.of(TestTokens.KEY_ID), JwksCache.parse(jwks).keySet());
+    }
+
+    private static CognitoJwtVerifier createVerifier(final String jwks) {
+        return new CognitoJwtVerifier(TestTokens.ISSUER, TestTokens.AUDIENCE,
+                new JwksCache(() -> jwks, Duration.ZERO), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+}
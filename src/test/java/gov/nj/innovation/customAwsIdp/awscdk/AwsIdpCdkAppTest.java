@@ -3,7 +3,10 @@ package gov.nj.innovation.customAwsIdp.awscdk;
  import org.junit.jupiter.api.Assertions;
  import org.junit.jupiter.api.Test;
  import software.amazon.awscdk.App;
+ import software.amazon.awscdk.AppProps;
+ import software.amazon.awscdk.assertions.Match;
  import software.amazon.awscdk.assertions.Template;
+ import java.util.List;
  import java.util.Map;
 
 /**
@@ -20,10 +23,193 @@ public class AwsIdpCdkAppTest {
     void stackHasTheOneExpectedLambda() {
         cdkTemplate.hasResourceProperties("AWS::Lambda::Function", Map.of(
                 "FunctionName", "generateSamlResponse",
-                "Handler", "gov.nj.innovation.customAwsIdp.lambda.GetSamlResponseHandler",
+                "Handler", "gov.nj.innovation.customAwsIdp.lambda.GetSamlHttpResponseHandler",
                 "Runtime", "java25"));
 
         Assertions.assertEquals(1, cdkTemplate.findResources("AWS::Lambda::Function").size(),
                 "There should only be the one Lambda function, generateSamlResponse");
     }
+
+    @Test
+    void lambdaIsPointedAtTheBundledAotCache() {
+        cdkTemplate.hasResourceProperties("AWS::Lambda::Function", Map.of(
+                "Environment", Map.of("Variables", Map.of(
+                        "JAVA_TOOL_OPTIONS", "-XX:AOTCache=/var/task/customIdp.aot"))));
+    }
+
+    @Test
+    void functionUrlModeReplacesTheHttpApi() {
+        final App functionUrlApp = new App(AppProps.builder()
+                .context(Map.of("deploymentMode", "functionUrl"))
+                .build());
+        final Template functionUrlTemplate = Template.fromStack(new AwsIdpCdkStack(functionUrlApp, "test"));
+
+        functionUrlTemplate.hasResourceProperties("AWS::Lambda::Function", Map.of(
+                "Handler", "gov.nj.innovation.customAwsIdp.lambda.GetSamlFunctionUrlHandler"));
+        functionUrlTemplate.hasResourceProperties("AWS::Lambda::Url", Map.of("AuthType", "NONE"));
+        Assertions.assertTrue(functionUrlTemplate.findResources("AWS::ApiGatewayV2::Api").isEmpty(),
+                "There should be no HTTP API in front of the Function URL");
+        Assertions.assertEquals(1, cdkTemplate.findResources("AWS::ApiGatewayV2::Api").size(),
+                "The HTTP API should still be the default");
+    }
+
+    @Test
+    void customRuntimeRunsTheBundledJvm() {
+        final Template template = synth(Map.of("runtime", "custom"));
+        template.hasResourceProperties("AWS::Lambda::Function", Map.of(
+                "Handler", "gov.nj.innovation.customAwsIdp.lambda.GetSamlHttpResponseHandler",
+                "Runtime", "provided.al2023",
+                "Environment", Match.absent()));
+
+        final Template tuned = synth(Map.of("runtime", "custom", "javaToolOptions", "-XX:+UseSerialGC"));
+        tuned.hasResourceProperties("AWS::Lambda::Function", Map.of(
+                "Environment", Map.of("Variables", Map.of("JAVA_TOOL_OPTIONS", "-XX:+UseSerialGC"))));
+    }
+
+    @Test
+    void oneStackPerRegionWithLatencyRecords() {
+        final App multiRegionApp = new App(AppProps.builder()
+                .context(Map.of(
+                        "regions", "us-east-1, us-west-2",
+                        "domainName", "login.example.gov",
+                        "hostedZoneId", "Z0123456789ABCDEFGHIJ",
+                        "hostedZoneName", "example.gov"))
+                .build());
+        final List<AwsIdpCdkStack> stacks = AwsIdpCdkApp.createStacks(multiRegionApp);
+
+        Assertions.assertEquals(List.of("CustomAwsIdpCdkStack", "CustomAwsIdpCdkStack-us-west-2"),
+                stacks.stream().map(AwsIdpCdkStack::getStackName).toList());
+        for (final AwsIdpCdkStack regionalStack : stacks) {
+            final String region = regionalStack.getRegion();
+            final Template regionalTemplate = Template.fromStack(regionalStack);
+            regionalTemplate.hasResourceProperties("AWS::Route53::RecordSet", Map.of(
+                    "Name", "login.example.gov.",
+                    "Type", "A",
+                    "Region", region,
+                    "SetIdentifier", "CustomAwsIdp-" + region,
+                    "HostedZoneId", "Z0123456789ABCDEFGHIJ",
+                    "HealthCheckId", Match.anyValue()));
+            regionalTemplate.hasResourceProperties("AWS::Route53::HealthCheck", Map.of(
+                    "HealthCheckConfig", Map.of(
+                            "Type", "HTTPS",
+                            "ResourcePath", "/health/ping",
+                            "Port", 443,
+                            "EnableSNI", true,
+                            "RequestInterval", 30,
+                            "FailureThreshold", 3,
+                            "FullyQualifiedDomainName", Match.anyValue())));
+            regionalTemplate.hasResourceProperties("AWS::ApiGatewayV2::Route", Map.of(
+                    "RouteKey", "GET /health/{healthCheck}",
+                    "AuthorizationType", "NONE"));
+            regionalTemplate.hasResourceProperties("AWS::ApiGatewayV2::DomainName", Map.of(
+                    "DomainName", "login.example.gov"));
+            regionalTemplate.resourceCountIs("AWS::CertificateManager::Certificate", 1);
+            regionalTemplate.hasResourceProperties("AWS::IAM::Policy", Map.of("PolicyDocument", Map.of(
+                    "Statement", Match.arrayWith(List.of(Match.objectLike(Map.of(
+                            "Action", List.of("ssm:GetParameter", "ssm:GetParameters"),
+                            "Resource", Match.arrayWith(List.of(
+                                    "arn:aws:ssm:" + region + ":274460373520:parameter/"
+                                            + "custom-aws-idp-private-key-prime-p")))))))));
+        }
+
+        // Only the first Region's stack writes the validation record, which the other Regions' certificates share
+        Template.fromStack(stacks.get(0)).hasResourceProperties("AWS::CertificateManager::Certificate", Map.of(
+                "DomainValidationOptions", Match.anyValue()));
+        Template.fromStack(stacks.get(1)).hasResourceProperties("AWS::CertificateManager::Certificate", Map.of(
+                "DomainName", "login.example.gov",
+                "ValidationMethod", "DNS",
+                "DomainValidationOptions", Match.absent()));
+        Assertions.assertEquals(List.of(stacks.get(0)), stacks.get(1).getDependencies());
+    }
+
+    @Test
+    void defaultProfileKeepsTheOriginalSettings() {
+        cdkTemplate.hasResourceProperties("AWS::Lambda::Function", Map.of(
+                "Architectures", List.of("x86_64"),
+                "MemorySize", 1024,
+                "ReservedConcurrentExecutions", Match.absent()));
+        cdkTemplate.resourceCountIs("AWS::Lambda::Alias", 0);
+        cdkTemplate.resourceCountIs("AWS::ApplicationAutoScaling::ScalableTarget", 0);
+    }
+
+    @Test
+    void gravitonProfileRunsOnArm() {
+        final Template template = synth(Map.of("performanceProfile", "graviton", "aotArchitecture", "arm64"));
+        template.hasResourceProperties("AWS::Lambda::Function", Map.of(
+                "Architectures", List.of("arm64"),
+                "MemorySize", 1024));
+        template.resourceCountIs("AWS::Lambda::Alias", 0);
+    }
+
+    @Test
+    void aotCacheMustMatchTheArchitecture() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> synth(Map.of("performanceProfile", "graviton")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> synth(Map.of("aotArchitecture", "arm64")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> synth(Map.of(
+                "performanceProfile", "provisioned", "aotMode", "cds")));
+
+        // The custom runtime bundles no cache
+        synth(Map.of("performanceProfile", "graviton", "runtime", "custom")).hasResourceProperties(
+                "AWS::Lambda::Function", Map.of("Architectures", List.of("arm64")));
+    }
+
+    @Test
+    void provisionedProfileScalesTheAliasTheApiInvokes() {
+        final Template template = synth(Map.of("performanceProfile", "provisioned", "aotArchitecture", "arm64"));
+        template.hasResourceProperties("AWS::Lambda::Function", Map.of(
+                "Architectures", List.of("arm64"),
+                "MemorySize", 2048,
+                "ReservedConcurrentExecutions", 50,
+                "Environment", Map.of("Variables", Map.of("JAVA_TOOL_OPTIONS",
+                        "-XX:AOTCache=/var/task/customIdp.aot"))));
+        template.hasResourceProperties("AWS::Lambda::Alias", Map.of(
+                "Name", "live",
+                "ProvisionedConcurrencyConfig", Map.of("ProvisionedConcurrentExecutions", 2)));
+        template.hasResourceProperties("AWS::ApplicationAutoScaling::ScalableTarget", Map.of(
+                "MinCapacity", 2,
+                "MaxCapacity", 10,
+                "ScalableDimension", "lambda:function:ProvisionedConcurrency"));
+        template.hasResourceProperties("AWS::ApplicationAutoScaling::ScalingPolicy", Map.of(
+                "PolicyType", "TargetTrackingScaling",
+                "TargetTrackingScalingPolicyConfiguration", Map.of(
+                        "TargetValue", 0.7,
+                        "PredefinedMetricSpecification", Map.of(
+                                "PredefinedMetricType", "LambdaProvisionedConcurrencyUtilization"))));
+
+        // The HTTP API must invoke the alias, or the provisioned environments would never be used
+        final String aliasId = template.findResources("AWS::Lambda::Alias").keySet().iterator().next();
+        template.hasResourceProperties("AWS::ApiGatewayV2::Integration", Map.of(
+                "IntegrationUri", Map.of("Ref", aliasId)));
+    }
+
+    @Test
+    void profileSettingsCanBeOverridden() {
+        final Template template = synth(Map.of(
+                "performanceProfile", "provisioned",
+                "aotArchitecture", "arm64",
+                "memorySize", "3008",
+                "maxProvisionedConcurrency", "20",
+                "reservedConcurrency", "none",
+                "javaToolOptions", "-XX:+UseSerialGC"));
+        template.hasResourceProperties("AWS::Lambda::Function", Map.of(
+                "MemorySize", 3008,
+                "ReservedConcurrentExecutions", Match.absent(),
+                "Environment", Map.of("Variables", Map.of(
+                        "JAVA_TOOL_OPTIONS", "-XX:AOTCache=/var/task/customIdp.aot -XX:+UseSerialGC"))));
+        template.hasResourceProperties("AWS::ApplicationAutoScaling::ScalableTarget", Map.of("MaxCapacity", 20));
+    }
+
+    @Test
+    void invalidProfilesAreRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> synth(Map.of("performanceProfile", "turbo")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> synth(Map.of("memorySize", "64")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> synth(Map.of("architecture", "sparc")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> synth(Map.of(
+                "performanceProfile", "provisioned", "aotArchitecture", "arm64", "reservedConcurrency", "5")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> synth(Map.of("aotArchitecture", "sparc")));
+    }
+
+    private static Template synth(final Map<String, Object> context) {
+        return Template.fromStack(new AwsIdpCdkStack(new App(AppProps.builder().context(context).build()), "test"));
+    }
 }
@@ -0,0 +1,156 @@
+package gov.nj.innovation.customAwsIdp.bulk;
+
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.exception.KeyGenerationException;
+import gov.nj.innovation.customAwsIdp.keys.KeyConstants;
+import gov.nj.innovation.customAwsIdp.keys.KeysWrapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static gov.nj.innovation.customAwsIdp.bulk.BulkSamlGenerator.ManifestEntry;
+
+/**
+ * Tests for {@link BulkSamlGenerator}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class BulkSamlGeneratorTest {
+
+    private static final String ROLE = "arn:aws:iam::000000000000:role/ROLE_NAME,"
+            + "arn:aws:iam::000000000000:saml-provider/IDP_NAME";
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    @DisplayName("A CSV manifest may have a header, comments, quoted roles, and a default duration")
+    void testReadCsvManifest() throws IOException {
+        final Path manifest = directory.resolve("manifest.csv");
+        Files.writeString(manifest, String.join("\n",
+                "user,role,duration",
+                "# a comment",
+                "a@test.com,\"" + ROLE + "\",900",
+                "",
+                "b@test.com,\"" + ROLE + "\""));
+
+        Assertions.assertEquals(List.of(
+                        new ManifestEntry("a@test.com", ROLE, "900"),
+                        new ManifestEntry("b@test.com", ROLE, "3600")),
+                BulkSamlGenerator.readManifest(manifest));
+    }
+
+    @Test
+    @DisplayName("A JSONL manifest gives the same entries, with the duration as a number or a string")
+    void testReadJsonLinesManifest() throws IOException {
+        final Path manifest = directory.resolve("manifest.jsonl");
+        Files.writeString(manifest, String.join("\n",
+                "{\"user\":\"a@test.com\",\"role\":\"" + ROLE + "\",\"duration\":900}",
+                "{\"user\":\"b@test.com\",\"role\":\"" + ROLE + "\"}"));
+
+        Assertions.assertEquals(List.of(
+                        new ManifestEntry("a@test.com", ROLE, "900"),
+                        new ManifestEntry("b@test.com", ROLE, "3600")),
+                BulkSamlGenerator.readManifest(manifest));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            ",\"arn:role,arn:provider\",3600",
+            "a@test.com,arn:role",
+            "a@test.com,\"arn:role,arn:provider\",60",
+            "a@test.com,\"arn:role,arn:provider\",soon",
+            "a@test.com,\"arn:role,arn:provider",
+            "a@test.com,\"arn:role,arn:provider\",3600,extra"
+    })
+    @DisplayName("A malformed line fails the whole manifest, naming the line")
+    void testMalformedManifest(final String line) throws IOException {
+        final Path manifest = directory.resolve("manifest.csv");
+        Files.writeString(manifest, "a@test.com,\"" + ROLE + "\"\n" + line);
+
+        final IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> BulkSamlGenerator.readManifest(manifest));
+        Assertions.assertTrue(e.getMessage().contains("line 2:"), e.getMessage());
+    }
+
+    @Test
+    @DisplayName("Every entry gets a signed Response, written in the manifest's order, from a key in a keystore")
+    void testGenerate() throws IOException, GeneralSecurityException {
+        final KeysWrapper keys = BulkSamlGenerator.loadKeys(writeKeystore(), PASSWORD, null);
+        final List<ManifestEntry> entries = IntStream.range(0, 150)
+                .mapToObj(i -> new ManifestEntry("user-" + i + "@test.com", ROLE, "3600"))
+                .toList();
+
+        final StringWriter out = new StringWriter();
+        final BulkSamlGenerator.Report report = BulkSamlGenerator.generate(entries, keys, 4, out);
+
+        final String[] lines = out.toString().split("\n");
+        Assertions.assertEquals(150, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            final String document = new String(Base64.getDecoder().decode(lines[i]), StandardCharsets.UTF_8);
+            Assertions.assertTrue(document.contains(">user-" + i + "@test.com<"), "Line " + i + " is out of order");
+            Assertions.assertTrue(document.contains("SignatureValue"));
+        }
+        Assertions.assertEquals(150, report.responses());
+        Assertions.assertEquals(4, report.parallelism());
+        Assertions.assertTrue(report.responsesPerSecond() > 0);
+    }
+
+    @Test
+    @DisplayName("A keystore without an RSA key under the alias is refused")
+    void testMissingKey() throws IOException, GeneralSecurityException {
+        final Path keystore = writeKeystore();
+        Assertions.assertThrows(KeyGenerationException.class,
+                () -> BulkSamlGenerator.loadKeys(keystore, PASSWORD, "other"));
+        Assertions.assertThrows(KeyGenerationException.class,
+                () -> BulkSamlGenerator.loadKeys(keystore, "wrong".toCharArray(), null));
+    }
+
+    @Test
+    @DisplayName("The speed-up is the ratio of throughputs")
+    void testSpeedUp() {
+        final BulkSamlGenerator.Report one = new BulkSamlGenerator.Report(1000, 1, 10_000_000_000L);
+        final BulkSamlGenerator.Report four = new BulkSamlGenerator.Report(1000, 4, 2_500_000_000L);
+        Assertions.assertEquals(100, one.responsesPerSecond(), 1e-9);
+        Assertions.assertEquals(4, four.speedUp(one), 1e-9);
+    }
+
+    /**
+     * Store the test key in a PKCS12 keystore, as {@code keytool -genkeypair} would.
+     */
+    private Path writeKeystore() throws IOException, GeneralSecurityException {
+        final KeyConstants constants = KeyConstants.fromSecrets(TestKeyDetails.secrets());
+        final KeysWrapper keys = new KeysWrapper(constants);
+        final KeyStore store = KeyStore.getInstance("PKCS12");
+        store.load(null, null);
+        store.setKeyEntry("saml", KeyFactory.getInstance("RSA").generatePrivate(new RSAPrivateCrtKeySpec(
+                        constants.modulus(), constants.publicExponent(), constants.privateExponent(),
+                        constants.primeP(), constants.primeQ(), constants.primeExponentP(),
+                        constants.primeExponentQ(), constants.crtCoefficient())),
+                PASSWORD, new Certificate[]{keys.getX509Certificate()});
+        final Path keystore = directory.resolve("drill.p12");
+        try (final OutputStream out = Files.newOutputStream(keystore)) {
+            store.store(out, PASSWORD);
+        }
+        return keystore;
+    }
+}
@@ -0,0 +1,297 @@
+package gov.nj.innovation.customAwsIdp.emulator;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import gov.nj.innovation.customAwsIdp.exception.CustomAwsIdpException;
+import gov.nj.innovation.customAwsIdp.groups.GroupMetadataSnapshot;
+import gov.nj.innovation.customAwsIdp.lambda.GetSamlResponseHandler;
+import gov.nj.innovation.customAwsIdp.lambda.helpers.CognitoGroupDescriptionMetadataExtractor;
+import gov.nj.innovation.customAwsIdp.lambda.helpers.data.CognitoGroupDescriptionMetadata;
+import gov.nj.innovation.customAwsIdp.metrics.EmfMetricsWriter;
+import gov.nj.innovation.customAwsIdp.util.AwsClients;
+import gov.nj.innovation.customAwsIdp.util.Deadline;
+import gov.nj.innovation.customAwsIdp.util.SsmClientWrapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.GroupType;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.ListGroupsRequest;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.ssm.SsmClient;
+import software.amazon.awssdk.services.ssm.model.GetParametersResponse;
+import software.amazon.awssdk.services.ssm.model.Parameter;
+import software.amazon.awssdk.services.ssm.model.ParameterNotFoundException;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent.ProxyRequestContext;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.CRT_COEFFICIENT;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.PRIME_EXPONENT_P;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.PRIME_EXPONENT_Q;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.PRIME_P;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.PRIME_Q;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.PRIVATE_EXPONENT;
+import static gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator.COGNITO_GET_GROUP;
+import static gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator.COGNITO_LIST_GROUPS;
+import static gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator.SSM_GET_PARAMETER;
+import static gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator.SSM_GET_PARAMETERS;
+import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_USER_POOL;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_CRT_COEFFICIENT_NAME;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_EXPONENT_P_NAME;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_EXPONENT_Q_NAME;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_P_NAME;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_Q_NAME;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIVATE_EXPONENT_NAME;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * End-to-end tests of the real SDK clients, the SSM wrapper, the Group metadata extractor, and the handler against the
+ * {@link AwsJsonEmulator}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class AwsJsonEmulatorTest {
+
+    private static final String TEST_USER = "emulator@test.com";
+    private static final String GROUP_NAME = "emulator-group";
+    private static final String ROLE_NAME =
+            "arn:aws:iam::274460373520:role/Emulator,arn:aws:iam::274460373520:saml-provider/Emulator";
+    private static final String RELAY_STATE = "https://us-east-1.console.aws.amazon.com/connect/federate/emulator";
+
+    private static AwsJsonEmulator emulator;
+    private static SsmClient ssmClient;
+    private static CognitoIdentityProviderClient cognitoClient;
+
+    @BeforeAll
+    static void startEmulator() {
+        emulator = AwsJsonEmulator.start();
+        emulator.putParameter(KEY_PRIVATE_EXPONENT_NAME, PRIVATE_EXPONENT.toString());
+        emulator.putParameter(KEY_PRIME_P_NAME, PRIME_P.toString());
+        emulator.putParameter(KEY_PRIME_Q_NAME, PRIME_Q.toString());
+        emulator.putParameter(KEY_PRIME_EXPONENT_P_NAME, PRIME_EXPONENT_P.toString());
+        emulator.putParameter(KEY_PRIME_EXPONENT_Q_NAME, PRIME_EXPONENT_Q.toString());
+        emulator.putParameter(KEY_CRT_COEFFICIENT_NAME, CRT_COEFFICIENT.toString());
+        emulator.putGroup(COGNITO_USER_POOL, GROUP_NAME, """
+                RelayState: "%s"
+                SsoRole: "%s"
+                """.formatted(RELAY_STATE, ROLE_NAME));
+        ssmClient = AwsClients.ssm(emulator.endpoint());
+        cognitoClient = AwsClients.cognito(emulator.endpoint());
+    }
+
+    @AfterAll
+    static void stopEmulator() {
+        ssmClient.close();
+        cognitoClient.close();
+        emulator.close();
+    }
+
+    @BeforeEach
+    void resetEmulator() {
+        emulator.reset();
+    }
+
+    @Test
+    @DisplayName("SsmClientWrapper reads the latest version of a parameter, and earlier ones by selector")
+    void testParameterVersions() {
+        Assertions.assertEquals(1, emulator.putParameter("versioned", "first"));
+        Assertions.assertEquals(2, emulator.putParameter("versioned", "second"));
+
+        Assertions.assertEquals("second", SsmClientWrapper.getParameterByName(ssmClient, "versioned"));
+        Assertions.assertEquals("first", SsmClientWrapper.getParameterByName(ssmClient, "versioned:1"));
+        Assertions.assertEquals(2, emulator.callCount(SSM_GET_PARAMETER));
+    }
+
+    @Test
+    @DisplayName("GetParameters returns the found parameters and lists the missing ones as invalid")
+    void testGetParameters() {
+        final GetParametersResponse response = ssmClient.getParameters(request -> request
+                .names(KEY_PRIME_P_NAME, "missing-parameter")
+                .withDecryption(true));
+
+        Assertions.assertEquals(List.of(PRIME_P.toString()),
+                response.parameters().stream().map(Parameter::value).toList());
+        Assertions.assertEquals(1L, response.parameters().getFirst().version());
+        Assertions.assertEquals(List.of("missing-parameter"), response.invalidParameters());
+    }
+
+    @Test
+    @DisplayName("SsmClientWrapper reads several parameters with their versions, hiding the values unless decrypted")
+    void testGetParametersWithVersions() {
+        emulator.putParameter("rotated", "old");
+        emulator.putParameter("rotated", "new");
+
+        final Map<String, SsmClientWrapper.VersionedParameter> decrypted = SsmClientWrapper.getParameters(
+                ssmClient, List.of("rotated:1", KEY_PRIME_P_NAME), true, Deadline.after(Duration.ofSeconds(5)));
+        Assertions.assertEquals(new SsmClientWrapper.VersionedParameter("rotated", 1, "old"), decrypted.get("rotated"));
+        Assertions.assertEquals(PRIME_P.toString(), decrypted.get(KEY_PRIME_P_NAME).value());
+
+        final Map<String, SsmClientWrapper.VersionedParameter> probed = SsmClientWrapper.getParameters(
+                ssmClient, List.of("rotated"), false, Deadline.after(Duration.ofSeconds(5)));
+        Assertions.assertEquals(2, probed.get("rotated").version());
+        Assertions.assertNotEquals("new", probed.get("rotated").value());
+
+        Assertions.assertThrows(CustomAwsIdpException.class, () -> SsmClientWrapper.getParameters(
+                ssmClient, List.of("rotated:3"), true, Deadline.after(Duration.ofSeconds(5))));
+    }
+
+    @Test
+    @DisplayName("A missing parameter surfaces as the SDK's ParameterNotFoundException")
+    void testParameterNotFound() {
+        Assertions.assertThrows(ParameterNotFoundException.class,
+                () -> SsmClientWrapper.getParameterByName(ssmClient, "missing-parameter"));
+    }
+
+    @Test
+    @DisplayName("The SDK retries a throttled GetParameter and then succeeds")
+    void testThrottlingIsRetried() {
+        emulator.throttleNext(SSM_GET_PARAMETER, 1);
+
+        Assertions.assertEquals(PRIME_Q.toString(), SsmClientWrapper.getParameterByName(ssmClient, KEY_PRIME_Q_NAME));
+        // A hedge may also be sent while the retry backs off, once enough latencies have been seen
+        Assertions.assertTrue(emulator.callCount(SSM_GET_PARAMETER) >= 2,
+                "The throttled call and its retry should both have reached the emulator");
+    }
+
+    @Test
+    @DisplayName("A GetParameter far slower than usual is hedged, and the duplicate's answer is used")
+    void testSlowCallIsHedged() {
+        for (int i = 0; i < 25; i++) {
+            SsmClientWrapper.getParameterByName(ssmClient, KEY_PRIME_P_NAME);
+        }
+        final long hedgeWins = SsmClientWrapper.GET_PARAMETER_HEDGING.hedgeWins();
+        final int callsBefore = emulator.callCount(SSM_GET_PARAMETER);
+        emulator.slowNext(SSM_GET_PARAMETER, 1, Duration.ofSeconds(3));
+
+        final long start = System.nanoTime();
+        Assertions.assertEquals(PRIME_P.toString(), SsmClientWrapper.getParameterByName(ssmClient, KEY_PRIME_P_NAME));
+        final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Assertions.assertTrue(elapsed.compareTo(Duration.ofMillis(2500)) < 0,
+                "The hedge should have answered long before the slow call, took " + elapsed);
+        Assertions.assertEquals(callsBefore + 2, emulator.callCount(SSM_GET_PARAMETER),
+                "The slow call and its hedge should both have reached the emulator");
+        Assertions.assertEquals(hedgeWins + 1, SsmClientWrapper.GET_PARAMETER_HEDGING.hedgeWins());
+    }
+
+    @Test
+    @DisplayName("The extractor parses a Group description fetched through the real Cognito client")
+    void testExtractGroupMetadata() {
+        final CognitoGroupDescriptionMetadata metadata =
+                CognitoGroupDescriptionMetadataExtractor.extract(cognitoClient, GROUP_NAME, COGNITO_USER_POOL);
+
+        Assertions.assertEquals(RELAY_STATE, metadata.relayState());
+        Assertions.assertEquals(ROLE_NAME, metadata.ssoRole());
+        Assertions.assertEquals(1, emulator.callCount(COGNITO_GET_GROUP));
+    }
+
+    @Test
+    @DisplayName("A missing Group surfaces as the SDK's ResourceNotFoundException")
+    void testGroupNotFound() {
+        Assertions.assertThrows(ResourceNotFoundException.class, () -> CognitoGroupDescriptionMetadataExtractor
+                .extract(cognitoClient, "missing-group", COGNITO_USER_POOL));
+    }
+
+    @Test
+    @DisplayName("ListGroups pages through every Group in name order")
+    void testListGroupsPaging() {
+        final String userPoolId = "us-east-1_paging";
+        for (int i = 0; i < 5; i++) {
+            emulator.putGroup(userPoolId, "group-" + i, "SsoRole: \"role-" + i + "\"");
+        }
+
+        final List<String> groupNames = cognitoClient.listGroupsPaginator(ListGroupsRequest.builder()
+                        .userPoolId(userPoolId)
+                        .limit(2)
+                        .build())
+                .groups()
+                .stream()
+                .map(GroupType::groupName)
+                .toList();
+
+        Assertions.assertEquals(List.of("group-0", "group-1", "group-2", "group-3", "group-4"), groupNames);
+        Assertions.assertEquals(3, emulator.callCount(COGNITO_LIST_GROUPS));
+    }
+
+    @Test
+    @DisplayName("A whole login through GetSamlResponseHandler succeeds, paying the injected latency")
+    void testHandlerLogin() {
+        emulator.setLatency(AwsJsonEmulator.Service.COGNITO, Duration.ofMillis(50), Duration.ZERO);
+        final GetSamlResponseHandler handler = new GetSamlResponseHandler(ssmClient, cognitoClient,
+                new EmfMetricsWriter(new PrintStream(OutputStream.nullOutputStream())));
+
+        final long start = System.nanoTime();
+        final Map<String, String> response = handler.handleRequest(createHandlerInput(), null);
+        final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Assertions.assertEquals("SUCCESS", response.get("status"), response.toString());
+        Assertions.assertEquals(RELAY_STATE, response.get("relayState"));
+        Assertions.assertEquals(1, emulator.callCount(SSM_GET_PARAMETERS), "The key-secrets should be read together");
+        Assertions.assertEquals(0, emulator.callCount(SSM_GET_PARAMETER));
+        Assertions.assertEquals(1, emulator.callCount(COGNITO_GET_GROUP));
+        Assertions.assertTrue(elapsed.compareTo(Duration.ofMillis(50)) >= 0,
+                "The login should include the Cognito latency, took " + elapsed);
+    }
+
+    @Test
+    @DisplayName("A Group in the snapshot is served without Cognito, and one missing from it is looked up live")
+    void testHandlerUsesSnapshot() {
+        final GroupMetadataSnapshot snapshot = new GroupMetadataSnapshot(COGNITO_USER_POOL, Instant.now(),
+                Map.of(GROUP_NAME, new CognitoGroupDescriptionMetadata(RELAY_STATE + "/snapshot", ROLE_NAME)));
+        final GetSamlResponseHandler handler = new GetSamlResponseHandler(ssmClient, cognitoClient,
+                new EmfMetricsWriter(new PrintStream(OutputStream.nullOutputStream())), snapshot);
+
+        final Map<String, String> response = handler.handleRequest(createHandlerInput(), null);
+        Assertions.assertEquals("SUCCESS", response.get("status"), response.toString());
+        Assertions.assertEquals(RELAY_STATE + "/snapshot", response.get("relayState"));
+        Assertions.assertEquals(0, emulator.callCount(COGNITO_GET_GROUP), "The snapshot should replace GetGroup");
+
+        final GetSamlResponseHandler withoutGroup = new GetSamlResponseHandler(ssmClient, cognitoClient,
+                new EmfMetricsWriter(new PrintStream(OutputStream.nullOutputStream())),
+                new GroupMetadataSnapshot(COGNITO_USER_POOL, Instant.now(), Map.of()));
+        Assertions.assertEquals(RELAY_STATE, withoutGroup.handleRequest(createHandlerInput(), null).get("relayState"));
+        Assertions.assertEquals(1, emulator.callCount(COGNITO_GET_GROUP));
+    }
+
+    @Test
+    @DisplayName("A hanging Cognito is cut off at the Lambda's deadline with TIMEOUT_ERROR, not a Lambda timeout")
+    void testHandlerTimesOut() {
+        emulator.setLatency(AwsJsonEmulator.Service.COGNITO, Duration.ofSeconds(5), Duration.ZERO);
+        final Context context = mock(Context.class);
+        when(context.getRemainingTimeInMillis()).thenReturn(1500);
+        final GetSamlResponseHandler handler = new GetSamlResponseHandler(ssmClient, cognitoClient,
+                new EmfMetricsWriter(new PrintStream(OutputStream.nullOutputStream())));
+
+        final long start = System.nanoTime();
+        final Map<String, String> response = handler.handleRequest(createHandlerInput(), context);
+        final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Assertions.assertEquals("TIMEOUT_ERROR", response.get("status"), response.toString());
+        Assertions.assertTrue(response.get("samlResponse").isBlank());
+        Assertions.assertTrue(elapsed.compareTo(Duration.ofMillis(1500)) < 0,
+                "The handler should answer before the Lambda times out, took " + elapsed);
+        Assertions.assertEquals(0, emulator.callCount(SSM_GET_PARAMETERS), "No keys should be fetched after a timeout");
+    }
+
+    private APIGatewayProxyRequestEvent createHandlerInput() {
+        final APIGatewayProxyRequestEvent input = new APIGatewayProxyRequestEvent();
+        input.setPathParameters(Map.of("groupName", GROUP_NAME));
+        input.setQueryStringParameters(Map.of("duration", "3600"));
+        final ProxyRequestContext requestContext = new ProxyRequestContext();
+        requestContext.setAuthorizer(Map.of("jwt", Map.of("claims", Map.of(
+                "email", TEST_USER,
+                "cognito:groups", "[" + GROUP_NAME + "]"))));
+        input.setRequestContext(requestContext);
+        return input;
+    }
+}
@@ -0,0 +1,87 @@
+package gov.nj.innovation.customAwsIdp.groups;
+
+import gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator;
+import gov.nj.innovation.customAwsIdp.util.AwsClients;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+
+import java.util.List;
+
+import static gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator.COGNITO_LIST_GROUPS;
+
+/**
+ * Tests for {@link GroupMetadataSnapshotCompiler}, listing Groups from the {@link AwsJsonEmulator}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class GroupMetadataSnapshotCompilerTest {
+
+    private static final String USER_POOL = "us-east-1_compiler";
+    private static final int GROUP_COUNT = 70;
+
+    private static AwsJsonEmulator emulator;
+    private static CognitoIdentityProviderClient cognitoClient;
+
+    @BeforeAll
+    static void startEmulator() {
+        emulator = AwsJsonEmulator.start();
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            emulator.putGroup(USER_POOL, String.format("group-%02d", i),
+                    "relayState: https://example.com/" + i + "\nssoRole: role-" + i);
+        }
+        emulator.putGroup(USER_POOL, "missing-role", "relayState: https://example.com/missing");
+        emulator.putGroup(USER_POOL, "not-yaml", "This isn't really a parse-able YAML string");
+        emulator.putGroup(USER_POOL, "yaml-only", "{relayState: 'https://example.com/yaml', ssoRole: role-yaml}");
+        cognitoClient = AwsClients.cognito(emulator.endpoint());
+    }
+
+    @AfterAll
+    static void stopEmulator() {
+        cognitoClient.close();
+        emulator.close();
+    }
+
+    @Test
+    @DisplayName("Every page of Groups is compiled, and malformed descriptions are reported and left out")
+    void testCompile() {
+        final int listCallsBefore = emulator.callCount(COGNITO_LIST_GROUPS);
+
+        final GroupMetadataSnapshotCompiler.Compilation compilation =
+                GroupMetadataSnapshotCompiler.compile(cognitoClient, USER_POOL);
+
+        final GroupMetadataSnapshot snapshot = compilation.snapshot();
+        Assertions.assertEquals(USER_POOL, snapshot.userPoolId());
+        Assertions.assertEquals(GROUP_COUNT + 1, snapshot.size());
+        Assertions.assertEquals("role-42", snapshot.get("group-42").ssoRole());
+        Assertions.assertEquals("https://example.com/42", snapshot.get("group-42").relayState());
+        Assertions.assertEquals("role-yaml", snapshot.get("yaml-only").ssoRole(),
+                "Descriptions needing the YAML parser should be compiled too");
+        Assertions.assertNull(snapshot.get("missing-role"));
+        Assertions.assertEquals(2, emulator.callCount(COGNITO_LIST_GROUPS) - listCallsBefore,
+                "The Groups should be listed 60 at a time");
+
+        Assertions.assertEquals(List.of("missing-role", "not-yaml"), compilation.malformedGroups().stream()
+                .map(GroupMetadataSnapshotCompiler.MalformedGroup::groupName)
+                .toList());
+        final String report = compilation.report();
+        Assertions.assertTrue(report.startsWith("Compiled 71 Groups from UserPool " + USER_POOL + "; 2 malformed"),
+                report);
+        Assertions.assertTrue(report.contains("  missing-role: "), report);
+    }
+
+    @Test
+    @DisplayName("A compiled snapshot is read back the same")
+    void testCompiledRoundTrip() {
+        final GroupMetadataSnapshot snapshot =
+                GroupMetadataSnapshotCompiler.compile(cognitoClient, USER_POOL).snapshot();
+
+        final GroupMetadataSnapshot read = GroupMetadataSnapshot.fromJson(snapshot.toJson());
+        Assertions.assertEquals(snapshot.size(), read.size());
+        Assertions.assertEquals(snapshot.get("group-07"), read.get("group-07"));
+        Assertions.assertEquals(snapshot.toJson(), read.toJson());
+    }
+}
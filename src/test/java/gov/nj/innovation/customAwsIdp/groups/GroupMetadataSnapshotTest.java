@@ -0,0 +1,66 @@
+package gov.nj.innovation.customAwsIdp.groups;
+
+import gov.nj.innovation.customAwsIdp.exception.CustomAwsIdpException;
+import gov.nj.innovation.customAwsIdp.lambda.helpers.data.CognitoGroupDescriptionMetadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static gov.nj.innovation.customAwsIdp.util.Constants.COGNITO_USER_POOL;
+
+/**
+ * Tests for {@link GroupMetadataSnapshot}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class GroupMetadataSnapshotTest {
+
+    private static final Instant GENERATED_AT = Instant.parse("2026-01-02T03:04:05Z");
+    private static final CognitoGroupDescriptionMetadata METADATA = new CognitoGroupDescriptionMetadata(
+            "https://us-east-1.console.aws.amazon.com/connect/federate/snapshot",
+            "arn:aws:iam::000000000000:role/SNAPSHOT,arn:aws:iam::000000000000:saml-provider/SNAPSHOT");
+
+    @Test
+    @DisplayName("A snapshot survives being written and read back, in its compact form")
+    void testRoundTrip() {
+        final GroupMetadataSnapshot snapshot = new GroupMetadataSnapshot("pool", GENERATED_AT,
+                Map.of("group-b", METADATA, "group-a", new CognitoGroupDescriptionMetadata("relay", "role")));
+
+        final String json = snapshot.toJson();
+        Assertions.assertEquals("{\"formatVersion\":1,\"userPoolId\":\"pool\",\"generatedAt\":\"2026-01-02T03:04:05Z\","
+                + "\"groups\":{\"group-a\":[\"role\",\"relay\"],\"group-b\":[\"" + METADATA.ssoRole() + "\",\""
+                + METADATA.relayState() + "\"]}}", json);
+
+        final GroupMetadataSnapshot read = GroupMetadataSnapshot.fromJson(json);
+        Assertions.assertEquals("pool", read.userPoolId());
+        Assertions.assertEquals(GENERATED_AT, read.generatedAt());
+        Assertions.assertEquals(2, read.size());
+        Assertions.assertEquals(METADATA, read.get("group-b"));
+        Assertions.assertNull(read.get("group-c"), "A Group missing from the snapshot should be looked up live");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "{\"formatVersion\":2,\"userPoolId\":\"pool\",\"generatedAt\":\"2026-01-02T03:04:05Z\",\"groups\":{}}",
+            "{\"userPoolId\":\"pool\",\"generatedAt\":\"2026-01-02T03:04:05Z\",\"groups\":{}}",
+            "{\"formatVersion\":1,\"generatedAt\":\"2026-01-02T03:04:05Z\",\"groups\":{}}",
+            "{\"formatVersion\":1,\"userPoolId\":\"pool\",\"generatedAt\":\"2026-01-02T03:04:05Z\",\"groups\":[]}",
+            "{\"formatVersion\":1,\"userPoolId\":\"pool\",\"generatedAt\":\"2026-01-02T03:04:05Z\","
+                    + "\"groups\":{\"group\":[\"role\"]}}",
+    })
+    @DisplayName("Snapshots of another format version, or missing fields, are rejected")
+    void testRejected(final String json) {
+        Assertions.assertThrows(CustomAwsIdpException.class, () -> GroupMetadataSnapshot.fromJson(json));
+    }
+
+    @Test
+    @DisplayName("Without a parameter or a bundled snapshot, every Group is looked up live")
+    void testLoadWithoutSnapshot() {
+        Assertions.assertSame(GroupMetadataSnapshot.EMPTY, GroupMetadataSnapshot.load(null, COGNITO_USER_POOL));
+    }
+}
@@ -0,0 +1,143 @@
+package gov.nj.innovation.customAwsIdp.jfr;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import gov.nj.innovation.customAwsIdp.SamlGenerator;
+import gov.nj.innovation.customAwsIdp.TestUtils.FakeAwsClients;
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.keys.KeysWrapper;
+import gov.nj.innovation.customAwsIdp.lambda.GetSamlResponseHandler;
+import gov.nj.innovation.customAwsIdp.util.Deadline;
+import gov.nj.innovation.customAwsIdp.util.SsmClientWrapper;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for the JFR events emitted while generating a SAML Response.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class SamlLoginEventsTest {
+
+    private static final String TEST_USER = "jfr-test@test.com";
+    private static final String ROLE_NAME =
+            "arn:aws:iam::274460373520:role/JfrTesting,arn:aws:iam::274460373520:saml-provider/JfrTesting";
+
+    @Test
+    @DisplayName("Key construction, build, sign, and encode each emit an event with sizes but no user details")
+    void testGeneratorEmitsEvents() throws IOException {
+        final List<RecordedEvent> events;
+        try (final Recording recording = new Recording()) {
+            recording.enable(KeyConstructionEvent.class);
+            recording.enable(SamlBuildEvent.class);
+            recording.enable(SamlSignEvent.class);
+            recording.enable(SamlEncodeEvent.class);
+            recording.start();
+
+            final KeysWrapper keys = new KeysWrapper(TestKeyDetails.keyConstants());
+            new SamlGenerator(TEST_USER, ROLE_NAME, "3600", keys).getBase64SamlResponse();
+
+            recording.stop();
+            final Path recordingFile = Files.createTempFile("saml-login-events", ".jfr");
+            recording.dump(recordingFile);
+            events = RecordingFile.readAllEvents(recordingFile);
+            Files.delete(recordingFile);
+        }
+
+        final Set<String> eventNames = events.stream()
+                .map(event -> event.getEventType().getName())
+                .collect(Collectors.toSet());
+        Assertions.assertEquals(Set.of(
+                        "gov.nj.innovation.customAwsIdp.KeyConstruction",
+                        "gov.nj.innovation.customAwsIdp.SamlBuild",
+                        "gov.nj.innovation.customAwsIdp.SamlSign",
+                        "gov.nj.innovation.customAwsIdp.SamlEncode"),
+                eventNames, "Every stage should have emitted its event");
+
+        final RecordedEvent buildEvent = findEvent(events, "gov.nj.innovation.customAwsIdp.SamlBuild");
+        Assertions.assertEquals(3, buildEvent.getInt("attributeCount"),
+                "Role, session name, and session duration should be counted");
+        final RecordedEvent encodeEvent = findEvent(events, "gov.nj.innovation.customAwsIdp.SamlEncode");
+        Assertions.assertTrue(encodeEvent.getInt("documentBytes") > 0, "Document size should be recorded");
+        Assertions.assertTrue(encodeEvent.getInt("encodedBytes") > encodeEvent.getInt("documentBytes"),
+                "Base64 should be larger than the document it encodes");
+
+        for (final RecordedEvent event : events) {
+            Assertions.assertFalse(event.toString().contains(TEST_USER), "Events must not carry the user");
+            Assertions.assertFalse(event.toString().contains(ROLE_NAME), "Events must not carry the role");
+        }
+    }
+
+    @Test
+    @DisplayName("A failing SSM fetch still emits its event, with the exception as the outcome")
+    void testFailedFetchEmitsEvent() throws IOException {
+        final FakeAwsClients.Ssm ssmClient = new FakeAwsClients.Ssm(name -> {
+            throw new IllegalStateException("SSM is down");
+        }, 0, 0);
+        final Deadline deadline = Deadline.after(Duration.ofSeconds(5));
+        final List<RecordedEvent> events = record(SsmParameterFetchEvent.class, () -> Assertions.assertThrows(
+                IllegalStateException.class,
+                () -> SsmClientWrapper.getParameterByName(ssmClient, "jfr-test", deadline)));
+
+        final RecordedEvent fetchEvent = findEvent(events, "gov.nj.innovation.customAwsIdp.SsmParameterFetch");
+        Assertions.assertEquals("jfr-test", fetchEvent.getString("parameterName"));
+        Assertions.assertEquals("IllegalStateException", fetchEvent.getString("outcome"),
+                "The failure should be recorded as the outcome");
+    }
+
+    @Test
+    @DisplayName("Invalid input still emits the parse and login events, with the input error as the outcome")
+    void testInputErrorEmitsEvents() throws IOException {
+        final GetSamlResponseHandler handler = new GetSamlResponseHandler(
+                new FakeAwsClients.Ssm(TestKeyDetails.secrets()), new FakeAwsClients.Cognito(name -> null));
+        final List<RecordedEvent> events = record(RequestParseEvent.class, () -> {
+            final Map<String, String> response = handler.handleRequest(new APIGatewayProxyRequestEvent(), null);
+            Assertions.assertEquals("INPUT_ERROR", response.get("status"));
+        });
+
+        final RecordedEvent parseEvent = findEvent(events, "gov.nj.innovation.customAwsIdp.RequestParse");
+        Assertions.assertEquals("INPUT_ERROR", parseEvent.getString("outcome"),
+                "The rejected input should be recorded as the outcome");
+        final RecordedEvent loginEvent = findEvent(events, "gov.nj.innovation.customAwsIdp.SamlLogin");
+        Assertions.assertEquals("INPUT_ERROR", loginEvent.getString("status"));
+    }
+
+    /**
+     * @return The events of {@code eventClass}, and every login event, emitted while running {@code action}.
+     */
+    private List<RecordedEvent> record(final Class<? extends Event> eventClass, final Runnable action)
+            throws IOException {
+        try (final Recording recording = new Recording()) {
+            recording.enable(eventClass);
+            recording.enable(SamlLoginEvent.class);
+            recording.start();
+            action.run();
+            recording.stop();
+            final Path recordingFile = Files.createTempFile("saml-login-events", ".jfr");
+            recording.dump(recordingFile);
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+            Files.delete(recordingFile);
+            return events;
+        }
+    }
+
+    private RecordedEvent findEvent(final List<RecordedEvent> events, final String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,97 @@
+package gov.nj.innovation.customAwsIdp.keys;
+
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.exception.KeyGenerationException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.Signature;
+
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.CERT_NOT_AFTER;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.CERT_NOT_BEFORE;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.CERT_SERIAL;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.CERT_SUBJECT;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.CRT_COEFFICIENT;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.MODULUS;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.PRIME_EXPONENT_P;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.PRIME_EXPONENT_Q;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.PRIME_P;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.PRIME_Q;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.PRIVATE_EXPONENT;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.PUBLIC_EXPONENT;
+import static gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails.SIGNATURE_ALGORITHM;
+
+/**
+ * Tests for {@link CryptoProviders}, and for {@link KeysWrapper} on each provider available to the tests.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class CryptoProvidersTest {
+
+    private static final KeyConstants TEST_KEY_CONSTANTS = TestKeyDetails.keyConstants();
+
+    @ParameterizedTest
+    @CsvSource(nullValues = "NULL", value = {
+            "NULL, DEFAULT",
+            "'  ', DEFAULT",
+            "apple, DEFAULT",
+            "accp, ACCP",
+            "sun-rsa-sign, SUN_RSA_SIGN",
+            "BOUNCY_CASTLE, BOUNCY_CASTLE",
+    })
+    @DisplayName("The configured provider is parsed leniently, and anything unknown means the JDK defaults")
+    void testParse(final String value, final CryptoProviders.Choice expected) {
+        Assertions.assertEquals(expected, CryptoProviders.parse(value));
+    }
+
+    @Test
+    @DisplayName("Providers load by choice, and ACCP falls back to the defaults when it is not on the class path")
+    void testLoad() {
+        Assertions.assertNull(CryptoProviders.load(CryptoProviders.Choice.DEFAULT));
+        Assertions.assertEquals("SunRsaSign", CryptoProviders.load(CryptoProviders.Choice.SUN_RSA_SIGN).getName());
+        Assertions.assertSame(CryptoProviders.bouncyCastle(),
+                CryptoProviders.load(CryptoProviders.Choice.BOUNCY_CASTLE), "BouncyCastle should only be built once");
+        Assertions.assertNull(CryptoProviders.load(CryptoProviders.Choice.ACCP),
+                "ACCP is not a test dependency, so it should be reported as unavailable");
+    }
+
+    @Test
+    @DisplayName("Keys built on each provider produce the same certificate and the same signatures")
+    void testKeysAgreeAcrossProviders() throws GeneralSecurityException {
+        final KeysWrapper defaultKeys = new KeysWrapper(TEST_KEY_CONSTANTS, null);
+        final byte[] expectedSignature = sign(defaultKeys, null);
+
+        for (final Provider provider : new Provider[] {
+                CryptoProviders.load(CryptoProviders.Choice.SUN_RSA_SIGN), CryptoProviders.bouncyCastle() }) {
+            final KeysWrapper keys = new KeysWrapper(TEST_KEY_CONSTANTS, provider);
+            Assertions.assertArrayEquals(defaultKeys.getX509Certificate().getEncoded(),
+                    keys.getX509Certificate().getEncoded(), "Certificate differs with " + provider.getName());
+            Assertions.assertArrayEquals(expectedSignature, sign(keys, provider),
+                    "Signature differs with " + provider.getName());
+        }
+    }
+
+    @Test
+    @DisplayName("Keys whose primes do not make up the modulus are refused instead of being used without CRT")
+    void testMismatchedModulusIsRefused() {
+        final KeyConstants mismatched = new KeyConstants(MODULUS.add(BigInteger.TWO), PUBLIC_EXPONENT,
+                PRIVATE_EXPONENT, PRIME_P, PRIME_Q, PRIME_EXPONENT_P, PRIME_EXPONENT_Q, CRT_COEFFICIENT, CERT_SUBJECT,
+                CERT_SERIAL, CERT_NOT_BEFORE, CERT_NOT_AFTER, SIGNATURE_ALGORITHM);
+        Assertions.assertThrows(KeyGenerationException.class, () -> new KeysWrapper(mismatched, null));
+    }
+
+    private byte[] sign(final KeysWrapper keys, final Provider provider) throws GeneralSecurityException {
+        final Signature signature = provider != null ?
+                Signature.getInstance("SHA256withRSA", provider) : Signature.getInstance("SHA256withRSA");
+        signature.initSign(keys.getPrivateKey());
+        signature.update("<ds:SignedInfo/>".getBytes(StandardCharsets.UTF_8));
+        return signature.sign();
+    }
+}
@@ -0,0 +1,233 @@
+package gov.nj.innovation.customAwsIdp.keys;
+
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator;
+import gov.nj.innovation.customAwsIdp.exception.KeyGenerationException;
+import gov.nj.innovation.customAwsIdp.util.AwsClients;
+import gov.nj.innovation.customAwsIdp.util.Deadline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.MethodSource;
+import software.amazon.awssdk.services.ssm.SsmClient;
+
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator.SSM_GET_PARAMETER;
+import static gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator.SSM_GET_PARAMETERS;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_P_NAME;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_Q_NAME;
+
+/**
+ * Tests for {@link SigningKeyCache} against the {@link AwsJsonEmulator}, and for the checks in {@link
+ * KeyConstants#fromSecrets(Map)} which keep a half-rotated set of key-secrets from being used.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class SigningKeyCacheTest {
+
+    private static final Duration PROBE_INTERVAL = Duration.ofSeconds(60);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private AwsJsonEmulator emulator;
+    private SsmClient ssmClient;
+    private SigningKeyCache cache;
+
+    @BeforeEach
+    void startEmulator() {
+        emulator = AwsJsonEmulator.start();
+        TestKeyDetails.secrets().forEach(emulator::putParameter);
+        ssmClient = AwsClients.ssm(emulator.endpoint());
+        cache = new SigningKeyCache(ssmClient, PROBE_INTERVAL, nanos::get);
+    }
+
+    @AfterEach
+    void stopEmulator() {
+        ssmClient.close();
+        emulator.close();
+    }
+
+    @Test
+    @DisplayName("The key-secrets are read in one call and then served from the cache, probed once per interval")
+    void testCachedAndProbed() {
+        final SigningKeyCache.Lookup first = get();
+        Assertions.assertFalse(first.fromCache());
+        Assertions.assertEquals(1, emulator.callCount(SSM_GET_PARAMETERS));
+        Assertions.assertEquals(0, emulator.callCount(SSM_GET_PARAMETER), "No secret should be read on its own");
+        Assertions.assertEquals(versions(1), cache.versions());
+
+        final SigningKeyCache.Lookup second = get();
+        Assertions.assertTrue(second.fromCache());
+        Assertions.assertSame(first.keys(), second.keys());
+        Assertions.assertEquals(1, emulator.callCount(SSM_GET_PARAMETERS), "Nothing should be probed yet");
+
+        advance(PROBE_INTERVAL);
+        Assertions.assertSame(first.keys(), get().keys());
+        Assertions.assertSame(first.keys(), get().keys());
+        Assertions.assertEquals(2, emulator.callCount(SSM_GET_PARAMETERS), "Only one probe should be made");
+    }
+
+    @Test
+    @DisplayName("A rotation is noticed by the next probe and the new key replaces the old one whole")
+    void testRotation() {
+        final KeysWrapper oldKeys = get().keys();
+        final Map<String, String> rotated = TestKeyDetails.generateSecrets();
+        rotated.forEach(emulator::putParameter);
+        Assertions.assertSame(oldKeys, get().keys(), "The rotation should not be seen before the next probe");
+
+        advance(PROBE_INTERVAL);
+        final SigningKeyCache.Lookup lookup = get();
+        Assertions.assertFalse(lookup.fromCache());
+        Assertions.assertEquals(KeyConstants.fromSecrets(rotated).modulus(),
+                ((RSAPublicKey) lookup.keys().getPublicKey()).getModulus());
+        Assertions.assertEquals(versions(2), cache.versions());
+        Assertions.assertEquals(3, emulator.callCount(SSM_GET_PARAMETERS), "A load, a probe, and a reload");
+    }
+
+    @Test
+    @DisplayName("A half-done rotation keeps the old key, until the new key's secrets are all in place")
+    void testHalfDoneRotation() {
+        final KeysWrapper oldKeys = get().keys();
+        final Map<String, String> rotated = TestKeyDetails.generateSecrets();
+        final List<String> firstHalf = KeyConstants.SECRET_NAMES.subList(0, 3);
+        firstHalf.forEach(name -> emulator.putParameter(name, rotated.get(name)));
+
+        advance(PROBE_INTERVAL);
+        final SigningKeyCache.Lookup halfDone = get();
+        Assertions.assertSame(oldKeys, halfDone.keys(), "A mix of two keys must never be used");
+        Assertions.assertTrue(halfDone.fromCache());
+        Assertions.assertEquals(versions(1), cache.versions());
+
+        KeyConstants.SECRET_NAMES.subList(3, 6).forEach(name -> emulator.putParameter(name, rotated.get(name)));
+        Assertions.assertSame(oldKeys, get().keys(), "The failed reload should wait for the next interval");
+        advance(PROBE_INTERVAL);
+        Assertions.assertNotSame(oldKeys, get().keys());
+        Assertions.assertEquals(versions(2), cache.versions());
+    }
+
+    @Test
+    @DisplayName("A container which first loads during a promotion reads the secrets again, and signs with one key")
+    void testFirstLoadDuringPromotion() throws InterruptedException {
+        final Map<String, String> rotated = TestKeyDetails.generateSecrets();
+        KeyConstants.SECRET_NAMES.subList(0, 3).forEach(name -> emulator.putParameter(name, rotated.get(name)));
+        final Thread promotion = Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(150);
+            } catch (final InterruptedException e) {
+                return;
+            }
+            KeyConstants.SECRET_NAMES.subList(3, 6).forEach(name -> emulator.putParameter(name, rotated.get(name)));
+        });
+
+        final SigningKeyCache.Lookup lookup = get();
+        promotion.join();
+        Assertions.assertEquals(KeyConstants.fromSecrets(rotated).modulus(),
+                ((RSAPublicKey) lookup.keys().getPublicKey()).getModulus());
+        Assertions.assertEquals(versions(2), cache.versions());
+        Assertions.assertTrue(emulator.callCount(SSM_GET_PARAMETERS) > 1, "The mixed set should have been read again");
+    }
+
+    @Test
+    @DisplayName("A first load which keeps finding a mix of two keys fails after a few reads")
+    void testFirstLoadOfMixedKeys() {
+        final Map<String, String> rotated = TestKeyDetails.generateSecrets();
+        KeyConstants.SECRET_NAMES.subList(0, 3).forEach(name -> emulator.putParameter(name, rotated.get(name)));
+
+        Assertions.assertThrows(KeyGenerationException.class, this::get);
+        Assertions.assertEquals(4, emulator.callCount(SSM_GET_PARAMETERS), "A load and three reloads");
+        Assertions.assertNull(cache.versions());
+
+        emulator.reset();
+        final SigningKeyCache shortDeadline = new SigningKeyCache(ssmClient, PROBE_INTERVAL, nanos::get);
+        Assertions.assertThrows(KeyGenerationException.class,
+                () -> shortDeadline.get(Deadline.after(Duration.ofSeconds(1))));
+        Assertions.assertEquals(1, emulator.callCount(SSM_GET_PARAMETERS), "No reload should outlast the deadline");
+    }
+
+    @Test
+    @DisplayName("A failing probe keeps the cached keys, but with nothing cached the failure reaches the caller")
+    void testFailedProbe() {
+        final KeysWrapper keys = get().keys();
+        emulator.failNext(SSM_GET_PARAMETERS, 10, 500, "InternalServerError");
+        advance(PROBE_INTERVAL);
+        Assertions.assertSame(keys, get().keys());
+        emulator.reset();
+
+        final SigningKeyCache empty = new SigningKeyCache(ssmClient, PROBE_INTERVAL, nanos::get);
+        emulator.failNext(SSM_GET_PARAMETERS, 10, 500, "InternalServerError");
+        Assertions.assertThrows(RuntimeException.class, () -> empty.get(Deadline.after(Duration.ofSeconds(5))));
+        emulator.reset();
+        Assertions.assertFalse(empty.get(Deadline.after(Duration.ofSeconds(5))).fromCache(),
+                "The next caller should try to load the keys again");
+    }
+
+    static List<String> testMixedSecrets() {
+        return KeyConstants.SECRET_NAMES;
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    @DisplayName("Key-secrets with any one of them from another key are refused")
+    void testMixedSecrets(final String replaced) {
+        final Map<String, String> secrets = new HashMap<>(TestKeyDetails.secrets());
+        Assertions.assertEquals(TestKeyDetails.MODULUS, KeyConstants.fromSecrets(secrets).modulus(),
+                "The modulus should be derived from the primes");
+
+        secrets.put(replaced, TestKeyDetails.generateSecrets().get(replaced));
+        Assertions.assertThrows(KeyGenerationException.class, () -> KeyConstants.fromSecrets(secrets));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1", "0", "-1"})
+    @DisplayName("Key-secrets with a prime which is not above one are refused")
+    void testDegeneratePrime(final String prime) {
+        for (final String name : List.of(KEY_PRIME_P_NAME, KEY_PRIME_Q_NAME)) {
+            final Map<String, String> secrets = new HashMap<>(TestKeyDetails.secrets());
+            secrets.put(name, prime);
+            Assertions.assertThrows(KeyGenerationException.class, () -> KeyConstants.fromSecrets(secrets),
+                    name + " of " + prime + " should be refused");
+        }
+    }
+
+    @Test
+    @DisplayName("Key-secrets of a key shorter than RSA-2048 are refused")
+    void testShortKey() throws NoSuchAlgorithmException {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        final Map<String, String> secrets =
+                KeyConstants.secretsOf((RSAPrivateCrtKey) generator.generateKeyPair().getPrivate());
+        Assertions.assertThrows(KeyGenerationException.class, () -> KeyConstants.fromSecrets(secrets));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {"NULL,60", "'',60", "300,300", "' 5 ',5", "-1,0", "often,60"}, nullValues = "NULL")
+    @DisplayName("The probe interval is parsed from the environment, falling back to the default")
+    void testParseProbeInterval(final String value, final long expected) {
+        Assertions.assertEquals(expected, SigningKeyCache.parseProbeInterval(value));
+    }
+
+    private SigningKeyCache.Lookup get() {
+        return cache.get(Deadline.after(Duration.ofSeconds(5)));
+    }
+
+    private void advance(final Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+
+    private static Map<String, Long> versions(final long version) {
+        return KeyConstants.SECRET_NAMES.stream().collect(Collectors.toMap(name -> name, name -> version));
+    }
+}
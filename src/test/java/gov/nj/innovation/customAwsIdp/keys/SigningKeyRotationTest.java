@@ -0,0 +1,204 @@
+package gov.nj.innovation.customAwsIdp.keys;
+
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator;
+import gov.nj.innovation.customAwsIdp.exception.KeyGenerationException;
+import gov.nj.innovation.customAwsIdp.util.AwsClients;
+import gov.nj.innovation.customAwsIdp.util.Deadline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ssm.SsmClient;
+
+import java.math.BigInteger;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static gov.nj.innovation.customAwsIdp.emulator.AwsJsonEmulator.SSM_PUT_PARAMETER;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_Q_NAME;
+
+/**
+ * Tests for {@link SigningKeyRotation} and {@link IdentityProviderMetadata}, against the {@link AwsJsonEmulator}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class SigningKeyRotationTest {
+
+    private static final Duration PROBE_INTERVAL = Duration.ofSeconds(60);
+
+    private AwsJsonEmulator emulator;
+    private SsmClient ssmClient;
+
+    @BeforeEach
+    void startEmulator() {
+        emulator = AwsJsonEmulator.start();
+        TestKeyDetails.secrets().forEach(emulator::putParameter);
+        ssmClient = AwsClients.ssm(emulator.endpoint());
+    }
+
+    @AfterEach
+    void stopEmulator() {
+        ssmClient.close();
+        emulator.close();
+    }
+
+    @Test
+    @DisplayName("A staged key is published next to the current one, and once promoted it is the only one signing")
+    void testRotation() throws CertificateEncodingException {
+        final AtomicLong nanos = new AtomicLong();
+        final SigningKeyCache cache = new SigningKeyCache(ssmClient, PROBE_INTERVAL, nanos::get);
+        final X509Certificate current = cache.get(deadline()).keys().getX509Certificate();
+        Assertions.assertEquals(List.of(current), SigningKeyRotation.certificates(ssmClient),
+                "Only the current certificate should be published before a key is staged");
+
+        final KeyConstants staged = SigningKeyRotation.stage(ssmClient);
+        final List<X509Certificate> both = SigningKeyRotation.certificates(ssmClient);
+        Assertions.assertEquals(2, both.size());
+        Assertions.assertEquals(current, both.get(0));
+        Assertions.assertNotEquals(TestKeyDetails.MODULUS, staged.modulus(), "The staged key should be a new one");
+        final String dualMetadata = IdentityProviderMetadata.render(both);
+        Assertions.assertEquals(2, count(dualMetadata, "<md:KeyDescriptor"));
+        Assertions.assertTrue(dualMetadata.contains(encode(current)));
+        Assertions.assertTrue(dualMetadata.contains(encode(both.get(1))));
+        Assertions.assertSame(current, cache.get(deadline()).keys().getX509Certificate(),
+                "Staging should not change the key being signed with");
+
+        SigningKeyRotation.promote(ssmClient);
+        nanos.addAndGet(PROBE_INTERVAL.toNanos());
+        Assertions.assertEquals(both.get(1), cache.get(deadline()).keys().getX509Certificate());
+        final String retiredMetadata = IdentityProviderMetadata.render(SigningKeyRotation.certificates(ssmClient));
+        Assertions.assertEquals(1, count(retiredMetadata, "<md:KeyDescriptor"),
+                "Once promoted, the staged key is the current one and the old certificate is retired");
+        Assertions.assertTrue(retiredMetadata.contains(encode(both.get(1))));
+    }
+
+    @Test
+    @DisplayName("A staged key which is not whole is never promoted")
+    void testPromoteRefusesMixedKey() {
+        SigningKeyRotation.stage(ssmClient);
+        emulator.putParameter(KEY_PRIME_Q_NAME + SigningKeyRotation.NEXT_SUFFIX,
+                TestKeyDetails.generateSecrets().get(KEY_PRIME_Q_NAME));
+        emulator.reset();
+
+        Assertions.assertThrows(KeyGenerationException.class, () -> SigningKeyRotation.promote(ssmClient));
+        Assertions.assertEquals(0, emulator.callCount(SSM_PUT_PARAMETER), "No current secret should be replaced");
+    }
+
+    @Test
+    @DisplayName("A staged key's certificate has its own serial and is valid from when the key was staged")
+    void testStagedCertificate() {
+        final Instant stagedAfter = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        SigningKeyRotation.stage(ssmClient);
+        final List<X509Certificate> both = SigningKeyRotation.certificates(ssmClient);
+        final X509Certificate current = both.get(0);
+        final X509Certificate staged = both.get(1);
+
+        Assertions.assertEquals(new BigInteger("1696019667843"), current.getSerialNumber(),
+                "A key from before the validity was stored keeps the certificate it was published with");
+        Assertions.assertEquals(current.getIssuerX500Principal(), staged.getIssuerX500Principal());
+        Assertions.assertNotEquals(current.getSerialNumber(), staged.getSerialNumber(),
+                "No two certificates from the one issuer should share a serial");
+        Assertions.assertFalse(staged.getNotBefore().toInstant().isBefore(stagedAfter),
+                "The staged certificate should be valid from when it was staged, was " + staged.getNotBefore());
+        Assertions.assertEquals(
+                Duration.between(current.getNotBefore().toInstant(), current.getNotAfter().toInstant()),
+                Duration.between(staged.getNotBefore().toInstant(), staged.getNotAfter().toInstant()),
+                "Every certificate should be valid for as long");
+
+        SigningKeyRotation.promote(ssmClient);
+        Assertions.assertEquals(List.of(staged), SigningKeyRotation.certificates(ssmClient),
+                "The promoted key should keep the certificate it was published with");
+    }
+
+    @Test
+    @DisplayName("Every Region gets the same staged key, and the old key is only retired once every Region is promoted")
+    void testMultiRegionRotation() {
+        try (final AwsJsonEmulator westEmulator = AwsJsonEmulator.start();
+             final SsmClient westClient = AwsClients.ssm(westEmulator.endpoint(), "us-west-2")) {
+            TestKeyDetails.secrets().forEach(westEmulator::putParameter);
+            final Map<String, SsmClient> regions = new LinkedHashMap<>();
+            regions.put("us-east-1", ssmClient);
+            regions.put("us-west-2", westClient);
+
+            final X509Certificate current = SigningKeyRotation.retire(regions);
+            final KeyConstants staged = SigningKeyRotation.stage(regions);
+            final List<X509Certificate> both = SigningKeyRotation.certificates(regions);
+            Assertions.assertEquals(2, both.size(), "Each certificate should be published once for all the Regions");
+            Assertions.assertEquals(current, both.get(0));
+            Assertions.assertEquals(new KeysWrapper(staged).getX509Certificate(), both.get(1));
+            Assertions.assertThrows(IllegalStateException.class, () -> SigningKeyRotation.retire(regions),
+                    "Nothing is retired before the staged key is promoted");
+
+            // A promotion which only reached one Region keeps both keys published, and cannot be retired yet
+            SigningKeyRotation.promote(Map.of("us-east-1", ssmClient));
+            Assertions.assertEquals(2, SigningKeyRotation.certificates(regions).size());
+            final IllegalStateException e = Assertions.assertThrows(IllegalStateException.class,
+                    () -> SigningKeyRotation.retire(regions));
+            Assertions.assertTrue(e.getMessage().contains("us-west-2"), e.getMessage());
+            Assertions.assertFalse(e.getMessage().contains("us-east-1"), e.getMessage());
+
+            SigningKeyRotation.promote(regions);
+            Assertions.assertEquals(both.get(1), SigningKeyRotation.retire(regions));
+            Assertions.assertEquals(List.of(both.get(1)), SigningKeyRotation.certificates(regions));
+        }
+    }
+
+    @Test
+    @DisplayName("No Region is promoted while the Regions have staged different keys")
+    void testPromoteRefusesDifferentRegionalKeys() {
+        try (final AwsJsonEmulator westEmulator = AwsJsonEmulator.start();
+             final SsmClient westClient = AwsClients.ssm(westEmulator.endpoint(), "us-west-2")) {
+            TestKeyDetails.secrets().forEach(westEmulator::putParameter);
+            SigningKeyRotation.stage(ssmClient);
+            SigningKeyRotation.stage(westClient);
+            emulator.reset();
+            westEmulator.reset();
+
+            final Map<String, SsmClient> regions = new LinkedHashMap<>();
+            regions.put("us-east-1", ssmClient);
+            regions.put("us-west-2", westClient);
+            Assertions.assertThrows(KeyGenerationException.class, () -> SigningKeyRotation.promote(regions));
+            Assertions.assertEquals(0, emulator.callCount(SSM_PUT_PARAMETER), "No current secret should be replaced");
+            Assertions.assertEquals(0, westEmulator.callCount(SSM_PUT_PARAMETER), "Nor in the other Region");
+        }
+    }
+
+    @Test
+    @DisplayName("The metadata keeps everything but the bundled certificate, and publishes each certificate once")
+    void testMetadata() throws CertificateEncodingException {
+        final X509Certificate certificate =
+                new KeysWrapper(KeyConstants.fromSecrets(TestKeyDetails.secrets())).getX509Certificate();
+        final String metadata = IdentityProviderMetadata.render(List.of(certificate, certificate));
+
+        Assertions.assertEquals(1, count(metadata, "<md:KeyDescriptor use=\"signing\">"));
+        Assertions.assertTrue(metadata.contains(encode(certificate)));
+        Assertions.assertFalse(metadata.contains("JKpW8gB7qzZsPzQfzA3aLbgCYJcM-9o6rTuBHUMYMrk"),
+                "The bundled certificate should be replaced");
+        Assertions.assertEquals(4, count(metadata, "<md:SingleSignOnService"));
+        Assertions.assertTrue(metadata.indexOf("<md:KeyDescriptor") < metadata.indexOf("<md:ArtifactResolutionService"),
+                "The KeyDescriptors should stay first in the IDPSSODescriptor");
+    }
+
+    private static Deadline deadline() {
+        return Deadline.after(Duration.ofSeconds(5));
+    }
+
+    private static String encode(final X509Certificate certificate) throws CertificateEncodingException {
+        return Base64.getEncoder().encodeToString(certificate.getEncoded());
+    }
+
+    private static int count(final String text, final String fragment) {
+        return text.split(Pattern.quote(fragment), -1).length - 1;
+    }
+}
@@ -0,0 +1,88 @@
+package gov.nj.innovation.customAwsIdp.lambda;
+
+import gov.nj.innovation.customAwsIdp.TestUtils.FakeAwsClients;
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
+import gov.nj.innovation.customAwsIdp.keys.KeyConstants;
+import gov.nj.innovation.customAwsIdp.keys.SigningKeyCache;
+import gov.nj.innovation.customAwsIdp.util.Deadline;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link ColdStartInitializer}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class ColdStartInitializerTest {
+
+    private static final Map<String, String> PARAMETERS = TestKeyDetails.secrets();
+
+    @Test
+    @DisplayName("The keys built during init are cached for the invocations")
+    void testKeysCached() {
+        final AtomicInteger fetches = new AtomicInteger();
+        final SigningKeyCache cache = new SigningKeyCache(new FakeAwsClients.Ssm(name -> {
+            fetches.incrementAndGet();
+            return PARAMETERS.get(name);
+        }, 0, 0));
+        ColdStartInitializer.start(cache, Duration.ofSeconds(30));
+
+        Assertions.assertTrue(cache.get(Deadline.after(Duration.ofSeconds(1))).fromCache(),
+                "The keys should have been built before the deadline");
+        Assertions.assertEquals(KeyConstants.PARAMETER_NAMES.size(), fetches.get(),
+                "Each key parameter should be fetched once");
+    }
+
+    @Test
+    @DisplayName("A failing key fetch is logged and leaves the keys to be loaded lazily")
+    void testFailedKeysFallBack() {
+        final AtomicBoolean down = new AtomicBoolean(true);
+        final SigningKeyCache cache = new SigningKeyCache(new FakeAwsClients.Ssm(name -> {
+            if (down.get()) {
+                throw new IllegalStateException("SSM is down");
+            }
+            return PARAMETERS.get(name);
+        }, 0, 0));
+        ColdStartInitializer.start(cache, Duration.ofSeconds(30));
+        down.set(false);
+
+        Assertions.assertFalse(cache.get(Deadline.after(Duration.ofSeconds(1))).fromCache(),
+                "The first invocation should load the keys itself");
+    }
+
+    @Test
+    @DisplayName("A slow key fetch does not hold init past the deadline")
+    void testDeadline() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        ColdStartInitializer.start(new SigningKeyCache(new FakeAwsClients.Ssm(name -> {
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return PARAMETERS.get(name);
+        }, 0, 0)), Duration.ofMillis(200));
+        final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Assertions.assertTrue(elapsed.compareTo(Duration.ofSeconds(10)) < 0,
+                "Waiting should stop at the deadline, took " + elapsed);
+        release.countDown();
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = { "NULL,4000", "'',4000", "2500,2500", "' 100 ',100", "-5,0", "soon,4000" }, nullValues = "NULL")
+    @DisplayName("The deadline is parsed from the environment, falling back to the default")
+    void testParseDeadline(final String value, final long expected) {
+        Assertions.assertEquals(expected, ColdStartInitializer.parseDeadline(value));
+    }
+}
@@ -0,0 +1,110 @@
+package gov.nj.innovation.customAwsIdp.lambda;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import gov.nj.innovation.customAwsIdp.TestUtils.TestTokens;
+import gov.nj.innovation.customAwsIdp.auth.CognitoJwtVerifier;
+import gov.nj.innovation.customAwsIdp.auth.JwksCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for {@link GetSamlFunctionUrlHandler}, with the SAML generation itself stubbed out.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class GetSamlFunctionUrlHandlerTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00Z");
+    private static final TestTokens TOKENS = new TestTokens(TestTokens.KEY_ID);
+    private static final String VALID_TOKEN = TOKENS.sign(TestTokens.idTokenClaims(NOW.plusSeconds(60)));
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Bearer ", "bearer ", ""})
+    @DisplayName("A valid token is handed on as the HTTP API's JWT claims, with the Group from the path")
+    void testAuthorizedRequest(final String prefix) {
+        final AtomicReference<APIGatewayProxyRequestEvent> delegated = new AtomicReference<>();
+        final APIGatewayV2HTTPResponse response = createHandler(delegated).handleRequest(
+                createInput("/generateSaml/GROUP%20ONE", Map.of("authorization", prefix + VALID_TOKEN)), null);
+
+        Assertions.assertEquals(200, response.getStatusCode());
+        Assertions.assertEquals("SUCCESS", new ObjectMapper().readTree(response.getBody()).get("status").asString());
+        Assertions.assertEquals("GROUP ONE", delegated.get().getPathParameters().get("groupName"));
+        Assertions.assertEquals(
+                Map.of("jwt", Map.of("claims", Map.of(
+                        "sub", "user-subject",
+                        "email", "user@example.com",
+                        "cognito:groups", "[GROUP_ONE GROUP_TWO]"))),
+                delegated.get().getRequestContext().getAuthorizer());
+    }
+
+    @Test
+    @DisplayName("A request without a valid token is rejected as API Gateway would, before any SAML is generated")
+    void testUnauthorizedRequests() {
+        final AtomicReference<APIGatewayProxyRequestEvent> delegated = new AtomicReference<>();
+        final GetSamlFunctionUrlHandler handler = createHandler(delegated);
+        final Map<String, Object> expired = TestTokens.idTokenClaims(NOW.minusSeconds(1));
+
+        for (final Map<String, String> headers : List.of(
+                Map.<String, String>of(),
+                Map.of("Authorization", ""),
+                Map.of("Authorization", "Bearer not-a-token"),
+                Map.of("Authorization", "Bearer " + TOKENS.sign(expired)),
+                Map.of("Authorization", "Bearer " + new TestTokens(TestTokens.KEY_ID).sign(expired)))) {
+            final APIGatewayV2HTTPResponse response =
+                    handler.handleRequest(createInput("/generateSaml/GROUP_ONE", headers), null);
+            Assertions.assertEquals(401, response.getStatusCode(), "Headers " + headers + " should be rejected");
+            Assertions.assertEquals("{\"message\":\"Unauthorized\"}", response.getBody());
+        }
+        Assertions.assertNull(delegated.get(), "No request should have been handed on");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"/", "/generateSaml", "/generateSaml/", "/generateSaml/GROUP/extra", "/other/GROUP"})
+    @DisplayName("Paths other than /generateSaml/GROUP_NAME are not found")
+    void testUnknownPaths(final String path) {
+        final APIGatewayV2HTTPResponse response = createHandler(new AtomicReference<>())
+                .handleRequest(createInput(path, Map.of("Authorization", "Bearer " + VALID_TOKEN)), null);
+        Assertions.assertEquals(404, response.getStatusCode());
+    }
+
+    private static APIGatewayV2HTTPEvent createInput(final String path, final Map<String, String> headers) {
+        final APIGatewayV2HTTPEvent input = new APIGatewayV2HTTPEvent();
+        input.setRawPath(path);
+        input.setHeaders(new HashMap<>(headers));
+        return input;
+    }
+
+    private static GetSamlFunctionUrlHandler createHandler(
+            final AtomicReference<APIGatewayProxyRequestEvent> delegated) {
+        final GetSamlHttpResponseHandler httpResponseHandler = new GetSamlHttpResponseHandler(
+                new GetSamlResponseHandler(null, null) {
+                    @Override
+                    public Map<String, String> handleRequest(
+                            final APIGatewayProxyRequestEvent input,
+                            final Context context) {
+                        delegated.set(input);
+                        return Map.of("status", "SUCCESS", "samlResponse", "PHNhbWxwOlJlc3BvbnNl",
+                                "relayState", "https://example.com/relay", "error", "");
+                    }
+                });
+        final CognitoJwtVerifier verifier = new CognitoJwtVerifier(TestTokens.ISSUER, TestTokens.AUDIENCE,
+                new JwksCache(TOKENS::jwks, Duration.ofHours(1)), Clock.fixed(NOW, ZoneOffset.UTC));
+        return new GetSamlFunctionUrlHandler(httpResponseHandler, verifier);
+    }
+}
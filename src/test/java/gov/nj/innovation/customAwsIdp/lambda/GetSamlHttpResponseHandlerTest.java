@@ -0,0 +1,137 @@
+package gov.nj.innovation.customAwsIdp.lambda;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import gov.nj.innovation.customAwsIdp.lambda.helpers.SamlPostForm;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static gov.nj.innovation.customAwsIdp.util.Constants.PATH_PARAMETER_HEALTH_CHECK;
+
+/**
+ * Tests for {@link GetSamlHttpResponseHandler}, with the SAML generation itself stubbed out.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class GetSamlHttpResponseHandlerTest {
+
+    private static final String LARGE_SAML_RESPONSE = "PHNhbWxwOlJlc3BvbnNlIHhtbG5zOnNhbWxwPSJ1cm46".repeat(250);
+
+    @Test
+    @DisplayName("A large body is gzipped, Base64-flagged, and carries Content-Encoding when gzip is accepted")
+    void testCompressedResponse() throws IOException {
+        final APIGatewayV2HTTPResponse response = createHandler(LARGE_SAML_RESPONSE)
+                .handleRequest(createInput(Map.of("accept-encoding", "gzip, deflate, br"), null), null);
+
+        Assertions.assertEquals(200, response.getStatusCode(), "Status code should always be 200");
+        Assertions.assertTrue(response.getIsBase64Encoded(), "Compressed bodies must be flagged as Base64");
+        Assertions.assertEquals("gzip", response.getHeaders().get("Content-Encoding"));
+        Assertions.assertEquals("Accept-Encoding", response.getHeaders().get("Vary"));
+
+        final byte[] compressed = Base64.getDecoder().decode(response.getBody());
+        try (final InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            final JsonNode body = new ObjectMapper().readTree(in.readAllBytes());
+            Assertions.assertEquals(LARGE_SAML_RESPONSE, body.get("samlResponse").asString());
+            Assertions.assertEquals("SUCCESS", body.get("status").asString());
+        }
+    }
+
+    @Test
+    @DisplayName("The body is left as plain JSON without Accept-Encoding, or when it is under the threshold")
+    void testUncompressedResponses() {
+        final APIGatewayV2HTTPResponse noHeader = createHandler(LARGE_SAML_RESPONSE).handleRequest(createInput(null, null), null);
+        Assertions.assertFalse(noHeader.getIsBase64Encoded(), "Body should not be Base64 without Accept-Encoding");
+        Assertions.assertNull(noHeader.getHeaders().get("Content-Encoding"), "There should be no Content-Encoding");
+        Assertions.assertEquals(LARGE_SAML_RESPONSE,
+                new ObjectMapper().readTree(noHeader.getBody()).get("samlResponse").asString());
+
+        final APIGatewayV2HTTPResponse small = createHandler("short")
+                .handleRequest(createInput(Map.of("Accept-Encoding", "gzip"), null), null);
+        Assertions.assertFalse(small.getIsBase64Encoded(), "Small bodies should not be compressed");
+        Assertions.assertNull(small.getHeaders().get("Content-Encoding"), "There should be no Content-Encoding");
+    }
+
+    @Test
+    @DisplayName("Form mode returns the auto-POST page with its security headers")
+    void testFormResponseMode() {
+        final APIGatewayV2HTTPResponse response = createHandler(LARGE_SAML_RESPONSE)
+                .handleRequest(createInput(null, Map.of("responseMode", "form")), null);
+
+        Assertions.assertEquals(200, response.getStatusCode(), "Status code should always be 200");
+        Assertions.assertEquals("text/html; charset=utf-8", response.getHeaders().get("Content-Type"));
+        Assertions.assertEquals(SamlPostForm.getInstance().contentSecurityPolicy(),
+                response.getHeaders().get("Content-Security-Policy"));
+        Assertions.assertEquals("no-store", response.getHeaders().get("Cache-Control"));
+        Assertions.assertEquals("nosniff", response.getHeaders().get("X-Content-Type-Options"));
+        Assertions.assertEquals("no-referrer", response.getHeaders().get("Referrer-Policy"));
+        Assertions.assertTrue(response.getBody().contains("value=\"" + LARGE_SAML_RESPONSE + "\""),
+                "The SAML Response should be in the form");
+        Assertions.assertTrue(response.getBody().contains("value=\"https://example.com/relay\""),
+                "The RelayState should be in the form");
+    }
+
+    @Test
+    @DisplayName("Form mode still returns the JSON map when the SAML Response could not be generated")
+    void testFormResponseModeError() {
+        final APIGatewayV2HTTPResponse response = new GetSamlHttpResponseHandler(new GetSamlResponseHandler(null, null) {
+            @Override
+            public Map<String, String> handleRequest(final APIGatewayProxyRequestEvent input, final Context context) {
+                return Map.of("status", "INPUT_ERROR", "samlResponse", "", "relayState", "", "error", "Bad input");
+            }
+        }).handleRequest(createInput(null, Map.of("responseMode", "form")), null);
+
+        Assertions.assertEquals("application/json", response.getHeaders().get("Content-Type"));
+        Assertions.assertNull(response.getHeaders().get("Content-Security-Policy"), "No CSP is needed for JSON");
+        Assertions.assertEquals("Bad input", new ObjectMapper().readTree(response.getBody()).get("error").asString());
+    }
+
+    @Test
+    @DisplayName("The health route is answered without any login work")
+    void testHealthCheck() {
+        final APIGatewayProxyRequestEvent input = createInput(null, null);
+        input.setPathParameters(Map.of(PATH_PARAMETER_HEALTH_CHECK, "ping"));
+        final APIGatewayV2HTTPResponse response = new GetSamlHttpResponseHandler(
+                new GetSamlResponseHandler(null, null) {
+                    @Override
+                    public Map<String, String> handleRequest(
+                            final APIGatewayProxyRequestEvent input,
+                            final Context context) {
+                        throw new AssertionError("A health check should not reach the login");
+                    }
+                }).handleRequest(input, null);
+
+        Assertions.assertEquals(200, response.getStatusCode());
+        Assertions.assertEquals("OK", new ObjectMapper().readTree(response.getBody()).get("status").asString());
+        Assertions.assertEquals("no-store", response.getHeaders().get("Cache-Control"));
+    }
+
+    private APIGatewayProxyRequestEvent createInput(
+            final Map<String, String> headers,
+            final Map<String, String> queryStringParameters) {
+        final APIGatewayProxyRequestEvent input = new APIGatewayProxyRequestEvent();
+        input.setHeaders(headers);
+        input.setQueryStringParameters(queryStringParameters);
+        return input;
+    }
+
+    private GetSamlHttpResponseHandler createHandler(final String samlResponse) {
+        return new GetSamlHttpResponseHandler(new GetSamlResponseHandler(null, null) {
+            @Override
+            public Map<String, String> handleRequest(final APIGatewayProxyRequestEvent input, final Context context) {
+                return Map.of("status", "SUCCESS", "samlResponse", samlResponse,
+                        "relayState", "https://example.com/relay", "error", "");
+            }
+        });
+    }
+}
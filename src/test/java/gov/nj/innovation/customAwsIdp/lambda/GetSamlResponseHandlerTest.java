@@ -1,8 +1,11 @@
 package gov.nj.innovation.customAwsIdp.lambda;
 
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import gov.nj.innovation.customAwsIdp.TestUtils.TestKeyDetails;
 import gov.nj.innovation.customAwsIdp.lambda.helpers.CognitoGroupDescriptionMetadataExtractor;
 import gov.nj.innovation.customAwsIdp.lambda.helpers.data.CognitoGroupDescriptionMetadata;
+import gov.nj.innovation.customAwsIdp.metrics.EmfMetricsWriter;
+import gov.nj.innovation.customAwsIdp.util.Deadline;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
@@ -12,16 +15,24 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.MockedStatic;
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.ssm.SsmClient;
-import software.amazon.awssdk.services.ssm.model.GetParameterRequest;
-import software.amazon.awssdk.services.ssm.model.GetParameterResponse;
+import software.amazon.awssdk.services.ssm.model.GetParametersRequest;
+import software.amazon.awssdk.services.ssm.model.GetParametersResponse;
 import software.amazon.awssdk.services.ssm.model.Parameter;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
 import static com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent.ProxyRequestContext;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mockStatic;
 
@@ -145,7 +156,9 @@ public class GetSamlResponseHandlerTest {
     @DisplayName("Returns SYSTEM_ERROR with no SAMLResponse and an Error if the extractor throws an exception")
     void testYamlParserThrows() {
         EXTRACTOR_MOCKER
-                .when(() -> CognitoGroupDescriptionMetadataExtractor.extract(anyString(), anyString(), anyString()))
+                .when(() -> CognitoGroupDescriptionMetadataExtractor
+                        .extract(any(CognitoIdentityProviderClient.class), anyString(), anyString(),
+                                any(Deadline.class)))
                 .thenThrow(new RuntimeException("Outlook not so good"));
         GetSamlResponseHandler getSamlResponseHandler = createNiceGetSamlResponseHandler();
 
@@ -160,6 +173,97 @@ public class GetSamlResponseHandlerTest {
         Assertions.assertFalse(response.get("error").isBlank(), "error should not be null or blank");
     }
 
+    @Test
+    @DisplayName("Every invocation writes one EMF line with per-phase timings and the group and status dimensions")
+    void testEmbeddedMetricFormatOutput() {
+        setupNiceGroupDescriptionExtractor();
+        final ByteArrayOutputStream metricsOutput = new ByteArrayOutputStream();
+        GetSamlResponseHandler getSamlResponseHandler = createNiceGetSamlResponseHandler();
+        getSamlResponseHandler.setMetricsWriter(
+                new EmfMetricsWriter(new PrintStream(metricsOutput, true, StandardCharsets.UTF_8)));
+
+        getSamlResponseHandler.handleRequest(setupHandlerInput("resx-sandbox", null, EMAIL, "[resx-sandbox]"), null);
+        getSamlResponseHandler.handleRequest(setupHandlerInput("not-my-group", null, EMAIL, "[resx-sandbox]"), null);
+
+        final String[] lines = metricsOutput.toString(StandardCharsets.UTF_8).split("\n");
+        Assertions.assertEquals(2, lines.length, "There should be exactly one EMF line per invocation");
+
+        final JsonNode success = new ObjectMapper().readTree(lines[0]);
+        Assertions.assertEquals("CustomAwsIdp",
+                success.get("_aws").get("CloudWatchMetrics").get(0).get("Namespace").asString());
+        Assertions.assertEquals("SUCCESS", success.get("Status").asString(), "Status dimension should be set");
+        Assertions.assertEquals("resx-sandbox", success.get("GroupName").asString(), "Group should be a dimension");
+        for (final String metric : List.of("RequestParseTime", "GroupMetadataTime", "KeyLoadTime", "BuildTime",
+                "SignTime", "EncodeTime", "TotalTime", "ColdStart", "KeyCacheHit")) {
+            Assertions.assertTrue(success.has(metric), "Metric " + metric + " should be present");
+        }
+
+        final JsonNode inputError = new ObjectMapper().readTree(lines[1]);
+        Assertions.assertEquals("INPUT_ERROR", inputError.get("Status").asString(), "Status dimension should be set");
+        Assertions.assertEquals("NONE", inputError.get("GroupName").asString(),
+                "An unvalidated group must not become a dimension");
+        Assertions.assertFalse(inputError.has("SignTime"), "Phases which never ran should be absent");
+    }
+
+    @Test
+    @DisplayName("A retry with the same Idempotency-Key gets the same Response, but only from the same user and group")
+    void testIdempotencyKey() {
+        setupNiceGroupDescriptionExtractor();
+        final ByteArrayOutputStream metricsOutput = new ByteArrayOutputStream();
+        GetSamlResponseHandler getSamlResponseHandler = createNiceGetSamlResponseHandler();
+        getSamlResponseHandler.setMetricsWriter(
+                new EmfMetricsWriter(new PrintStream(metricsOutput, true, StandardCharsets.UTF_8)));
+
+        final String first = getSamlResponseHandler.handleRequest(
+                setupHandlerInput("resx-sandbox", "sub-1", "key-1"), null).get("samlResponse");
+        final String retry = getSamlResponseHandler.handleRequest(
+                setupHandlerInput("resx-sandbox", "sub-1", "key-1"), null).get("samlResponse");
+        Assertions.assertFalse(first.isBlank());
+        Assertions.assertEquals(first, retry, "The retry should get the already signed Response");
+
+        for (final APIGatewayProxyRequestEvent other : List.of(
+                setupHandlerInput("resx-sandbox", "sub-2", "key-1"),
+                setupHandlerInput("resx-prod", "sub-1", "key-1"),
+                setupHandlerInput("resx-sandbox", "sub-1", "key-2"),
+                setupHandlerInput("resx-sandbox", "sub-1", null))) {
+            final Map<String, String> response = getSamlResponseHandler.handleRequest(other, null);
+            Assertions.assertEquals("SUCCESS", response.get("status"));
+            Assertions.assertNotEquals(first, response.get("samlResponse"), "A new Response should be minted");
+        }
+
+        final String[] lines = metricsOutput.toString(StandardCharsets.UTF_8).split("\n");
+        Assertions.assertEquals(0, new ObjectMapper().readTree(lines[0]).get("IdempotencyHit").asInt());
+        Assertions.assertEquals(1, new ObjectMapper().readTree(lines[1]).get("IdempotencyHit").asInt());
+        Assertions.assertFalse(new ObjectMapper().readTree(lines[5]).has("IdempotencyHit"),
+                "Requests without a key should not count towards the hit rate");
+    }
+
+    @Test
+    @DisplayName("Returns INPUT_ERROR if the Idempotency-Key is not 1 to 128 visible ASCII characters")
+    void testBadIdempotencyKey() {
+        GetSamlResponseHandler getSamlResponseHandler = createNiceGetSamlResponseHandler();
+        Map<String, String> response = getSamlResponseHandler.handleRequest(
+                setupHandlerInput("resx-sandbox", "sub-1", "not a key"), null);
+
+        Assertions.assertEquals("INPUT_ERROR", response.get("status"), "Status should be input error");
+        Assertions.assertTrue(response.get("samlResponse").isBlank());
+    }
+
+    /**
+     * Create the input for a user in two groups, with a JWT subject and possibly an Idempotency-Key header.
+     */
+    private APIGatewayProxyRequestEvent setupHandlerInput(String groupName, String subject, String idempotencyKey) {
+        APIGatewayProxyRequestEvent input = setupHandlerInput(groupName, null, EMAIL, null);
+        ProxyRequestContext requestContext = new ProxyRequestContext();
+        requestContext.setAuthorizer(Map.of("jwt", Map.of("claims",
+                Map.of("sub", subject, "email", EMAIL, "cognito:groups", "[resx-sandbox resx-prod]"))));
+        input.setRequestContext(requestContext);
+        if (idempotencyKey != null) {
+            input.setHeaders(Map.of("idempotency-key", idempotencyKey));
+        }
+        return input;
+    }
+
     /**
      * Create the input map following the layout described in the {@link GetSamlResponseHandler} class.
      */
@@ -188,19 +292,25 @@ public class GetSamlResponseHandlerTest {
 
     private void setupNiceGroupDescriptionExtractor() {
         EXTRACTOR_MOCKER
-                .when(() -> CognitoGroupDescriptionMetadataExtractor.extract(anyString(), anyString(), anyString()))
+                .when(() -> CognitoGroupDescriptionMetadataExtractor
+                        .extract(any(CognitoIdentityProviderClient.class), anyString(), anyString(),
+                                any(Deadline.class)))
                 .thenReturn(new CognitoGroupDescriptionMetadata("https://test.com", "specialrole"));
     }
 
     private static class MockSsmClient implements SsmClient {
+        private static final Map<String, String> PARAMETERS = TestKeyDetails.secrets();
+
         @Override
         public String serviceName() { return "MockService"; }
         @Override
         public void close() {}
         @Override
-        public GetParameterResponse getParameter(GetParameterRequest getParameterRequest) {
-            return GetParameterResponse.builder()
-                    .parameter(Parameter.builder().name(getParameterRequest.name()).value("123").build())
+        public GetParametersResponse getParameters(GetParametersRequest getParametersRequest) {
+            return GetParametersResponse.builder()
+                    .parameters(getParametersRequest.names().stream()
+                            .map(name -> Parameter.builder().name(name).value(PARAMETERS.get(name)).version(1L).build())
+                            .toList())
                     .build();
         }
     }
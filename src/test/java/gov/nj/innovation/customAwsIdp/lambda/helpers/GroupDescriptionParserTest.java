@@ -0,0 +1,125 @@
+package gov.nj.innovation.customAwsIdp.lambda.helpers;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import gov.nj.innovation.customAwsIdp.lambda.helpers.data.CognitoGroupDescriptionMetadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests for {@link GroupDescriptionParser}, checking that whatever it parses matches the YAML mapper's result.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class GroupDescriptionParserTest {
+
+    private static final String RELAY_STATE = "https://us-east-1.console.aws.amazon.com/connect/federate/0000-abcd";
+    private static final String SSO_ROLE =
+            "arn:aws:iam::000000000000:role/ROLE_NAME,arn:aws:iam::000000000000:saml-provider/IDP_NAME";
+
+    private static Stream<Arguments> everyAlias() {
+        final List<Arguments> arguments = new ArrayList<>();
+        for (final String relayStateKey : keys("relayState")) {
+            for (final String ssoRoleKey : keys("ssoRole")) {
+                arguments.add(Arguments.of(relayStateKey + ": " + RELAY_STATE + "\n" + ssoRoleKey + ": " + SSO_ROLE));
+                arguments.add(Arguments.of(
+                        relayStateKey + ": \"" + RELAY_STATE + "\"\r\n" + ssoRoleKey + ": '" + SSO_ROLE + "'\r\n"));
+                arguments.add(Arguments.of(String.format("{\"%s\": \"%s\", \"%s\": \"%s\"}",
+                        relayStateKey, RELAY_STATE, ssoRoleKey, SSO_ROLE)));
+            }
+        }
+        return arguments.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    @DisplayName("Every property name and alias is parsed, in each form, the same as by the YAML mapper")
+    void everyAlias(final String description) {
+        final CognitoGroupDescriptionMetadata fast = GroupDescriptionParser.parse(description);
+        Assertions.assertNotNull(fast, "The fast parser should handle: " + description);
+        Assertions.assertEquals(new CognitoGroupDescriptionMetadata(RELAY_STATE, SSO_ROLE), fast);
+        Assertions.assertEquals(CognitoGroupDescriptionMetadataExtractor.parseYaml(description), fast);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "# Connect instance\nrelayState: https://example.com # the relay state\n\nssoRole: role\nFoo: bar",
+            "relayState: https://example.com/#/fragment\nssoRole: 'it''s a role' # comment",
+            "relayState: \"https://example.com\"   \nssoRole: \"a, b: c\"",
+            "relayState: https://example.com?a=b&c=[d]\nssoRole: role{1}",
+            "relay-state: ignored\nrelayState: https://example.com\nssoRole: role",
+            "{\n  \"relayState\": \"https:\\u002F\\u002Fexample.com\",\n  \"ssoRole\": \"a\\\"b\\\\c\",\n"
+                    + "  \"extra\": \"ignored\"\n}\n",
+    })
+    @DisplayName("Comments, quoting, unknown keys, and JSON escapes are parsed the same as by the YAML mapper")
+    void testParity(final String description) {
+        final CognitoGroupDescriptionMetadata fast = GroupDescriptionParser.parse(description);
+        Assertions.assertNotNull(fast, "The fast parser should handle: " + description);
+        Assertions.assertEquals(CognitoGroupDescriptionMetadataExtractor.parseYaml(description), fast);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "relayState: https://example.com",
+            "This isn't really a parse-able YAML string",
+            "relayState: https://example.com\nssoRole:\n  - nested",
+            "relayState: https://example.com\nssoRole: |\n  block",
+            "relayState: https://example.com\nssoRole: &anchor role",
+            "relayState: https://example.com\nssoRole: \"escaped\\tvalue\"",
+            "relayState: https://example.com\nssoRole: true",
+            "relayState: https://example.com\nssoRole: 12345",
+            "relayState: https://example.com\nssoRole: null",
+            "relayState: https://example.com\nssoRole: a: b",
+            "relayState: https://example.com\nRelayState: https://other.com\nssoRole: role",
+            "---\nrelayState: https://example.com\nssoRole: role",
+            "{relayState: https://example.com, ssoRole: role}",
+            "{\"relayState\": \"https:\\/\\/example.com\", \"ssoRole\": \"role\"}",
+            "{\"relayState\": \"https://example.com\", \"ssoRole\": \"role\", \"count\": 1}",
+            "{\"relayState\": \"https://example.com\", \"ssoRole\": \"role\"} trailing",
+    })
+    @DisplayName("Anything outside the simple forms is left to the YAML mapper")
+    void testFallsBack(final String description) {
+        Assertions.assertNull(GroupDescriptionParser.parse(description), "Should fall back on: " + description);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "relayState: https://example.com\nssoRole: &anchor role",
+            "relayState: https://example.com\nssoRole: \"escaped\\tvalue\"",
+            "{\"relayState\": \"https://example.com\", \"ssoRole\": 'role'}",
+            "---\nrelayState: https://example.com\nssoRole: role",
+    })
+    @DisplayName("Descriptions which need the YAML mapper are still parsed")
+    void testFallbackParses(final String description) {
+        final CognitoGroupDescriptionMetadata metadata =
+                CognitoGroupDescriptionMetadataExtractor.parseDescription(description);
+        Assertions.assertEquals("https://example.com", metadata.relayState(), "relayState should match");
+        Assertions.assertNotNull(metadata.ssoRole(), "ssoRole should be set");
+    }
+
+    /**
+     * @return The record component's name and every {@link JsonAlias} on it.
+     */
+    private static List<String> keys(final String componentName) {
+        for (final RecordComponent component : CognitoGroupDescriptionMetadata.class.getRecordComponents()) {
+            if (component.getName().equals(componentName)) {
+                final List<String> keys = new ArrayList<>(List.of(componentName));
+                final JsonAlias aliases = component.getAnnotation(JsonAlias.class);
+                if (aliases != null) {
+                    keys.addAll(List.of(aliases.value()));
+                }
+                return keys;
+            }
+        }
+        throw new IllegalArgumentException("No record component " + componentName);
+    }
+}
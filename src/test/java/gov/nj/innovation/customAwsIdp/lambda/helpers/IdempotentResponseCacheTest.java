@@ -0,0 +1,115 @@
+package gov.nj.innovation.customAwsIdp.lambda.helpers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static gov.nj.innovation.customAwsIdp.lambda.helpers.IdempotentResponseCache.CachedResponse;
+
+/**
+ * Tests for {@link IdempotentResponseCache}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class IdempotentResponseCacheTest {
+
+    private static final Duration WINDOW = Duration.ofSeconds(15);
+    private static final CachedResponse RESPONSE = new CachedResponse("PHNhbWxwOlJlc3BvbnNl", "https://test.com");
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    @DisplayName("A Response is served again for the same user, Group, duration, and key")
+    void testHit() {
+        final IdempotentResponseCache cache = new IdempotentResponseCache(WINDOW, 10, nanos::get);
+        Assertions.assertNull(cache.get("sub-1", "a@test.com", "group", "3600", "key-1"));
+        cache.put("sub-1", "a@test.com", "group", "3600", "key-1", RESPONSE);
+
+        Assertions.assertEquals(RESPONSE, cache.get("sub-1", "a@test.com", "group", "3600", "key-1"));
+        Assertions.assertEquals(RESPONSE, cache.get("sub-1", "a@test.com", "group", "3600", "key-1"),
+                "A Response should be served to every retry within the window");
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "sub-2, a@test.com, group, 3600, key-1",
+            "sub-1, b@test.com, group, 3600, key-1",
+            "sub-1, a@test.com, other, 3600, key-1",
+            "sub-1, a@test.com, group, 7200, key-1",
+            "sub-1, a@test.com, group, 3600, key-2",
+            "sub-1a@test.com, '', group, 3600, key-1"
+    })
+    @DisplayName("A Response is never served to a request which differs in anything it was generated for")
+    void testMiss(
+            final String subject,
+            final String email,
+            final String groupName,
+            final String duration,
+            final String idempotencyKey) {
+        final IdempotentResponseCache cache = new IdempotentResponseCache(WINDOW, 10, nanos::get);
+        cache.put("sub-1", "a@test.com", "group", "3600", "key-1", RESPONSE);
+
+        Assertions.assertNull(cache.get(subject, email, groupName, duration, idempotencyKey));
+    }
+
+    @Test
+    @DisplayName("A Response is forgotten once the window has passed")
+    void testExpiry() {
+        final IdempotentResponseCache cache = new IdempotentResponseCache(WINDOW, 10, nanos::get);
+        cache.put("sub-1", "a@test.com", "group", "3600", "key-1", RESPONSE);
+        nanos.addAndGet(WINDOW.toNanos() - 1);
+        Assertions.assertEquals(RESPONSE, cache.get("sub-1", "a@test.com", "group", "3600", "key-1"));
+
+        nanos.incrementAndGet();
+        Assertions.assertNull(cache.get("sub-1", "a@test.com", "group", "3600", "key-1"));
+        Assertions.assertEquals(0, cache.size(), "The expired entry should be dropped");
+    }
+
+    @Test
+    @DisplayName("The cache holds at most its number of entries, dropping the oldest first")
+    void testBounded() {
+        final IdempotentResponseCache cache = new IdempotentResponseCache(WINDOW, 2, nanos::get);
+        for (int i = 0; i < 3; i++) {
+            cache.put("sub-1", "a@test.com", "group", "3600", "key-" + i, RESPONSE);
+        }
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertNull(cache.get("sub-1", "a@test.com", "group", "3600", "key-0"));
+        Assertions.assertEquals(RESPONSE, cache.get("sub-1", "a@test.com", "group", "3600", "key-2"));
+    }
+
+    @Test
+    @DisplayName("Nothing is cached without a subject, or with a window of zero")
+    void testNotCached() {
+        final IdempotentResponseCache cache = new IdempotentResponseCache(WINDOW, 10, nanos::get);
+        cache.put(null, "a@test.com", "group", "3600", "key-1", RESPONSE);
+        cache.put("", "a@test.com", "group", "3600", "key-1", RESPONSE);
+        Assertions.assertEquals(0, cache.size());
+
+        final IdempotentResponseCache off = new IdempotentResponseCache(Duration.ZERO, 10, nanos::get);
+        off.put("sub-1", "a@test.com", "group", "3600", "key-1", RESPONSE);
+        Assertions.assertFalse(off.accepts("sub-1"));
+        Assertions.assertNull(off.get("sub-1", "a@test.com", "group", "3600", "key-1"));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {"key-1,true", "550e8400-e29b-41d4-a716-446655440000,true", "'',false", "'a b',false",
+            "NULL,false", "é,false"}, nullValues = "NULL")
+    @DisplayName("Only 1 to 128 visible ASCII characters are accepted as a key")
+    void testIsValidKey(final String idempotencyKey, final boolean expected) {
+        Assertions.assertEquals(expected, IdempotentResponseCache.isValidKey(idempotencyKey));
+        Assertions.assertFalse(IdempotentResponseCache.isValidKey("k".repeat(129)));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {"NULL,15", "'',15", "5,5", "0,0", "-1,0", "600,30", "soon,15"}, nullValues = "NULL")
+    @DisplayName("The window is parsed from the environment and kept well inside the Assertion's expiry")
+    void testParseWindow(final String value, final long expected) {
+        Assertions.assertEquals(expected, IdempotentResponseCache.parseWindow(value));
+    }
+}
@@ -0,0 +1,67 @@
+package gov.nj.innovation.customAwsIdp.lambda.helpers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static gov.nj.innovation.customAwsIdp.lambda.helpers.ResponseCompressor.Encoding;
+
+/**
+ * Tests for {@link ResponseCompressor}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class ResponseCompressorTest {
+
+    private static final byte[] BODY = "{\"samlResponse\":\"PHNhbWxwOlJlc3BvbnNlIHhtbG5zOnNhbWxwPSJ1cm46b2FzaXM6bmFtZXM6\"}"
+            .repeat(40).getBytes(StandardCharsets.UTF_8);
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', nullValues = "NULL", value = {
+            "NULL | IDENTITY",
+            "'' | IDENTITY",
+            "gzip, deflate, br | GZIP",
+            "deflate | DEFLATE",
+            "br | IDENTITY",
+            "GZIP | GZIP",
+            "gzip;q=0, deflate | DEFLATE",
+            "gzip;q=0.5, deflate;q=0.8 | DEFLATE",
+            "* | GZIP",
+            "*;q=0 | IDENTITY",
+            "gzip;q=0, * | DEFLATE",
+            "identity | IDENTITY",
+            "gzip;q=apple | IDENTITY",
+    })
+    @DisplayName("Accept-Encoding is negotiated with q-values and wildcards, preferring gzip")
+    void testNegotiate(String acceptEncoding, Encoding expected) {
+        Assertions.assertEquals(expected, ResponseCompressor.negotiate(acceptEncoding),
+                String.format("Unexpected encoding for Accept-Encoding: %s", acceptEncoding));
+    }
+
+    @Test
+    @DisplayName("gzip and deflate bodies round-trip and are smaller than the original")
+    void testCompressRoundTrip() throws IOException {
+        final byte[] gzipped = ResponseCompressor.compress(BODY, Encoding.GZIP);
+        final byte[] deflated = ResponseCompressor.compress(BODY, Encoding.DEFLATE);
+
+        Assertions.assertTrue(gzipped.length < BODY.length, "gzip should shrink the body");
+        Assertions.assertTrue(deflated.length < BODY.length, "deflate should shrink the body");
+        try (final InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            Assertions.assertArrayEquals(BODY, in.readAllBytes(), "gzip should round-trip");
+        }
+        try (final InputStream in = new InflaterInputStream(new ByteArrayInputStream(deflated))) {
+            Assertions.assertArrayEquals(BODY, in.readAllBytes(), "deflate should round-trip");
+        }
+        Assertions.assertSame(BODY, ResponseCompressor.compress(BODY, Encoding.IDENTITY),
+                "identity should not copy the body");
+    }
+}
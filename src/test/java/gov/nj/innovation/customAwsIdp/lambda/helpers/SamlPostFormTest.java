@@ -0,0 +1,62 @@
+package gov.nj.innovation.customAwsIdp.lambda.helpers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Tests for {@link SamlPostForm}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class SamlPostFormTest {
+
+    @Test
+    @DisplayName("The page posts the escaped values to AWS sign-in")
+    void testRender() {
+        final String page = SamlPostForm.getInstance().render("PHNhbWw+dGVzdA==",
+                "https://example.com/?a=1&b=\"><script>alert('x')</script>");
+
+        Assertions.assertTrue(page.contains("action=\"https://signin.aws.amazon.com/saml\""), "Wrong form action");
+        Assertions.assertTrue(page.contains("name=\"SAMLResponse\" value=\"PHNhbWw+dGVzdA&#61;&#61;\""),
+                "SAMLResponse should be filled in and escaped");
+        Assertions.assertTrue(page.contains("name=\"RelayState\" value=\"https://example.com/?a&#61;1&amp;b&#61;" +
+                        "&quot;&gt;&lt;script&gt;alert(&#39;x&#39;)&lt;/script&gt;\""),
+                "RelayState should be escaped");
+        Assertions.assertEquals(1, page.split("<script>", -1).length - 1, "Only the template's script may appear");
+        Assertions.assertFalse(page.contains("{{"), "No placeholder should be left in the page");
+    }
+
+    @Test
+    @DisplayName("The CSP allows exactly the template's inline script, by hash")
+    void testContentSecurityPolicy() throws NoSuchAlgorithmException {
+        final String page = SamlPostForm.getInstance().render("abc", null);
+        final String script = page.substring(page.indexOf("<script>") + 8, page.indexOf("</script>"));
+        final String hash = Base64.getEncoder().encodeToString(
+                MessageDigest.getInstance("SHA-256").digest(script.getBytes(StandardCharsets.UTF_8)));
+
+        final String csp = SamlPostForm.getInstance().contentSecurityPolicy();
+        Assertions.assertTrue(csp.contains("script-src 'sha256-" + hash + "'"), "CSP should carry the script hash");
+        Assertions.assertTrue(csp.startsWith("default-src 'none'"), "CSP should deny everything by default");
+        Assertions.assertTrue(csp.contains("form-action https://signin.aws.amazon.com/saml"),
+                "CSP should restrict where the form can post");
+    }
+
+    @Test
+    @DisplayName("Templates without the SAMLResponse slot, with unknown slots, or without one script are rejected")
+    void testCompileRejectsBadTemplates() {
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> SamlPostForm.compile("<form></form><script>x</script>"));
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> SamlPostForm.compile("{{SAMLResponse}}{{Unknown}}<script>x</script>"));
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> SamlPostForm.compile("{{SAMLResponse}}"));
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> SamlPostForm.compile("{{SAMLResponse}}<script>x</script><script>y</script>"));
+    }
+}
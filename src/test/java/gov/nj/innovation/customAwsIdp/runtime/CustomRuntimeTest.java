@@ -0,0 +1,238 @@
+package gov.nj.innovation.customAwsIdp.runtime;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayV2HTTPResponse;
+import gov.nj.innovation.customAwsIdp.exception.CustomAwsIdpException;
+import gov.nj.innovation.customAwsIdp.lambda.GetSamlHttpResponseHandler;
+import gov.nj.innovation.customAwsIdp.lambda.GetSamlResponseHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for {@link CustomRuntime} and {@link RuntimeEvents}, with the Runtime API played by {@link RuntimeApiEmulator}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class CustomRuntimeTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final String HTTP_API_EVENT = """
+            {
+              "version": "2.0",
+              "routeKey": "GET /generateSaml/{groupName}",
+              "rawPath": "/generateSaml/GROUP_ONE",
+              "rawQueryString": "duration=900",
+              "headers": {"accept-encoding": "identity", "idempotency-key": "key-1"},
+              "queryStringParameters": {"duration": "900"},
+              "pathParameters": {"groupName": "GROUP_ONE"},
+              "requestContext": {
+                "requestId": "request-1",
+                "authorizer": {"jwt": {
+                  "claims": {"sub": "user-subject", "email": "user@example.com", "cognito:groups": "[GROUP_ONE]"},
+                  "scopes": null
+                }},
+                "http": {"method": "GET", "path": "/generateSaml/GROUP_ONE"},
+                "timeEpoch": 1767268800000
+              },
+              "isBase64Encoded": false
+            }
+            """;
+
+    private RuntimeApiEmulator emulator;
+    private Thread loop;
+
+    @BeforeEach
+    void startEmulator() {
+        emulator = RuntimeApiEmulator.start();
+    }
+
+    @AfterEach
+    void stopEmulator() throws InterruptedException {
+        emulator.close();
+        if (loop != null) {
+            loop.interrupt();
+            loop.join(TIMEOUT.toMillis());
+        }
+    }
+
+    @Test
+    @DisplayName("Each invocation's event is handed to the handler, and its response posted back under its request ID")
+    void testInvocations() throws Exception {
+        final AtomicReference<Context> lastContext = new AtomicReference<>();
+        startLoop((event, context) -> {
+            lastContext.set(context);
+            return new String(event, StandardCharsets.UTF_8).toUpperCase().getBytes(StandardCharsets.UTF_8);
+        });
+
+        for (final String event : List.of("{\"a\":1}", "{\"b\":2}")) {
+            final RuntimeApiEmulator.Result result = emulator.invoke(event.getBytes(StandardCharsets.UTF_8), TIMEOUT);
+            Assertions.assertFalse(result.error());
+            Assertions.assertEquals(event.toUpperCase(), new String(result.body(), StandardCharsets.UTF_8));
+        }
+        Assertions.assertNotNull(lastContext.get().getAwsRequestId());
+        Assertions.assertTrue(lastContext.get().getRemainingTimeInMillis() > 0);
+        Assertions.assertTrue(lastContext.get().getInvokedFunctionArn().endsWith(":function:generateSamlResponse"));
+    }
+
+    @Test
+    @DisplayName("A handler which throws is reported as a function error, and the next invocation is still served")
+    void testHandlerError() throws Exception {
+        startLoop((event, context) -> {
+            if (event.length == 0) {
+                throw new CustomAwsIdpException("Nothing to sign", null);
+            }
+            return event;
+        });
+
+        final RuntimeApiEmulator.Result error = emulator.invoke(new byte[0], TIMEOUT);
+        Assertions.assertTrue(error.error());
+        Assertions.assertEquals("Runtime.CustomAwsIdpException", error.errorType());
+        final JsonNode body = MAPPER.readTree(error.body());
+        Assertions.assertEquals("Nothing to sign", body.get("errorMessage").asString());
+        Assertions.assertEquals(CustomAwsIdpException.class.getName(), body.get("errorType").asString());
+
+        final RuntimeApiEmulator.Result next = emulator.invoke("{}".getBytes(StandardCharsets.UTF_8), TIMEOUT);
+        Assertions.assertFalse(next.error());
+    }
+
+    @Test
+    @DisplayName("A handler which throws an Error is reported as a function error, and the loop keeps serving")
+    void testHandlerThrowsError() throws Exception {
+        startLoop((event, context) -> {
+            if (event.length == 0) {
+                throw new NoClassDefFoundError("gov/nj/innovation/customAwsIdp/Missing");
+            }
+            return event;
+        });
+
+        final RuntimeApiEmulator.Result error = emulator.invoke(new byte[0], TIMEOUT);
+        Assertions.assertTrue(error.error());
+        Assertions.assertEquals("Runtime.NoClassDefFoundError", error.errorType());
+
+        final RuntimeApiEmulator.Result next = emulator.invoke("{}".getBytes(StandardCharsets.UTF_8), TIMEOUT);
+        Assertions.assertFalse(next.error());
+    }
+
+    @Test
+    @DisplayName("A response which cannot be posted costs only its own invocation, and the next one is still served")
+    void testRespondFailure() throws Exception {
+        final RuntimeApiClient client = new RuntimeApiClient(emulator.runtimeApi()) {
+            @Override
+            public void respond(final String requestId, final byte[] body) throws IOException, InterruptedException {
+                if (body.length == 0) {
+                    throw new IOException("The Runtime API answered with 413");
+                }
+                super.respond(requestId, body);
+            }
+        };
+        startLoop(client, (event, context) -> event);
+
+        Assertions.assertThrows(TimeoutException.class, () -> emulator.invoke(new byte[0], Duration.ofSeconds(1)));
+
+        final RuntimeApiEmulator.Result next = emulator.invoke("{}".getBytes(StandardCharsets.UTF_8), TIMEOUT);
+        Assertions.assertFalse(next.error());
+        Assertions.assertEquals("{}", new String(next.body(), StandardCharsets.UTF_8));
+        Assertions.assertTrue(loop.isAlive());
+    }
+
+    @Test
+    @DisplayName("An unknown handler fails the init phase, which is reported to the init error endpoint")
+    void testInitError() throws Exception {
+        final IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> CustomRuntime.forHandler("gov.nj.innovation.customAwsIdp.lambda.NoSuchHandler"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CustomRuntime.forHandler(null));
+
+        new RuntimeApiClient(emulator.runtimeApi()).initError(e);
+        Assertions.assertEquals("Runtime.IllegalArgumentException", emulator.initError().errorType());
+        Assertions.assertTrue(MAPPER.readTree(emulator.initError().body()).get("errorMessage").asString()
+                .contains("NoSuchHandler"));
+    }
+
+    @Test
+    @DisplayName("An HTTP API event reaches the handler as the managed runtime would bind it, and its response is JSON")
+    void testHttpApiInvocation() throws Exception {
+        final AtomicReference<APIGatewayProxyRequestEvent> delegated = new AtomicReference<>();
+        startLoop(CustomRuntime.httpApi(new GetSamlHttpResponseHandler(new GetSamlResponseHandler(null, null) {
+            @Override
+            public Map<String, String> handleRequest(final APIGatewayProxyRequestEvent input, final Context context) {
+                delegated.set(input);
+                return Map.of("status", "SUCCESS", "samlResponse", "PHNhbWxwOlJlc3BvbnNl",
+                        "relayState", "https://example.com/relay", "error", "");
+            }
+        })));
+
+        final RuntimeApiEmulator.Result result =
+                emulator.invoke(HTTP_API_EVENT.getBytes(StandardCharsets.UTF_8), TIMEOUT);
+
+        Assertions.assertFalse(result.error());
+        Assertions.assertEquals(Map.of("groupName", "GROUP_ONE"), delegated.get().getPathParameters());
+        Assertions.assertEquals(Map.of("duration", "900"), delegated.get().getQueryStringParameters());
+        Assertions.assertEquals("key-1", delegated.get().getHeaders().get("idempotency-key"));
+        Assertions.assertEquals("request-1", delegated.get().getRequestContext().getRequestId());
+        final Map<String, Object> jwt = new HashMap<>();
+        jwt.put("scopes", null);
+        jwt.put("claims", Map.of(
+                "sub", "user-subject", "email", "user@example.com", "cognito:groups", "[GROUP_ONE]"));
+        Assertions.assertEquals(Map.of("jwt", jwt), delegated.get().getRequestContext().getAuthorizer());
+
+        final JsonNode response = MAPPER.readTree(result.body());
+        Assertions.assertEquals(200, response.get("statusCode").asInt());
+        Assertions.assertEquals("application/json", response.get("headers").get("Content-Type").asString());
+        Assertions.assertFalse(response.get("isBase64Encoded").booleanValue());
+        Assertions.assertEquals("SUCCESS", MAPPER.readTree(response.get("body").asString()).get("status").asString());
+    }
+
+    @Test
+    @DisplayName("A Function URL event keeps its raw path, headers, and query string, and a response its encoding")
+    void testFunctionUrlEvent() {
+        final APIGatewayV2HTTPEvent event = RuntimeEvents.functionUrlRequest(HTTP_API_EVENT.getBytes(
+                StandardCharsets.UTF_8));
+        Assertions.assertEquals("/generateSaml/GROUP_ONE", event.getRawPath());
+        Assertions.assertEquals("duration=900", event.getRawQueryString());
+        Assertions.assertEquals(Map.of("duration", "900"), event.getQueryStringParameters());
+        Assertions.assertEquals("identity", event.getHeaders().get("accept-encoding"));
+
+        final JsonNode response = MAPPER.readTree(RuntimeEvents.httpResponse(APIGatewayV2HTTPResponse.builder()
+                .withStatusCode(401)
+                .withHeaders(Map.of("Content-Type", "application/json", "Content-Encoding", "gzip"))
+                .withBody("H4sI")
+                .withIsBase64Encoded(true)
+                .build()));
+        Assertions.assertEquals(401, response.get("statusCode").asInt());
+        Assertions.assertEquals("gzip", response.get("headers").get("Content-Encoding").asString());
+        Assertions.assertEquals("H4sI", response.get("body").asString());
+        Assertions.assertTrue(response.get("isBase64Encoded").booleanValue());
+    }
+
+    private void startLoop(final CustomRuntime.InvocationHandler handler) {
+        startLoop(new RuntimeApiClient(emulator.runtimeApi()), handler);
+    }
+
+    private void startLoop(final RuntimeApiClient client, final CustomRuntime.InvocationHandler handler) {
+        final CustomRuntime runtime = new CustomRuntime(client, handler);
+        loop = Thread.ofVirtual().start(() -> {
+            try {
+                runtime.run();
+            } catch (final Exception ignored) {
+                // The emulator has been closed
+            }
+        });
+    }
+}
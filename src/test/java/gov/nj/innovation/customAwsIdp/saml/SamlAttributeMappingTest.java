@@ -0,0 +1,50 @@
+package gov.nj.innovation.customAwsIdp.saml;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.keycloak.dom.saml.v2.assertion.AttributeStatementType;
+import org.keycloak.dom.saml.v2.assertion.AttributeType;
+import org.keycloak.saml.common.constants.JBossSAMLURIConstants;
+
+import java.util.List;
+
+/**
+ * Tests for {@link SamlAttributeMapping}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class SamlAttributeMappingTest {
+
+    @Test
+    @DisplayName("Attributes are appended in order, single-valued, with no friendly name")
+    void testAddTo() {
+        final String basic = JBossSAMLURIConstants.ATTRIBUTE_FORMAT_BASIC.get();
+        final AttributeStatementType attributeStatement = new AttributeStatementType();
+        new SamlAttributeMapping("first", basic).addTo(attributeStatement, "one");
+        new SamlAttributeMapping("second", basic).addTo(attributeStatement, "two");
+
+        final List<AttributeType> attributes = attributeStatement.getAttributes().stream()
+                .map(AttributeStatementType.ASTChoiceType::getAttribute)
+                .toList();
+        Assertions.assertEquals(List.of("first", "second"), attributes.stream().map(AttributeType::getName).toList());
+        for (final AttributeType attribute : attributes) {
+            Assertions.assertEquals(basic, attribute.getNameFormat(), "Name format should be the Basic URI");
+            Assertions.assertNull(attribute.getFriendlyName(), "No friendly name should be set");
+            Assertions.assertEquals(1, attribute.getAttributeValue().size(), "Attributes should be single-valued");
+        }
+        Assertions.assertEquals("two", attributes.get(1).getAttributeValue().get(0));
+    }
+
+    @Test
+    @DisplayName("A multi-valued attribute is one attribute holding its values in order")
+    void testAddToMultipleValues() {
+        final AttributeStatementType attributeStatement = new AttributeStatementType();
+        new SamlAttributeMapping("roles", JBossSAMLURIConstants.ATTRIBUTE_FORMAT_BASIC.get())
+                .addTo(attributeStatement, List.of("role-one", "role-two"));
+
+        Assertions.assertEquals(1, attributeStatement.getAttributes().size());
+        Assertions.assertEquals(List.of("role-one", "role-two"),
+                attributeStatement.getAttributes().get(0).getAttribute().getAttributeValue());
+    }
+}
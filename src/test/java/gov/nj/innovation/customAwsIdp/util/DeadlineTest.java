@@ -0,0 +1,63 @@
+package gov.nj.innovation.customAwsIdp.util;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import gov.nj.innovation.customAwsIdp.exception.DeadlineExceededException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+
+import java.time.Duration;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link Deadline}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class DeadlineTest {
+
+    @Test
+    @DisplayName("The deadline keeps the response reserve back from the Lambda's remaining time")
+    void testFromContext() {
+        final Context context = mock(Context.class);
+        when(context.getRemainingTimeInMillis()).thenReturn(2000);
+
+        final Duration remaining = Deadline.fromContext(context).remaining();
+        Assertions.assertTrue(remaining.compareTo(Duration.ofMillis(1500)) <= 0, "Remaining was " + remaining);
+        Assertions.assertTrue(remaining.compareTo(Duration.ofMillis(1000)) > 0, "Remaining was " + remaining);
+    }
+
+    @Test
+    @DisplayName("Without a context, the default budget is used")
+    void testFromNullContext() {
+        Assertions.assertTrue(Deadline.fromContext(null).allows(Deadline.DEFAULT_BUDGET.minusSeconds(1)));
+    }
+
+    @Test
+    @DisplayName("SDK timeouts end at the deadline, with attempts capped at MAX_ATTEMPT")
+    void testSdkOverride() {
+        final AwsRequestOverrideConfiguration far = Deadline.after(Duration.ofSeconds(10)).sdkOverride("far");
+        Assertions.assertTrue(far.apiCallTimeout().orElseThrow().compareTo(Duration.ofSeconds(10)) <= 0);
+        Assertions.assertTrue(far.apiCallTimeout().orElseThrow().compareTo(Duration.ofSeconds(9)) > 0);
+        Assertions.assertEquals(Deadline.MAX_ATTEMPT, far.apiCallAttemptTimeout().orElseThrow());
+
+        final AwsRequestOverrideConfiguration near = Deadline.after(Duration.ofSeconds(1)).sdkOverride("near");
+        Assertions.assertTrue(near.apiCallAttemptTimeout().orElseThrow().compareTo(Duration.ofSeconds(1)) <= 0,
+                "An attempt should not outlive the deadline");
+    }
+
+    @Test
+    @DisplayName("A passed deadline fails fast instead of starting the stage or the SDK call")
+    void testExpired() {
+        final Deadline deadline = Deadline.after(Duration.ofMillis(-1));
+
+        Assertions.assertFalse(deadline.allows(Duration.ZERO));
+        Assertions.assertThrows(DeadlineExceededException.class, () -> deadline.sdkOverride("GetParameter"));
+        final DeadlineExceededException e = Assertions.assertThrows(DeadlineExceededException.class,
+                () -> deadline.check("signing", Duration.ofMillis(100)));
+        Assertions.assertTrue(e.getMessage().contains("signing"), e.getMessage());
+    }
+}
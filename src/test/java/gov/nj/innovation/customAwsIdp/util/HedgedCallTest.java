@@ -0,0 +1,248 @@
+package gov.nj.innovation.customAwsIdp.util;
+
+import gov.nj.innovation.customAwsIdp.exception.DeadlineExceededException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link HedgedCall} and its {@link LatencyTracker}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class HedgedCallTest {
+
+    @Test
+    @DisplayName("No hedge is sent until enough latencies have been seen")
+    void testNoHedgeWithoutHistory() {
+        final HedgedCall hedgedCall = new HedgedCall("test", 95, Duration.ofMillis(5));
+
+        Assertions.assertNull(hedgedCall.hedgeDelay());
+        Assertions.assertEquals("done", hedgedCall.call(deadline(), "test", override -> "done"));
+        Assertions.assertEquals(0, hedgedCall.hedgesSent());
+    }
+
+    @Test
+    @DisplayName("A call slower than the percentile is duplicated, the first answer wins, and the other is cancelled")
+    void testSlowCallIsHedged() throws InterruptedException {
+        final HedgedCall hedgedCall = trained(new HedgedCall("test", 95, Duration.ofMillis(5)));
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        final String result = hedgedCall.call(deadline(), "test", override -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    new CountDownLatch(1).await();
+                } catch (final InterruptedException e) {
+                    cancelled.countDown();
+                }
+                return "primary";
+            }
+            return "hedge";
+        });
+
+        Assertions.assertEquals("hedge", result);
+        Assertions.assertEquals(2, calls.get());
+        Assertions.assertEquals(1, hedgedCall.hedgesSent());
+        Assertions.assertEquals(1, hedgedCall.hedgeWins());
+        Assertions.assertTrue(cancelled.await(5, TimeUnit.SECONDS), "The slower attempt should be interrupted");
+    }
+
+    @Test
+    @DisplayName("Each attempt's SDK timeouts are taken from the deadline as it starts, so the hedge's are shorter")
+    void testHedgeTimeoutsFollowDeadline() {
+        final HedgedCall hedgedCall = trained(new HedgedCall("test", 95, Duration.ofMillis(50)));
+        final List<Duration> apiCallTimeouts = new CopyOnWriteArrayList<>();
+
+        hedgedCall.call(Deadline.after(Duration.ofSeconds(5)), "test", override -> {
+            apiCallTimeouts.add(override.apiCallTimeout().orElseThrow());
+            if (apiCallTimeouts.size() == 1) {
+                sleep(Duration.ofMillis(500));
+            }
+            return "done";
+        });
+
+        Assertions.assertEquals(2, apiCallTimeouts.size());
+        Assertions.assertTrue(apiCallTimeouts.get(0).compareTo(Duration.ofSeconds(5)) <= 0);
+        Assertions.assertTrue(apiCallTimeouts.get(1).compareTo(apiCallTimeouts.get(0).minusMillis(50)) <= 0,
+                "The hedge should only get the time left after the delay: " + apiCallTimeouts);
+    }
+
+    @Test
+    @DisplayName("No hedge is sent when less time is left than the delay")
+    void testNoHedgeNearDeadline() {
+        final HedgedCall hedgedCall = trained(new HedgedCall("test", 95, Duration.ofMillis(200)));
+        final AtomicInteger calls = new AtomicInteger();
+
+        final String result = hedgedCall.call(Deadline.after(Duration.ofMillis(300)), "test", override -> {
+            calls.incrementAndGet();
+            sleep(Duration.ofMillis(250));
+            return "primary";
+        });
+
+        Assertions.assertEquals("primary", result);
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(0, hedgedCall.hedgesSent());
+    }
+
+    @Test
+    @DisplayName("The wait ends at the deadline even when neither attempt answers, and both are cancelled")
+    void testWaitEndsAtDeadline() throws InterruptedException {
+        final HedgedCall hedgedCall = trained(new HedgedCall("test", 95, Duration.ofMillis(5)));
+        final CountDownLatch cancelled = new CountDownLatch(2);
+
+        Assertions.assertThrows(DeadlineExceededException.class,
+                () -> hedgedCall.call(Deadline.after(Duration.ofMillis(300)), "test", override -> {
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (final InterruptedException e) {
+                        cancelled.countDown();
+                    }
+                    return "never";
+                }));
+        Assertions.assertEquals(1, hedgedCall.hedgesSent());
+        Assertions.assertTrue(cancelled.await(5, TimeUnit.SECONDS), "Both attempts should be interrupted");
+    }
+
+    @Test
+    @DisplayName("Failed calls are timed too, so that a dependency which fails slowly raises the delay")
+    void testFailuresAreTimed() {
+        final HedgedCall hedgedCall = new HedgedCall("test", 100, Duration.ofMillis(5));
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertThrows(IllegalStateException.class, () -> hedgedCall.call(deadline(), "test", override -> {
+                sleep(Duration.ofMillis(30));
+                throw new IllegalStateException("slow failure");
+            }));
+        }
+        Assertions.assertTrue(hedgedCall.hedgeDelay().compareTo(Duration.ofMillis(30)) >= 0,
+                "The failures should have been recorded: " + hedgedCall.hedgeDelay());
+    }
+
+    @Test
+    @DisplayName("An attempt cancelled at the deadline is timed as long as it ran, but the cancelled hedge is not")
+    void testCancelledAttemptsAreTimed() {
+        final HedgedCall hedgedCall = trained(new HedgedCall("test", 100, Duration.ofMillis(5)));
+        Assertions.assertEquals(Duration.ofMillis(5), hedgedCall.hedgeDelay());
+
+        Assertions.assertThrows(DeadlineExceededException.class,
+                () -> hedgedCall.call(Deadline.after(Duration.ofMillis(300)), "test", override -> {
+                    sleep(Duration.ofSeconds(10));
+                    return "never";
+                }));
+        Assertions.assertEquals(1, hedgedCall.hedgesSent());
+        final Duration delay = hedgedCall.hedgeDelay();
+        Assertions.assertTrue(delay.compareTo(Duration.ofMillis(250)) >= 0,
+                "The primary should count as at least as slow as the wait for it: " + delay);
+        Assertions.assertTrue(delay.compareTo(Duration.ofSeconds(1)) <= 0, "Capped at the maximum delay: " + delay);
+    }
+
+    @Test
+    @DisplayName("Hedges are limited to the budget's share of calls, and slow calls past it are only waited for")
+    void testHedgeBudget() {
+        final HedgedCall hedgedCall = trained(new HedgedCall("test", 95, Duration.ofMillis(5), 10));
+        for (int i = 0; i < 3; i++) {
+            final AtomicInteger calls = new AtomicInteger();
+            Assertions.assertEquals("done", hedgedCall.call(deadline(), "test", override -> {
+                if (calls.incrementAndGet() == 1) {
+                    sleep(Duration.ofMillis(100));
+                }
+                return "done";
+            }));
+        }
+        Assertions.assertEquals(2, hedgedCall.hedgesSent(), "Twenty calls earn two hedges, and three more not a third");
+        Assertions.assertEquals(1, hedgedCall.hedgesOverBudget());
+    }
+
+    @Test
+    @DisplayName("A hedged call fails only when both attempts fail, with the SDK's exception")
+    void testBothFail() {
+        final HedgedCall hedgedCall = trained(new HedgedCall("test", 95, Duration.ofMillis(5)));
+        final AtomicInteger calls = new AtomicInteger();
+
+        final IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, () ->
+                hedgedCall.call(deadline(), "test", override -> {
+                    if (calls.incrementAndGet() == 1) {
+                        sleep(Duration.ofMillis(200));
+                    }
+                    throw new IllegalStateException("failure " + calls.get());
+                }));
+        Assertions.assertTrue(e.getMessage().startsWith("failure"), e.getMessage());
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    @DisplayName("A call which fails before the delay is not hedged")
+    void testFastFailureNotHedged() {
+        final HedgedCall hedgedCall = trained(new HedgedCall("test", 95, Duration.ofSeconds(1)));
+
+        Assertions.assertThrows(IllegalStateException.class, () -> hedgedCall.call(deadline(), "test", override -> {
+            throw new IllegalStateException("fast failure");
+        }));
+        Assertions.assertEquals(0, hedgedCall.hedgesSent());
+    }
+
+    @Test
+    @DisplayName("A percentile of 0 disables hedging")
+    void testDisabled() {
+        final HedgedCall hedgedCall = trained(new HedgedCall("test", 0, Duration.ofMillis(5)));
+
+        Assertions.assertNull(hedgedCall.hedgeDelay());
+    }
+
+    @Test
+    @DisplayName("The hedge delay follows the percentile, within the minimum and maximum delays")
+    void testHedgeDelay() {
+        final HedgedCall hedgedCall = new HedgedCall("test", 90, Duration.ofMillis(5));
+        for (int i = 1; i <= 100; i++) {
+            hedgedCall.call(deadline(), "test", override -> "warm");
+        }
+        Assertions.assertEquals(Duration.ofMillis(5), hedgedCall.hedgeDelay(), "Fast calls should use the minimum");
+
+        final LatencyTracker tracker = new LatencyTracker(100);
+        for (int i = 1; i <= 100; i++) {
+            tracker.record(Duration.ofMillis(i).toNanos());
+        }
+        Assertions.assertEquals(Duration.ofMillis(90), tracker.percentile(90));
+        Assertions.assertEquals(Duration.ofMillis(100), tracker.percentile(100));
+        Assertions.assertEquals(Duration.ofMillis(1), tracker.percentile(0));
+        tracker.record(Duration.ofSeconds(5).toNanos());
+        Assertions.assertEquals(100, tracker.size(), "The tracker should only keep its capacity");
+        Assertions.assertEquals(Duration.ofSeconds(5), tracker.percentile(100), "The oldest sample should be replaced");
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = { "NULL,95", "'',95", "99,99", "off,0", "OFF,0", "0,0", "150,100", "-1,0", "high,95" },
+            nullValues = "NULL")
+    @DisplayName("The percentile is parsed from the environment, falling back to the default")
+    void testParse(final String value, final double expected) {
+        Assertions.assertEquals(expected, HedgedCall.parse(HedgedCall.HEDGE_PERCENTILE_ENV, value, 95, 100));
+    }
+
+    private static Deadline deadline() {
+        return Deadline.after(Duration.ofSeconds(10));
+    }
+
+    private static HedgedCall trained(final HedgedCall hedgedCall) {
+        for (int i = 0; i < 20; i++) {
+            hedgedCall.call(deadline(), "test", override -> "warm");
+        }
+        return hedgedCall;
+    }
+
+    private static void sleep(final Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
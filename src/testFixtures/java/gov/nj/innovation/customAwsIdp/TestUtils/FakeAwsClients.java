@@ -0,0 +1,132 @@
+package gov.nj.innovation.customAwsIdp.TestUtils;
+
+import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.GetGroupRequest;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.GetGroupResponse;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.GroupType;
+import software.amazon.awssdk.services.ssm.SsmClient;
+import software.amazon.awssdk.services.ssm.model.GetParameterRequest;
+import software.amazon.awssdk.services.ssm.model.GetParameterResponse;
+import software.amazon.awssdk.services.ssm.model.GetParametersRequest;
+import software.amazon.awssdk.services.ssm.model.GetParametersResponse;
+import software.amazon.awssdk.services.ssm.model.Parameter;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * In-memory SSM and Cognito clients for the tests, benchmarks, and load tests, which can sleep for a latency before
+ * answering to stand in for the network round trips a real login makes. Sleeping parks a virtual thread instead of
+ * blocking its carrier, so both thread kinds see the latency the same way a blocking SDK call would present it.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class FakeAwsClients {
+
+    private FakeAwsClients() {}
+
+    static void sleep(final long latencyMs, final long jitterMs) {
+        final long millis = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Serve each parameter's value from a function of its name, always at version 1. As with a SecureString, the
+     * value is only returned when decryption is asked for.
+     */
+    public static class Ssm implements SsmClient {
+        private final Function<String, String> values;
+        private final long latencyMs;
+        private final long jitterMs;
+
+        public Ssm(final Function<String, String> values, final long latencyMs, final long jitterMs) {
+            this.values = values;
+            this.latencyMs = latencyMs;
+            this.jitterMs = jitterMs;
+        }
+
+        /**
+         * @param parameters The parameters to serve without any latency, e.g. {@link TestKeyDetails#secrets()}
+         */
+        public Ssm(final Map<String, String> parameters) {
+            this(parameters::get, 0, 0);
+        }
+
+        @Override
+        public String serviceName() { return "FakeSsm"; }
+        @Override
+        public void close() {}
+        @Override
+        public GetParameterResponse getParameter(final GetParameterRequest getParameterRequest) {
+            sleep(latencyMs, jitterMs);
+            return GetParameterResponse.builder()
+                    .parameter(Parameter.builder()
+                            .name(getParameterRequest.name())
+                            .value(values.apply(getParameterRequest.name()))
+                            .build())
+                    .build();
+        }
+        @Override
+        public GetParametersResponse getParameters(final GetParametersRequest getParametersRequest) {
+            sleep(latencyMs, jitterMs);
+            // Every parameter is at version 1, so a name:version selector only needs its name
+            return GetParametersResponse.builder()
+                    .parameters(getParametersRequest.names().stream()
+                            .map(selector -> selector.split(":")[0])
+                            .map(name -> Parameter.builder()
+                                    .name(name)
+                                    .value(Boolean.TRUE.equals(getParametersRequest.withDecryption())
+                                            ? values.apply(name) : null)
+                                    .version(1L)
+                                    .build())
+                            .toList())
+                    .build();
+        }
+    }
+
+    /**
+     * Serve each group with the description a function of its name gives.
+     */
+    public static class Cognito implements CognitoIdentityProviderClient {
+        private final Function<String, String> descriptions;
+        private final long latencyMs;
+        private final long jitterMs;
+
+        public Cognito(final Function<String, String> descriptions, final long latencyMs, final long jitterMs) {
+            this.descriptions = descriptions;
+            this.latencyMs = latencyMs;
+            this.jitterMs = jitterMs;
+        }
+
+        /**
+         * @param descriptions The description of each group by its name, served without any latency
+         */
+        public Cognito(final Function<String, String> descriptions) {
+            this(descriptions, 0, 0);
+        }
+
+        @Override
+        public String serviceName() { return "FakeCognito"; }
+        @Override
+        public void close() {}
+        @Override
+        public GetGroupResponse getGroup(final GetGroupRequest getGroupRequest) {
+            sleep(latencyMs, jitterMs);
+            return GetGroupResponse.builder()
+                    .group(GroupType.builder()
+                            .groupName(getGroupRequest.groupName())
+                            .userPoolId(getGroupRequest.userPoolId())
+                            .description(descriptions.apply(getGroupRequest.groupName()))
+                            .build())
+                    .build();
+        }
+    }
+}
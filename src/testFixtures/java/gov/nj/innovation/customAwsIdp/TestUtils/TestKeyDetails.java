@@ -1,12 +1,25 @@
 package gov.nj.innovation.customAwsIdp.TestUtils;
 
+import gov.nj.innovation.customAwsIdp.keys.KeyConstants;
 import org.bouncycastle.asn1.x500.X500Name;
 
 import java.math.BigInteger;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateCrtKey;
 import java.util.Date;
+import java.util.Map;
+
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_CRT_COEFFICIENT_NAME;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_EXPONENT_P_NAME;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_EXPONENT_Q_NAME;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_P_NAME;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIME_Q_NAME;
+import static gov.nj.innovation.customAwsIdp.util.Constants.KEY_PRIVATE_EXPONENT_NAME;
 
 /**
- * Store the large integers needed for the test keys in {@link gov.nj.innovation.customAwsIdp.SamlGeneratorTest}.
+ * Store the large integers needed for the test keys in {@link gov.nj.innovation.customAwsIdp.SamlGeneratorTest}, and
+ * build the {@link KeyConstants} and SSM secrets which the tests, benchmarks, and load tests sign with.
  *
  * @author Case Walker (case@innovation.nj.gov)
  */
@@ -67,4 +80,64 @@ public class TestKeyDetails {
     public static final Date CERT_NOT_BEFORE = new Date(1696169540000L);
     public static final Date CERT_NOT_AFTER = new Date(2011788840000L);
     public static final String SIGNATURE_ALGORITHM = "SHA256WithRSA";
+
+    /**
+     * @return The test key, with the certificate details the expected SAML in the tests was signed with.
+     */
+    public static KeyConstants keyConstants() {
+        return new KeyConstants(MODULUS, PUBLIC_EXPONENT, PRIVATE_EXPONENT, PRIME_P, PRIME_Q, PRIME_EXPONENT_P,
+                PRIME_EXPONENT_Q, CRT_COEFFICIENT, CERT_SUBJECT, CERT_SERIAL, CERT_NOT_BEFORE, CERT_NOT_AFTER,
+                SIGNATURE_ALGORITHM);
+    }
+
+    /**
+     * @param key An RSA key, e.g. from {@link #generateKey()}
+     * @return The key's constants, built the way the Lambda builds them from its SSM secrets.
+     */
+    public static KeyConstants keyConstants(final RSAPrivateCrtKey key) {
+        return KeyConstants.fromSecrets(KeyConstants.secretsOf(key));
+    }
+
+    /**
+     * @return The test key's secrets, by the names of the SSM parameters they are stored in.
+     */
+    public static Map<String, String> secrets() {
+        return secrets(PRIVATE_EXPONENT, PRIME_P, PRIME_Q, PRIME_EXPONENT_P, PRIME_EXPONENT_Q, CRT_COEFFICIENT);
+    }
+
+    /**
+     * @return A freshly generated RSA-2048 key's secrets, by the names of the SSM parameters they are stored in.
+     */
+    public static Map<String, String> generateSecrets() {
+        return KeyConstants.secretsOf(generateKey());
+    }
+
+    /**
+     * @return A freshly generated RSA-2048 key, for when the fixed test key would make every run alike.
+     */
+    public static RSAPrivateCrtKey generateKey() {
+        try {
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return (RSAPrivateCrtKey) generator.generateKeyPair().getPrivate();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, String> secrets(
+            final BigInteger privateExponent,
+            final BigInteger primeP,
+            final BigInteger primeQ,
+            final BigInteger primeExponentP,
+            final BigInteger primeExponentQ,
+            final BigInteger crtCoefficient) {
+        return Map.of(
+                KEY_PRIVATE_EXPONENT_NAME, privateExponent.toString(),
+                KEY_PRIME_P_NAME, primeP.toString(),
+                KEY_PRIME_Q_NAME, primeQ.toString(),
+                KEY_PRIME_EXPONENT_P_NAME, primeExponentP.toString(),
+                KEY_PRIME_EXPONENT_Q_NAME, primeExponentQ.toString(),
+                KEY_CRT_COEFFICIENT_NAME, crtCoefficient.toString());
+    }
 }
@@ -0,0 +1,466 @@
+package gov.nj.innovation.customAwsIdp.emulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process stand-in for the parts of SSM and Cognito which the Lambda uses, speaking the AWS JSON 1.1 protocol
+ * over HTTP on the loopback interface. Real SDK clients pointed at {@link #endpoint()} (see
+ * {@link gov.nj.innovation.customAwsIdp.util.AwsClients}) go through their usual marshalling, HTTP, and retry code, so
+ * tests and load tests can measure end-to-end latency and exercise retries without a network.
+ * <p>
+ * Supported operations are SSM {@code GetParameter}, {@code GetParameters}, and {@code PutParameter} (with versioned
+ * parameters, the {@code name:version} selector, and values hidden unless decrypted) and Cognito {@code GetGroup}
+ * and {@code ListGroups} (with {@code Limit} and {@code NextToken} paging). Each service can be given a latency with
+ * jitter, and the next calls to an operation can be made slow, or to fail or be throttled; calls are counted per
+ * operation, including the failed ones.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class AwsJsonEmulator implements AutoCloseable {
+
+    public static final String SSM_GET_PARAMETER = "AmazonSSM.GetParameter";
+    public static final String SSM_GET_PARAMETERS = "AmazonSSM.GetParameters";
+    public static final String SSM_PUT_PARAMETER = "AmazonSSM.PutParameter";
+    public static final String COGNITO_GET_GROUP = "AWSCognitoIdentityProviderService.GetGroup";
+    public static final String COGNITO_LIST_GROUPS = "AWSCognitoIdentityProviderService.ListGroups";
+    private static final String CONTENT_TYPE = "application/x-amz-json-1.1";
+    private static final int MAX_LIST_GROUPS_LIMIT = 60;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public enum Service {
+        SSM("AmazonSSM", "ThrottlingException"),
+        COGNITO("AWSCognitoIdentityProviderService", "TooManyRequestsException");
+
+        private final String targetPrefix;
+        private final String throttlingErrorType;
+
+        Service(final String targetPrefix, final String throttlingErrorType) {
+            this.targetPrefix = targetPrefix;
+            this.throttlingErrorType = throttlingErrorType;
+        }
+
+        static Service forTarget(final String target) {
+            for (final Service service : values()) {
+                if (target.startsWith(service.targetPrefix + ".")) {
+                    return service;
+                }
+            }
+            return null;
+        }
+    }
+
+    private record Latency(Duration base, Duration jitter) {}
+
+    private record Fault(int statusCode, String errorType, String message) {}
+
+    private record StoredGroup(String description, Instant created) {}
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, List<String>> parameters = new ConcurrentHashMap<>();
+    private final Map<String, TreeMap<String, StoredGroup>> groupsByPool = new ConcurrentHashMap<>();
+    private final Map<Service, Latency> latencies = new EnumMap<>(Service.class);
+    private final Map<String, Deque<Fault>> faults = new ConcurrentHashMap<>();
+    private final Map<String, Deque<Duration>> slowdowns = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> callCounts = new ConcurrentHashMap<>();
+
+    private AwsJsonEmulator(final HttpServer server) {
+        this.server = server;
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Start an emulator on an ephemeral loopback port.
+     *
+     * @return The running emulator, to be closed by the caller.
+     */
+    public static AwsJsonEmulator start() {
+        try {
+            final AwsJsonEmulator emulator = new AwsJsonEmulator(
+                    HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0));
+            emulator.server.start();
+            return emulator;
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not start the AWS JSON emulator: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The endpoint to give the SDK clients as their endpoint override.
+     */
+    public URI endpoint() {
+        final InetSocketAddress address = server.getAddress();
+        return URI.create("http://" + address.getHostString() + ":" + address.getPort());
+    }
+
+    /**
+     * Store a new version of an SSM parameter, as {@code PutParameter} with overwrite would.
+     *
+     * @return The new version number, starting at 1.
+     */
+    public int putParameter(final String name, final String value) {
+        final List<String> versions = parameters.computeIfAbsent(name, ignored -> new ArrayList<>());
+        synchronized (versions) {
+            versions.add(value);
+            return versions.size();
+        }
+    }
+
+    /**
+     * Create or replace a Cognito Group.
+     */
+    public void putGroup(final String userPoolId, final String groupName, final String description) {
+        final TreeMap<String, StoredGroup> groups =
+                groupsByPool.computeIfAbsent(userPoolId, ignored -> new TreeMap<>());
+        synchronized (groups) {
+            groups.put(groupName, new StoredGroup(description, Instant.now()));
+        }
+    }
+
+    /**
+     * Delay every response from a service by {@code base} plus a uniformly random amount up to {@code jitter}.
+     */
+    public synchronized void setLatency(final Service service, final Duration base, final Duration jitter) {
+        latencies.put(service, new Latency(base, jitter));
+    }
+
+    /**
+     * Throttle the next calls to an operation, with the error type its service really uses.
+     *
+     * @param target The operation, as its {@code X-Amz-Target}, e.g. {@link #SSM_GET_PARAMETER}
+     * @param count How many calls to throttle
+     */
+    public void throttleNext(final String target, final int count) {
+        final Service service = Service.forTarget(target);
+        if (service == null) {
+            throw new IllegalArgumentException("Unknown operation " + target);
+        }
+        failNext(target, count, 400, service.throttlingErrorType);
+    }
+
+    /**
+     * Fail the next calls to an operation with the given status and error type, e.g. 500 and
+     * {@code InternalServerError}.
+     */
+    public void failNext(final String target, final int count, final int statusCode, final String errorType) {
+        final Deque<Fault> queue = faults.computeIfAbsent(target, ignored -> new ArrayDeque<>());
+        synchronized (queue) {
+            for (int i = 0; i < count; i++) {
+                queue.add(new Fault(statusCode, errorType, "Injected by the emulator"));
+            }
+        }
+    }
+
+    /**
+     * Delay the next calls to an operation by an extra amount on top of their service's latency, e.g. to stand in for
+     * the occasional slow response which hedging is meant to cut short.
+     */
+    public void slowNext(final String target, final int count, final Duration extraLatency) {
+        final Deque<Duration> queue = slowdowns.computeIfAbsent(target, ignored -> new ArrayDeque<>());
+        synchronized (queue) {
+            for (int i = 0; i < count; i++) {
+                queue.add(extraLatency);
+            }
+        }
+    }
+
+    /**
+     * @return How many calls the operation has received, including failed and throttled ones.
+     */
+    public int callCount(final String target) {
+        final AtomicInteger count = callCounts.get(target);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Forget the call counts, injected faults, and latencies, keeping the stored parameters and groups.
+     */
+    public synchronized void reset() {
+        callCounts.clear();
+        faults.clear();
+        slowdowns.clear();
+        latencies.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        // Interrupts any injected latency still being waited out
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            final Service service = target == null ? null : Service.forTarget(target);
+            if (service == null) {
+                sendError(exchange, 400, "UnknownOperationException", "Unknown X-Amz-Target " + target);
+                return;
+            }
+            callCounts.computeIfAbsent(target, ignored -> new AtomicInteger()).incrementAndGet();
+            delay(service);
+            sleep(nextSlowdown(target));
+
+            final Fault fault = nextFault(target);
+            if (fault != null) {
+                sendError(exchange, fault.statusCode(), fault.errorType(), fault.message());
+                return;
+            }
+
+            final JsonNode request;
+            try {
+                request = MAPPER.readTree(exchange.getRequestBody());
+            } catch (final JacksonException e) {
+                sendError(exchange, 400, "SerializationException", e.getOriginalMessage());
+                return;
+            }
+            switch (target) {
+                case SSM_GET_PARAMETER -> getParameter(exchange, request);
+                case SSM_GET_PARAMETERS -> getParameters(exchange, request);
+                case SSM_PUT_PARAMETER -> putParameter(exchange, request);
+                case COGNITO_GET_GROUP -> getGroup(exchange, request);
+                case COGNITO_LIST_GROUPS -> listGroups(exchange, request);
+                default -> sendError(exchange, 400, "UnknownOperationException", "Unsupported operation " + target);
+            }
+        }
+    }
+
+    private void getParameter(final HttpExchange exchange, final JsonNode request) throws IOException {
+        final String name = request.path("Name").asString();
+        final ObjectNode parameter = findParameter(name, request.path("WithDecryption").asBoolean());
+        if (parameter == null) {
+            sendError(exchange, 400, "ParameterNotFound", "Parameter " + name + " not found.");
+            return;
+        }
+        final ObjectNode response = MAPPER.createObjectNode();
+        response.set("Parameter", parameter);
+        send(exchange, response);
+    }
+
+    private void getParameters(final HttpExchange exchange, final JsonNode request) throws IOException {
+        final ObjectNode response = MAPPER.createObjectNode();
+        final ArrayNode found = response.putArray("Parameters");
+        final ArrayNode invalid = response.putArray("InvalidParameters");
+        final boolean withDecryption = request.path("WithDecryption").asBoolean();
+        for (final JsonNode nameNode : request.path("Names")) {
+            final ObjectNode parameter = findParameter(nameNode.asString(), withDecryption);
+            if (parameter == null) {
+                invalid.add(nameNode.asString());
+            } else {
+                found.add(parameter);
+            }
+        }
+        send(exchange, response);
+    }
+
+    private void putParameter(final HttpExchange exchange, final JsonNode request) throws IOException {
+        final String name = request.path("Name").asString();
+        final List<String> versions = parameters.computeIfAbsent(name, ignored -> new ArrayList<>());
+        final int version;
+        synchronized (versions) {
+            if (!versions.isEmpty() && !request.path("Overwrite").asBoolean()) {
+                sendError(exchange, 400, "ParameterAlreadyExists", "The parameter already exists.");
+                return;
+            }
+            versions.add(request.path("Value").asString());
+            version = versions.size();
+        }
+        final ObjectNode response = MAPPER.createObjectNode();
+        response.put("Version", version);
+        response.put("Tier", "Standard");
+        send(exchange, response);
+    }
+
+    /**
+     * Find the latest version of a parameter, or the one selected with {@code name:version}. Every parameter is
+     * treated as a SecureString, so its value is only readable when decrypted.
+     */
+    private ObjectNode findParameter(final String selector, final boolean withDecryption) {
+        final int colon = selector.lastIndexOf(':');
+        final String name = colon > 0 ? selector.substring(0, colon) : selector;
+        final List<String> versions = parameters.get(name);
+        if (versions == null) {
+            return null;
+        }
+        final int version;
+        final String value;
+        synchronized (versions) {
+            try {
+                version = colon > 0 ? Integer.parseInt(selector.substring(colon + 1)) : versions.size();
+            } catch (final NumberFormatException e) {
+                return null;
+            }
+            if (version < 1 || version > versions.size()) {
+                return null;
+            }
+            value = versions.get(version - 1);
+        }
+        final ObjectNode parameter = MAPPER.createObjectNode();
+        parameter.put("Name", name);
+        parameter.put("Type", "SecureString");
+        parameter.put("Value", withDecryption ? value : "encrypted:" + Integer.toHexString(value.hashCode()));
+        parameter.put("Version", version);
+        if (colon > 0) {
+            parameter.put("Selector", selector.substring(colon));
+        }
+        parameter.put("ARN", "arn:aws:ssm:us-east-1:000000000000:parameter/" + name);
+        parameter.put("DataType", "text");
+        parameter.put("LastModifiedDate", Instant.now().getEpochSecond());
+        return parameter;
+    }
+
+    private void getGroup(final HttpExchange exchange, final JsonNode request) throws IOException {
+        final String userPoolId = request.path("UserPoolId").asString();
+        final String groupName = request.path("GroupName").asString();
+        final TreeMap<String, StoredGroup> groups = groupsByPool.get(userPoolId);
+        final StoredGroup group;
+        if (groups == null) {
+            group = null;
+        } else {
+            synchronized (groups) {
+                group = groups.get(groupName);
+            }
+        }
+        if (group == null) {
+            sendError(exchange, 400, "ResourceNotFoundException", "Group not found.");
+            return;
+        }
+        final ObjectNode response = MAPPER.createObjectNode();
+        response.set("Group", groupNode(userPoolId, groupName, group));
+        send(exchange, response);
+    }
+
+    private void listGroups(final HttpExchange exchange, final JsonNode request) throws IOException {
+        final String userPoolId = request.path("UserPoolId").asString();
+        final int limit = request.hasNonNull("Limit")
+                ? Math.min(request.get("Limit").intValue(), MAX_LIST_GROUPS_LIMIT)
+                : MAX_LIST_GROUPS_LIMIT;
+        final String nextToken = request.hasNonNull("NextToken") ? request.get("NextToken").asString() : null;
+        final TreeMap<String, StoredGroup> groups = groupsByPool.get(userPoolId);
+        if (groups == null) {
+            sendError(exchange, 400, "ResourceNotFoundException", "User pool " + userPoolId + " does not exist.");
+            return;
+        }
+
+        final ObjectNode response = MAPPER.createObjectNode();
+        final ArrayNode page = response.putArray("Groups");
+        synchronized (groups) {
+            // The token is the name of the first group on the next page
+            final Map<String, StoredGroup> remaining = nextToken == null ? groups : groups.tailMap(nextToken, true);
+            for (final Map.Entry<String, StoredGroup> entry : remaining.entrySet()) {
+                if (page.size() == limit) {
+                    response.put("NextToken", entry.getKey());
+                    break;
+                }
+                page.add(groupNode(userPoolId, entry.getKey(), entry.getValue()));
+            }
+        }
+        send(exchange, response);
+    }
+
+    private ObjectNode groupNode(final String userPoolId, final String groupName, final StoredGroup group) {
+        final ObjectNode node = MAPPER.createObjectNode();
+        node.put("GroupName", groupName);
+        node.put("UserPoolId", userPoolId);
+        node.put("Description", group.description());
+        node.put("CreationDate", group.created().getEpochSecond());
+        node.put("LastModifiedDate", group.created().getEpochSecond());
+        return node;
+    }
+
+    private Fault nextFault(final String target) {
+        final Deque<Fault> queue = faults.get(target);
+        if (queue == null) {
+            return null;
+        }
+        synchronized (queue) {
+            return queue.poll();
+        }
+    }
+
+    private Duration nextSlowdown(final String target) {
+        final Deque<Duration> queue = slowdowns.get(target);
+        if (queue == null) {
+            return Duration.ZERO;
+        }
+        synchronized (queue) {
+            final Duration slowdown = queue.poll();
+            return slowdown == null ? Duration.ZERO : slowdown;
+        }
+    }
+
+    private void delay(final Service service) {
+        final Latency latency;
+        synchronized (this) {
+            latency = latencies.get(service);
+        }
+        if (latency == null) {
+            return;
+        }
+        final long jitterMillis = latency.jitter().toMillis();
+        sleep(latency.base().plusMillis(jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0));
+    }
+
+    private static void sleep(final Duration duration) {
+        if (duration.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sendError(final HttpExchange exchange, final int statusCode, final String errorType,
+            final String message) throws IOException {
+        final ObjectNode body = MAPPER.createObjectNode();
+        body.put("__type", errorType);
+        body.put("message", message);
+        exchange.getResponseHeaders().set("x-amzn-ErrorType", errorType);
+        write(exchange, statusCode, body);
+    }
+
+    private void send(final HttpExchange exchange, final ObjectNode body) throws IOException {
+        write(exchange, 200, body);
+    }
+
+    private void write(final HttpExchange exchange, final int statusCode, final ObjectNode body) throws IOException {
+        final byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (final OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package gov.nj.innovation.customAwsIdp.runtime;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An in-process stand-in for the Lambda Runtime API, for driving {@link CustomRuntime} the way Lambda does: {@code
+ * invocation/next} is held open until {@link #invoke} queues an event, and the response or error posted for that
+ * event's request ID is handed back to the caller. An init error is recorded for {@link #initError()}.
+ *
+ * @author Case Walker (case@innovation.nj.gov)
+ */
+public class RuntimeApiEmulator implements AutoCloseable {
+
+    private static final String PREFIX = "/2018-06-01/runtime/";
+    private static final Duration FUNCTION_TIMEOUT = Duration.ofSeconds(15);
+
+    /**
+     * What the runtime posted for an invocation.
+     *
+     * @param error Whether it was posted as an error
+     * @param errorType The {@code Lambda-Runtime-Function-Error-Type} header of an error
+     * @param body The response, or the error's JSON
+     */
+    public record Result(boolean error, String errorType, byte[] body) {}
+
+    private record PendingInvocation(String requestId, byte[] payload) {}
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final BlockingQueue<PendingInvocation> pending = new LinkedBlockingQueue<>();
+    private final Map<String, CompletableFuture<Result>> results = new ConcurrentHashMap<>();
+    private volatile Result initError;
+
+    private RuntimeApiEmulator(final HttpServer server) {
+        this.server = server;
+        server.createContext(PREFIX, this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Start an emulator on an ephemeral loopback port.
+     *
+     * @return The running emulator, to be closed by the caller.
+     */
+    public static RuntimeApiEmulator start() {
+        try {
+            final RuntimeApiEmulator emulator = new RuntimeApiEmulator(
+                    HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0));
+            emulator.server.start();
+            return emulator;
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Could not start the Runtime API emulator: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The {@code host:port} to give the runtime, as Lambda does in {@value RuntimeApiClient#RUNTIME_API_ENV}.
+     */
+    public String runtimeApi() {
+        return server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Queue an event for the runtime and wait for what it posts back.
+     *
+     * @param payload The event's JSON
+     * @param timeout How long to wait for the runtime
+     * @return The response or error.
+     */
+    public Result invoke(final byte[] payload, final Duration timeout)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        final String requestId = UUID.randomUUID().toString();
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+        results.put(requestId, result);
+        pending.put(new PendingInvocation(requestId, payload));
+        try {
+            return result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            results.remove(requestId);
+        }
+    }
+
+    /**
+     * @return What was posted to {@code init/error}, or null.
+     */
+    public Result initError() {
+        return initError;
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final String path = exchange.getRequestURI().getPath().substring(PREFIX.length());
+            final String method = exchange.getRequestMethod();
+            if ("GET".equals(method) && path.equals("invocation/next")) {
+                next(exchange);
+                return;
+            }
+
+            final byte[] body = exchange.getRequestBody().readAllBytes();
+            final String errorType = exchange.getRequestHeaders().getFirst(RuntimeApiClient.ERROR_TYPE_HEADER);
+            if ("POST".equals(method) && path.equals("init/error")) {
+                initError = new Result(true, errorType, body);
+                exchange.sendResponseHeaders(202, -1);
+                return;
+            }
+
+            final String[] parts = path.split("/");
+            final CompletableFuture<Result> result = "POST".equals(method) && parts.length == 3 &&
+                    parts[0].equals("invocation") ? results.get(parts[1]) : null;
+            if (result == null || !(parts[2].equals("response") || parts[2].equals("error"))) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            result.complete(new Result(parts[2].equals("error"), errorType, body));
+            exchange.sendResponseHeaders(202, -1);
+        }
+    }
+
+    /**
+     * Hold the request open until there is an invocation, as Lambda does.
+     */
+    private void next(final HttpExchange exchange) throws IOException {
+        final PendingInvocation invocation;
+        try {
+            invocation = pending.take();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(500, -1);
+            return;
+        }
+        exchange.getResponseHeaders().add(RuntimeApiClient.REQUEST_ID_HEADER, invocation.requestId());
+        exchange.getResponseHeaders().add(RuntimeApiClient.DEADLINE_HEADER,
+                String.valueOf(System.currentTimeMillis() + FUNCTION_TIMEOUT.toMillis()));
+        exchange.getResponseHeaders().add(RuntimeApiClient.FUNCTION_ARN_HEADER,
+                "arn:aws:lambda:us-east-1:000000000000:function:generateSamlResponse");
+        exchange.getResponseHeaders().add(RuntimeApiClient.TRACE_ID_HEADER,
+                "Root=1-00000000-000000000000000000000000;Sampled=0");
+        exchange.sendResponseHeaders(200, invocation.payload().length);
+        try (final OutputStream out = exchange.getResponseBody()) {
+            out.write(invocation.payload());
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}